@@ -0,0 +1,80 @@
+package ac.il.bgu.qa;
+
+/**
+ * Validates author names in a single pass over their characters.
+ * <p>
+ * A valid author name follows these rules:
+ * <ol>
+ *     <li>It consists only of letters (in any script), hyphens, spaces, dots and apostrophes.</li>
+ *     <li>It starts and ends with a letter.</li>
+ *     <li>A hyphen, space, dot or apostrophe is never followed by another one, with a single exception:
+ *     a dot may be followed by one space, as in "J. R. R. Tolkien". So "Jean-Paul", "O'Brien" and
+ *     "Martin Luther King Jr." (without the final dot) are valid, while "Anne--Marie", "A..B", "A  B",
+ *     "A-'B", "A -B" and "A. -B" are not.</li>
+ * </ol>
+ * Characters below U+0100 are classified with a lookup table; other characters fall back to
+ * {@link Character#isLetter(int)}, with surrogate pairs read as a single code point.
+ */
+public final class AuthorNameValidator {
+
+    // Character classes.
+    private static final byte INVALID = 0;
+    private static final byte LETTER = 1;
+    private static final byte HYPHEN = 2;
+    private static final byte SPACE = 3;
+    private static final byte DOT = 4;
+    private static final byte APOSTROPHE = 5;
+
+    // The class of every Latin-1 character.
+    private static final byte[] LATIN_1 = new byte[256];
+
+    static {
+        for (char c = 0; c < LATIN_1.length; c++) {
+            LATIN_1[c] = Character.isLetter(c) ? LETTER : INVALID;
+        }
+        LATIN_1['-'] = HYPHEN;
+        LATIN_1[' '] = SPACE;
+        LATIN_1['.'] = DOT;
+        LATIN_1['\''] = APOSTROPHE;
+    }
+
+    private AuthorNameValidator() {
+    }
+
+    /**
+     * Validates if an author name is of valid format.
+     *
+     * @param name The name of the author.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isValid(String name) {
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+
+        // The class of the previous character. Starting as if after a hyphen rejects a leading special character.
+        byte previous = HYPHEN;
+        int length = name.length();
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            byte current;
+            if (c < LATIN_1.length) {
+                current = LATIN_1[c];
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(name.charAt(i + 1))) {
+                current = Character.isLetter(Character.toCodePoint(c, name.charAt(++i))) ? LETTER : INVALID;
+            } else {
+                current = Character.isLetter(c) ? LETTER : INVALID;
+            }
+
+            if (current == INVALID) {
+                return false;
+            } else if (current != LETTER && previous != LETTER && !(previous == DOT && current == SPACE)) {
+                return false;
+            }
+            previous = current;
+        }
+
+        // The name must end with a letter.
+        return previous == LETTER;
+    }
+}
@@ -1,7 +1,15 @@
 package ac.il.bgu.qa;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Represents a book with its essential details and borrowing status.
+ * A book may stand for several copies of the same title, which are borrowed and returned independently;
+ * it counts as borrowed once every copy is out.
+ * <p>
+ * Every borrow or return increments the book's version, so a database shared by several libraries can
+ * apply a change only if the book was not changed since it was read (see
+ * {@link ac.il.bgu.qa.services.DatabaseService#compareAndSetBorrowed(String, long, String)}).
  */
 public class Book {
     // The International Standard Book Number (ISBN) uniquely identifying the book.
@@ -10,8 +18,11 @@ public class Book {
     private final String title;
     // The name of the author of the book.
     private final String author;
-    // Status to check if the book is currently borrowed or not.
-    private boolean isBorrowed;
+    // The number of copies of the book.
+    private final int copies;
+    // The version in the high 32 bits and the number of copies on the shelf in the low 32 bits,
+    // changed together with compare-and-set only.
+    private final AtomicLong state;
 
     /**
      * Constructs a new Book object.
@@ -21,10 +32,46 @@ public class Book {
      * @param author The author of the book.
      */
     public Book(String ISBN, String title, String author) {
+        this(ISBN, title, author, 1);
+    }
+
+    /**
+     * Constructs a new Book object standing for several copies of the same title.
+     *
+     * @param ISBN   The International Standard Book Number (ISBN) of the book.
+     * @param title  The title of the book.
+     * @param author The author of the book.
+     * @param copies The number of copies, at least 1.
+     */
+    public Book(String ISBN, String title, String author, int copies) {
+        if (copies < 1) {
+            throw new IllegalArgumentException("Invalid number of copies.");
+        }
         this.ISBN = ISBN;
         this.title = title;
         this.author = author;
-        this.isBorrowed = false;
+        this.copies = copies;
+        this.state = new AtomicLong(copies);
+    }
+
+    /**
+     * Constructs a Book object restoring the state of a book read from storage.
+     *
+     * @param ISBN            The International Standard Book Number (ISBN) of the book.
+     * @param title           The title of the book.
+     * @param author          The author of the book.
+     * @param copies          The number of copies, at least 1.
+     * @param availableCopies The number of copies on the shelf.
+     * @param version         The version of the book.
+     */
+    public Book(String ISBN, String title, String author, int copies, int availableCopies, long version) {
+        this(ISBN, title, author, copies);
+        if (availableCopies < 0 || availableCopies > copies) {
+            throw new IllegalArgumentException("Invalid number of available copies.");
+        } else if (version < 0 || version > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Invalid version.");
+        }
+        this.state.set(version << 32 | availableCopies);
     }
 
     // Getter methods
@@ -56,36 +103,128 @@ public class Book {
         return author;
     }
 
+    /**
+     * Retrieves the number of copies of the book.
+     *
+     * @return The number of copies.
+     */
+    public int getCopies() {
+        return copies;
+    }
+
+    /**
+     * Retrieves the number of copies which can currently be borrowed.
+     *
+     * @return The number of available copies.
+     */
+    public int getAvailableCopies() {
+        return available(state.get());
+    }
+
+    /**
+     * Retrieves the version of the book, incremented by every borrow and return.
+     *
+     * @return The book's version.
+     */
+    public long getVersion() {
+        return state.get() >>> 32;
+    }
+
+    /**
+     * Retrieves the number of copies currently borrowed.
+     *
+     * @return The number of borrowed copies.
+     */
+    public int getBorrowedCopies() {
+        return copies - getAvailableCopies();
+    }
+
     /**
      * Checks the borrowing status of the book.
      *
-     * @return true if the book is borrowed, otherwise false.
+     * @return true if every copy of the book is borrowed, otherwise false.
      */
     public boolean isBorrowed() {
-        return isBorrowed;
+        return getAvailableCopies() == 0;
     }
 
     /**
-     * Marks the book as borrowed.
-     * Throws an exception if the book is already borrowed.
+     * Checks whether any copy of the book is borrowed.
+     *
+     * @return true if at least one copy is borrowed, otherwise false.
+     */
+    public boolean hasBorrowedCopies() {
+        return getAvailableCopies() < copies;
+    }
+
+    /**
+     * Marks a copy of the book as borrowed.
+     * Throws an exception if every copy is already borrowed.
      */
     public void borrow() {
-        if (!isBorrowed) {
-            isBorrowed = true;
-        } else {
+        long current;
+        do {
+            current = state.get();
+            if (available(current) == 0) {
+                throw new IllegalStateException("Book is already borrowed!");
+            }
+        } while (!state.compareAndSet(current, next(current, -1)));
+    }
+
+    /**
+     * Marks a copy of the book as returned/not borrowed.
+     * Throws an exception if no copy was previously borrowed.
+     */
+    public void returnBook() {
+        long current;
+        do {
+            current = state.get();
+            if (available(current) == copies) {
+                throw new IllegalStateException("ac.il.bgu.qa.Book wasn't borrowed!");
+            }
+        } while (!state.compareAndSet(current, next(current, 1)));
+    }
+
+    /**
+     * Marks a copy of the book as borrowed, only if the book is still at the expected version.
+     *
+     * @param expectedVersion The version the book was read at.
+     * @return true if a copy was borrowed, false if the book changed since it was read.
+     * @throws IllegalStateException If every copy is already borrowed.
+     */
+    public boolean compareAndBorrow(long expectedVersion) {
+        long current = state.get();
+        if (current >>> 32 != expectedVersion) {
+            return false;
+        } else if (available(current) == 0) {
             throw new IllegalStateException("Book is already borrowed!");
         }
+        return state.compareAndSet(current, next(current, -1));
     }
 
     /**
-     * Marks the book as returned/not borrowed.
-     * Throws an exception if the book was not previously borrowed.
+     * Marks a copy of the book as returned, only if the book is still at the expected version.
+     *
+     * @param expectedVersion The version the book was read at.
+     * @return true if a copy was returned, false if the book changed since it was read.
+     * @throws IllegalStateException If no copy was borrowed.
      */
-    public void returnBook() {
-        if (isBorrowed) {
-            isBorrowed = false;
-        } else {
+    public boolean compareAndReturn(long expectedVersion) {
+        long current = state.get();
+        if (current >>> 32 != expectedVersion) {
+            return false;
+        } else if (available(current) == copies) {
             throw new IllegalStateException("ac.il.bgu.qa.Book wasn't borrowed!");
         }
+        return state.compareAndSet(current, next(current, 1));
+    }
+
+    private static int available(long state) {
+        return (int) state;
+    }
+
+    // The state after a copy is borrowed (-1) or returned (+1), at the next version.
+    private static long next(long state, int change) {
+        return ((state >>> 32) + 1 & 0xFFFFFFFFL) << 32 | (available(state) + change);
     }
 }
@@ -1,34 +1,270 @@
 package ac.il.bgu.qa;
 
+import ac.il.bgu.qa.admission.AimdConcurrencyLimiter;
 import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.events.LibraryEvent;
+import ac.il.bgu.qa.events.LibraryEventSink;
+import ac.il.bgu.qa.jfr.EventRecorder;
+import ac.il.bgu.qa.jfr.NotificationAttemptSpan;
+import ac.il.bgu.qa.jfr.OperationSpan;
+import ac.il.bgu.qa.loans.IdempotencyTable;
+import ac.il.bgu.qa.loans.OverdueTracker;
+import ac.il.bgu.qa.notifications.DeadLetterQueue;
+import ac.il.bgu.qa.notifications.NotificationPayloadCache;
+import ac.il.bgu.qa.replication.ReplicaReadRouter;
+import ac.il.bgu.qa.search.CatalogSearchIndex;
+import ac.il.bgu.qa.search.CoBorrowIndex;
+import ac.il.bgu.qa.services.BookQuery;
 import ac.il.bgu.qa.services.DatabaseService;
 import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.util.Deadline;
 
+import java.io.UncheckedIOException;
+import java.time.Clock;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Represents a library which manages a collection of books and users.
  */
 public class Library {
 
+    // Maximal number of attempts of a conditional update of a book changed concurrently by other libraries
+    private static final int MAX_CONDITIONAL_ATTEMPTS = 10;
+
     // Service to interact with the database
     private final DatabaseService databaseService;
 
     // Service to fetch reviews for a book
     private final ReviewService reviewService;
 
+    // Optional index for searching books by title and author, null if searching is disabled
+    private CatalogSearchIndex searchIndex;
+
+    // Optional index of the books borrowed by the same users, null if recommendations are disabled
+    private CoBorrowIndex coBorrowIndex;
+
+    // Optional consumer of the events describing every change made by the library, null if disabled
+    private LibraryEventSink eventSink;
+
+    // Number of events the event sink failed to publish
+    private final AtomicLong failedEventPublishes = new AtomicLong();
+
+    // Optional tracker of loan due times which reminds users of overdue books, null if disabled
+    private OverdueTracker overdueTracker;
+
+    // Optional table replaying the outcome of retried borrows and returns, null if idempotency keys are disabled
+    private IdempotencyTable idempotencyTable;
+
+    // Optional limit on the optional review notifications in flight, null if unlimited
+    private AimdConcurrencyLimiter notificationLimiter;
+
+    // Optional cache of rendered review notifications shared between users, null if disabled
+    private NotificationPayloadCache payloadCache;
+
+    // Optional queue of failed notifications redelivered in the background, null if failures are retried inline
+    private DeadLetterQueue deadLetterQueue;
+
+    // Optional router of reads to replicas of the database, null if every read goes to the database
+    private ReplicaReadRouter readRouter;
+
+    // Minimal time left before the deadline for another notification attempt to start, in nanoseconds
+    private long minRetryBudgetNanos;
+
+    // Clock used to timestamp events and loans
+    private Clock clock = Clock.systemUTC();
+
     // Constructor for Library, initializes both services
     public Library(DatabaseService databaseService, ReviewService reviewService) {
         this.databaseService = databaseService;
         this.reviewService = reviewService;
     }
 
+    /**
+     * Sets the index maintained by this library for searching books by title and author.
+     * Books added before the index was set are not indexed.
+     *
+     * @param searchIndex The search index, or null to disable searching.
+     */
+    public void setSearchIndex(CatalogSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * Sets the index fed with every borrow made by this library, to recommend books borrowed by the same users.
+     * Borrows made before the index was set are not indexed.
+     *
+     * @param coBorrowIndex The co-borrow index, or null to disable recommendations.
+     */
+    public void setCoBorrowIndex(CoBorrowIndex coBorrowIndex) {
+        this.coBorrowIndex = coBorrowIndex;
+    }
+
+    /**
+     * Sets the consumer of the events describing every change made by this library.
+     *
+     * @param eventSink The event sink, or null to stop publishing events.
+     */
+    public void setEventSink(LibraryEventSink eventSink) {
+        this.eventSink = eventSink;
+    }
+
+    /**
+     * Retrieves the number of events the event sink threw on, which were dropped.
+     *
+     * @return The number of failed event publishes.
+     */
+    public long getFailedEventPublishes() {
+        return failedEventPublishes.get();
+    }
+
+    /**
+     * Sets the tracker which records the due time of every loan made by this library.
+     * Loans made before the tracker was set are not tracked.
+     *
+     * @param overdueTracker The overdue tracker, or null to stop tracking due times.
+     */
+    public void setOverdueTracker(OverdueTracker overdueTracker) {
+        this.overdueTracker = overdueTracker;
+    }
+
+    /**
+     * Sets the table remembering the outcome of borrows and returns made with an idempotency key, so their
+     * retries replay it instead of failing.
+     *
+     * @param idempotencyTable The idempotency table, or null to disable idempotency keys.
+     */
+    public void setIdempotencyTable(IdempotencyTable idempotencyTable) {
+        this.idempotencyTable = idempotencyTable;
+    }
+
+    /**
+     * Sets the adaptive limit on the review notifications sent by {@link #getBookByISBN(String, String)}.
+     * When the limit is reached, the notification is skipped and the book is still returned.
+     *
+     * @param notificationLimiter The concurrency limiter, or null to remove the limit.
+     */
+    public void setNotificationLimiter(AimdConcurrencyLimiter notificationLimiter) {
+        this.notificationLimiter = notificationLimiter;
+    }
+
+    /**
+     * Sets the cache of rendered review notifications, so users notified about the same book share one message.
+     *
+     * @param payloadCache The notification cache, or null to render every notification.
+     */
+    public void setNotificationPayloadCache(NotificationPayloadCache payloadCache) {
+        this.payloadCache = payloadCache;
+    }
+
+    /**
+     * Sets the queue failed review notifications are handed to. With a queue, a failed notification is not
+     * retried by the caller but queued for a {@link ac.il.bgu.qa.notifications.DeadLetterRedelivery} to deliver.
+     *
+     * @param deadLetterQueue The dead-letter queue, or null to retry failed notifications inline.
+     */
+    public void setDeadLetterQueue(DeadLetterQueue deadLetterQueue) {
+        this.deadLetterQueue = deadLetterQueue;
+    }
+
+    /**
+     * Sets the router serving the reads of {@link #getBookByISBN(String, String)} and
+     * {@link #notifyUserWithBookReviews(String, String)} from replicas of the database.
+     * The library's database must be the router's primary, which still serves every write and the reads
+     * made to update books.
+     *
+     * @param readRouter The read router, or null to read from the database only.
+     */
+    public void setReadRouter(ReplicaReadRouter readRouter) {
+        this.readRouter = readRouter;
+    }
+
+    /**
+     * Sets the minimal time which must be left before the current {@link Deadline} for a failed
+     * notification to be retried. Without a deadline, notifications are always retried.
+     *
+     * @param minRetryBudgetNanos The minimal time left for a retry, in nanoseconds.
+     */
+    public void setMinRetryBudgetNanos(long minRetryBudgetNanos) {
+        this.minRetryBudgetNanos = minRetryBudgetNanos;
+    }
+
+    /**
+     * Sets the clock used by this library to timestamp events and track time.
+     *
+     * @param clock The clock to be used.
+     */
+    public void setClock(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("Invalid clock.");
+        }
+        this.clock = clock;
+    }
+
+    /**
+     * Publishes an event to the event sink, if one is set. The change is already made, so a failing sink
+     * is counted rather than failing the operation which made it.
+     *
+     * @param type   The kind of change made.
+     * @param ISBN   The ISBN of the book involved, or null.
+     * @param userId The Id of the user involved, or null.
+     */
+    private void publishEvent(LibraryEvent.Type type, String ISBN, String userId) {
+        if (eventSink != null) {
+            try {
+                eventSink.publish(new LibraryEvent(type, clock.millis(), ISBN, userId));
+            } catch (RuntimeException e) {
+                failedEventPublishes.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Chooses the database a read made for a user is served from.
+     *
+     * @param userId The Id of the reading user.
+     * @return A replica chosen by the read router if one is set, otherwise the database.
+     */
+    private DatabaseService readDatabase(String userId) {
+        ReplicaReadRouter router = readRouter;
+        return router == null ? databaseService : router.forRead(userId);
+    }
+
+    /**
+     * Records a write made for a user with the read router, if one is set, so the user reads it back.
+     *
+     * @param userId The Id of the user, or null if unknown.
+     */
+    private void recordWrite(String userId) {
+        ReplicaReadRouter router = readRouter;
+        if (router != null) {
+            router.recordWrite(userId);
+        }
+    }
+
     /**
      * Adds a book to the library's collection.
      *
      * @param book The book to be added.
      */
     public void addBook(Book book) {
+        // Record the operation in the running flight recordings, if any.
+        OperationSpan event = EventRecorder.beginOperation();
+        try {
+            doAddBook(book);
+        } catch (RuntimeException e) {
+            event.finish("addBook", book == null ? null : book.getISBN(), e);
+            throw e;
+        }
+        event.finish("addBook", book == null ? null : book.getISBN(), null);
+    }
+
+    // Adds a book, without recording the operation.
+    private void doAddBook(Book book) {
         // Multiple checks to validate the book object's properties
         if (book == null) {
             throw new IllegalArgumentException("Invalid book.");
@@ -38,7 +274,7 @@ public class Library {
             throw new IllegalArgumentException("Invalid title.");
         } else if (!isAuthorValid(book.getAuthor())) {
             throw new IllegalArgumentException("Invalid author.");
-        } else if (book.isBorrowed()) {
+        } else if (book.isBorrowed() || book.hasBorrowedCopies()) {
             throw new IllegalArgumentException("Book with invalid borrowed state.");
         }
 
@@ -48,6 +284,82 @@ public class Library {
 
         // If all checks pass, add the book to the database
         databaseService.addBook(book.getISBN(), book);
+
+        // Make the book searchable by its title and author.
+        if (searchIndex != null) {
+            searchIndex.addBook(book);
+        }
+
+        publishEvent(LibraryEvent.Type.BOOK_ADDED, book.getISBN(), null);
+    }
+
+    /**
+     * Searches the books of the library by the words of their title and author.
+     *
+     * @param query         The words to search for. The last word may be incomplete, to support autocomplete.
+     * @param limit         The maximal number of results to return.
+     * @param availableOnly true to leave out books which are currently borrowed.
+     * @return The ISBNs of up to {@code limit} matching books, best matches first.
+     */
+    public List<String> searchBooks(String query, int limit, boolean availableOnly) {
+        // Searching requires a search index to be set.
+        if (searchIndex == null) {
+            throw new IllegalStateException("Search index not set.");
+        }
+        return searchIndex.search(query, limit, availableOnly);
+    }
+
+    /**
+     * Recommends the books most often borrowed by the users who borrowed a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @param k    The maximal number of recommendations.
+     * @return The ISBNs of up to {@code k} books, as they were borrowed, best first.
+     */
+    public List<String> recommend(String ISBN, int k) {
+        // Recommending requires a co-borrow index to be set.
+        if (coBorrowIndex == null) {
+            throw new IllegalStateException("Co-borrow index not set.");
+        }
+
+        // Validate the ISBN. If it's invalid, throw an exception.
+        if (!isISBNValid(ISBN)) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return coBorrowIndex.recommend(ISBN, k);
+    }
+
+    /**
+     * Streams the books of the library selected by a query, for reports over the whole catalog.
+     * The query and the projection are handed to the database, which applies them where it stores the books.
+     *
+     * @param query      The books to stream.
+     * @param projection Maps each selected book to the streamed value.
+     * @param parallel   true for a parallel stream.
+     * @param <R>        The type of the streamed values.
+     * @return A lazy stream of the projected values of the selected books.
+     */
+    public <R> Stream<R> scanBooks(BookQuery query, Function<? super Book, ? extends R> projection, boolean parallel) {
+        // Validate the query and the projection.
+        if (query == null) {
+            throw new IllegalArgumentException("Invalid query.");
+        } else if (projection == null) {
+            throw new IllegalArgumentException("Invalid projection.");
+        }
+
+        // Reports read from a replica when a read router is set, keeping their load off the primary.
+        return StreamSupport.stream(readDatabase(null).scanBooks(query, projection), parallel);
+    }
+
+    /**
+     * Counts the books with borrowed copies of every author, scanning the catalog in parallel.
+     *
+     * @return The number of books with at least one borrowed copy, keyed by author.
+     */
+    public Map<String, Long> countBorrowedBooksByAuthor() {
+        // Only the authors of borrowed books leave the database.
+        return scanBooks(new BookQuery(null, BookQuery.Availability.BORROWED), Book::getAuthor, true)
+                .collect(Collectors.groupingByConcurrent(Function.identity(), Collectors.counting()));
     }
 
     /**
@@ -100,42 +412,8 @@ public class Library {
      *  @return true if valid, false otherwise.
     */
     private boolean isAuthorValid(String name) {
-        /*
-         * Three key criteria for a valid author name:
-         * 1) The name should only consist of alphabetic characters, hyphens, spaces, dots, and apostrophes.
-         * 2) The name should start and end with an alphabetic character.
-         * 3) The name should not contain consecutive special characters like "--" or "''".
-         */
-
-        // If the name is null or empty, it's invalid.
-        if (name == null || name.isEmpty()) {
-            return false;
-        }
-
-        // Ensure the name starts and finishes with an alphabetic character.
-        if (!Character.isLetter(name.charAt(0)) || !Character.isLetter(name.charAt(name.length() - 1))) {
-            return false;
-        }
-
-        // Check the content of the name for valid characters and consecutive special characters.
-        for (int i = 0; i < name.length() - 1; i++) {
-            char current = name.charAt(i);
-            char next = name.charAt(i + 1);
-
-            // Check if the current character is not one of the valid characters.
-            if (!Character.isLetter(current) && current != '-' && current != ' ' && current != '\'' && current != '.') {
-                return false;
-            }
-
-            // Check for consecutive special characters.
-            if ((current == '-' && next == '-')
-                    || (current == '\'' && next == '\'')) {
-                return false;
-            }
-        }
-
-        // If all checks have passed, the author name is valid.
-        return true;
+        // The rules for valid author names are documented and implemented by the validator.
+        return AuthorNameValidator.isValid(name);
     }
 
 
@@ -145,6 +423,19 @@ public class Library {
      * @param user The user to be registered.
      */
     public void registerUser(User user) {
+        // Record the operation in the running flight recordings, if any.
+        OperationSpan event = EventRecorder.beginOperation();
+        try {
+            doRegisterUser(user);
+        } catch (RuntimeException e) {
+            event.finish("registerUser", null, e);
+            throw e;
+        }
+        event.finish("registerUser", null, null);
+    }
+
+    // Registers a user, without recording the operation.
+    private void doRegisterUser(User user) {
         // Multiple checks to validate the user object's properties.
         if (user == null) {
             throw new IllegalArgumentException("Invalid user.");
@@ -163,6 +454,11 @@ public class Library {
 
         // If all checks have passed, call the database service to register the user.
         databaseService.registerUser(user.getId(), user);
+
+        // Serve the user's later reads only from replicas which applied the registration.
+        recordWrite(user.getId());
+
+        publishEvent(LibraryEvent.Type.USER_REGISTERED, null, user.getId());
     }
 
 
@@ -173,6 +469,41 @@ public class Library {
      * @param userId The Id of the user borrowing the book.
      */
     public void borrowBook(String ISBN, String userId) {
+        // Record the operation in the running flight recordings, if any.
+        OperationSpan event = EventRecorder.beginOperation();
+        try {
+            doBorrowBook(ISBN, userId);
+        } catch (RuntimeException e) {
+            event.finish("borrowBook", ISBN, e);
+            throw e;
+        }
+        event.finish("borrowBook", ISBN, null);
+    }
+
+    /**
+     * Borrows a book for a user at most once per idempotency key. Retrying with the same key after a timeout
+     * replays the outcome of the first attempt: it returns normally if the book was borrowed, or throws the
+     * same exception if the borrow was rejected.
+     *
+     * @param ISBN           The International Standard Book Number of the book.
+     * @param userId         The Id of the user borrowing the book.
+     * @param idempotencyKey The key identifying the borrow across retries, or null to borrow unconditionally.
+     * @throws IllegalStateException If a key is given but no idempotency table is set.
+     */
+    public void borrowBook(final String ISBN, final String userId, String idempotencyKey) {
+        // Without a key, the borrow is not deduplicated.
+        if (idempotencyKey == null) {
+            borrowBook(ISBN, userId);
+            return;
+        }
+
+        // Run the borrow unless a borrow with the same key ran already.
+        idempotencyTableOrThrow().execute(idempotencyKey, "borrowBook " + ISBN + " " + userId,
+                () -> borrowBook(ISBN, userId));
+    }
+
+    // Borrows a book, without recording the operation.
+    private void doBorrowBook(String ISBN, String userId) {
 
         // Validate the ISBN. If it's invalid, throw an exception.
         if (!isISBNValid(ISBN)) {
@@ -195,20 +526,54 @@ public class Library {
 
         // Check if the user Id's corresponds to a registered user in the database.
         // If not, throw an exception indicating the user is not registered.
-        if (databaseService.getUserById(userId) == null) {
+        User user = databaseService.getUserById(userId);
+        if (user == null) {
             throw new UserNotRegisteredException("User not found!");
         }
 
-        // If the book is already borrowed, throw an exception.
-        if (book.isBorrowed()) {
-            throw new BookAlreadyBorrowedException("Book is already borrowed!");
+        // With a database shared by several libraries, the book is a copy of the stored one,
+        // so let the database borrow a copy only if no other library changed the book since it was read.
+        boolean lastCopy;
+        if (databaseService.supportsConditionalUpdates()) {
+            book = borrowConditionally(ISBN, userId, book);
+            lastCopy = book.getAvailableCopies() == 1;
+        } else {
+            // If the book is already borrowed, throw an exception.
+            if (book.isBorrowed()) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            }
+
+            // Mark a copy of the book as borrowed. Another thread may have taken the last copy since the check.
+            try {
+                book.borrow();
+            } catch (IllegalStateException e) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            }
+            lastCopy = book.isBorrowed();
+
+            // Record the borrowing transaction in the database by associating the book's ISBN with the user's Id.
+            databaseService.borrowBook(ISBN, userId);
+        }
+
+        // Serve the user's later reads only from replicas which applied the change.
+        recordWrite(userId);
+
+        // Schedule the due time of the loan, so the user is reminded if the book is not returned in time.
+        if (overdueTracker != null) {
+            overdueTracker.loanStarted(ISBN, book.getTitle(), user, clock.millis());
         }
 
-        // Mark the book as borrowed.
-        book.borrow();
+        // Hide the book from searches for available books once its last copy is out.
+        if (searchIndex != null) {
+            searchIndex.setBorrowed(ISBN, lastCopy);
+        }
+
+        // Pair the book with the user's recent borrows, for recommendations.
+        if (coBorrowIndex != null) {
+            coBorrowIndex.recordBorrow(ISBN, userId, clock.millis());
+        }
 
-        // Record the borrowing transaction in the database by associating the book's ISBN with the user's Id.
-        databaseService.borrowBook(ISBN, userId);
+        publishEvent(LibraryEvent.Type.BORROWED, ISBN, userId);
     }
 
     /**
@@ -217,12 +582,75 @@ public class Library {
      * @param ISBN The International Standard Book Number of the book.
      */
     public void returnBook(String ISBN) {
-        
+        returnBook(ISBN, null, false);
+    }
+
+    /**
+     * Returns the copy of a previously borrowed book held by a user.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user returning the book.
+     */
+    public void returnBook(String ISBN, String userId) {
+        returnBook(ISBN, userId, true);
+    }
+
+    /**
+     * Returns the copy of a borrowed book held by a user at most once per idempotency key. Retrying with the
+     * same key after a timeout replays the outcome of the first attempt: it returns normally if the book was
+     * returned, or throws the same exception if the return was rejected.
+     *
+     * @param ISBN           The International Standard Book Number of the book.
+     * @param userId         The Id of the user returning the book.
+     * @param idempotencyKey The key identifying the return across retries, or null to return unconditionally.
+     * @throws IllegalStateException If a key is given but no idempotency table is set.
+     */
+    public void returnBook(final String ISBN, final String userId, String idempotencyKey) {
+        // Without a key, the return is not deduplicated.
+        if (idempotencyKey == null) {
+            returnBook(ISBN, userId);
+            return;
+        }
+
+        // Run the return unless a return with the same key ran already.
+        idempotencyTableOrThrow().execute(idempotencyKey, "returnBook " + ISBN + " " + userId,
+                () -> returnBook(ISBN, userId));
+    }
+
+    // Returns the idempotency table, failing if none is set.
+    private IdempotencyTable idempotencyTableOrThrow() {
+        IdempotencyTable table = idempotencyTable;
+        if (table == null) {
+            throw new IllegalStateException("Idempotency table not set.");
+        }
+        return table;
+    }
+
+    private void returnBook(String ISBN, String userId, boolean byUser) {
+        // Record the operation in the running flight recordings, if any.
+        OperationSpan event = EventRecorder.beginOperation();
+        try {
+            doReturnBook(ISBN, userId, byUser);
+        } catch (RuntimeException e) {
+            event.finish("returnBook", ISBN, e);
+            throw e;
+        }
+        event.finish("returnBook", ISBN, null);
+    }
+
+    // Returns a copy of a book, without recording the operation.
+    private void doReturnBook(String ISBN, String userId, boolean byUser) {
+
         // Validate the ISBN. If it's not valid, throw an exception.
         if (!isISBNValid(ISBN)) {
             throw new IllegalArgumentException("Invalid ISBN.");
         }
 
+        // Validate the user Id's format when the returning user is given.
+        if (byUser && (userId == null || !userId.matches("\\d{12}"))) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+
         // Retrieve the book associated with the ISBN from the database.
         Book book = databaseService.getBookByISBN(ISBN);
 
@@ -231,26 +659,134 @@ public class Library {
             throw new BookNotFoundException("Book not found!");
         }
 
-        // Check if the book is currently borrowed. If not, it means it was never borrowed
-        // or it has already been returned, therefore throw an exception.
-        if (!book.isBorrowed()) {
-            throw new BookNotBorrowedException("Book wasn't borrowed!");
+        // With a database shared by several libraries, let the database return the copy
+        // only if no other library changed the book since it was read.
+        if (databaseService.supportsConditionalUpdates()) {
+            returnConditionally(ISBN, byUser ? userId : null, book);
+        } else {
+            // Check if any copy of the book is currently borrowed. If not, it means it was never borrowed
+            // or it has already been returned, therefore throw an exception.
+            if (!book.hasBorrowedCopies()) {
+                throw new BookNotBorrowedException("Book wasn't borrowed!");
+            }
+
+            // Release the user's copy in the database first, which rejects a user holding no copy of the book,
+            // so that the book's borrowed copies never drift from the users holding them.
+            if (byUser) {
+                databaseService.returnBook(ISBN, userId);
+            }
+
+            // Change the status of a copy of the book to not borrowed.
+            // Another thread may have returned the last borrowed copy since the check.
+            try {
+                book.returnBook();
+            } catch (IllegalStateException e) {
+                throw new BookNotBorrowedException("Book wasn't borrowed!");
+            }
+
+            // Update the database to reflect the returned status of the book.
+            if (!byUser) {
+                databaseService.returnBook(ISBN);
+            }
+        }
+
+        // Serve the user's later reads only from replicas which applied the change.
+        recordWrite(userId);
+
+        // Cancel the due time reminder of the user's loan, or of the loan held the longest if the user is not known.
+        if (overdueTracker != null) {
+            overdueTracker.loanEnded(ISBN, userId);
+        }
+
+        // Show the book again in searches for available books.
+        if (searchIndex != null) {
+            searchIndex.setBorrowed(ISBN, false);
+        }
+
+        publishEvent(LibraryEvent.Type.RETURNED, ISBN, userId);
+    }
+
+    /**
+     * Borrows a copy of a book through conditional updates of the database, re-reading the book after
+     * every conflict. A conflict means another library changed the book, so retrying cannot livelock.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @param book   The book as last read from the database.
+     * @return The book as read at the version the borrow was applied to.
+     */
+    private Book borrowConditionally(String ISBN, String userId, Book book) {
+        for (int attempt = 1; ; attempt++) {
+            // If every copy is borrowed as of the version read, throw an exception.
+            if (book.isBorrowed()) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            }
+            if (databaseService.compareAndSetBorrowed(ISBN, book.getVersion(), userId)) {
+                return book;
+            }
+
+            // Another library changed the book first. Give up after too many conflicts, or read it again.
+            if (attempt == MAX_CONDITIONAL_ATTEMPTS) {
+                throw new UpdateConflictException("Update conflict!");
+            }
+            book = databaseService.getBookByISBN(ISBN);
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            }
         }
+    }
 
-        // Change the status of the book to not borrowed.
-        book.returnBook();
+    /**
+     * Returns a copy of a book through conditional updates of the database, re-reading the book after
+     * every conflict.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user returning the book, or null if unknown.
+     * @param book   The book as last read from the database.
+     */
+    private void returnConditionally(String ISBN, String userId, Book book) {
+        for (int attempt = 1; ; attempt++) {
+            // If no copy is borrowed as of the version read, throw an exception.
+            if (!book.hasBorrowedCopies()) {
+                throw new BookNotBorrowedException("Book wasn't borrowed!");
+            }
+            if (databaseService.compareAndSetReturned(ISBN, book.getVersion(), userId)) {
+                return;
+            }
 
-        // Update the database to reflect the returned status of the book.
-        databaseService.returnBook(ISBN);
+            // Another library changed the book first. Give up after too many conflicts, or read it again.
+            if (attempt == MAX_CONDITIONAL_ATTEMPTS) {
+                throw new UpdateConflictException("Update conflict!");
+            }
+            book = databaseService.getBookByISBN(ISBN);
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            }
+        }
     }
 
     /**
      * Notifies a user with the reviews of a specified book.
+     * If the calling thread has a {@link Deadline}, the operation is abandoned once it passes, and failed
+     * notifications are only retried while enough time is left.
      *
      * @param ISBN The ISBN of the book whose reviews are to be sent.
      * @param userId The Id of the user to whom the reviews are to be sent.
      */
     public void notifyUserWithBookReviews(String ISBN, String userId) {
+        // Record the operation in the running flight recordings, if any.
+        OperationSpan event = EventRecorder.beginOperation();
+        try {
+            doNotifyUserWithBookReviews(ISBN, userId);
+        } catch (RuntimeException e) {
+            event.finish("notifyUserWithBookReviews", ISBN, e);
+            throw e;
+        }
+        event.finish("notifyUserWithBookReviews", ISBN, null);
+    }
+
+    // Notifies a user with the reviews of a book, without recording the operation.
+    private void doNotifyUserWithBookReviews(String ISBN, String userId) {
 
         // Validate the ISBN. If it's invalid, throw an exception.
         if (!isISBNValid(ISBN)) {
@@ -263,8 +799,9 @@ public class Library {
             throw new IllegalArgumentException("Invalid user Id.");
         }
 
-        // Retrieve the book associated with the ISBN from the database.
-        Book book = databaseService.getBookByISBN(ISBN);
+        // Retrieve the book associated with the ISBN from the database, or a replica fresh enough for the user.
+        DatabaseService database = readDatabase(userId);
+        Book book = database.getBookByISBN(ISBN);
 
         // If no book is found for the given ISBN, throw a book not found exception.
         if (book == null) {
@@ -272,13 +809,19 @@ public class Library {
         }
 
         // Retrieve the user associated with the user Id from the database.
-        User user = databaseService.getUserById(userId);
+        User user = database.getUserById(userId);
 
         // If the user is not found in the database, throw an exception.
         if (user == null) {
             throw new UserNotRegisteredException("User not found!");
         }
 
+        // Abandon the operation if its deadline already passed, before calling the review service.
+        Deadline deadline = Deadline.current();
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededException("Deadline exceeded!");
+        }
+
         // Fetch the list of reviews for the specified book using the review service.
         List<String> reviews;
         try {
@@ -296,22 +839,75 @@ public class Library {
             reviewService.close();
         }
 
-        // Construct the notification message containing the book's title and its reviews.
-        String notificationMessage = "Reviews for '" + book.getTitle() + "':\n" + String.join("\n", reviews);
+        // Construct the notification message containing the book's title and its reviews,
+        // or reuse the one already rendered for this book.
+        String notificationMessage = payloadCache != null
+                ? payloadCache.getPayload(ISBN, book.getTitle(), reviews)
+                : NotificationPayloadCache.render(book.getTitle(), reviews);
+
+        // With a dead-letter queue, make a single attempt and queue the notification for redelivery if it fails.
+        if (deadLetterQueue != null) {
+            sendOrDefer(user, ISBN, notificationMessage);
+            return;
+        }
 
         // Attempt to send the notification to the user. If it fails, retry up to 5 times.
         int retryCount = 0;
         while (retryCount < 5) {
+            NotificationAttemptSpan attempt = EventRecorder.beginNotificationAttempt();
             try {
                 user.sendNotification(notificationMessage);
+                attempt.finish(ISBN, retryCount + 1, null);
+                publishEvent(LibraryEvent.Type.NOTIFICATION_SENT, ISBN, userId);
                 return;
             } catch (NotificationException e) {
+                attempt.finish(ISBN, retryCount + 1, e);
                 retryCount++;
                 System.err.println("Notification failed! Retrying attempt " + retryCount + "/5");
             }
+
+            // Don't start another attempt if too little time is left before the deadline.
+            if (deadline != null && deadline.remainingNanos() < minRetryBudgetNanos) {
+                break;
+            }
         }
 
         // If all retry attempts fail, throw a notification exception.
+        publishEvent(LibraryEvent.Type.NOTIFICATION_FAILED, ISBN, userId);
+        throw new NotificationException("Notification failed!");
+    }
+
+    /**
+     * Sends a notification once, handing it to the dead-letter queue if the attempt fails.
+     *
+     * @param user    The user to be notified.
+     * @param ISBN    The ISBN of the book the notification is about.
+     * @param message The notification message.
+     */
+    private void sendOrDefer(User user, String ISBN, String message) {
+        NotificationAttemptSpan attempt = EventRecorder.beginNotificationAttempt();
+        try {
+            user.sendNotification(message);
+            attempt.finish(ISBN, 1, null);
+            publishEvent(LibraryEvent.Type.NOTIFICATION_SENT, ISBN, user.getId());
+            return;
+        } catch (NotificationException e) {
+            attempt.finish(ISBN, 1, e);
+            // Fall through to queue the notification.
+        }
+
+        // Queue the notification for redelivery. If the queue is full or cannot be written, the notification fails.
+        boolean queued;
+        try {
+            queued = deadLetterQueue.offer(user.getId(), ISBN, message, clock.millis());
+        } catch (UncheckedIOException e) {
+            queued = false;
+        }
+        if (queued) {
+            publishEvent(LibraryEvent.Type.NOTIFICATION_DEFERRED, ISBN, user.getId());
+            return;
+        }
+        publishEvent(LibraryEvent.Type.NOTIFICATION_FAILED, ISBN, user.getId());
         throw new NotificationException("Notification failed!");
     }
 
@@ -323,6 +919,21 @@ public class Library {
      * @return       The book with the given ISBN if found, and notifies the user with its reviews.
      */
     public Book getBookByISBN(String ISBN, String userId) {
+        // Record the operation in the running flight recordings, if any.
+        OperationSpan event = EventRecorder.beginOperation();
+        Book result;
+        try {
+            result = doGetBookByISBN(ISBN, userId);
+        } catch (RuntimeException e) {
+            event.finish("getBookByISBN", ISBN, e);
+            throw e;
+        }
+        event.finish("getBookByISBN", ISBN, null);
+        return result;
+    }
+
+    // Fetches a book and notifies the user, without recording the operation.
+    private Book doGetBookByISBN(String ISBN, String userId) {
         // Validate the ISBN. If it's invalid, throw an exception.
         if (!isISBNValid(ISBN)) {
             throw new IllegalArgumentException("Invalid ISBN.");
@@ -334,8 +945,8 @@ public class Library {
             throw new IllegalArgumentException("Invalid user Id.");
         }
 
-        // Retrieve the book associated with the ISBN from the database.
-        Book book = databaseService.getBookByISBN(ISBN);
+        // Retrieve the book associated with the ISBN from the database, or a replica fresh enough for the user.
+        Book book = readDatabase(userId).getBookByISBN(ISBN);
 
         // If no book is found for the given ISBN, throw a book not found exception.
         if (book == null) {
@@ -347,12 +958,26 @@ public class Library {
             throw new BookAlreadyBorrowedException("Book was already borrowed!");
         }
 
+        // Under overload, shed the optional notification instead of queueing more review and notification work.
+        AimdConcurrencyLimiter limiter = notificationLimiter;
+        if (limiter != null && !limiter.tryAcquire()) {
+            return book;
+        }
+
         // Attempt to notify the user with the book's reviews.
         // This step is optional, so even if it fails, the book should still be returned.
+        long start = System.nanoTime();
+        boolean serviceFailed = false;
         try {
             notifyUserWithBookReviews(ISBN, userId);
         } catch (Exception e) {
+            // Only failures of the review or notification services are signs of overload.
+            serviceFailed = e instanceof ReviewServiceUnavailableException || e instanceof NotificationException;
             System.out.println("Notification failed!");
+        } finally {
+            if (limiter != null) {
+                limiter.release(System.nanoTime() - start, !serviceFailed);
+            }
         }
 
         // Return the retrieved book.
@@ -0,0 +1,114 @@
+package ac.il.bgu.qa.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An adaptive limit on the number of calls in flight to a slow dependency, such as the review
+ * or notification services.
+ * <p>
+ * The limit follows additive-increase/multiplicative-decrease: every call completing successfully within
+ * the latency target raises the limit by {@code 1 / limit} (about one per round of calls), while every
+ * failed or slow call multiplies it by the backoff ratio. Calls beyond the limit are rejected without
+ * waiting, so an overloaded dependency sheds work instead of queueing it.
+ */
+public class AimdConcurrencyLimiter {
+
+    // Bounds of the limit.
+    private final int minLimit;
+    private final int maxLimit;
+    // Calls slower than this count as a sign of overload, in nanoseconds.
+    private final long latencyTargetNanos;
+    // The factor applied to the limit on overload.
+    private final double backoffRatio;
+
+    // The current limit, fractional so that additive increase can accumulate. Updated under the lock.
+    private volatile double limit;
+    // The number of calls currently in flight.
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Number of rejected calls.
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Constructs a new AimdConcurrencyLimiter.
+     *
+     * @param initialLimit       The number of calls initially allowed in flight.
+     * @param minLimit           The lowest the limit may drop to.
+     * @param maxLimit           The highest the limit may grow to.
+     * @param latencyTargetNanos Calls slower than this, in nanoseconds, decrease the limit.
+     * @param backoffRatio       The factor applied to the limit on a failed or slow call, between 0 and 1.
+     */
+    public AimdConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyTargetNanos, double backoffRatio) {
+        if (minLimit <= 0 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid limits.");
+        } else if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Invalid backoff ratio.");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTargetNanos = latencyTargetNanos;
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * Tries to start a call. A successful acquire must be followed by exactly one {@link #release(long, boolean)}.
+     *
+     * @return true if the call may start, false if the limit of calls in flight is reached.
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= getLimit()) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Ends a call and adjusts the limit according to its outcome.
+     *
+     * @param latencyNanos The duration of the call, in nanoseconds.
+     * @param succeeded    true if the call succeeded, false if it failed.
+     */
+    public void release(long latencyNanos, boolean succeeded) {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            if (succeeded && latencyNanos <= latencyTargetNanos) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            } else {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the current limit of calls in flight.
+     *
+     * @return The limit, rounded down.
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Retrieves the number of calls currently in flight.
+     *
+     * @return The number of calls in flight.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Retrieves the number of calls rejected so far.
+     *
+     * @return The number of rejected calls.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,131 @@
+package ac.il.bgu.qa.admission;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.admission.PriorityScheduler.Priority;
+import ac.il.bgu.qa.admission.PriorityScheduler.Resource;
+import ac.il.bgu.qa.services.BookQuery;
+import ac.il.bgu.qa.services.DatabaseService;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A {@link DatabaseService} which limits the calls of each priority class of a {@link PriorityScheduler}
+ * to another database service, so that bulk work cannot take every connection to it, and holds the calls
+ * of bulk work while interactive work is at risk. Calls from threads not running a task of the scheduler
+ * are forwarded without limit.
+ */
+public class PrioritizedDatabaseService implements DatabaseService {
+
+    // The database service calls are forwarded to.
+    private final DatabaseService delegate;
+
+    // The scheduler whose classes are limited.
+    private final PriorityScheduler scheduler;
+
+    /**
+     * Constructs a new PrioritizedDatabaseService.
+     *
+     * @param delegate  The database service calls are forwarded to.
+     * @param scheduler The scheduler whose classes are limited.
+     */
+    public PrioritizedDatabaseService(DatabaseService delegate, PriorityScheduler scheduler) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        } else if (scheduler == null) {
+            throw new IllegalArgumentException("Invalid scheduler.");
+        }
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        run(() -> delegate.addBook(ISBN, book));
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        run(() -> delegate.registerUser(id, user));
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return call(() -> delegate.getBookByISBN(ISBN));
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return call(() -> delegate.getUserById(userId));
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        run(() -> delegate.borrowBook(ISBN, userId));
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        run(() -> delegate.returnBook(ISBN));
+    }
+
+    @Override
+    public void returnBook(String ISBN, String userId) {
+        run(() -> delegate.returnBook(ISBN, userId));
+    }
+
+    @Override
+    public boolean supportsConditionalUpdates() {
+        return delegate.supportsConditionalUpdates();
+    }
+
+    @Override
+    public boolean compareAndSetBorrowed(String ISBN, long expectedVersion, String userId) {
+        return call(() -> delegate.compareAndSetBorrowed(ISBN, expectedVersion, userId));
+    }
+
+    @Override
+    public boolean compareAndSetReturned(String ISBN, long expectedVersion, String userId) {
+        return call(() -> delegate.compareAndSetReturned(ISBN, expectedVersion, userId));
+    }
+
+    @Override
+    public List<String> getHolders(String ISBN) {
+        return call(() -> delegate.getHolders(ISBN));
+    }
+
+    @Override
+    public Spliterator<Book> scanBooks() {
+        // Scans are lazy and traversed by their caller, outside any limit a permit could hold.
+        return delegate.scanBooks();
+    }
+
+    @Override
+    public Spliterator<User> scanUsers() {
+        return delegate.scanUsers();
+    }
+
+    @Override
+    public <R> Spliterator<R> scanBooks(BookQuery query, Function<? super Book, ? extends R> projection) {
+        return delegate.scanBooks(query, projection);
+    }
+
+    private void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <T> T call(Supplier<T> action) {
+        Priority priority = scheduler.acquire(Resource.DATABASE);
+        try {
+            return action.get();
+        } finally {
+            scheduler.release(priority, Resource.DATABASE);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ac.il.bgu.qa.admission;
+
+import ac.il.bgu.qa.admission.PriorityScheduler.Priority;
+import ac.il.bgu.qa.admission.PriorityScheduler.Resource;
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.util.List;
+
+/**
+ * A {@link ReviewService} which limits the calls of each priority class of a {@link PriorityScheduler}
+ * to another review service, so that notifications and bulk work cannot take every connection to it.
+ * Calls from threads not running a task of the scheduler are forwarded without limit.
+ */
+public class PrioritizedReviewService implements ReviewService {
+
+    // The review service calls are forwarded to.
+    private final ReviewService delegate;
+
+    // The scheduler whose classes are limited.
+    private final PriorityScheduler scheduler;
+
+    /**
+     * Constructs a new PrioritizedReviewService.
+     *
+     * @param delegate  The review service calls are forwarded to.
+     * @param scheduler The scheduler whose classes are limited.
+     */
+    public PrioritizedReviewService(ReviewService delegate, PriorityScheduler scheduler) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        } else if (scheduler == null) {
+            throw new IllegalArgumentException("Invalid scheduler.");
+        }
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        Priority priority = scheduler.acquire(Resource.REVIEWS);
+        try {
+            return delegate.getReviewsForBook(ISBN);
+        } finally {
+            scheduler.release(priority, Resource.REVIEWS);
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,432 @@
+package ac.il.bgu.qa.admission;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs library work on a shared pool of threads in three priority classes, so that front-desk operations
+ * keep their latency while notifications and bulk imports use the remaining capacity.
+ * <p>
+ * Each class has its own queue. Free threads take the next task by weighted fair queuing: every task is
+ * stamped with a virtual finish time advancing by the inverse of its class's weight, and the waiting task
+ * with the earliest finish runs next, so under load each class gets threads in proportion to its weight
+ * and an idle class's share goes to the others. A class may hold at most its share of the threads, and
+ * calls made by its tasks through a {@link PrioritizedDatabaseService} or {@link PrioritizedReviewService}
+ * are limited by its own concurrency limits toward each service.
+ * <p>
+ * Interactive latency is measured from submission to completion. When the interactive service level is at
+ * risk, bulk work is preempted: no bulk task starts, and bulk tasks already running are held at their next
+ * service call until the risk passes. The risk is judged against half the service level objective, by an
+ * interactive task waiting that long in the queue, or by the recent average interactive latency, while
+ * interactive tasks keep completing.
+ */
+public class PriorityScheduler implements Closeable {
+
+    /**
+     * The priority classes, in order of precedence.
+     */
+    public enum Priority {
+        /** Front-desk operations, such as borrowing and returning books. */
+        INTERACTIVE,
+        /** Review notifications and their retries. */
+        NOTIFICATION,
+        /** Background work, such as catalog imports. */
+        BULK
+    }
+
+    /**
+     * The services whose calls are limited per class.
+     */
+    public enum Resource {
+        DATABASE,
+        REVIEWS
+    }
+
+    /**
+     * The share of the scheduler given to a priority class.
+     */
+    public static final class Policy {
+        private final int weight;
+        private final int maxRunning;
+        private final int maxDatabaseCalls;
+        private final int maxReviewCalls;
+
+        /**
+         * Constructs a new Policy.
+         *
+         * @param weight           The relative share of the threads the class gets under load.
+         * @param maxRunning       The maximal number of the class's tasks running at once.
+         * @param maxDatabaseCalls The maximal number of calls of the class's tasks to the database at once.
+         * @param maxReviewCalls   The maximal number of calls of the class's tasks to the review service at once.
+         */
+        public Policy(int weight, int maxRunning, int maxDatabaseCalls, int maxReviewCalls) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Invalid weight.");
+            } else if (maxRunning <= 0 || maxDatabaseCalls <= 0 || maxReviewCalls <= 0) {
+                throw new IllegalArgumentException("Invalid limits.");
+            }
+            this.weight = weight;
+            this.maxRunning = maxRunning;
+            this.maxDatabaseCalls = maxDatabaseCalls;
+            this.maxReviewCalls = maxReviewCalls;
+        }
+    }
+
+    // The weight of the latest interactive latency in the average.
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    // The class of the task running on each thread, or null if the thread runs none.
+    private static final ThreadLocal<Priority> CURRENT = new ThreadLocal<>();
+
+    private final Policy[] policies;
+    // The permits for the calls of each class to each resource, indexed by priority and resource.
+    private final Semaphore[][] permits;
+    // Half of the interactive service level objective, and how long the average latency stays relevant, in nanoseconds.
+    private final long riskNanos;
+    private final long riskWindowNanos;
+
+    // The fields below are guarded by this scheduler.
+    private final ArrayDeque<Task<?>>[] queues;
+    private final int[] running;
+    // The virtual finish time of the latest task of each class, and the virtual time of the latest started task.
+    private final double[] lastFinish;
+    private double virtualTime;
+    private double interactiveLatencyNanos;
+    private long lastInteractiveNanos;
+    private boolean closed;
+    private long preemptions;
+    private final long[] completed;
+
+    /**
+     * Constructs a new PriorityScheduler with default policies: interactive work has weight 8 and may use
+     * every thread, notifications weight 2 and half of the threads, and bulk work weight 1, a quarter of the
+     * threads and a quarter of the database calls, with a single review call at a time.
+     *
+     * @param threads The number of threads.
+     * @param slo     The interactive service level objective, the latency interactive tasks should stay within.
+     * @param unit    The unit of the objective.
+     */
+    public PriorityScheduler(int threads, long slo, TimeUnit unit) {
+        this(threads, slo, unit, new Policy(8, Math.max(threads, 1), Math.max(threads, 1), Math.max(threads, 1)),
+                new Policy(2, Math.max(threads / 2, 1), Math.max(threads, 1), Math.max(threads, 1)),
+                new Policy(1, Math.max(threads / 4, 1), Math.max(threads / 4, 1), 1));
+    }
+
+    /**
+     * Constructs a new PriorityScheduler.
+     *
+     * @param threads      The number of threads.
+     * @param slo          The interactive service level objective, the latency interactive tasks should stay within.
+     * @param unit         The unit of the objective.
+     * @param interactive  The policy of interactive work.
+     * @param notification The policy of notifications.
+     * @param bulk         The policy of bulk work.
+     */
+    public PriorityScheduler(int threads, long slo, TimeUnit unit, Policy interactive, Policy notification, Policy bulk) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Invalid number of threads.");
+        } else if (slo <= 0) {
+            throw new IllegalArgumentException("Invalid service level objective.");
+        } else if (interactive == null || notification == null || bulk == null) {
+            throw new IllegalArgumentException("Invalid policy.");
+        }
+        this.policies = new Policy[]{interactive, notification, bulk};
+        this.permits = new Semaphore[policies.length][];
+        for (int i = 0; i < policies.length; i++) {
+            permits[i] = new Semaphore[]{new Semaphore(policies[i].maxDatabaseCalls), new Semaphore(policies[i].maxReviewCalls)};
+        }
+        this.riskNanos = unit.toNanos(slo) / 2;
+        this.riskWindowNanos = unit.toNanos(slo) * 10;
+        this.queues = newQueues(policies.length);
+        for (int i = 0; i < policies.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        this.running = new int[policies.length];
+        this.lastFinish = new double[policies.length];
+        this.completed = new long[policies.length];
+
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, "priority-scheduler-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Retrieves the class of the task running on the current thread.
+     *
+     * @return The priority of the current task, or null if the thread is not running a task of a scheduler.
+     */
+    public static Priority currentPriority() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Queues a task in a priority class.
+     *
+     * @param priority The class of the task.
+     * @param task     The task.
+     * @param <T>      The type of the task's result.
+     * @return The pending result of the task.
+     * @throws RejectedExecutionException If the scheduler is closed.
+     */
+    public <T> Future<T> submit(Priority priority, Callable<T> task) {
+        Objects.requireNonNull(priority);
+        Task<T> queued = new Task<>(priority, task);
+        synchronized (this) {
+            if (closed) {
+                throw new RejectedExecutionException("Scheduler closed.");
+            }
+            int index = priority.ordinal();
+            queued.finish = Math.max(virtualTime, lastFinish[index]) + 1.0 / policies[index].weight;
+            lastFinish[index] = queued.finish;
+            queues[index].add(queued);
+            notifyAll();
+        }
+        return queued;
+    }
+
+    /**
+     * Takes a permit for a call of the current task to a service, waiting for one if its class has as many
+     * calls in flight as its limit allows. A bulk task waits here while interactive work is at risk.
+     * Calls from threads not running a task of this scheduler are not limited.
+     *
+     * @param resource The service called.
+     * @return The class the permit was taken for, to be given back with {@link #release(Priority, Resource)}, or null.
+     */
+    Priority acquire(Resource resource) {
+        Priority priority = CURRENT.get();
+        if (priority == null) {
+            return null;
+        }
+        if (priority == Priority.BULK) {
+            awaitNoRisk();
+        }
+        permits[priority.ordinal()][resource.ordinal()].acquireUninterruptibly();
+        return priority;
+    }
+
+    /**
+     * Gives back a permit taken with {@link #acquire(Resource)}.
+     *
+     * @param priority The class returned by acquire, or null.
+     * @param resource The service called.
+     */
+    void release(Priority priority, Resource resource) {
+        if (priority != null) {
+            permits[priority.ordinal()][resource.ordinal()].release();
+        }
+    }
+
+    /**
+     * Checks whether the interactive service level objective is at risk, in which case bulk work is preempted.
+     *
+     * @return true if bulk work is currently held back.
+     */
+    public synchronized boolean isInteractiveAtRisk() {
+        return atRisk(System.nanoTime());
+    }
+
+    /**
+     * Retrieves the recent average latency of interactive tasks, from submission to completion.
+     *
+     * @param unit The unit of the result.
+     * @return The average latency.
+     */
+    public synchronized long getInteractiveLatency(TimeUnit unit) {
+        return unit.convert((long) interactiveLatencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retrieves the number of times bulk work was held back, at the start of a task or at a service call.
+     *
+     * @return The number of preemptions.
+     */
+    public synchronized long getPreemptions() {
+        return preemptions;
+    }
+
+    /**
+     * Retrieves the number of completed tasks of a class.
+     *
+     * @param priority The class.
+     * @return The number of completed tasks.
+     */
+    public synchronized long getCompleted(Priority priority) {
+        return completed[priority.ordinal()];
+    }
+
+    /**
+     * Retrieves the number of queued tasks of a class.
+     *
+     * @param priority The class.
+     * @return The number of tasks waiting for a thread.
+     */
+    public synchronized int getQueued(Priority priority) {
+        return queues[priority.ordinal()].size();
+    }
+
+    /**
+     * Stops accepting tasks. Queued tasks still run, after which the threads end.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private void work() {
+        while (true) {
+            Task<?> task;
+            synchronized (this) {
+                while ((task = next()) == null) {
+                    if (closed && isIdle()) {
+                        return;
+                    }
+                    try {
+                        // Preempted bulk work is reconsidered as soon as the risk may have passed.
+                        if (queues[Priority.BULK.ordinal()].isEmpty()) {
+                            wait();
+                        } else {
+                            TimeUnit.NANOSECONDS.timedWait(this, riskNanos);
+                        }
+                    } catch (InterruptedException e) {
+                        // Only closing stops a worker; the loop checks for it.
+                    }
+                }
+                running[task.priority.ordinal()]++;
+            }
+            CURRENT.set(task.priority);
+            try {
+                task.run();
+            } finally {
+                CURRENT.remove();
+                // Clear an interrupt left by cancelling the task, so it cannot fail the next task's blocking calls.
+                Thread.interrupted();
+                finished(task);
+            }
+        }
+    }
+
+    // Removes and returns the eligible queued task with the earliest virtual finish time, or null if none is eligible.
+    private Task<?> next() {
+        int chosen = -1;
+        for (int i = 0; i < queues.length; i++) {
+            Task<?> head = queues[i].peek();
+            if (head == null || running[i] >= policies[i].maxRunning) {
+                continue;
+            }
+            if (i == Priority.BULK.ordinal() && atRisk(System.nanoTime())) {
+                if (!head.held) {
+                    head.held = true;
+                    preemptions++;
+                }
+                continue;
+            }
+            if (chosen < 0 || head.finish < queues[chosen].peek().finish) {
+                chosen = i;
+            }
+        }
+        if (chosen < 0) {
+            return null;
+        }
+        Task<?> task = queues[chosen].poll();
+        virtualTime = task.finish - 1.0 / policies[chosen].weight;
+        return task;
+    }
+
+    // Accounts for a task once it ran, or was cancelled before running.
+    private synchronized void finished(Task<?> task) {
+        if (task.finished) {
+            return;
+        }
+        task.finished = true;
+        int index = task.priority.ordinal();
+        running[index]--;
+        completed[index]++;
+        if (task.priority == Priority.INTERACTIVE) {
+            long now = System.nanoTime();
+            long latency = now - task.submittedNanos;
+            interactiveLatencyNanos = lastInteractiveNanos == 0 ? latency
+                    : interactiveLatencyNanos + LATENCY_SMOOTHING * (latency - interactiveLatencyNanos);
+            lastInteractiveNanos = now;
+        }
+        notifyAll();
+    }
+
+    private boolean atRisk(long now) {
+        Task<?> waiting = queues[Priority.INTERACTIVE.ordinal()].peek();
+        if (waiting != null && now - waiting.submittedNanos > riskNanos) {
+            return true;
+        }
+        return lastInteractiveNanos != 0 && now - lastInteractiveNanos < riskWindowNanos && interactiveLatencyNanos > riskNanos;
+    }
+
+    private boolean isIdle() {
+        for (ArrayDeque<Task<?>> queue : queues) {
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Holds a bulk task at a service call while interactive work is at risk.
+    private synchronized void awaitNoRisk() {
+        boolean held = false;
+        while (atRisk(System.nanoTime())) {
+            if (!held) {
+                held = true;
+                preemptions++;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, riskNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Creates the array of queues; generic arrays can only be created raw.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArrayDeque<Task<?>>[] newQueues(int length) {
+        return new ArrayDeque[length];
+    }
+
+    // A queued task with its class, submission time and virtual finish time.
+    private final class Task<T> extends FutureTask<T> {
+        private final Priority priority;
+        private final long submittedNanos = System.nanoTime();
+        // The fields below are guarded by the scheduler.
+        private double finish;
+        // Whether the task was held back from starting by a preemption.
+        private boolean held;
+        private boolean finished;
+
+        private Task(Priority priority, Callable<T> callable) {
+            super(callable);
+            this.priority = priority;
+        }
+
+        // The task is accounted for before its result is released, so its caller sees it counted.
+        @Override
+        protected void set(T result) {
+            finished(this);
+            super.set(result);
+        }
+
+        @Override
+        protected void setException(Throwable failure) {
+            finished(this);
+            super.setException(failure);
+        }
+    }
+}
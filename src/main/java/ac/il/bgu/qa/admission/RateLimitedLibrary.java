@@ -0,0 +1,146 @@
+package ac.il.bgu.qa.admission;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.admission.TokenBucketRateLimiter.Operation;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies per-user, per-operation rate limits at the boundary of a {@link Library}.
+ * <p>
+ * Every method first takes a permit from the rate limiter. A call beyond its rate is rejected by
+ * returning false (or an empty result) without reaching the library and without throwing, so that a
+ * misbehaving client costs almost nothing. Admitted calls behave exactly like the library's methods,
+ * including the exceptions they throw.
+ */
+public class RateLimitedLibrary {
+
+    // The library calls are admitted to.
+    private final Library library;
+
+    // The limiter deciding which calls are admitted.
+    private final TokenBucketRateLimiter rateLimiter;
+
+    // Number of rejected calls.
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Constructs a new RateLimitedLibrary.
+     *
+     * @param library     The library calls are admitted to.
+     * @param rateLimiter The limiter deciding which calls are admitted.
+     */
+    public RateLimitedLibrary(Library library, TokenBucketRateLimiter rateLimiter) {
+        this.library = library;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Adds a book to the library, unless the calling client exceeded its rate.
+     *
+     * @param clientId The Id of the user or client making the call.
+     * @param book     The book to be added.
+     * @return true if the book was added, false if the call was rejected.
+     */
+    public boolean tryAddBook(String clientId, Book book) {
+        if (!admit(clientId, Operation.ADD_BOOK)) {
+            return false;
+        }
+        library.addBook(book);
+        return true;
+    }
+
+    /**
+     * Registers a user with the library, unless the calling client exceeded its rate.
+     *
+     * @param clientId The Id of the user or client making the call.
+     * @param user     The user to be registered.
+     * @return true if the user was registered, false if the call was rejected.
+     */
+    public boolean tryRegisterUser(String clientId, User user) {
+        if (!admit(clientId, Operation.REGISTER_USER)) {
+            return false;
+        }
+        library.registerUser(user);
+        return true;
+    }
+
+    /**
+     * Borrows a book for a user, unless the user exceeded their rate.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @return true if the book was borrowed, false if the call was rejected.
+     */
+    public boolean tryBorrowBook(String ISBN, String userId) {
+        if (!admit(userId, Operation.BORROW_BOOK)) {
+            return false;
+        }
+        library.borrowBook(ISBN, userId);
+        return true;
+    }
+
+    /**
+     * Returns a previously borrowed book, unless the calling client exceeded its rate.
+     *
+     * @param clientId The Id of the user or client making the call.
+     * @param ISBN     The International Standard Book Number of the book.
+     * @return true if the book was returned, false if the call was rejected.
+     */
+    public boolean tryReturnBook(String clientId, String ISBN) {
+        if (!admit(clientId, Operation.RETURN_BOOK)) {
+            return false;
+        }
+        library.returnBook(ISBN);
+        return true;
+    }
+
+    /**
+     * Notifies a user with the reviews of a book, unless the user exceeded their rate.
+     *
+     * @param ISBN   The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return true if the user was notified, false if the call was rejected.
+     */
+    public boolean tryNotifyUserWithBookReviews(String ISBN, String userId) {
+        if (!admit(userId, Operation.NOTIFY)) {
+            return false;
+        }
+        library.notifyUserWithBookReviews(ISBN, userId);
+        return true;
+    }
+
+    /**
+     * Fetches a book by its ISBN and notifies the user with its reviews, unless the user exceeded their rate.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be fetched.
+     * @param userId The Id of the user to be notified with the book's reviews.
+     * @return The book with the given ISBN, or an empty result if the call was rejected.
+     */
+    public Optional<Book> tryGetBookByISBN(String ISBN, String userId) {
+        if (!admit(userId, Operation.GET_BOOK)) {
+            return Optional.empty();
+        }
+        return Optional.of(library.getBookByISBN(ISBN, userId));
+    }
+
+    /**
+     * Retrieves the number of calls rejected so far.
+     *
+     * @return The number of rejected calls.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    private boolean admit(String key, Operation operation) {
+        if (rateLimiter.tryAcquire(key == null ? "" : key, operation)) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+}
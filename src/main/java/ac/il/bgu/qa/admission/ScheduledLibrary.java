@@ -0,0 +1,150 @@
+package ac.il.bgu.qa.admission;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.admission.PriorityScheduler.Priority;
+import ac.il.bgu.qa.notifications.DeadLetterRedelivery;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the operations of a {@link Library} on a {@link PriorityScheduler}, each in the class its caller
+ * expects: front-desk operations as interactive work, which the caller waits for, review notifications and
+ * their redelivery as notification work, and catalog imports as bulk work, which run in the background.
+ * <p>
+ * For the per-class limits toward the services to apply, the library should be built over a
+ * {@link PrioritizedDatabaseService} and a {@link PrioritizedReviewService} sharing the scheduler.
+ * Interactive operations behave exactly like the library's methods, including the exceptions they throw.
+ */
+public class ScheduledLibrary {
+
+    // The library operations are run on.
+    private final Library library;
+
+    // The scheduler operations are run by.
+    private final PriorityScheduler scheduler;
+
+    /**
+     * Constructs a new ScheduledLibrary.
+     *
+     * @param library   The library operations are run on.
+     * @param scheduler The scheduler operations are run by.
+     */
+    public ScheduledLibrary(Library library, PriorityScheduler scheduler) {
+        if (library == null) {
+            throw new IllegalArgumentException("Invalid library.");
+        } else if (scheduler == null) {
+            throw new IllegalArgumentException("Invalid scheduler.");
+        }
+        this.library = library;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Borrows a book for a user as interactive work, waiting for it to complete.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     */
+    public void borrowBook(String ISBN, String userId) {
+        await(scheduler.submit(Priority.INTERACTIVE, () -> {
+            library.borrowBook(ISBN, userId);
+            return null;
+        }));
+    }
+
+    /**
+     * Returns the copy of a book held by a user as interactive work, waiting for it to complete.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user returning the book.
+     */
+    public void returnBook(String ISBN, String userId) {
+        await(scheduler.submit(Priority.INTERACTIVE, () -> {
+            library.returnBook(ISBN, userId);
+            return null;
+        }));
+    }
+
+    /**
+     * Fetches a book and notifies the user with its reviews as interactive work, waiting for it to complete.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user to be notified with the book's reviews.
+     * @return The book with the given ISBN.
+     */
+    public Book getBookByISBN(String ISBN, String userId) {
+        return await(scheduler.submit(Priority.INTERACTIVE, () -> library.getBookByISBN(ISBN, userId)));
+    }
+
+    /**
+     * Queues a notification of a user with the reviews of a book as notification work.
+     *
+     * @param ISBN   The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return The pending completion of the notification.
+     */
+    public Future<Void> notifyUserWithBookReviews(String ISBN, String userId) {
+        return scheduler.submit(Priority.NOTIFICATION, () -> {
+            library.notifyUserWithBookReviews(ISBN, userId);
+            return null;
+        });
+    }
+
+    /**
+     * Queues a round of redelivery of failed notifications as notification work, for deployments which run
+     * redelivery on the scheduler instead of on a thread of its own.
+     *
+     * @param redelivery The redelivery of the library's dead-letter queue.
+     * @return The pending number of notifications delivered in the round.
+     */
+    public Future<Integer> redeliverNotifications(DeadLetterRedelivery redelivery) {
+        if (redelivery == null) {
+            throw new IllegalArgumentException("Invalid redelivery.");
+        }
+        return scheduler.submit(Priority.NOTIFICATION, redelivery::redeliver);
+    }
+
+    /**
+     * Queues the import of books into the library as bulk work. The import stops at the first book the
+     * library rejects, failing with the library's exception.
+     *
+     * @param books The books to add, in order.
+     * @return The pending number of books added.
+     */
+    public Future<Integer> importBooks(Iterable<Book> books) {
+        if (books == null) {
+            throw new IllegalArgumentException("Invalid books.");
+        }
+        Callable<Integer> load = () -> {
+            int added = 0;
+            for (Book book : books) {
+                library.addBook(book);
+                added++;
+            }
+            return added;
+        };
+        return scheduler.submit(Priority.BULK, load);
+    }
+
+    // Waits for interactive work, rethrowing its failure as the library threw it.
+    private static <T> T await(Future<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the library.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Library operation failed.", cause);
+        }
+    }
+}
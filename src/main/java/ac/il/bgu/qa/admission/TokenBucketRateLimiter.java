@@ -0,0 +1,158 @@
+package ac.il.bgu.qa.admission;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A lock-free token bucket rate limiter, keyed by user Id and operation.
+ * <p>
+ * Each bucket is a single {@link AtomicLong} holding its theoretical arrival time, as in the generic cell
+ * rate algorithm: a bucket refilling at {@code rate} permits per second with room for {@code burst} permits
+ * admits a call if its theoretical arrival time is less than {@code (burst - 1) / rate} seconds ahead of now,
+ * and then moves it {@code 1 / rate} seconds forward. Acquiring is one map lookup and one compare-and-set,
+ * and a rejection does not allocate or throw.
+ */
+public class TokenBucketRateLimiter {
+
+    /**
+     * The operations limited separately.
+     */
+    public enum Operation {
+        ADD_BOOK,
+        REGISTER_USER,
+        BORROW_BOOK,
+        RETURN_BOOK,
+        GET_BOOK,
+        NOTIFY
+    }
+
+    // The limit of each operation, indexed by ordinal. Null means unlimited.
+    private final Limit[] limits = new Limit[Operation.values().length];
+
+    // The buckets of each operation keyed by user Id, indexed by operation ordinal.
+    private final ConcurrentMap<String, AtomicLong>[] buckets;
+
+    // Source of the current time, in nanoseconds.
+    private final LongSupplier nanoClock;
+
+    /**
+     * Constructs a new TokenBucketRateLimiter using {@link System#nanoTime()}. All operations start unlimited.
+     */
+    public TokenBucketRateLimiter() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Constructs a new TokenBucketRateLimiter. All operations start unlimited.
+     *
+     * @param nanoClock Source of the current time, in nanoseconds.
+     */
+    public TokenBucketRateLimiter(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.buckets = newBuckets(Operation.values().length);
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Sets the limit of an operation, applied to each user separately.
+     *
+     * @param operation         The operation to be limited.
+     * @param permitsPerSecond  The rate at which each user's bucket refills.
+     * @param burst             The number of calls a user with a full bucket can make at once.
+     */
+    public synchronized void setLimit(Operation operation, double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Invalid limit.");
+        }
+        long interval = Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+        limits[operation.ordinal()] = new Limit(interval, interval * (burst - 1));
+    }
+
+    /**
+     * Removes the limit of an operation.
+     *
+     * @param operation The operation to be unlimited.
+     */
+    public synchronized void removeLimit(Operation operation) {
+        limits[operation.ordinal()] = null;
+        buckets[operation.ordinal()].clear();
+    }
+
+    /**
+     * Tries to take a permit for a user to perform an operation.
+     *
+     * @param userId    The Id of the user performing the operation.
+     * @param operation The operation performed.
+     * @return true if the call is admitted, false if the user exceeded the operation's rate.
+     */
+    public boolean tryAcquire(String userId, Operation operation) {
+        Limit limit = limits[operation.ordinal()];
+        if (limit == null) {
+            return true;
+        }
+        ConcurrentMap<String, AtomicLong> operationBuckets = buckets[operation.ordinal()];
+        AtomicLong bucket = operationBuckets.get(userId);
+        long now = nanoClock.getAsLong();
+        if (bucket == null) {
+            AtomicLong created = new AtomicLong(now);
+            bucket = operationBuckets.putIfAbsent(userId, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        while (true) {
+            long theoreticalArrival = bucket.get();
+            long start = theoreticalArrival - now < 0 ? now : theoreticalArrival;
+            if (start - now > limit.toleranceNanos) {
+                return false;
+            }
+            if (bucket.compareAndSet(theoreticalArrival, start + limit.intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes the buckets which refilled completely, bounding memory to the recently active users.
+     * Meant to be called periodically; a removed bucket is recreated full on the user's next call.
+     *
+     * @return The number of removed buckets.
+     */
+    public int evictIdle() {
+        long now = nanoClock.getAsLong();
+        int evicted = 0;
+        for (ConcurrentMap<String, AtomicLong> operationBuckets : buckets) {
+            for (Map.Entry<String, AtomicLong> entry : operationBuckets.entrySet()) {
+                long theoreticalArrival = entry.getValue().get();
+                if (theoreticalArrival - now <= 0 && operationBuckets.remove(entry.getKey(), entry.getValue())) {
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    // Creates the array of bucket maps; generic arrays can only be created raw.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ConcurrentMap<String, AtomicLong>[] newBuckets(int length) {
+        return new ConcurrentMap[length];
+    }
+
+    /**
+     * The refill interval and burst tolerance of an operation.
+     */
+    private static final class Limit {
+        final long intervalNanos;
+        final long toleranceNanos;
+
+        Limit(long intervalNanos, long toleranceNanos) {
+            this.intervalNanos = intervalNanos;
+            this.toleranceNanos = toleranceNanos;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package ac.il.bgu.qa.errors;
+
+/**
+ * Represents a custom exception that is thrown when a book could not be found
+ * because some library branches did not answer in time.
+ */
+public class BranchUnavailableException extends RuntimeException {
+
+    /**
+     * Constructs a new BranchUnavailableException with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public BranchUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,17 @@
+package ac.il.bgu.qa.errors;
+
+/**
+ * Represents a custom exception thrown when an operation is abandoned
+ * because its deadline passed.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    /**
+     * Constructs a new DeadlineExceededException with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,17 @@
+package ac.il.bgu.qa.errors;
+
+/**
+ * Represents a custom exception that is thrown when a book kept being changed by others
+ * while a library tried to update it in a shared database.
+ */
+public class UpdateConflictException extends RuntimeException {
+
+    /**
+     * Constructs a new UpdateConflictException with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public UpdateConflictException(String message) {
+        super(message);
+    }
+}
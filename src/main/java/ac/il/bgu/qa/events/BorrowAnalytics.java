@@ -0,0 +1,241 @@
+package ac.il.bgu.qa.events;
+
+import ac.il.bgu.qa.util.CountMinSketch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An incremental aggregator of library events, maintaining the most borrowed books over a rolling
+ * time window and a histogram of loan durations.
+ * <p>
+ * The window is split into a fixed number of buckets, each counting borrows in a count-min sketch,
+ * so memory stays bounded however many distinct books are borrowed. The top books are tracked as a
+ * bounded set of candidates, whose counts are re-estimated from the sketches as buckets expire.
+ * Loan durations are counted in power-of-two millisecond buckets; only the start times of loans
+ * still open are kept, one per borrowed copy and its holder.
+ */
+public class BorrowAnalytics implements LibraryEventSink {
+
+    // Number of power-of-two buckets of the loan duration histogram.
+    private static final int DURATION_BUCKETS = 64;
+
+    // The time span counted by each bucket of the window, in milliseconds.
+    private final long bucketMillis;
+    // One sketch per bucket of the window, used as a ring.
+    private final CountMinSketch[] buckets;
+    // The bucket number (time / bucketMillis) that each ring slot currently counts.
+    private final long[] bucketNumbers;
+    // The number of top books to keep.
+    private final int topK;
+    // The top book candidates and their estimated borrow counts in the window.
+    private final Map<String, Long> topBooks = new HashMap<>();
+
+    // The open loans of each borrowed book, in borrowing order, keyed by ISBN.
+    private final Map<String, List<OpenLoan>> openLoans = new HashMap<>();
+    // Number of loans whose duration fell in each power-of-two bucket.
+    private final long[] durationCounts = new long[DURATION_BUCKETS];
+    // Total number and duration of completed loans.
+    private long completedLoans;
+    private long totalLoanMillis;
+
+    /**
+     * Constructs a new BorrowAnalytics.
+     *
+     * @param bucketMillis The time span of each window bucket, in milliseconds (e.g. one day).
+     * @param bucketCount  The number of buckets in the window (e.g. 7 for a week of daily buckets).
+     * @param topK         The number of most borrowed books to track.
+     */
+    public BorrowAnalytics(long bucketMillis, int bucketCount, int topK) {
+        if (bucketMillis <= 0 || bucketCount <= 0 || topK <= 0) {
+            throw new IllegalArgumentException("Invalid window.");
+        }
+        this.bucketMillis = bucketMillis;
+        this.buckets = new CountMinSketch[bucketCount];
+        this.bucketNumbers = new long[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new CountMinSketch(0.001, 0.001);
+            bucketNumbers[i] = -1;
+        }
+        this.topK = topK;
+    }
+
+    @Override
+    public synchronized void publish(LibraryEvent event) {
+        if (event.getType() == LibraryEvent.Type.BORROWED) {
+            countBorrow(event.getISBN(), event.getTimestamp());
+            openLoans.computeIfAbsent(event.getISBN(), ISBN -> new ArrayList<>(1))
+                    .add(new OpenLoan(event.getUserId(), event.getTimestamp()));
+        } else if (event.getType() == LibraryEvent.Type.RETURNED) {
+            OpenLoan loan = removeOpenLoan(event.getISBN(), event.getUserId());
+            if (loan != null) {
+                recordLoan(Math.max(0, event.getTimestamp() - loan.borrowedAt));
+            }
+        }
+    }
+
+    /**
+     * Retrieves the most borrowed books in the window ending at the given time.
+     *
+     * @param now The end of the window, in milliseconds since the epoch.
+     * @return The ISBNs of the most borrowed books, most borrowed first.
+     */
+    public synchronized List<String> getTopBorrowed(long now) {
+        advance(now / bucketMillis);
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(topBooks.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        List<String> ISBNs = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            if (entry.getValue() > 0) {
+                ISBNs.add(entry.getKey());
+            }
+        }
+        return ISBNs;
+    }
+
+    /**
+     * Estimates how many times a book was borrowed in the window ending at the given time.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @param now  The end of the window, in milliseconds since the epoch.
+     * @return The estimated borrow count, never lower than the true count.
+     */
+    public synchronized long estimateBorrows(String ISBN, long now) {
+        advance(now / bucketMillis);
+        return windowEstimate(ISBN);
+    }
+
+    /**
+     * Calculates the average duration of the completed loans.
+     *
+     * @return The average loan duration in milliseconds, or 0 if no loan was completed.
+     */
+    public synchronized double getAverageLoanMillis() {
+        return completedLoans == 0 ? 0 : (double) totalLoanMillis / completedLoans;
+    }
+
+    /**
+     * Estimates a percentile of the durations of the completed loans.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return An upper bound of the percentile in milliseconds (a power of two), or 0 if no loan was completed.
+     */
+    public synchronized long getLoanMillisPercentile(double percentile) {
+        long rank = (long) Math.ceil(percentile / 100 * completedLoans);
+        long seen = 0;
+        for (int i = 0; i < DURATION_BUCKETS; i++) {
+            seen += durationCounts[i];
+            if (seen >= rank && seen > 0) {
+                return i == 0 ? 0 : 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Retrieves the loan duration histogram.
+     *
+     * @return The number of loans per bucket, where bucket i counts loans shorter than 2^i milliseconds
+     * and at least 2^(i-1) milliseconds long.
+     */
+    public synchronized long[] getLoanDurationHistogram() {
+        return durationCounts.clone();
+    }
+
+    private void countBorrow(String ISBN, long timestamp) {
+        long bucketNumber = timestamp / bucketMillis;
+        advance(bucketNumber);
+        int slot = (int) Math.floorMod(bucketNumber, (long) buckets.length);
+        // Late events older than the window are not counted.
+        if (bucketNumbers[slot] != bucketNumber) {
+            return;
+        }
+        buckets[slot].add(ISBN, 1);
+
+        long estimate = windowEstimate(ISBN);
+        if (topBooks.containsKey(ISBN) || topBooks.size() < topK) {
+            topBooks.put(ISBN, estimate);
+            return;
+        }
+        Map.Entry<String, Long> min = null;
+        for (Map.Entry<String, Long> entry : topBooks.entrySet()) {
+            if (min == null || entry.getValue() < min.getValue()) {
+                min = entry;
+            }
+        }
+        if (min != null && estimate > min.getValue()) {
+            topBooks.remove(min.getKey());
+            topBooks.put(ISBN, estimate);
+        }
+    }
+
+    // Moves the window forward to end at the given bucket, clearing expired buckets.
+    private void advance(long bucketNumber) {
+        boolean expired = false;
+        for (long n = bucketNumber - buckets.length + 1; n <= bucketNumber; n++) {
+            int slot = (int) Math.floorMod(n, (long) buckets.length);
+            if (bucketNumbers[slot] < n) {
+                if (bucketNumbers[slot] >= 0) {
+                    buckets[slot].clear();
+                    expired = true;
+                }
+                bucketNumbers[slot] = n;
+            }
+        }
+        if (expired) {
+            for (Map.Entry<String, Long> entry : topBooks.entrySet()) {
+                entry.setValue(windowEstimate(entry.getKey()));
+            }
+        }
+    }
+
+    private long windowEstimate(String ISBN) {
+        long total = 0;
+        for (CountMinSketch bucket : buckets) {
+            total += bucket.estimate(ISBN);
+        }
+        return total;
+    }
+
+    private void recordLoan(long millis) {
+        int bucket = Math.min(DURATION_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+        durationCounts[bucket]++;
+        completedLoans++;
+        totalLoanMillis += millis;
+    }
+
+    // Removes the open loan of a book held by a user, or the one held the longest if the user is not known.
+    private OpenLoan removeOpenLoan(String ISBN, String userId) {
+        List<OpenLoan> loans = openLoans.get(ISBN);
+        if (loans == null) {
+            return null;
+        }
+        for (Iterator<OpenLoan> it = loans.iterator(); it.hasNext(); ) {
+            OpenLoan loan = it.next();
+            if (userId == null || userId.equals(loan.userId)) {
+                it.remove();
+                if (loans.isEmpty()) {
+                    openLoans.remove(ISBN);
+                }
+                return loan;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * An open loan of a copy of a book.
+     */
+    private static final class OpenLoan {
+        final String userId;
+        final long borrowedAt;
+
+        OpenLoan(String userId, long borrowedAt) {
+            this.userId = userId;
+            this.borrowedAt = borrowedAt;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ac.il.bgu.qa.events;
+
+/**
+ * Represents a change made by the library, published to a {@link LibraryEventSink}.
+ * Events are immutable and published in the order the changes were made by each thread.
+ */
+public class LibraryEvent {
+
+    /**
+     * The kinds of changes the library publishes.
+     */
+    public enum Type {
+        // A book was added to the catalog.
+        BOOK_ADDED,
+        // A user was registered.
+        USER_REGISTERED,
+        // A book was borrowed by a user.
+        BORROWED,
+        // A book was returned.
+        RETURNED,
+        // A user was notified with the reviews of a book.
+        NOTIFICATION_SENT,
+        // All attempts to notify a user with the reviews of a book failed.
+        NOTIFICATION_FAILED,
+        // A failed notification was queued for redelivery in the background.
+        NOTIFICATION_DEFERRED
+    }
+
+    // The kind of change.
+    private final Type type;
+    // The time of the change, in milliseconds since the epoch.
+    private final long timestamp;
+    // The ISBN of the book involved, or null if no book is involved.
+    private final String ISBN;
+    // The Id of the user involved, or null if no user is involved or the user is not known.
+    private final String userId;
+
+    /**
+     * Constructs a new LibraryEvent.
+     *
+     * @param type      The kind of change.
+     * @param timestamp The time of the change, in milliseconds since the epoch.
+     * @param ISBN      The ISBN of the book involved, or null.
+     * @param userId    The Id of the user involved, or null.
+     */
+    public LibraryEvent(Type type, long timestamp, String ISBN, String userId) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.ISBN = ISBN;
+        this.userId = userId;
+    }
+
+    // Getter methods
+
+    /**
+     * Retrieves the kind of change.
+     *
+     * @return The event type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the time of the change.
+     *
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Retrieves the ISBN of the book involved.
+     *
+     * @return The book's ISBN, or null if no book is involved.
+     */
+    public String getISBN() {
+        return ISBN;
+    }
+
+    /**
+     * Retrieves the Id of the user involved.
+     *
+     * @return The user's Id, or null if no user is involved or it is not known.
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    @Override
+    public String toString() {
+        return type + "@" + timestamp + "[ISBN=" + ISBN + ", userId=" + userId + "]";
+    }
+}
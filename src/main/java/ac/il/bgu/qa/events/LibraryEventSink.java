@@ -0,0 +1,15 @@
+package ac.il.bgu.qa.events;
+
+/**
+ * Provides an interface for consumers of the append-only stream of library events.
+ */
+public interface LibraryEventSink {
+
+    /**
+     * Appends an event to the stream. Called on the thread which made the change,
+     * so implementations should return quickly.
+     *
+     * @param event The event to be appended.
+     */
+    void publish(LibraryEvent event);
+}
@@ -0,0 +1,61 @@
+package ac.il.bgu.qa.federation;
+
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.services.DatabaseService;
+
+/**
+ * A branch of a {@link FederatedLibrary}: a library together with the database it runs on.
+ * Availability is looked up in the database directly, so it does not notify anyone; borrowing and
+ * returning go through the library.
+ */
+public final class Branch {
+    // The name of the branch, unique within the federation.
+    private final String name;
+    // The library of the branch.
+    private final Library library;
+    // The database the library runs on.
+    private final DatabaseService databaseService;
+
+    /**
+     * Constructs a new Branch.
+     *
+     * @param name            The name of the branch, unique within the federation.
+     * @param library         The library of the branch.
+     * @param databaseService The database the library runs on.
+     */
+    public Branch(String name, Library library, DatabaseService databaseService) {
+        if (name == null || library == null || databaseService == null) {
+            throw new IllegalArgumentException("Invalid branch.");
+        }
+        this.name = name;
+        this.library = library;
+        this.databaseService = databaseService;
+    }
+
+    /**
+     * Retrieves the name of the branch.
+     *
+     * @return The branch's name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the library of the branch.
+     *
+     * @return The branch's library.
+     */
+    public Library getLibrary() {
+        return library;
+    }
+
+    /**
+     * Retrieves the database the branch's library runs on.
+     *
+     * @return The branch's database.
+     */
+    public DatabaseService getDatabaseService() {
+        return databaseService;
+    }
+}
@@ -0,0 +1,68 @@
+package ac.il.bgu.qa.federation;
+
+/**
+ * The availability of a book at one branch, as answered by a {@link FederatedLibrary} lookup.
+ */
+public final class BranchAvailability {
+
+    /**
+     * The outcome of looking a book up at a branch.
+     */
+    public enum Status {
+        // The branch has at least one free copy.
+        AVAILABLE,
+        // The branch has the book, but every copy is borrowed.
+        ALL_BORROWED,
+        // The branch does not have the book.
+        NOT_FOUND,
+        // The branch did not answer within its timeout.
+        TIMED_OUT,
+        // The branch failed to answer.
+        FAILED
+    }
+
+    // The name of the branch.
+    private final String branch;
+    // The outcome of the lookup.
+    private final Status status;
+    // The number of free copies at the branch when it answered.
+    private final int availableCopies;
+
+    BranchAvailability(String branch, Status status, int availableCopies) {
+        this.branch = branch;
+        this.status = status;
+        this.availableCopies = availableCopies;
+    }
+
+    /**
+     * Retrieves the name of the branch.
+     *
+     * @return The branch's name.
+     */
+    public String getBranch() {
+        return branch;
+    }
+
+    /**
+     * Retrieves the outcome of the lookup.
+     *
+     * @return The status.
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Retrieves the number of free copies at the branch when it answered.
+     *
+     * @return The number of available copies, 0 unless the book is available.
+     */
+    public int getAvailableCopies() {
+        return availableCopies;
+    }
+
+    @Override
+    public String toString() {
+        return branch + ": " + status + (status == Status.AVAILABLE ? " (" + availableCopies + ")" : "");
+    }
+}
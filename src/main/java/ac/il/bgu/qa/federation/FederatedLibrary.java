@@ -0,0 +1,254 @@
+package ac.il.bgu.qa.federation;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.BranchUnavailableException;
+import ac.il.bgu.qa.errors.UserNotRegisteredException;
+import ac.il.bgu.qa.federation.BranchAvailability.Status;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A facade over the libraries of several branches, each running on its own database.
+ * <p>
+ * Lookups ask every branch in parallel, so they take as long as the slowest branch rather than the sum of
+ * all branches, and never longer than the branch timeout: a branch which has not answered by then is
+ * reported as timed out and its lookup is cancelled. Borrowing goes to the first branch which answers with a
+ * free copy, without waiting for the others; if another borrower takes that copy first, the next branch
+ * with a free copy is tried.
+ * <p>
+ * The borrow itself runs on the calling thread without a timeout, since abandoning it could leave a copy
+ * borrowed without the caller knowing.
+ */
+public class FederatedLibrary {
+
+    // The branches, by name, in the order they were given.
+    private final Map<String, Branch> branches = new LinkedHashMap<>();
+    // The position of every branch, used to report lookups in branch order.
+    private final Map<String, Integer> branchOrder = new HashMap<>();
+    // The executor running the lookups.
+    private final ExecutorService executor;
+    // The time a branch has to answer a lookup, in nanoseconds.
+    private final long branchTimeoutNanos;
+
+    // The number of lookups which timed out.
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * Constructs a new FederatedLibrary.
+     *
+     * @param branches      The branches, with unique names.
+     * @param executor      The executor running the lookups. It needs a thread per branch for lookups to run in parallel.
+     * @param branchTimeout The time a branch has to answer a lookup.
+     * @param unit          The unit of the timeout.
+     */
+    public FederatedLibrary(List<Branch> branches, ExecutorService executor, long branchTimeout, TimeUnit unit) {
+        if (branches == null || branches.isEmpty() || executor == null) {
+            throw new IllegalArgumentException("Invalid branches.");
+        } else if (branchTimeout <= 0) {
+            throw new IllegalArgumentException("Invalid timeout.");
+        }
+        for (Branch branch : branches) {
+            if (this.branches.put(branch.getName(), branch) != null) {
+                throw new IllegalArgumentException("Duplicate branch name.");
+            }
+            branchOrder.put(branch.getName(), branchOrder.size());
+        }
+        this.executor = executor;
+        this.branchTimeoutNanos = unit.toNanos(branchTimeout);
+    }
+
+    /**
+     * Retrieves a branch by name.
+     *
+     * @param name The name of the branch.
+     * @return The branch.
+     * @throws IllegalArgumentException If there is no such branch.
+     */
+    public Branch getBranch(String name) {
+        Branch branch = branches.get(name);
+        if (branch == null) {
+            throw new IllegalArgumentException("Invalid branch.");
+        }
+        return branch;
+    }
+
+    /**
+     * Looks a book up at every branch in parallel.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The availability at every branch, in branch order.
+     */
+    public List<BranchAvailability> lookup(String ISBN) {
+        Lookup lookup = new Lookup(ISBN);
+        List<BranchAvailability> results = new ArrayList<>(branches.size());
+        for (BranchAvailability availability; (availability = lookup.next()) != null; ) {
+            results.add(availability);
+        }
+        results.sort(Comparator.comparing(availability -> branchOrder.get(availability.getBranch())));
+        return results;
+    }
+
+    /**
+     * Checks whether any branch has a free copy of a book, answering as soon as one branch does.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return true if a branch answered with a free copy within the timeout, otherwise false.
+     */
+    public boolean isAvailableAnywhere(String ISBN) {
+        Lookup lookup = new Lookup(ISBN);
+        try {
+            for (BranchAvailability availability; (availability = lookup.next()) != null; ) {
+                if (availability.getStatus() == Status.AVAILABLE) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lookup.cancel();
+        }
+    }
+
+    /**
+     * Borrows a book at the first branch which answers with a free copy.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book, who must be registered at the branch.
+     * @return The name of the branch the book was borrowed from.
+     * @throws BookAlreadyBorrowedException If branches have the book but no free copy could be borrowed.
+     * @throws UserNotRegisteredException   If every branch with a free copy does not know the user.
+     * @throws BranchUnavailableException   If no branch which answered has the book, but some did not answer.
+     * @throws BookNotFoundException        If no branch has the book.
+     */
+    public String borrowBook(String ISBN, String userId) {
+        Lookup lookup = new Lookup(ISBN);
+        try {
+            boolean found = false;
+            boolean unanswered = false;
+            UserNotRegisteredException notRegistered = null;
+            for (BranchAvailability availability; (availability = lookup.next()) != null; ) {
+                Status status = availability.getStatus();
+                found |= status == Status.AVAILABLE || status == Status.ALL_BORROWED;
+                unanswered |= status == Status.TIMED_OUT || status == Status.FAILED;
+                if (status != Status.AVAILABLE) {
+                    continue;
+                }
+                try {
+                    branches.get(availability.getBranch()).getLibrary().borrowBook(ISBN, userId);
+                    return availability.getBranch();
+                } catch (BookAlreadyBorrowedException e) {
+                    // Another borrower took the last free copy since the lookup; try the next branch.
+                } catch (UserNotRegisteredException e) {
+                    notRegistered = e;
+                }
+            }
+            if (notRegistered != null) {
+                throw notRegistered;
+            } else if (found) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            } else if (unanswered) {
+                throw new BranchUnavailableException("Branch unavailable!");
+            }
+            throw new BookNotFoundException("Book not found!");
+        } finally {
+            lookup.cancel();
+        }
+    }
+
+    /**
+     * Returns a book to the branch it was borrowed from.
+     *
+     * @param branch The name of the branch.
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user returning the book.
+     */
+    public void returnBook(String branch, String ISBN, String userId) {
+        getBranch(branch).getLibrary().returnBook(ISBN, userId);
+    }
+
+    /**
+     * Retrieves the number of branch lookups which did not answer within the timeout.
+     *
+     * @return The number of timed out lookups.
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    // A lookup at every branch, whose answers are taken in the order they arrive.
+    private final class Lookup {
+        private final CompletionService<BranchAvailability> completion = new ExecutorCompletionService<>(executor);
+        private final Map<Future<BranchAvailability>, Branch> pending = new HashMap<>();
+        private final Queue<BranchAvailability> timedOut = new ArrayDeque<>();
+        private final long deadlineNanos = System.nanoTime() + branchTimeoutNanos;
+
+        private Lookup(final String ISBN) {
+            for (final Branch branch : branches.values()) {
+                pending.put(completion.submit(() -> availabilityAt(branch, ISBN)), branch);
+            }
+        }
+
+        // Returns the next answer, a timed out branch once the timeout passed, or null once every branch is reported.
+        private BranchAvailability next() {
+            if (!timedOut.isEmpty()) {
+                return timedOut.poll();
+            } else if (pending.isEmpty()) {
+                return null;
+            }
+            Future<BranchAvailability> done;
+            try {
+                done = completion.poll(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                done = null;
+            }
+            if (done == null) {
+                // Every branch still pending missed the timeout.
+                for (Branch branch : pending.values()) {
+                    timedOut.add(new BranchAvailability(branch.getName(), Status.TIMED_OUT, 0));
+                }
+                timeouts.addAndGet(pending.size());
+                cancel();
+                return timedOut.poll();
+            }
+            Branch branch = pending.remove(done);
+            try {
+                return done.get();
+            } catch (ExecutionException | InterruptedException e) {
+                return new BranchAvailability(branch.getName(), Status.FAILED, 0);
+            }
+        }
+
+        private void cancel() {
+            for (Future<BranchAvailability> future : pending.keySet()) {
+                future.cancel(true);
+            }
+            pending.clear();
+        }
+    }
+
+    private static BranchAvailability availabilityAt(Branch branch, String ISBN) {
+        Book book = branch.getDatabaseService().getBookByISBN(ISBN);
+        if (book == null) {
+            return new BranchAvailability(branch.getName(), Status.NOT_FOUND, 0);
+        } else if (book.isBorrowed()) {
+            return new BranchAvailability(branch.getName(), Status.ALL_BORROWED, 0);
+        }
+        return new BranchAvailability(branch.getName(), Status.AVAILABLE, book.getAvailableCopies());
+    }
+}
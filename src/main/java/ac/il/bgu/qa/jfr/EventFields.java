@@ -0,0 +1,24 @@
+package ac.il.bgu.qa.jfr;
+
+/**
+ * Computes the fields shared by the flight recorder events of the library. Only called for events
+ * which are committed, so a disabled recording pays for none of it.
+ */
+final class EventFields {
+
+    // The outcome recorded for calls which returned normally.
+    static final String OK = "OK";
+
+    private EventFields() {
+    }
+
+    // A hash of the ISBN, ignoring hyphens, so the calls for one book can be grouped without recording the ISBN.
+    static int hashOf(String ISBN) {
+        return ISBN == null ? 0 : ISBN.replace("-", "").hashCode();
+    }
+
+    // The outcome of a call: OK, or the simple name of the exception it threw.
+    static String outcomeOf(Throwable failure) {
+        return failure == null ? OK : failure.getClass().getSimpleName();
+    }
+}
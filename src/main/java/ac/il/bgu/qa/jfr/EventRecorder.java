@@ -0,0 +1,82 @@
+package ac.il.bgu.qa.jfr;
+
+/**
+ * Begins the flight recorder events of the library. The event classes extend {@code jdk.jfr.Event}, which
+ * Java 8 runtimes without the flight recorder do not have, so they are only ever loaded from here, after
+ * checking the runtime has it. Elsewhere the library only sees the spans, which do nothing on such runtimes.
+ * <p>
+ * Where the flight recorder is present, these methods are small enough to be inlined, so an event which no
+ * recording enables is still optimized away by the JIT compiler.
+ */
+public final class EventRecorder {
+
+    // Whether the runtime has the flight recorder, checked once.
+    private static final boolean AVAILABLE = isAvailable();
+
+    // The spans handed out when the runtime has no flight recorder.
+    private static final OperationSpan NO_OPERATION = (operation, ISBN, failure) -> {
+    };
+    private static final NotificationAttemptSpan NO_NOTIFICATION_ATTEMPT = (ISBN, attempt, failure) -> {
+    };
+    private static final ServiceCallSpan NO_SERVICE_CALL = (service, method, ISBN, failure) -> {
+    };
+
+    private EventRecorder() {
+    }
+
+    /**
+     * Returns whether the runtime has the flight recorder, so the events of the library can be recorded.
+     *
+     * @return Whether the events can be recorded.
+     */
+    public static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, EventRecorder.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Begins the span of a public operation of the library.
+     *
+     * @return The begun span.
+     */
+    public static OperationSpan beginOperation() {
+        if (!AVAILABLE) {
+            return NO_OPERATION;
+        }
+        LibraryOperationEvent event = new LibraryOperationEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins the span of an attempt to send a review notification.
+     *
+     * @return The begun span.
+     */
+    public static NotificationAttemptSpan beginNotificationAttempt() {
+        if (!AVAILABLE) {
+            return NO_NOTIFICATION_ATTEMPT;
+        }
+        NotificationAttemptEvent event = new NotificationAttemptEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins the span of a call to a database, review or notification service.
+     *
+     * @return The begun span.
+     */
+    public static ServiceCallSpan beginServiceCall() {
+        if (!AVAILABLE) {
+            return NO_SERVICE_CALL;
+        }
+        ServiceCallEvent event = new ServiceCallEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,57 @@
+package ac.il.bgu.qa.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event spanning one public operation of a {@link ac.il.bgu.qa.Library}.
+ * <p>
+ * The service calls and notification attempts made by the operation are recorded as separate events on the
+ * same thread, within the operation's time span. Usage:
+ * <pre>
+ * OperationSpan event = EventRecorder.beginOperation();
+ * // ... the operation, then on every exit:
+ * event.finish("borrowBook", ISBN, failureOrNull);
+ * </pre>
+ * Only created by {@link EventRecorder}, which checks the runtime has the flight recorder first.
+ */
+@Name("ac.il.bgu.qa.LibraryOperation")
+@Label("Library Operation")
+@Category({"Library"})
+@Description("A public operation of the library")
+@StackTrace(false)
+final class LibraryOperationEvent extends Event implements OperationSpan {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("ISBN Hash")
+    @Description("The hash of the book's ISBN without hyphens, or 0 if the operation has no ISBN")
+    int isbnHash;
+
+    @Label("Outcome")
+    @Description("OK, or the simple name of the exception thrown")
+    String outcome;
+
+    /**
+     * Ends the event and commits it, if it is enabled and exceeds its threshold.
+     *
+     * @param operation The name of the operation.
+     * @param ISBN      The ISBN the operation was called with, or null.
+     * @param failure   The exception the operation threw, or null if it returned normally.
+     */
+    @Override
+    public void finish(String operation, String ISBN, Throwable failure) {
+        end();
+        if (shouldCommit()) {
+            this.operation = operation;
+            this.isbnHash = EventFields.hashOf(ISBN);
+            this.outcome = EventFields.outcomeOf(failure);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ac.il.bgu.qa.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event spanning one attempt to send a review notification, either by the library or by
+ * a background redelivery of a dead letter.
+ */
+@Name("ac.il.bgu.qa.NotificationAttempt")
+@Label("Notification Attempt")
+@Category({"Library", "Notifications"})
+@Description("An attempt to send a review notification to a user")
+@StackTrace(false)
+final class NotificationAttemptEvent extends Event implements NotificationAttemptSpan {
+
+    @Label("ISBN Hash")
+    @Description("The hash of the book's ISBN without hyphens")
+    int isbnHash;
+
+    @Label("Attempt")
+    @Description("The number of the attempt, starting at 1")
+    int attempt;
+
+    @Label("Outcome")
+    @Description("OK, or the simple name of the exception thrown")
+    String outcome;
+
+    /**
+     * Ends the event and commits it, if it is enabled and exceeds its threshold.
+     *
+     * @param ISBN    The ISBN of the book the notification is about.
+     * @param attempt The number of the attempt, starting at 1.
+     * @param failure The exception the attempt threw, or null if the notification was sent.
+     */
+    @Override
+    public void finish(String ISBN, int attempt, Throwable failure) {
+        end();
+        if (shouldCommit()) {
+            this.isbnHash = EventFields.hashOf(ISBN);
+            this.attempt = attempt;
+            this.outcome = EventFields.outcomeOf(failure);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package ac.il.bgu.qa.jfr;
+
+/**
+ * The time span of one attempt to send a review notification, begun by
+ * {@link EventRecorder#beginNotificationAttempt()}.
+ */
+public interface NotificationAttemptSpan {
+
+    /**
+     * Ends the span, recording it if the runtime has a flight recorder and a recording enables it.
+     *
+     * @param ISBN    The ISBN of the book the notification is about.
+     * @param attempt The number of the attempt, starting at 1.
+     * @param failure The exception the attempt threw, or null if the notification was sent.
+     */
+    void finish(String ISBN, int attempt, Throwable failure);
+}
@@ -0,0 +1,17 @@
+package ac.il.bgu.qa.jfr;
+
+/**
+ * The time span of one public operation of a {@link ac.il.bgu.qa.Library}, begun by
+ * {@link EventRecorder#beginOperation()}.
+ */
+public interface OperationSpan {
+
+    /**
+     * Ends the span, recording it if the runtime has a flight recorder and a recording enables it.
+     *
+     * @param operation The name of the operation.
+     * @param ISBN      The ISBN the operation was called with, or null.
+     * @param failure   The exception the operation threw, or null if it returned normally.
+     */
+    void finish(String operation, String ISBN, Throwable failure);
+}
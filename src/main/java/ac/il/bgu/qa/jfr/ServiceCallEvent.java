@@ -0,0 +1,54 @@
+package ac.il.bgu.qa.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event spanning one call to a database, review or notification service, recorded by the
+ * tracing service decorators.
+ */
+@Name("ac.il.bgu.qa.ServiceCall")
+@Label("Service Call")
+@Category({"Library", "Services"})
+@Description("A call to a database, review or notification service")
+@StackTrace(false)
+final class ServiceCallEvent extends Event implements ServiceCallSpan {
+
+    @Label("Service")
+    String service;
+
+    @Label("Method")
+    String method;
+
+    @Label("ISBN Hash")
+    @Description("The hash of the book's ISBN without hyphens, or 0 if the call has no ISBN")
+    int isbnHash;
+
+    @Label("Outcome")
+    @Description("OK, or the simple name of the exception thrown")
+    String outcome;
+
+    /**
+     * Ends the event and commits it, if it is enabled and exceeds its threshold.
+     *
+     * @param service The kind of service called.
+     * @param method  The name of the method called.
+     * @param ISBN    The ISBN the method was called with, or null.
+     * @param failure The exception the call threw, or null if it returned normally.
+     */
+    @Override
+    public void finish(String service, String method, String ISBN, Throwable failure) {
+        end();
+        if (shouldCommit()) {
+            this.service = service;
+            this.method = method;
+            this.isbnHash = EventFields.hashOf(ISBN);
+            this.outcome = EventFields.outcomeOf(failure);
+            commit();
+        }
+    }
+}
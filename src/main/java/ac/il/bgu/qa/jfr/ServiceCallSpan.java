@@ -0,0 +1,18 @@
+package ac.il.bgu.qa.jfr;
+
+/**
+ * The time span of one call to a database, review or notification service, begun by
+ * {@link EventRecorder#beginServiceCall()}.
+ */
+public interface ServiceCallSpan {
+
+    /**
+     * Ends the span, recording it if the runtime has a flight recorder and a recording enables it.
+     *
+     * @param service The kind of service called.
+     * @param method  The name of the method called.
+     * @param ISBN    The ISBN the method was called with, or null.
+     * @param failure The exception the call threw, or null if it returned normally.
+     */
+    void finish(String service, String method, String ISBN, Throwable failure);
+}
@@ -0,0 +1,218 @@
+package ac.il.bgu.qa.loans;
+
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.UserNotRegisteredException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the outcome of recent requests by their idempotency key, so a client retrying a request it
+ * got no answer for gets the original outcome replayed instead of running the request again.
+ * <p>
+ * The first request with a key runs; a retry with the same key waits for it if it is still running, then
+ * returns normally if it succeeded, or throws the same exception if the request was rejected (e.g. the
+ * book was not found or already borrowed). Requests which failed for any other reason, such as a failing
+ * database, are forgotten, so their retry runs again. Replaying needs a single lookup and no database
+ * round trip.
+ * <p>
+ * Keys are kept for a fixed time, and at most the given number of keys are kept, the oldest dropped first.
+ * A key must not be reused for a different request while it is kept.
+ */
+public class IdempotencyTable {
+
+    // The time keys are kept, in nanoseconds.
+    private final long ttlNanos;
+    // The clock expiry is measured with.
+    private final LongSupplier nanoClock;
+    // The kept requests, keyed by idempotency key, oldest first. Guarded by itself.
+    private final Map<String, Entry> entries;
+
+    // Number of requests answered by replaying an earlier outcome.
+    private final AtomicLong replays = new AtomicLong();
+
+    /**
+     * Constructs a new IdempotencyTable.
+     *
+     * @param ttl        The time keys are kept.
+     * @param unit       The unit of the time to keep keys.
+     * @param maxEntries The maximal number of keys kept.
+     */
+    public IdempotencyTable(long ttl, TimeUnit unit, int maxEntries) {
+        this(ttl, unit, maxEntries, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new IdempotencyTable measuring expiry with the given clock.
+     *
+     * @param ttl        The time keys are kept.
+     * @param unit       The unit of the time to keep keys.
+     * @param maxEntries The maximal number of keys kept.
+     * @param nanoClock  The clock, in nanoseconds.
+     */
+    public IdempotencyTable(long ttl, TimeUnit unit, final int maxEntries, LongSupplier nanoClock) {
+        if (ttl <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("Invalid table size.");
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                // Keys are kept in the order they were first used, so the eldest is also the first to expire.
+                return size() > maxEntries || isExpired(eldest.getValue(), nanoClock.getAsLong());
+            }
+        };
+    }
+
+    /**
+     * Runs a request once per idempotency key.
+     *
+     * @param key       The idempotency key chosen by the client.
+     * @param request   A description of the request, equal for every retry of it, e.g. its operation and arguments.
+     * @param operation The request to run.
+     * @throws IllegalArgumentException If the key is kept for a different request.
+     * @throws RuntimeException         The exception the request was rejected with, when replayed.
+     */
+    public void execute(String key, String request, Runnable operation) {
+        if (key == null || request == null) {
+            throw new IllegalArgumentException("Invalid idempotency key.");
+        }
+        while (true) {
+            long now = nanoClock.getAsLong();
+            Entry entry;
+            boolean first = false;
+            synchronized (entries) {
+                entry = entries.get(key);
+                if (entry == null || isExpired(entry, now)) {
+                    // Remove an expired entry first, so the new one is put last in the expiry order.
+                    entries.remove(key);
+                    entry = new Entry(request, now);
+                    entries.put(key, entry);
+                    first = true;
+                }
+            }
+
+            if (first) {
+                run(key, entry, operation);
+                return;
+            }
+            if (!entry.request.equals(request)) {
+                throw new IllegalArgumentException("Idempotency key reused.");
+            }
+            // Wait for the request if it is still running, then replay its outcome, or run it again if it was forgotten.
+            if (entry.awaitOutcome()) {
+                replays.incrementAndGet();
+                if (entry.rejection != null) {
+                    throw entry.rejection;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of requests answered by replaying an earlier outcome.
+     *
+     * @return The number of replays.
+     */
+    public long getReplays() {
+        return replays.get();
+    }
+
+    /**
+     * Retrieves the number of keys kept, including expired keys not yet dropped.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // Runs the first request with a key, recording its outcome in the entry.
+    private void run(String key, Entry entry, Runnable operation) {
+        boolean recorded = false;
+        try {
+            operation.run();
+            entry.complete(null);
+            recorded = true;
+        } catch (RuntimeException e) {
+            if (isRejection(e)) {
+                entry.complete(e);
+                recorded = true;
+            }
+            throw e;
+        } finally {
+            if (!recorded) {
+                // A failure the request may not meet again, or an error: forget the key, so the retry runs it.
+                synchronized (entries) {
+                    entries.remove(key, entry);
+                }
+                entry.forget();
+            }
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.createdNanos >= ttlNanos;
+    }
+
+    // Whether the request was refused for a reason its retry would meet again.
+    private static boolean isRejection(RuntimeException e) {
+        return e instanceof IllegalArgumentException
+                || e instanceof BookNotFoundException
+                || e instanceof UserNotRegisteredException
+                || e instanceof BookAlreadyBorrowedException
+                || e instanceof BookNotBorrowedException;
+    }
+
+    // A request and, once it ran, its outcome.
+    private static final class Entry {
+        private final String request;
+        private final long createdNanos;
+        private final CountDownLatch done = new CountDownLatch(1);
+        // Written before done is counted down.
+        private boolean completed;
+        private RuntimeException rejection;
+
+        private Entry(String request, long createdNanos) {
+            this.request = request;
+            this.createdNanos = createdNanos;
+        }
+
+        private void complete(RuntimeException rejection) {
+            this.rejection = rejection;
+            this.completed = true;
+            done.countDown();
+        }
+
+        private void forget() {
+            done.countDown();
+        }
+
+        // Waits for the request to finish, returning whether it has an outcome to replay.
+        private boolean awaitOutcome() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return completed;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package ac.il.bgu.qa.loans;
+
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.util.TimingWheel;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the due time of every active loan and reminds users of overdue books as their deadlines pass.
+ * <p>
+ * Due times are scheduled on a {@link TimingWheel}, so starting and ending a loan take constant time
+ * and finding the overdue loans never scans the active ones. The tracker does not read a clock itself:
+ * {@link #advanceTo(long)} must be called periodically (e.g. once per tick from a scheduled executor),
+ * which also lets tests drive it on a virtual clock.
+ * <p>
+ * A book with several copies has one loan per borrowed copy, each identified by the book and its holder.
+ */
+public class OverdueTracker {
+
+    // The length of a loan, in milliseconds.
+    private final long loanPeriodMillis;
+
+    // The due time of every active loan.
+    private final TimingWheel<Loan> wheel;
+
+    // The scheduled due times of the active loans of every borrowed book, in borrowing order, keyed by ISBN,
+    // used to cancel them on return.
+    private final Map<String, List<TimingWheel.Timeout<Loan>>> loans = new HashMap<>();
+
+    // Number of reminders which could not be delivered.
+    private long failedReminders;
+
+    /**
+     * Constructs a new OverdueTracker.
+     *
+     * @param loanPeriodMillis The length of a loan, in milliseconds.
+     * @param tickMillis       The precision of the due times, in milliseconds. Reminders are sent at most one tick late.
+     * @param nowMillis        The current time, in milliseconds.
+     */
+    public OverdueTracker(long loanPeriodMillis, long tickMillis, long nowMillis) {
+        if (loanPeriodMillis <= 0) {
+            throw new IllegalArgumentException("Invalid loan period.");
+        }
+        this.loanPeriodMillis = loanPeriodMillis;
+        // 4 levels of 64 slots cover 16M ticks, e.g. 31 years at one-minute ticks.
+        this.wheel = new TimingWheel<>(tickMillis, 4, nowMillis);
+    }
+
+    /**
+     * Records the start of a loan and schedules its due time. Every loan of a copy is tracked separately,
+     * including several copies of a book held by the same user.
+     *
+     * @param ISBN      The International Standard Book Number of the borrowed book.
+     * @param title     The title of the borrowed book, used in the reminder.
+     * @param user      The user borrowing the book.
+     * @param nowMillis The time the book was borrowed, in milliseconds.
+     * @return The due time of the loan, in milliseconds.
+     */
+    public synchronized long loanStarted(String ISBN, String title, User user, long nowMillis) {
+        long dueMillis = nowMillis + loanPeriodMillis;
+        loans.computeIfAbsent(ISBN, key -> new ArrayList<>(1))
+                .add(wheel.schedule(new Loan(ISBN, title, user, dueMillis), dueMillis));
+        return dueMillis;
+    }
+
+    /**
+     * Records the end of the loan of a book held the longest, cancelling its reminder.
+     *
+     * @param ISBN The International Standard Book Number of the returned book.
+     * @return true if the book had an active loan, otherwise false.
+     */
+    public boolean loanEnded(String ISBN) {
+        return loanEnded(ISBN, null);
+    }
+
+    /**
+     * Records the end of the loan of a book held by a user, cancelling its reminder.
+     *
+     * @param ISBN   The International Standard Book Number of the returned book.
+     * @param userId The Id of the user returning the book, or null to end the loan held the longest.
+     * @return true if the user had an active loan of the book, otherwise false.
+     */
+    public synchronized boolean loanEnded(String ISBN, String userId) {
+        List<TimingWheel.Timeout<Loan>> timeouts = loans.get(ISBN);
+        if (timeouts == null) {
+            return false;
+        }
+        for (Iterator<TimingWheel.Timeout<Loan>> it = timeouts.iterator(); it.hasNext(); ) {
+            TimingWheel.Timeout<Loan> timeout = it.next();
+            if (userId == null || userId.equals(timeout.getValue().user.getId())) {
+                it.remove();
+                if (timeouts.isEmpty()) {
+                    loans.remove(ISBN);
+                }
+                wheel.cancel(timeout);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the due time of the loan of a book held the longest.
+     *
+     * @param ISBN The International Standard Book Number of the borrowed book.
+     * @return The due time in milliseconds, or null if the book has no active loan.
+     */
+    public Long getDueMillis(String ISBN) {
+        return getDueMillis(ISBN, null);
+    }
+
+    /**
+     * Retrieves the due time of the loan of a book held by a user.
+     *
+     * @param ISBN   The International Standard Book Number of the borrowed book.
+     * @param userId The Id of the user holding the book, or null for the loan held the longest.
+     * @return The due time in milliseconds, or null if the user has no active loan of the book.
+     */
+    public synchronized Long getDueMillis(String ISBN, String userId) {
+        List<TimingWheel.Timeout<Loan>> timeouts = loans.get(ISBN);
+        if (timeouts != null) {
+            for (TimingWheel.Timeout<Loan> timeout : timeouts) {
+                if (userId == null || userId.equals(timeout.getValue().user.getId())) {
+                    return timeout.getValue().dueMillis;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Advances the tracker to the given time and reminds the users of every loan which became overdue.
+     * Reminders are sent once per loan, outside of the tracker's lock.
+     *
+     * @param nowMillis The current time, in milliseconds.
+     * @return The number of loans which became overdue.
+     */
+    public int advanceTo(long nowMillis) {
+        final List<Loan> overdue = new ArrayList<>();
+        synchronized (this) {
+            wheel.advanceTo(nowMillis, overdue::add);
+        }
+        for (Loan loan : overdue) {
+            try {
+                loan.user.sendNotification("Book '" + loan.title + "' (ISBN " + loan.ISBN + ") was due on "
+                        + Instant.ofEpochMilli(loan.dueMillis) + ". Please return it.");
+            } catch (NotificationException e) {
+                synchronized (this) {
+                    failedReminders++;
+                }
+            }
+        }
+        return overdue.size();
+    }
+
+    /**
+     * Retrieves the number of loans whose reminder was not sent yet, overdue or not.
+     *
+     * @return The number of active loans which were not reported as overdue.
+     */
+    public synchronized int getPendingLoans() {
+        return wheel.size();
+    }
+
+    /**
+     * Retrieves the number of reminders which could not be delivered.
+     *
+     * @return The number of failed reminders.
+     */
+    public synchronized long getFailedReminders() {
+        return failedReminders;
+    }
+
+    /**
+     * An active loan and its due time.
+     */
+    private static final class Loan {
+        final String ISBN;
+        final String title;
+        final User user;
+        final long dueMillis;
+
+        Loan(String ISBN, String title, User user, long dueMillis) {
+            this.ISBN = ISBN;
+            this.title = title;
+            this.user = user;
+            this.dueMillis = dueMillis;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ac.il.bgu.qa.notifications;
+
+/**
+ * A notification kept in a {@link DeadLetterQueue} after its delivery failed.
+ */
+public final class DeadLetter {
+    // The Id of the letter, derived from its user, book and message.
+    private final String id;
+    // The Id of the user to be notified.
+    private final String userId;
+    // The ISBN of the book the notification is about.
+    private final String ISBN;
+    // The notification message.
+    private final String message;
+    // The time the letter was queued, in milliseconds.
+    private final long enqueuedMillis;
+    // The number of failed redelivery attempts.
+    private final int attempts;
+    // The earliest time of the next redelivery attempt, in milliseconds.
+    private final long nextAttemptMillis;
+
+    DeadLetter(String id, String userId, String ISBN, String message, long enqueuedMillis, int attempts,
+               long nextAttemptMillis) {
+        this.id = id;
+        this.userId = userId;
+        this.ISBN = ISBN;
+        this.message = message;
+        this.enqueuedMillis = enqueuedMillis;
+        this.attempts = attempts;
+        this.nextAttemptMillis = nextAttemptMillis;
+    }
+
+    DeadLetter withAttempt(int attempts, long nextAttemptMillis) {
+        return new DeadLetter(id, userId, ISBN, message, enqueuedMillis, attempts, nextAttemptMillis);
+    }
+
+    /**
+     * Retrieves the Id of the letter. Equal notifications have equal Ids.
+     *
+     * @return The letter's Id.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the Id of the user to be notified.
+     *
+     * @return The user's Id.
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Retrieves the ISBN of the book the notification is about.
+     *
+     * @return The book's ISBN.
+     */
+    public String getISBN() {
+        return ISBN;
+    }
+
+    /**
+     * Retrieves the notification message.
+     *
+     * @return The message.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Retrieves the time the letter was queued.
+     *
+     * @return The time, in milliseconds.
+     */
+    public long getEnqueuedMillis() {
+        return enqueuedMillis;
+    }
+
+    /**
+     * Retrieves the number of failed redelivery attempts.
+     *
+     * @return The number of attempts.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Retrieves the earliest time of the next redelivery attempt.
+     *
+     * @return The time, in milliseconds.
+     */
+    public long getNextAttemptMillis() {
+        return nextAttemptMillis;
+    }
+}
@@ -0,0 +1,331 @@
+package ac.il.bgu.qa.notifications;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded, file-backed queue of notifications which could not be delivered, kept for later redelivery.
+ * <p>
+ * Every change is appended to a log file and forced to disk before the call returns, and the queue is rebuilt
+ * from the log when reopened, so dead letters survive restarts. The log is compacted once most of it
+ * describes letters already delivered. A torn record at the end of the log, left by a crash while writing,
+ * is ignored.
+ * <p>
+ * Letters are identified by their user, book and message, so offering a notification which is already
+ * queued does not queue it twice. A letter is removed once delivered; a crash between the delivery and the
+ * removal reaching the disk can still deliver it once more after a restart.
+ */
+public class DeadLetterQueue implements Closeable {
+
+    // The name of the log file in the queue's directory.
+    private static final String LOG_NAME = "dead-letters.log";
+    // The log is compacted once it holds this many records more than twice the queued letters.
+    private static final int COMPACTION_SLACK = 1024;
+
+    // The log file and the channel appending to it.
+    private final Path logPath;
+    private FileChannel log;
+    // The maximal number of queued letters.
+    private final int capacity;
+
+    // The queued letters in arrival order, keyed by Id. Guarded by this.
+    private final Map<String, DeadLetter> letters = new LinkedHashMap<>();
+    // The number of records in the log. Guarded by this.
+    private long logRecords;
+
+    // Metrics, guarded by this.
+    private long enqueued;
+    private long duplicates;
+    private long rejected;
+    private long removed;
+
+    /**
+     * Opens the queue stored in a directory, restoring the letters left in it.
+     *
+     * @param directory The directory holding the queue's log. Created if missing.
+     * @param capacity  The maximal number of queued letters.
+     * @throws IOException If the log could not be read or opened.
+     */
+    public DeadLetterQueue(Path directory, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        }
+        Files.createDirectories(directory);
+        this.logPath = directory.resolve(LOG_NAME);
+        this.capacity = capacity;
+        if (Files.exists(logPath)) {
+            replay();
+        }
+        this.log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // Terminate a torn last record, so it does not swallow the next one.
+        if (log.size() > 0 && !endsWithNewline()) {
+            append("");
+            logRecords--;
+        }
+    }
+
+    /**
+     * Queues a notification for redelivery, unless the same notification is already queued.
+     *
+     * @param userId     The Id of the user to be notified.
+     * @param ISBN       The ISBN of the book the notification is about.
+     * @param message    The notification message.
+     * @param nowMillis  The current time, in milliseconds.
+     * @return True if the notification is queued, false if the queue is full.
+     * @throws UncheckedIOException If the letter could not be written to disk.
+     */
+    public synchronized boolean offer(String userId, String ISBN, String message, long nowMillis) {
+        String id = idOf(userId, ISBN, message);
+        if (letters.containsKey(id)) {
+            duplicates++;
+            return true;
+        } else if (letters.size() >= capacity) {
+            rejected++;
+            return false;
+        }
+        DeadLetter letter = new DeadLetter(id, userId, ISBN, message, nowMillis, 0, nowMillis);
+        append("A " + id + " " + nowMillis + " " + userId + " " + ISBN + " " + encode(message));
+        letters.put(id, letter);
+        enqueued++;
+        return true;
+    }
+
+    /**
+     * Retrieves the letters due for another delivery attempt, oldest first.
+     *
+     * @param nowMillis The current time, in milliseconds.
+     * @param max       The maximal number of letters to return.
+     * @return The due letters.
+     */
+    public synchronized List<DeadLetter> due(long nowMillis, int max) {
+        List<DeadLetter> due = new ArrayList<>();
+        for (DeadLetter letter : letters.values()) {
+            if (due.size() == max) {
+                break;
+            } else if (letter.getNextAttemptMillis() <= nowMillis) {
+                due.add(letter);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Removes a letter which was delivered, or which can never be delivered.
+     *
+     * @param letter The letter.
+     * @throws UncheckedIOException If the removal could not be written to disk.
+     */
+    public synchronized void remove(DeadLetter letter) {
+        if (letters.remove(letter.getId()) == null) {
+            return;
+        }
+        append("D " + letter.getId());
+        removed++;
+        compactIfNeeded();
+    }
+
+    /**
+     * Records a failed delivery attempt of a letter and when to try again.
+     *
+     * @param letter            The letter.
+     * @param nextAttemptMillis The time of the next attempt, in milliseconds.
+     * @throws UncheckedIOException If the attempt could not be written to disk.
+     */
+    public synchronized void retryLater(DeadLetter letter, long nextAttemptMillis) {
+        if (!letters.containsKey(letter.getId())) {
+            return;
+        }
+        int attempts = letter.getAttempts() + 1;
+        append("R " + letter.getId() + " " + attempts + " " + nextAttemptMillis);
+        letters.put(letter.getId(), letter.withAttempt(attempts, nextAttemptMillis));
+        compactIfNeeded();
+    }
+
+    /**
+     * Retrieves the number of queued letters.
+     *
+     * @return The depth of the queue.
+     */
+    public synchronized int getDepth() {
+        return letters.size();
+    }
+
+    /**
+     * Retrieves the age of the oldest queued letter.
+     *
+     * @param nowMillis The current time, in milliseconds.
+     * @return The age of the oldest letter in milliseconds, or 0 if the queue is empty.
+     */
+    public synchronized long getOldestAgeMillis(long nowMillis) {
+        Iterator<DeadLetter> oldest = letters.values().iterator();
+        return oldest.hasNext() ? Math.max(0, nowMillis - oldest.next().getEnqueuedMillis()) : 0;
+    }
+
+    /**
+     * Retrieves the number of letters queued since the queue was opened.
+     *
+     * @return The number of queued letters.
+     */
+    public synchronized long getEnqueued() {
+        return enqueued;
+    }
+
+    /**
+     * Retrieves the number of offered notifications which were already queued.
+     *
+     * @return The number of duplicates.
+     */
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Retrieves the number of offered notifications rejected because the queue was full.
+     *
+     * @return The number of rejected notifications.
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Retrieves the number of letters removed since the queue was opened.
+     *
+     * @return The number of removed letters.
+     */
+    public synchronized long getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Closes the log. The queue must not be used afterwards.
+     *
+     * @throws IOException If the log could not be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    private boolean endsWithNewline() throws IOException {
+        try (FileChannel reader = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            reader.read(last, reader.size() - 1);
+            return last.get(0) == '\n';
+        }
+    }
+
+    private void replay() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                logRecords++;
+                String[] fields = line.split(" ", -1);
+                try {
+                    if (fields[0].equals("A") && fields.length == 6) {
+                        long enqueuedMillis = Long.parseLong(fields[2]);
+                        letters.put(fields[1], new DeadLetter(fields[1], fields[3], fields[4], decode(fields[5]),
+                                enqueuedMillis, 0, enqueuedMillis));
+                    } else if (fields[0].equals("D") && fields.length == 2) {
+                        letters.remove(fields[1]);
+                    } else if (fields[0].equals("R") && fields.length == 4) {
+                        DeadLetter letter = letters.get(fields[1]);
+                        if (letter != null) {
+                            letters.put(fields[1], letter.withAttempt(Integer.parseInt(fields[2]), Long.parseLong(fields[3])));
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    // A torn or corrupt record; skip it.
+                }
+            }
+        }
+    }
+
+    private void append(String record) {
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                log.write(bytes);
+            }
+            log.force(false);
+            logRecords++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Rewrites the log with the queued letters only, once it is mostly made of obsolete records.
+    private void compactIfNeeded() {
+        if (logRecords <= 2L * letters.size() + COMPACTION_SLACK) {
+            return;
+        }
+        Path compacted = logPath.resolveSibling(LOG_NAME + ".compact");
+        try {
+            List<String> records = new ArrayList<>();
+            for (DeadLetter letter : letters.values()) {
+                records.add("A " + letter.getId() + " " + letter.getEnqueuedMillis() + " " + letter.getUserId() + " "
+                        + letter.getISBN() + " " + encode(letter.getMessage()));
+                if (letter.getAttempts() > 0) {
+                    records.add("R " + letter.getId() + " " + letter.getAttempts() + " " + letter.getNextAttemptMillis());
+                }
+            }
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                StringBuilder lines = new StringBuilder();
+                for (String record : records) {
+                    lines.append(record).append('\n');
+                }
+                ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+                out.force(true);
+            }
+            log.close();
+            try {
+                Files.move(compacted, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logRecords = records.size();
+            } finally {
+                // Reopen the log whether or not it was replaced, so a failed move leaves the queue writable.
+                log = FileChannel.open(logPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The Id of a letter, derived from its content so the same notification always gets the same Id.
+    private static String idOf(String userId, String ISBN, String message) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((userId + "\n" + ISBN + "\n" + message).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(String message) {
+        return Base64.getEncoder().encodeToString(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String encoded) {
+        return new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_8);
+    }
+}
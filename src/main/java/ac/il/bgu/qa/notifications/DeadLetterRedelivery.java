@@ -0,0 +1,210 @@
+package ac.il.bgu.qa.notifications;
+
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.jfr.EventRecorder;
+import ac.il.bgu.qa.jfr.NotificationAttemptSpan;
+import ac.il.bgu.qa.services.DatabaseService;
+
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Redelivers the notifications of a {@link DeadLetterQueue} in the background.
+ * <p>
+ * Each pass sends every due letter to its user, looked up in the database. Delivered letters are removed,
+ * and letters whose user is no longer registered are dropped. A failed letter is retried after an
+ * exponential backoff with jitter, starting at the base backoff and doubling with every attempt up to the
+ * maximal backoff, so a notification service which is down is not flooded when it comes back. A letter whose
+ * user could not be looked up is retried the same way.
+ */
+public class DeadLetterRedelivery implements Closeable {
+
+    // The number of letters taken from the queue at a time.
+    private static final int BATCH_SIZE = 100;
+
+    // The queue letters are redelivered from.
+    private final DeadLetterQueue queue;
+    // The database users are looked up in.
+    private final DatabaseService databaseService;
+    // The clock deciding which letters are due.
+    private final Clock clock;
+    // The backoff after the first failed attempt, and the maximal backoff, in milliseconds.
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+
+    // Held during a pass, so concurrent passes cannot deliver the same letter twice.
+    private final Object passLock = new Object();
+    // The scheduled passes, if started. Guarded by this.
+    private ScheduledFuture<?> passes;
+
+    // Metrics.
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failedLookups = new AtomicLong();
+    private final AtomicLong failedPasses = new AtomicLong();
+
+    /**
+     * Constructs a new DeadLetterRedelivery.
+     *
+     * @param queue             The queue letters are redelivered from.
+     * @param databaseService   The database users are looked up in.
+     * @param clock             The clock deciding which letters are due.
+     * @param baseBackoffMillis The backoff after the first failed attempt, in milliseconds.
+     * @param maxBackoffMillis  The maximal backoff, in milliseconds.
+     */
+    public DeadLetterRedelivery(DeadLetterQueue queue, DatabaseService databaseService, Clock clock,
+                                long baseBackoffMillis, long maxBackoffMillis) {
+        if (queue == null || databaseService == null || clock == null) {
+            throw new IllegalArgumentException("Invalid dead-letter queue.");
+        } else if (baseBackoffMillis <= 0 || maxBackoffMillis < baseBackoffMillis) {
+            throw new IllegalArgumentException("Invalid backoff.");
+        }
+        this.queue = queue;
+        this.databaseService = databaseService;
+        this.clock = clock;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Runs a pass on the scheduler periodically, until closed.
+     *
+     * @param scheduler The scheduler running the passes.
+     * @param period    The time between passes.
+     * @param unit      The unit of the period.
+     */
+    public synchronized void start(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        if (passes != null) {
+            throw new IllegalStateException("Redelivery already started.");
+        }
+        passes = scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                redeliver();
+            } catch (RuntimeException e) {
+                // The queue could not be written; the letters stay queued for the next pass. Any exception
+                // escaping here would cancel every later pass.
+                failedPasses.incrementAndGet();
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops the periodic passes. A pass in progress is completed.
+     */
+    @Override
+    public synchronized void close() {
+        if (passes != null) {
+            passes.cancel(false);
+        }
+    }
+
+    /**
+     * Attempts to deliver every due letter once.
+     *
+     * @return The number of letters delivered.
+     * @throws UncheckedIOException If the outcome of an attempt could not be written to the queue.
+     */
+    public int redeliver() {
+        synchronized (passLock) {
+            int count = 0;
+            long now = clock.millis();
+            List<DeadLetter> due;
+            // Failed letters become due later than now, so every batch brings new letters.
+            while (!(due = queue.due(now, BATCH_SIZE)).isEmpty()) {
+                for (DeadLetter letter : due) {
+                    User user;
+                    try {
+                        user = databaseService.getUserById(letter.getUserId());
+                    } catch (RuntimeException e) {
+                        // The database failed; retry the letter later rather than ending the pass.
+                        queue.retryLater(letter, now + backoffMillis(letter.getAttempts()));
+                        failedLookups.incrementAndGet();
+                        continue;
+                    }
+                    if (user == null) {
+                        queue.remove(letter);
+                        dropped.incrementAndGet();
+                        continue;
+                    }
+                    NotificationAttemptSpan attempt = EventRecorder.beginNotificationAttempt();
+                    try {
+                        user.sendNotification(letter.getMessage());
+                        attempt.finish(letter.getISBN(), letter.getAttempts() + 2, null);
+                    } catch (RuntimeException e) {
+                        attempt.finish(letter.getISBN(), letter.getAttempts() + 2, e);
+                        queue.retryLater(letter, now + backoffMillis(letter.getAttempts()));
+                        failedAttempts.incrementAndGet();
+                        continue;
+                    }
+                    queue.remove(letter);
+                    delivered.incrementAndGet();
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Retrieves the number of letters delivered.
+     *
+     * @return The number of delivered letters.
+     */
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * Retrieves the number of failed redelivery attempts.
+     *
+     * @return The number of failed attempts.
+     */
+    public long getFailedAttempts() {
+        return failedAttempts.get();
+    }
+
+    /**
+     * Retrieves the number of letters dropped because their user is no longer registered.
+     *
+     * @return The number of dropped letters.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Retrieves the number of letters retried later because looking up their user failed.
+     *
+     * @return The number of failed user lookups.
+     */
+    public long getFailedLookups() {
+        return failedLookups.get();
+    }
+
+    /**
+     * Retrieves the number of scheduled passes ended early because the queue could not be written.
+     *
+     * @return The number of failed passes.
+     */
+    public long getFailedPasses() {
+        return failedPasses.get();
+    }
+
+    // Returns the backoff after the given number of earlier failed attempts, between half and all of the
+    // exponential backoff, and at least a millisecond.
+    private long backoffMillis(int attempts) {
+        long backoff = baseBackoffMillis << Math.min(attempts, 30);
+        if (backoff <= 0 || backoff > maxBackoffMillis) {
+            backoff = maxBackoffMillis;
+        }
+        return Math.max(1, backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+    }
+}
@@ -0,0 +1,132 @@
+package ac.il.bgu.qa.notifications;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the rendered review notification of recently notified books, so that notifying many users about
+ * the same book builds its message once and shares the same immutable string.
+ * <p>
+ * An entry is only reused while the book's title and reviews are equal to those it was rendered from, so a
+ * refreshed review list is never answered with a stale message. Comparing them allocates nothing, unlike
+ * rendering. {@link #invalidate(String)} drops an entry early, e.g. from
+ * {@link ac.il.bgu.qa.services.CachingReviewService#addRefreshListener(java.util.function.Consumer)}.
+ */
+public class NotificationPayloadCache {
+
+    // The rendered notifications, keyed by ISBN, in least recently used order. Guarded by itself.
+    private final Map<String, Payload> payloads;
+
+    // Hit and miss counters.
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs a new NotificationPayloadCache.
+     *
+     * @param maxEntries The maximal number of books whose notification is kept.
+     */
+    public NotificationPayloadCache(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Invalid cache size.");
+        }
+        this.payloads = new LinkedHashMap<String, Payload>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Payload> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Renders the review notification of a book.
+     *
+     * @param title   The title of the book.
+     * @param reviews The reviews of the book.
+     * @return The notification message.
+     */
+    public static String render(String title, List<String> reviews) {
+        return "Reviews for '" + title + "':\n" + String.join("\n", reviews);
+    }
+
+    /**
+     * Retrieves the review notification of a book, rendering it if the cached one is missing or outdated.
+     *
+     * @param ISBN    The International Standard Book Number of the book.
+     * @param title   The title of the book.
+     * @param reviews The current reviews of the book.
+     * @return The notification message, shared between calls.
+     */
+    public String getPayload(String ISBN, String title, List<String> reviews) {
+        Payload payload;
+        synchronized (payloads) {
+            payload = payloads.get(ISBN);
+        }
+        if (payload != null && Objects.equals(payload.title, title) && payload.reviews.equals(reviews)) {
+            hits.incrementAndGet();
+            return payload.message;
+        }
+        misses.incrementAndGet();
+        // Keep a copy of the reviews, since the caller's list may change after this call.
+        payload = new Payload(title, new ArrayList<>(reviews), render(title, reviews));
+        synchronized (payloads) {
+            payloads.put(ISBN, payload);
+        }
+        return payload.message;
+    }
+
+    /**
+     * Drops the notification of a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    public void invalidate(String ISBN) {
+        synchronized (payloads) {
+            payloads.remove(ISBN);
+        }
+    }
+
+    /**
+     * Drops every notification.
+     */
+    public void invalidateAll() {
+        synchronized (payloads) {
+            payloads.clear();
+        }
+    }
+
+    /**
+     * Retrieves the number of notifications served from the cache.
+     *
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Retrieves the number of notifications rendered.
+     *
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // A rendered notification and what it was rendered from.
+    private static final class Payload {
+        private final String title;
+        private final List<String> reviews;
+        private final String message;
+
+        private Payload(String title, List<String> reviews, String message) {
+            this.title = title;
+            this.reviews = reviews;
+            this.message = message;
+        }
+    }
+}
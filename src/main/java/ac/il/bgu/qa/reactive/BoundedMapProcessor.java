@@ -0,0 +1,253 @@
+package ac.il.bgu.qa.reactive;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * A {@link Flow.Processor} which applies a blocking function to every item on an executor, and publishes
+ * the results in the order the items were received, to a single subscriber.
+ * <p>
+ * Items are only requested from upstream as the subscriber requests results, and at most the given number
+ * of items are received and not yet published at any time, so a slow subscriber slows down the upstream
+ * publisher and no more than that number of functions run concurrently. Items applied concurrently may
+ * complete in any order; only their results are ordered. A function failing with a runtime exception, or
+ * rejected by the executor, fails the stream and cancels the upstream subscription.
+ *
+ * @param <T> The type of the items received.
+ * @param <R> The type of the results published.
+ */
+public class BoundedMapProcessor<T, R> implements Flow.Processor<T, R> {
+
+    // The function applied to every item.
+    private final Function<? super T, ? extends R> function;
+    // The executor the function runs on.
+    private final Executor executor;
+    // The maximal number of items received and not yet published.
+    private final int maxInFlight;
+
+    // The upstream subscription, once subscribed.
+    private final AtomicReference<Flow.Subscription> upstream = new AtomicReference<>();
+    // The subscriber, once subscribed.
+    private final AtomicReference<Flow.Subscriber<? super R>> downstream = new AtomicReference<>();
+    // Whether the subscriber's onSubscribe returned, so it may be sent other signals.
+    private volatile boolean subscribed;
+
+    // The items received and not yet published, in the order they were received.
+    private final Queue<Slot<T, R>> slots = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger slotCount = new AtomicInteger();
+    // The number of items requested from upstream and not yet received.
+    private final AtomicLong upstreamPending = new AtomicLong();
+    // The number of results requested by the subscriber.
+    private final AtomicLong requested = new AtomicLong();
+
+    private volatile boolean upstreamDone;
+    private volatile Throwable upstreamError;
+    private volatile boolean cancelled;
+    private volatile Throwable requestError;
+
+    // Serialises the drain loop; the fields below are only accessed by it.
+    private final AtomicInteger wip = new AtomicInteger();
+    private long emitted;
+    private boolean terminated;
+    private boolean upstreamCancelled;
+
+    /**
+     * Constructs a new BoundedMapProcessor.
+     *
+     * @param function    The function applied to every item.
+     * @param executor    The executor the function runs on.
+     * @param maxInFlight The maximal number of items received and not yet published.
+     */
+    public BoundedMapProcessor(Function<? super T, ? extends R> function, Executor executor, int maxInFlight) {
+        if (function == null || executor == null) {
+            throw new IllegalArgumentException("Invalid processor.");
+        } else if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Invalid number of items in flight.");
+        }
+        this.function = function;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super R> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!downstream.compareAndSet(null, subscriber)) {
+            Subscriptions.reject(subscriber, new IllegalStateException("Only one subscriber allowed."));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    requestError = new IllegalArgumentException("Non-positive request: " + n);
+                } else {
+                    Subscriptions.addDemand(requested, n);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                drain();
+            }
+        });
+        subscribed = true;
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if (!upstream.compareAndSet(null, subscription)) {
+            subscription.cancel();
+            return;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(T item) {
+        Objects.requireNonNull(item);
+        final Slot<T, R> slot = new Slot<>(item);
+        slots.add(slot);
+        slotCount.incrementAndGet();
+        upstreamPending.decrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    slot.complete(function.apply(slot.input), null);
+                } catch (RuntimeException e) {
+                    slot.complete(null, e);
+                }
+                drain();
+            });
+        } catch (RejectedExecutionException e) {
+            slot.complete(null, e);
+            drain();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        Objects.requireNonNull(throwable);
+        upstreamError = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            drainOnce();
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainOnce() {
+        Flow.Subscription subscription = upstream.get();
+        if (terminated || cancelled) {
+            terminated = true;
+            slots.clear();
+            cancelUpstream(subscription);
+            return;
+        } else if (!subscribed) {
+            return;
+        }
+        Flow.Subscriber<? super R> subscriber = downstream.get();
+        if (requestError != null) {
+            terminate(subscription);
+            subscriber.onError(requestError);
+            return;
+        }
+
+        // Publish the completed results at the head of the queue, as far as requested.
+        Slot<T, R> slot;
+        while (emitted != requested.get() && (slot = slots.peek()) != null && slot.done) {
+            slots.poll();
+            slotCount.decrementAndGet();
+            if (slot.failure != null) {
+                terminate(subscription);
+                subscriber.onError(slot.failure);
+                return;
+            }
+            emitted++;
+            subscriber.onNext(slot.result);
+            if (cancelled) {
+                // The drain loop runs again, as cancel() called drain().
+                return;
+            }
+        }
+
+        // Complete once upstream did and every received item was published.
+        if (upstreamDone && slots.isEmpty()) {
+            terminated = true;
+            Throwable error = upstreamError;
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+            return;
+        }
+
+        // Request as many items as may be in flight, without exceeding the results requested.
+        if (subscription != null && !upstreamDone) {
+            long inFlight = slotCount.get() + upstreamPending.get();
+            long room = Math.min(maxInFlight, requested.get() - emitted) - inFlight;
+            if (room > 0) {
+                upstreamPending.addAndGet(room);
+                subscription.request(room);
+            }
+        }
+    }
+
+    private void terminate(Flow.Subscription subscription) {
+        terminated = true;
+        slots.clear();
+        cancelUpstream(subscription);
+    }
+
+    private void cancelUpstream(Flow.Subscription subscription) {
+        if (subscription != null && !upstreamCancelled && !upstreamDone) {
+            upstreamCancelled = true;
+            subscription.cancel();
+        }
+    }
+
+    // An item received, and its result once the function returned.
+    private static final class Slot<T, R> {
+        private final T input;
+        // Written before done is set.
+        private R result;
+        private RuntimeException failure;
+        private volatile boolean done;
+
+        private Slot(T input) {
+            this.input = input;
+        }
+
+        private void complete(R result, RuntimeException failure) {
+            this.result = result;
+            this.failure = failure;
+            this.done = true;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ac.il.bgu.qa.reactive;
+
+/**
+ * Represents the outcome of a {@link LibraryCommand}, published by a {@link ReactiveLibrary}.
+ * A command which failed is reported by its result, not by failing the stream.
+ */
+public class CommandResult {
+
+    // The command run.
+    private final LibraryCommand command;
+    // The exception the command failed with, or null if it succeeded.
+    private final RuntimeException failure;
+
+    /**
+     * Constructs a new CommandResult.
+     *
+     * @param command The command run.
+     * @param failure The exception the command failed with, or null if it succeeded.
+     */
+    public CommandResult(LibraryCommand command, RuntimeException failure) {
+        this.command = command;
+        this.failure = failure;
+    }
+
+    // Getter methods
+
+    /**
+     * Retrieves the command run.
+     *
+     * @return The command.
+     */
+    public LibraryCommand getCommand() {
+        return command;
+    }
+
+    /**
+     * Retrieves the exception the command failed with.
+     *
+     * @return The failure, or null if the command succeeded.
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Checks whether the command succeeded.
+     *
+     * @return true if the command succeeded, false otherwise.
+     */
+    public boolean isSuccess() {
+        return failure == null;
+    }
+}
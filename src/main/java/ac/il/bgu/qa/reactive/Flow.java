@@ -0,0 +1,91 @@
+package ac.il.bgu.qa.reactive;
+
+/**
+ * The Reactive Streams interfaces, with the same members as {@code java.util.concurrent.Flow} of Java 9,
+ * which is not available on the Java 8 platform this library targets. Adapting to the JDK's interfaces,
+ * or to {@code org.reactivestreams}, takes one forwarding method per member.
+ * <p>
+ * Publishers in this package follow the Reactive Streams rules: a subscriber is sent
+ * {@link Subscriber#onSubscribe(Subscription)} first, never more {@link Subscriber#onNext(Object)} calls
+ * than it requested, signals are never concurrent, a terminal signal is sent at most once, and requesting
+ * a non-positive number of items fails the subscription with an {@link IllegalArgumentException}.
+ */
+public final class Flow {
+
+    private Flow() {
+    }
+
+    /**
+     * A producer of items received by subscribers on demand.
+     *
+     * @param <T> The type of the items.
+     */
+    public interface Publisher<T> {
+        /**
+         * Adds a subscriber, which is sent {@link Subscriber#onSubscribe(Subscription)} first.
+         *
+         * @param subscriber The subscriber.
+         * @throws NullPointerException If the subscriber is null.
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of items, called serially.
+     *
+     * @param <T> The type of the items.
+     */
+    public interface Subscriber<T> {
+        /**
+         * Called before any other method, with the subscription to request items through.
+         *
+         * @param subscription The subscription.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with the next item, once per requested item at most.
+         *
+         * @param item The item.
+         */
+        void onNext(T item);
+
+        /**
+         * Called once the publisher failed. No other method is called afterwards.
+         *
+         * @param throwable The failure.
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called once the publisher has no more items. No other method is called afterwards.
+         */
+        void onComplete();
+    }
+
+    /**
+     * The link between a publisher and one of its subscribers.
+     */
+    public interface Subscription {
+        /**
+         * Adds to the number of items the subscriber is ready to receive.
+         *
+         * @param n The number of additional items, positive.
+         */
+        void request(long n);
+
+        /**
+         * Stops sending items to the subscriber, eventually.
+         */
+        void cancel();
+    }
+
+    /**
+     * A stage which is both a subscriber and a publisher.
+     *
+     * @param <T> The type of the items received.
+     * @param <R> The type of the items published.
+     */
+    public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+}
@@ -0,0 +1,156 @@
+package ac.il.bgu.qa.reactive;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Publisher} of the items of an iterable, iterated lazily on an executor as they are requested.
+ * <p>
+ * Every subscriber gets its own iterator, created on its first request, so a catalog scan only reads as far
+ * as its subscriber consumes. Items are sent in batches, a batch releasing the executor thread before the
+ * next one, so a subscriber with an unbounded demand does not hold a thread for the whole scan.
+ *
+ * @param <T> The type of the items.
+ */
+public class IterablePublisher<T> implements Flow.Publisher<T> {
+
+    // The number of items sent before the executor thread is released.
+    private static final int BATCH_SIZE = 256;
+
+    // The items published.
+    private final Iterable<? extends T> source;
+    // The executor items are sent on.
+    private final Executor executor;
+
+    /**
+     * Constructs a new IterablePublisher.
+     *
+     * @param source   The items to publish, iterated once per subscriber.
+     * @param executor The executor items are sent on.
+     */
+    public IterablePublisher(Iterable<? extends T> source, Executor executor) {
+        if (source == null || executor == null) {
+            throw new IllegalArgumentException("Invalid publisher.");
+        }
+        this.source = source;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        Iteration iteration = new Iteration(subscriber);
+        subscriber.onSubscribe(iteration);
+        iteration.ready = true;
+        iteration.schedule();
+    }
+
+    // The iteration of one subscriber.
+    private final class Iteration implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        // Whether the subscriber's onSubscribe returned, so it may be sent other signals.
+        private volatile boolean ready;
+        private volatile boolean cancelled;
+        private volatile Throwable requestError;
+
+        // Serialises the runs; the fields below are only accessed by them.
+        private final AtomicInteger wip = new AtomicInteger();
+        private Iterator<? extends T> iterator;
+        private long emitted;
+        private boolean done;
+
+        private Iteration(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                Subscriptions.addDemand(requested, n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (ready && wip.getAndIncrement() == 0) {
+                execute();
+            }
+        }
+
+        private void execute() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // No thread to send items on: fail the subscriber here, as the run would.
+                done = true;
+                subscriber.onError(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            int sent = 0;
+            while (true) {
+                if (done) {
+                    return;
+                } else if (cancelled) {
+                    done = true;
+                    iterator = null;
+                    return;
+                } else if (requestError != null) {
+                    done = true;
+                    subscriber.onError(requestError);
+                    return;
+                }
+                try {
+                    if (iterator == null) {
+                        iterator = source.iterator();
+                    }
+                    while (emitted != requested.get() && !cancelled) {
+                        if (sent == BATCH_SIZE) {
+                            // Leave the work counter raised, so the next run picks up from here.
+                            execute();
+                            return;
+                        } else if (!iterator.hasNext()) {
+                            break;
+                        }
+                        T item = iterator.next();
+                        emitted++;
+                        sent++;
+                        subscriber.onNext(item);
+                    }
+                    // Complete as soon as the items are exhausted, even without demand.
+                    if (!cancelled && !iterator.hasNext()) {
+                        done = true;
+                        iterator = null;
+                        subscriber.onComplete();
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    done = true;
+                    iterator = null;
+                    subscriber.onError(e);
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
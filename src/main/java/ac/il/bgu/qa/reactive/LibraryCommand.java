@@ -0,0 +1,123 @@
+package ac.il.bgu.qa.reactive;
+
+/**
+ * Represents a library operation sent through a stream to a {@link ReactiveLibrary}.
+ * Commands are immutable.
+ */
+public class LibraryCommand {
+
+    /**
+     * The kinds of operations a command runs.
+     */
+    public enum Type {
+        // Borrows a book for a user.
+        BORROW,
+        // Returns the copy of a book held by a user.
+        RETURN,
+        // Notifies a user with the reviews of a book.
+        NOTIFY
+    }
+
+    // The kind of operation.
+    private final Type type;
+    // The ISBN of the book.
+    private final String ISBN;
+    // The Id of the user.
+    private final String userId;
+    // The idempotency key of a borrow or return, or null.
+    private final String idempotencyKey;
+
+    /**
+     * Constructs a new LibraryCommand.
+     *
+     * @param type           The kind of operation.
+     * @param ISBN           The ISBN of the book.
+     * @param userId         The Id of the user.
+     * @param idempotencyKey The idempotency key of a borrow or return, or null.
+     */
+    public LibraryCommand(Type type, String ISBN, String userId, String idempotencyKey) {
+        if (type == null) {
+            throw new IllegalArgumentException("Invalid command type.");
+        }
+        this.type = type;
+        this.ISBN = ISBN;
+        this.userId = userId;
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    /**
+     * Creates a command borrowing a book for a user.
+     *
+     * @param ISBN   The ISBN of the book.
+     * @param userId The Id of the user.
+     * @return The command.
+     */
+    public static LibraryCommand borrow(String ISBN, String userId) {
+        return new LibraryCommand(Type.BORROW, ISBN, userId, null);
+    }
+
+    /**
+     * Creates a command returning the copy of a book held by a user.
+     *
+     * @param ISBN   The ISBN of the book.
+     * @param userId The Id of the user.
+     * @return The command.
+     */
+    public static LibraryCommand returnBook(String ISBN, String userId) {
+        return new LibraryCommand(Type.RETURN, ISBN, userId, null);
+    }
+
+    /**
+     * Creates a command notifying a user with the reviews of a book.
+     *
+     * @param ISBN   The ISBN of the book.
+     * @param userId The Id of the user.
+     * @return The command.
+     */
+    public static LibraryCommand notify(String ISBN, String userId) {
+        return new LibraryCommand(Type.NOTIFY, ISBN, userId, null);
+    }
+
+    // Getter methods
+
+    /**
+     * Retrieves the kind of operation.
+     *
+     * @return The command type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the ISBN of the book.
+     *
+     * @return The ISBN.
+     */
+    public String getISBN() {
+        return ISBN;
+    }
+
+    /**
+     * Retrieves the Id of the user.
+     *
+     * @return The user Id.
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Retrieves the idempotency key of a borrow or return.
+     *
+     * @return The idempotency key, or null.
+     */
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + ISBN + " " + userId;
+    }
+}
@@ -0,0 +1,44 @@
+package ac.il.bgu.qa.reactive;
+
+/**
+ * Represents a message sent to a user, published by a {@link PublishingNotificationService}.
+ * Notifications are immutable.
+ */
+public class Notification {
+
+    // The Id of the user notified.
+    private final String userId;
+    // The message.
+    private final String message;
+
+    /**
+     * Constructs a new Notification.
+     *
+     * @param userId  The Id of the user notified.
+     * @param message The message.
+     */
+    public Notification(String userId, String message) {
+        this.userId = userId;
+        this.message = message;
+    }
+
+    // Getter methods
+
+    /**
+     * Retrieves the Id of the user notified.
+     *
+     * @return The user Id.
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Retrieves the message.
+     *
+     * @return The message.
+     */
+    public String getMessage() {
+        return message;
+    }
+}
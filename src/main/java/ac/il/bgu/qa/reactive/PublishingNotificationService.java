@@ -0,0 +1,165 @@
+package ac.il.bgu.qa.reactive;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.services.NotificationService;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link NotificationService} which publishes every notification to a single {@link Flow.Subscriber},
+ * such as a gateway pushing them to users' devices.
+ * <p>
+ * Notifications wait in a bounded buffer until the subscriber requests them. A notification sent while
+ * there is no subscriber or the buffer is full fails with a {@link NotificationException}, so a subscriber
+ * falling behind pushes back on the library, which retries or defers the notification as it does for any
+ * failed one, instead of notifications piling up in memory. Notifications are delivered to the subscriber
+ * on the thread sending them or requesting them.
+ */
+public class PublishingNotificationService implements NotificationService, Flow.Publisher<Notification>, Closeable {
+
+    // The maximal number of notifications waiting for the subscriber.
+    private final int capacity;
+
+    // The subscriber, once subscribed.
+    private final AtomicReference<Flow.Subscriber<? super Notification>> subscriber = new AtomicReference<>();
+    // Whether the subscriber's onSubscribe returned, so it may be sent other signals.
+    private volatile boolean subscribed;
+
+    // The notifications waiting for the subscriber.
+    private final Queue<Notification> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+    // The number of notifications requested by the subscriber.
+    private final AtomicLong requested = new AtomicLong();
+
+    private volatile boolean cancelled;
+    private volatile boolean closed;
+    private volatile Throwable requestError;
+
+    // Serialises the drain loop; the fields below are only accessed by it.
+    private final AtomicInteger wip = new AtomicInteger();
+    private long emitted;
+    private boolean terminated;
+
+    // Number of notifications refused for lack of a subscriber or of room in the buffer.
+    private final AtomicLong refused = new AtomicLong();
+
+    /**
+     * Constructs a new PublishingNotificationService.
+     *
+     * @param capacity The maximal number of notifications waiting for the subscriber.
+     */
+    public PublishingNotificationService(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        }
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void notifyUser(String userId, String message) throws NotificationException {
+        if (!subscribed || cancelled || closed || requestError != null) {
+            refused.incrementAndGet();
+            throw new NotificationException("No notification subscriber.");
+        }
+        if (buffered.incrementAndGet() > capacity) {
+            buffered.decrementAndGet();
+            refused.incrementAndGet();
+            throw new NotificationException("Notification subscriber is behind.");
+        }
+        buffer.add(new Notification(userId, message));
+        drain();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Notification> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!this.subscriber.compareAndSet(null, subscriber)) {
+            Subscriptions.reject(subscriber, new IllegalStateException("Only one subscriber allowed."));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    requestError = new IllegalArgumentException("Non-positive request: " + n);
+                } else {
+                    Subscriptions.addDemand(requested, n);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                drain();
+            }
+        });
+        subscribed = true;
+        drain();
+    }
+
+    /**
+     * Refuses further notifications, and completes the stream once the buffered ones are delivered.
+     * Notifications sent concurrently with closing may be dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        drain();
+    }
+
+    /**
+     * Retrieves the number of notifications refused for lack of a subscriber or of room in the buffer.
+     *
+     * @return The number of refused notifications.
+     */
+    public long getRefused() {
+        return refused.get();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            drainOnce();
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainOnce() {
+        if (terminated) {
+            return;
+        } else if (cancelled) {
+            terminated = true;
+            buffer.clear();
+            return;
+        } else if (!subscribed) {
+            return;
+        }
+        Flow.Subscriber<? super Notification> target = subscriber.get();
+        if (requestError != null) {
+            terminated = true;
+            buffer.clear();
+            target.onError(requestError);
+            return;
+        }
+        Notification notification;
+        while (emitted != requested.get() && !cancelled && (notification = buffer.poll()) != null) {
+            buffered.decrementAndGet();
+            emitted++;
+            target.onNext(notification);
+        }
+        if (closed && !cancelled && buffer.isEmpty()) {
+            terminated = true;
+            target.onComplete();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ac.il.bgu.qa.reactive;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link Flow}-based front of a {@link Library}, for callers which must not block a thread per call.
+ * <p>
+ * Command streams are run on an executor with at most the given number of commands in flight per stream,
+ * and only pulled from their publisher as results are requested, so the backpressure of the result
+ * subscriber reaches the command source. Notify commands call the library's review and notification
+ * services within that bound; a {@link StreamingReviewService} and a {@link PublishingNotificationService}
+ * carry the backpressure on to reactive review sources and notification subscribers.
+ */
+public class ReactiveLibrary {
+
+    // The library commands are run by.
+    private final Library library;
+    // The executor commands and scans run on.
+    private final Executor executor;
+    // The maximal number of commands of one stream in flight.
+    private final int maxInFlight;
+
+    /**
+     * Constructs a new ReactiveLibrary.
+     *
+     * @param library     The library commands are run by.
+     * @param executor    The executor commands and scans run on.
+     * @param maxInFlight The maximal number of commands of one stream in flight.
+     */
+    public ReactiveLibrary(Library library, Executor executor, int maxInFlight) {
+        if (library == null) {
+            throw new IllegalArgumentException("Invalid library.");
+        } else if (executor == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        } else if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Invalid number of commands in flight.");
+        }
+        this.library = library;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Runs a stream of commands, publishing their results in the order of the commands to a single
+     * subscriber. A failed command is reported by its result and does not end the stream. Commands in
+     * flight together may run in any order, so commands which must run in order, such as borrowing and
+     * then returning the same book, belong to a stream with a single command in flight or to separate
+     * requests of the subscriber.
+     *
+     * @param commands The commands, subscribed to at once.
+     * @return The results of the commands.
+     */
+    public Flow.Publisher<CommandResult> execute(Flow.Publisher<LibraryCommand> commands) {
+        BoundedMapProcessor<LibraryCommand, CommandResult> results = new BoundedMapProcessor<>(this::run, executor, maxInFlight);
+        commands.subscribe(results);
+        return results;
+    }
+
+    /**
+     * Streams the books of a catalog, read lazily as its subscribers request them.
+     *
+     * @param catalog The books, iterated once per subscriber.
+     * @return The books of the catalog.
+     */
+    public Flow.Publisher<Book> scanBooks(Iterable<Book> catalog) {
+        return new IterablePublisher<>(catalog, executor);
+    }
+
+    // Runs a command, reporting its failure in its result.
+    private CommandResult run(LibraryCommand command) {
+        try {
+            switch (command.getType()) {
+                case BORROW:
+                    library.borrowBook(command.getISBN(), command.getUserId(), command.getIdempotencyKey());
+                    break;
+                case RETURN:
+                    library.returnBook(command.getISBN(), command.getUserId(), command.getIdempotencyKey());
+                    break;
+                default:
+                    library.notifyUserWithBookReviews(command.getISBN(), command.getUserId());
+            }
+        } catch (RuntimeException e) {
+            return new CommandResult(command, e);
+        }
+        return new CommandResult(command, null);
+    }
+}
@@ -0,0 +1,134 @@
+package ac.il.bgu.qa.reactive;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.util.Deadline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A {@link ReviewService} over a reactive source which streams the reviews of a book, such as a
+ * non-blocking client of a remote review service.
+ * <p>
+ * Only the reviews a notification includes are requested, one batch of the maximal number of reviews,
+ * after which the stream is cancelled, so a book with many reviews is never streamed in full. The caller
+ * waits at most the timeout, or until the current {@link Deadline} if it is earlier, and the stream is
+ * cancelled when it is abandoned.
+ */
+public class StreamingReviewService implements ReviewService {
+
+    // Creates the stream of the reviews of a book, given its ISBN.
+    private final Function<String, Flow.Publisher<String>> source;
+    // The maximal number of reviews requested per book.
+    private final int maxReviews;
+    // The maximal duration of a fetch, in nanoseconds.
+    private final long timeoutNanos;
+
+    /**
+     * Constructs a new StreamingReviewService.
+     *
+     * @param source     Creates the stream of the reviews of a book, given its ISBN.
+     * @param maxReviews The maximal number of reviews requested per book.
+     * @param timeout    The maximal duration of a fetch.
+     * @param unit       The unit of the timeout.
+     */
+    public StreamingReviewService(Function<String, Flow.Publisher<String>> source, int maxReviews, long timeout, TimeUnit unit) {
+        if (source == null) {
+            throw new IllegalArgumentException("Invalid review source.");
+        } else if (maxReviews <= 0) {
+            throw new IllegalArgumentException("Invalid number of reviews.");
+        }
+        this.source = source;
+        this.maxReviews = maxReviews;
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        long budget = Deadline.remainingNanos(timeoutNanos);
+        if (budget <= 0) {
+            throw new ReviewException("Deadline exceeded before fetching reviews.");
+        }
+        Collector collector = new Collector();
+        source.apply(ISBN).subscribe(collector);
+        try {
+            if (!collector.done.await(budget, TimeUnit.NANOSECONDS)) {
+                collector.cancel();
+                throw new ReviewException("Review service timed out.");
+            }
+        } catch (InterruptedException e) {
+            collector.cancel();
+            Thread.currentThread().interrupt();
+            throw new ReviewException("Interrupted while fetching reviews.");
+        }
+        if (collector.failure instanceof RuntimeException) {
+            throw (RuntimeException) collector.failure;
+        } else if (collector.failure != null) {
+            throw new ReviewException("Review service failed.");
+        }
+        return collector.reviews;
+    }
+
+    @Override
+    public void close() {
+        // Every stream is cancelled or completed by the time its fetch returns.
+    }
+
+    // Collects up to the maximal number of reviews of one stream.
+    private final class Collector implements Flow.Subscriber<String> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        // Written before done is counted down.
+        private final List<String> reviews = new ArrayList<>();
+        private Throwable failure;
+        private volatile Flow.Subscription subscription;
+        private volatile boolean cancelled;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (this.subscription != null || cancelled) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            subscription.request(maxReviews);
+        }
+
+        @Override
+        public void onNext(String review) {
+            if (done.getCount() == 0) {
+                return;
+            }
+            reviews.add(review);
+            if (reviews.size() == maxReviews) {
+                // Every requested review arrived; the rest of the stream is not needed.
+                subscription.cancel();
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (done.getCount() != 0) {
+                failure = throwable;
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        private void cancel() {
+            cancelled = true;
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+}
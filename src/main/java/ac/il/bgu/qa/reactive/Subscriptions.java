@@ -0,0 +1,42 @@
+package ac.il.bgu.qa.reactive;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Helpers shared by the publishers of this package.
+ */
+final class Subscriptions {
+
+    // A subscription which ignores requests, given to subscribers rejected right away.
+    static final Flow.Subscription EMPTY = new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private Subscriptions() {
+    }
+
+    // Adds to a demand, capped at Long.MAX_VALUE, which stands for an unbounded demand.
+    static void addDemand(AtomicLong demand, long n) {
+        long current;
+        long updated;
+        do {
+            current = demand.get();
+            if (current == Long.MAX_VALUE) {
+                return;
+            }
+            updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!demand.compareAndSet(current, updated));
+    }
+
+    // Rejects a subscriber, as a publisher which serves a single subscriber does with any later one.
+    static void reject(Flow.Subscriber<?> subscriber, Throwable reason) {
+        subscriber.onSubscribe(EMPTY);
+        subscriber.onError(reason);
+    }
+}
@@ -0,0 +1,171 @@
+package ac.il.bgu.qa.replication;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+
+/**
+ * Represents a write applied to a primary database, shipped to its replicas through a {@link ChangeLog}.
+ * Changes are immutable, and numbered in the order they were applied to the primary.
+ */
+public class Change {
+
+    /**
+     * The kinds of writes shipped to replicas.
+     */
+    public enum Type {
+        // A book was added to the catalog.
+        BOOK_ADDED,
+        // A user was registered.
+        USER_REGISTERED,
+        // A copy of a book was borrowed by a user.
+        BORROWED,
+        // A copy of a book was returned.
+        RETURNED
+    }
+
+    // The position of the change in the log, starting at 1.
+    private final long sequence;
+    // The kind of change.
+    private final Type type;
+    // The time the change was logged, in milliseconds since the epoch.
+    private final long timestamp;
+    // The ISBN of the book involved, or null if no book is involved.
+    private final String ISBN;
+    // The Id of the user involved, or null if no user is involved or the user is not known.
+    private final String userId;
+    // A snapshot of the added book, or null unless a book was added. Never handed out, only copied.
+    private final Book book;
+    // The registered user, or null unless a user was registered.
+    private final User user;
+
+    /**
+     * Constructs a new Change.
+     *
+     * @param sequence  The position of the change in the log.
+     * @param type      The kind of change.
+     * @param timestamp The time the change was logged, in milliseconds since the epoch.
+     * @param ISBN      The ISBN of the book involved, or null.
+     * @param userId    The Id of the user involved, or null.
+     * @param book      The added book, or null. It is copied, so later changes to it are not shipped.
+     * @param user      The registered user, or null.
+     */
+    public Change(long sequence, Type type, long timestamp, String ISBN, String userId, Book book, User user) {
+        this.sequence = sequence;
+        this.type = type;
+        this.timestamp = timestamp;
+        this.ISBN = ISBN;
+        this.userId = userId;
+        this.book = book == null ? null : copyOf(book);
+        this.user = user;
+    }
+
+    // Getter methods
+
+    /**
+     * Retrieves the position of the change in the log.
+     *
+     * @return The sequence number, starting at 1.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Retrieves the kind of change.
+     *
+     * @return The change type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the time the change was logged.
+     *
+     * @return The timestamp, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Retrieves the ISBN of the book involved.
+     *
+     * @return The ISBN, or null if no book is involved.
+     */
+    public String getISBN() {
+        return ISBN;
+    }
+
+    /**
+     * Retrieves the Id of the user involved.
+     *
+     * @return The user Id, or null if no user is involved or the user is not known.
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Creates a copy of the added book, as it was when the change was logged.
+     * Every call returns a new copy, so replicas never share books.
+     *
+     * @return A new book, or null unless a book was added.
+     */
+    public Book newBook() {
+        return book == null ? null : copyOf(book);
+    }
+
+    /**
+     * Retrieves the registered user.
+     *
+     * @return The user, or null unless a user was registered.
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * Applies the change to a copy of the primary's database, as the primary's database applied it.
+     *
+     * @param store The copy to change.
+     */
+    void applyTo(InMemoryDatabaseService store) {
+        switch (type) {
+            case BOOK_ADDED:
+                store.addBook(ISBN, newBook());
+                break;
+            case USER_REGISTERED:
+                store.registerUser(userId, user);
+                break;
+            case BORROWED: {
+                Book stored = store.getBookByISBN(ISBN);
+                if (stored != null && !stored.isBorrowed()) {
+                    stored.borrow();
+                }
+                store.borrowBook(ISBN, userId);
+                break;
+            }
+            default: {
+                Book stored = store.getBookByISBN(ISBN);
+                if (stored != null && stored.hasBorrowedCopies()) {
+                    stored.returnBook();
+                }
+                if (userId == null) {
+                    store.returnBook(ISBN);
+                } else if (store.getHolders(ISBN).contains(userId)) {
+                    store.returnBook(ISBN, userId);
+                }
+            }
+        }
+    }
+
+    // Copies a book with its copies on the shelf and its version.
+    static Book copyOf(Book book) {
+        // Read the version first: a change between the two reads only makes the copy look outdated.
+        long version = book.getVersion();
+        return new Book(book.getISBN(), book.getTitle(), book.getAuthor(), book.getCopies(),
+                book.getAvailableCopies(), version);
+    }
+}
@@ -0,0 +1,204 @@
+package ac.il.bgu.qa.replication;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered, in-memory log of the writes applied to a primary database, read by its replicas.
+ * <p>
+ * Every appended {@link Change} gets the next sequence number. Each reader holds a {@link Subscription}
+ * which polls the changes after its position. Changes read by every subscription are applied to a compacted
+ * copy of the database and discarded, so the log holds the backlog of the slowest replica and one copy of
+ * the catalog. Until the first subscription is taken, nothing is discarded. Replicas subscribing later are
+ * seeded with the compacted copy, so they start from the complete state instead of missing the discarded changes.
+ */
+public class ChangeLog {
+
+    // The number of read changes discarded at a time, so discarding is amortised over many polls.
+    private static final int DISCARD_BATCH = 1024;
+
+    // The clock timestamping changes.
+    private final Clock clock;
+
+    // The changes not yet read by every subscription, oldest first. Guarded by this.
+    private final List<Change> changes = new ArrayList<>();
+    // The sequence number of the first retained change. Guarded by this.
+    private long firstSequence = 1;
+    // The sequence number of the last appended change, 0 if none.
+    private volatile long lastSequence;
+    // The open subscriptions. Guarded by this.
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    // The state produced by the discarded changes, which later subscribers are seeded with. Guarded by this.
+    private final InMemoryDatabaseService compacted = new InMemoryDatabaseService();
+
+    /**
+     * Constructs a new ChangeLog.
+     *
+     * @param clock The clock timestamping changes.
+     */
+    public ChangeLog(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("Invalid clock.");
+        }
+        this.clock = clock;
+    }
+
+    /**
+     * Appends a change.
+     *
+     * @param type   The kind of change.
+     * @param ISBN   The ISBN of the book involved, or null.
+     * @param userId The Id of the user involved, or null.
+     * @param book   The added book, or null.
+     * @param user   The registered user, or null.
+     * @return The sequence number of the change.
+     */
+    public synchronized long append(Change.Type type, String ISBN, String userId, Book book, User user) {
+        long sequence = lastSequence + 1;
+        changes.add(new Change(sequence, type, clock.millis(), ISBN, userId, book, user));
+        lastSequence = sequence;
+        return sequence;
+    }
+
+    /**
+     * Retrieves the sequence number of the last appended change. Never blocks.
+     *
+     * @return The sequence number, or 0 if nothing was appended.
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Retrieves the number of changes held by the log.
+     *
+     * @return The number of retained changes.
+     */
+    public synchronized int size() {
+        return changes.size();
+    }
+
+    /**
+     * Subscribes to the changes, starting at the oldest retained one. Changes discarded before are not seen;
+     * readers which need the complete state should use {@link #subscribe(InMemoryDatabaseService)}.
+     *
+     * @return A new subscription.
+     */
+    public synchronized Subscription subscribe() {
+        Subscription subscription = new Subscription(firstSequence - 1);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Subscribes to the changes after copying the state the discarded changes produced into an empty database,
+     * so that applying the polled changes to it reproduces every write to the primary.
+     *
+     * @param seed The empty database receiving the compacted state.
+     * @return A new subscription, starting at the oldest retained change.
+     */
+    public synchronized Subscription subscribe(InMemoryDatabaseService seed) {
+        if (seed == null) {
+            throw new IllegalArgumentException("Invalid seed database.");
+        }
+        for (User user : compacted.getUsers()) {
+            seed.registerUser(user.getId(), user);
+        }
+        for (Book book : compacted.getBooks()) {
+            seed.addBook(book.getISBN(), Change.copyOf(book));
+            for (String userId : compacted.getHolders(book.getISBN())) {
+                seed.borrowBook(book.getISBN(), userId);
+            }
+        }
+        return subscribe();
+    }
+
+    // Discards the changes read by every subscription, once enough of them accumulated.
+    private void discardRead() {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        long read = Long.MAX_VALUE;
+        for (Subscription subscription : subscriptions) {
+            read = Math.min(read, subscription.position);
+        }
+        int count = (int) (read - firstSequence + 1);
+        if (count >= DISCARD_BATCH || (count > 0 && count == changes.size())) {
+            List<Change> discarded = changes.subList(0, count);
+            for (Change change : discarded) {
+                change.applyTo(compacted);
+            }
+            discarded.clear();
+            firstSequence += count;
+        }
+    }
+
+    /**
+     * A reader's position in the log.
+     */
+    public final class Subscription implements Closeable {
+
+        // The sequence number of the last change read. Guarded by the log.
+        private long position;
+        private boolean closed;
+
+        private Subscription(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Reads the next changes, advancing past them.
+         *
+         * @param max The maximal number of changes to read.
+         * @return The changes after the previous poll, oldest first, empty if there are none.
+         */
+        public List<Change> poll(int max) {
+            synchronized (ChangeLog.this) {
+                if (closed) {
+                    throw new IllegalStateException("Subscription closed.");
+                }
+                int from = (int) (position - firstSequence + 1);
+                int to = Math.min(changes.size(), from + max);
+                if (from >= to) {
+                    return Collections.emptyList();
+                }
+                List<Change> polled = new ArrayList<>(changes.subList(from, to));
+                position = polled.get(polled.size() - 1).getSequence();
+                discardRead();
+                return polled;
+            }
+        }
+
+        /**
+         * Retrieves the sequence number of the last change read.
+         *
+         * @return The position of the subscription.
+         */
+        public long getPosition() {
+            synchronized (ChangeLog.this) {
+                return position;
+            }
+        }
+
+        /**
+         * Ends the subscription, so the log no longer retains changes for it.
+         */
+        @Override
+        public void close() {
+            synchronized (ChangeLog.this) {
+                if (!closed) {
+                    closed = true;
+                    subscriptions.remove(this);
+                    discardRead();
+                }
+            }
+        }
+    }
+}
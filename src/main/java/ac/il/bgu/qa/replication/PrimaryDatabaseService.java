@@ -0,0 +1,163 @@
+package ac.il.bgu.qa.replication;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.BookQuery;
+import ac.il.bgu.qa.services.DatabaseService;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Function;
+
+/**
+ * A {@link DatabaseService} which forwards every call to another database service, and appends every
+ * write it applied to a {@link ChangeLog} shipped to {@link ReplicaDatabaseService replicas}.
+ * <p>
+ * A write and its change are made under a lock striped by key, so the changes of each book and each user
+ * are logged in the order they were applied. Writes to different keys proceed concurrently.
+ */
+public class PrimaryDatabaseService implements DatabaseService {
+
+    // The number of lock stripes, a power of two.
+    private static final int STRIPES = 64;
+
+    // The database service calls are forwarded to.
+    private final DatabaseService delegate;
+    // The log writes are appended to.
+    private final ChangeLog log;
+    // The locks ordering the writes and changes of the keys hashed to them.
+    private final Object[] stripes = new Object[STRIPES];
+
+    /**
+     * Constructs a new PrimaryDatabaseService.
+     *
+     * @param delegate The database service calls are forwarded to.
+     * @param log      The log writes are appended to.
+     */
+    public PrimaryDatabaseService(DatabaseService delegate, ChangeLog log) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        } else if (log == null) {
+            throw new IllegalArgumentException("Invalid change log.");
+        }
+        this.delegate = delegate;
+        this.log = log;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Retrieves the log writes are appended to.
+     *
+     * @return The change log.
+     */
+    public ChangeLog getChangeLog() {
+        return log;
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        synchronized (stripeOf(ISBN)) {
+            // Snapshot the book before it is visible to readers of the primary, which may borrow it.
+            Book snapshot = book == null ? null : new Book(book.getISBN(), book.getTitle(), book.getAuthor(),
+                    book.getCopies(), book.getAvailableCopies(), book.getVersion());
+            delegate.addBook(ISBN, book);
+            log.append(Change.Type.BOOK_ADDED, ISBN, null, snapshot, null);
+        }
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        synchronized (stripeOf(id)) {
+            delegate.registerUser(id, user);
+            log.append(Change.Type.USER_REGISTERED, null, id, null, user);
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return delegate.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        synchronized (stripeOf(ISBN)) {
+            delegate.borrowBook(ISBN, userId);
+            log.append(Change.Type.BORROWED, ISBN, userId, null, null);
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        synchronized (stripeOf(ISBN)) {
+            delegate.returnBook(ISBN);
+            log.append(Change.Type.RETURNED, ISBN, null, null, null);
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN, String userId) {
+        synchronized (stripeOf(ISBN)) {
+            delegate.returnBook(ISBN, userId);
+            log.append(Change.Type.RETURNED, ISBN, userId, null, null);
+        }
+    }
+
+    @Override
+    public boolean supportsConditionalUpdates() {
+        return delegate.supportsConditionalUpdates();
+    }
+
+    @Override
+    public boolean compareAndSetBorrowed(String ISBN, long expectedVersion, String userId) {
+        synchronized (stripeOf(ISBN)) {
+            if (!delegate.compareAndSetBorrowed(ISBN, expectedVersion, userId)) {
+                return false;
+            }
+            log.append(Change.Type.BORROWED, ISBN, userId, null, null);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean compareAndSetReturned(String ISBN, long expectedVersion, String userId) {
+        synchronized (stripeOf(ISBN)) {
+            if (!delegate.compareAndSetReturned(ISBN, expectedVersion, userId)) {
+                return false;
+            }
+            log.append(Change.Type.RETURNED, ISBN, userId, null, null);
+            return true;
+        }
+    }
+
+    @Override
+    public List<String> getHolders(String ISBN) {
+        return delegate.getHolders(ISBN);
+    }
+
+    @Override
+    public Spliterator<Book> scanBooks() {
+        return delegate.scanBooks();
+    }
+
+    @Override
+    public Spliterator<User> scanUsers() {
+        return delegate.scanUsers();
+    }
+
+    @Override
+    public <R> Spliterator<R> scanBooks(BookQuery query, Function<? super Book, ? extends R> projection) {
+        return delegate.scanBooks(query, projection);
+    }
+
+    private Object stripeOf(String key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+}
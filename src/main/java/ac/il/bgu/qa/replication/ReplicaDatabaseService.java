@@ -0,0 +1,205 @@
+package ac.il.bgu.qa.replication;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.BookQuery;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A read-only {@link DatabaseService} which keeps its own copy of a primary database, by applying the
+ * changes of the primary's {@link ChangeLog} in order.
+ * <p>
+ * Changes are applied by {@link #catchUp()}, called directly or periodically in the background once
+ * started, so the replica lags behind the primary. The lag is tracked both as the sequence number of the
+ * last applied change, for readers which must see their own writes, and as the time the replica was last
+ * known to be up to date, for readers which accept a bounded staleness. Books read from a replica are its
+ * own copies, which must not be changed; writes through the {@link DatabaseService} interface are rejected.
+ */
+public class ReplicaDatabaseService implements DatabaseService, Closeable {
+
+    // The number of changes taken from the log at a time.
+    private static final int BATCH_SIZE = 1000;
+
+    // The log changes are read from.
+    private final ChangeLog log;
+    // The position of this replica in the log. Guarded by itself.
+    private final ChangeLog.Subscription subscription;
+    // The clock measuring staleness.
+    private final Clock clock;
+    // The replicated books, users and loans.
+    private final InMemoryDatabaseService store = new InMemoryDatabaseService();
+
+    // The sequence number of the last applied change.
+    private volatile long appliedSequence;
+    // The last time every change logged before it was known to be applied, in milliseconds since the epoch.
+    private volatile long freshAsOfMillis;
+
+    // The scheduled catch-ups, if started. Guarded by this.
+    private ScheduledFuture<?> catchUps;
+
+    /**
+     * Constructs a new ReplicaDatabaseService, starting from the state the log compacted and the changes it
+     * retained. Replicas created at any time, including after the log discarded changes, see every write.
+     *
+     * @param log   The log of the primary database.
+     * @param clock The clock measuring staleness.
+     */
+    public ReplicaDatabaseService(ChangeLog log, Clock clock) {
+        if (log == null) {
+            throw new IllegalArgumentException("Invalid change log.");
+        } else if (clock == null) {
+            throw new IllegalArgumentException("Invalid clock.");
+        }
+        this.log = log;
+        this.clock = clock;
+        this.subscription = log.subscribe(store);
+        this.appliedSequence = subscription.getPosition();
+        this.freshAsOfMillis = clock.millis();
+    }
+
+    /**
+     * Runs a catch-up on the scheduler periodically, until closed.
+     *
+     * @param scheduler The scheduler running the catch-ups.
+     * @param period    The time between catch-ups.
+     * @param unit      The unit of the period.
+     */
+    public synchronized void start(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        if (catchUps != null) {
+            throw new IllegalStateException("Replica already started.");
+        }
+        catchUps = scheduler.scheduleWithFixedDelay(this::catchUp, period, period, unit);
+    }
+
+    /**
+     * Stops the periodic catch-ups and unsubscribes from the log. A catch-up in progress is completed.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (catchUps != null) {
+                catchUps.cancel(false);
+            }
+        }
+        synchronized (subscription) {
+            subscription.close();
+        }
+    }
+
+    /**
+     * Applies every change logged since the previous catch-up.
+     *
+     * @return The number of changes applied.
+     */
+    public int catchUp() {
+        synchronized (subscription) {
+            // Every change logged before now is applied once the log is drained.
+            long now = clock.millis();
+            int count = 0;
+            List<Change> batch;
+            while (!(batch = subscription.poll(BATCH_SIZE)).isEmpty()) {
+                for (Change change : batch) {
+                    change.applyTo(store);
+                    appliedSequence = change.getSequence();
+                }
+                count += batch.size();
+            }
+            freshAsOfMillis = now;
+            return count;
+        }
+    }
+
+    /**
+     * Retrieves the sequence number of the last change applied. Never blocks.
+     *
+     * @return The sequence number, 0 if nothing was applied.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Retrieves how far this replica may lag behind the primary: 0 if every logged change is applied,
+     * otherwise the time since the replica was last known to be up to date. Never blocks.
+     *
+     * @return The staleness, in milliseconds.
+     */
+    public long getStalenessMillis() {
+        if (appliedSequence >= log.getLastSequence()) {
+            return 0;
+        }
+        return Math.max(0, clock.millis() - freshAsOfMillis);
+    }
+
+    /**
+     * Retrieves the Ids of the users holding copies of a book, as of the last applied change.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Ids of the borrowing users in borrowing order, empty if the book is not borrowed.
+     */
+    @Override
+    public List<String> getHolders(String ISBN) {
+        return store.getHolders(ISBN);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        throw new UnsupportedOperationException("Read-only replica.");
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        throw new UnsupportedOperationException("Read-only replica.");
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return store.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return store.getUserById(userId);
+    }
+
+    @Override
+    public Spliterator<Book> scanBooks() {
+        // Reports scan the replica's own copy, keeping their load off the primary.
+        return store.scanBooks();
+    }
+
+    @Override
+    public Spliterator<User> scanUsers() {
+        return store.scanUsers();
+    }
+
+    @Override
+    public <R> Spliterator<R> scanBooks(BookQuery query, Function<? super Book, ? extends R> projection) {
+        return store.scanBooks(query, projection);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        throw new UnsupportedOperationException("Read-only replica.");
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        throw new UnsupportedOperationException("Read-only replica.");
+    }
+
+    @Override
+    public void returnBook(String ISBN, String userId) {
+        throw new UnsupportedOperationException("Read-only replica.");
+    }
+}
@@ -0,0 +1,129 @@
+package ac.il.bgu.qa.replication;
+
+import ac.il.bgu.qa.services.DatabaseService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chooses the database each read is served from: one of the replicas of a primary database when a replica
+ * is fresh enough, otherwise the primary itself.
+ * <p>
+ * A replica is fresh enough if it lags behind the primary by no more than the maximal staleness, and,
+ * with read-your-writes, if it applied the last write made for the reading user as well. Writes are
+ * attributed to users through {@link #recordWrite(String)}. Reads are spread over the eligible replicas
+ * starting at a random one, so concurrent readers do not contend on shared state.
+ */
+public class ReplicaReadRouter {
+
+    // The primary database, serving the reads no replica is fresh enough for.
+    private final PrimaryDatabaseService primary;
+    // The replicas of the primary.
+    private final ReplicaDatabaseService[] replicas;
+    // The maximal staleness of a replica serving reads, in milliseconds.
+    private final long maxStalenessMillis;
+    // Whether users must see their own writes.
+    private final boolean readYourWrites;
+
+    // The sequence number of the last change logged for each user's writes, with read-your-writes.
+    private final ConcurrentMap<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    // Metrics.
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryReads = new LongAdder();
+
+    /**
+     * Constructs a new ReplicaReadRouter.
+     *
+     * @param primary            The primary database.
+     * @param replicas           The replicas of the primary, fed by its change log.
+     * @param maxStalenessMillis The maximal staleness of a replica serving reads, in milliseconds,
+     *                           or {@link Long#MAX_VALUE} for no bound.
+     * @param readYourWrites     Whether a user's reads must see the user's own writes.
+     */
+    public ReplicaReadRouter(PrimaryDatabaseService primary, List<ReplicaDatabaseService> replicas,
+                             long maxStalenessMillis, boolean readYourWrites) {
+        if (primary == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        } else if (replicas == null || replicas.contains(null)) {
+            throw new IllegalArgumentException("Invalid replicas.");
+        } else if (maxStalenessMillis < 0) {
+            throw new IllegalArgumentException("Invalid staleness.");
+        }
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas).toArray(new ReplicaDatabaseService[0]);
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.readYourWrites = readYourWrites;
+    }
+
+    /**
+     * Retrieves the primary database, which must serve every write.
+     *
+     * @return The primary database.
+     */
+    public PrimaryDatabaseService getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Chooses the database a read is served from.
+     *
+     * @param userId The Id of the reading user, or null if unknown.
+     * @return A replica fresh enough for the read, or the primary if there is none.
+     */
+    public DatabaseService forRead(String userId) {
+        if (replicas.length > 0) {
+            long required = 0;
+            if (readYourWrites && userId != null) {
+                Long lastWrite = lastWrites.get(userId);
+                required = lastWrite == null ? 0 : lastWrite;
+            }
+            int start = replicas.length == 1 ? 0 : ThreadLocalRandom.current().nextInt(replicas.length);
+            for (int i = 0; i < replicas.length; i++) {
+                ReplicaDatabaseService replica = replicas[(start + i) % replicas.length];
+                if (replica.getAppliedSequence() >= required && replica.getStalenessMillis() <= maxStalenessMillis) {
+                    replicaReads.increment();
+                    return replica;
+                }
+            }
+        }
+        primaryReads.increment();
+        return primary;
+    }
+
+    /**
+     * Records that a write was made for a user through the primary, so that, with read-your-writes,
+     * the user's later reads are only served by replicas which applied it.
+     *
+     * @param userId The Id of the user, or null if unknown.
+     */
+    public void recordWrite(String userId) {
+        if (readYourWrites && userId != null) {
+            // Every change logged so far includes the user's write.
+            long sequence = primary.getChangeLog().getLastSequence();
+            lastWrites.merge(userId, sequence, Math::max);
+        }
+    }
+
+    /**
+     * Retrieves the number of reads served by replicas.
+     *
+     * @return The number of replica reads.
+     */
+    public long getReplicaReads() {
+        return replicaReads.sum();
+    }
+
+    /**
+     * Retrieves the number of reads served by the primary.
+     *
+     * @return The number of primary reads.
+     */
+    public long getPrimaryReads() {
+        return primaryReads.sum();
+    }
+}
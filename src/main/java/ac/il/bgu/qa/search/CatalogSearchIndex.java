@@ -0,0 +1,218 @@
+package ac.il.bgu.qa.search;
+
+import ac.il.bgu.qa.Book;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-process inverted index over the titles and authors of the books in the catalog.
+ * <p>
+ * Titles and authors are split into tokens, which are lower-cased and stripped of diacritics.
+ * Every book gets a sequential document number, and each token maps to a sorted array of the
+ * document numbers containing it. A query matches the books containing all of its tokens, where
+ * the last token may also be a prefix of a word, to support autocomplete while typing.
+ * Books matching the last token as a whole word are ranked before books matching it only as a prefix;
+ * within each group books are returned in the order they were added.
+ */
+public class CatalogSearchIndex {
+
+    // Posting lists keyed by token, sorted to support prefix lookups.
+    private final NavigableMap<String, Postings> postings = new TreeMap<>();
+
+    // The ISBN of each document, indexed by document number.
+    private final List<String> ISBNs = new ArrayList<>();
+
+    // The document number of each indexed ISBN.
+    private final Map<String, Integer> documents = new HashMap<>();
+
+    // The document numbers of the books which are currently borrowed.
+    private final BitSet borrowed = new BitSet();
+
+    // Guards all of the above. Searches share the lock, updates take it exclusively.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds a book to the index. Adding a book whose ISBN is already indexed has no effect.
+     *
+     * @param book The book to be indexed.
+     */
+    public void addBook(Book book) {
+        List<String> tokens = tokenize(book.getTitle() + " " + book.getAuthor());
+        lock.writeLock().lock();
+        try {
+            if (documents.containsKey(book.getISBN())) {
+                return;
+            }
+            int document = ISBNs.size();
+            ISBNs.add(book.getISBN());
+            documents.put(book.getISBN(), document);
+            borrowed.set(document, book.isBorrowed());
+            for (String token : tokens) {
+                Postings list = postings.get(token);
+                if (list == null) {
+                    list = new Postings();
+                    postings.put(token, list);
+                }
+                list.add(document);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records the borrowing status of an indexed book, used for "available only" searches.
+     *
+     * @param ISBN       The International Standard Book Number of the book.
+     * @param isBorrowed true if the book is borrowed, otherwise false.
+     */
+    public void setBorrowed(String ISBN, boolean isBorrowed) {
+        lock.writeLock().lock();
+        try {
+            Integer document = documents.get(ISBN);
+            if (document != null) {
+                borrowed.set(document, isBorrowed);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Searches the index for books whose title or author contain all the words in a query.
+     *
+     * @param query         The words to search for. The last word may be incomplete.
+     * @param limit         The maximal number of results to return.
+     * @param availableOnly true to leave out books which are currently borrowed.
+     * @return The ISBNs of up to {@code limit} matching books, best matches first.
+     */
+    public List<String> search(String query, int limit, boolean availableOnly) {
+        List<String> results = new ArrayList<>();
+        List<String> tokens = tokenize(query == null ? "" : query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return results;
+        }
+        String last = tokens.get(tokens.size() - 1);
+        lock.readLock().lock();
+        try {
+            // Every token but the last must match a whole word.
+            List<Postings> required = new ArrayList<>();
+            for (String token : tokens.subList(0, tokens.size() - 1)) {
+                Postings list = postings.get(token);
+                if (list == null) {
+                    return results;
+                }
+                required.add(list);
+            }
+
+            // First collect books where the last token is a whole word, then books where it is only a prefix.
+            Postings exact = postings.get(last);
+            if (exact != null) {
+                collect(exact, required, availableOnly, limit, results);
+            }
+            for (Map.Entry<String, Postings> entry : postings.subMap(last, false, last + Character.MAX_VALUE, true).entrySet()) {
+                if (results.size() >= limit) {
+                    break;
+                }
+                collect(entry.getValue(), required, availableOnly, limit, results);
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of books in the index.
+     *
+     * @return The number of indexed books.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ISBNs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Appends the documents of a posting list which appear in all required lists, skipping duplicates.
+    // The intersection is driven by the shortest list, so rare words keep the search fast.
+    private void collect(Postings candidates, List<Postings> required, boolean availableOnly, int limit, List<String> results) {
+        Postings driver = candidates;
+        for (Postings list : required) {
+            if (list.size < driver.size) {
+                driver = list;
+            }
+        }
+        for (int i = 0; i < driver.size && results.size() < limit; i++) {
+            int document = driver.documents[i];
+            if (availableOnly && borrowed.get(document)) {
+                continue;
+            }
+            boolean matches = driver == candidates || candidates.contains(document);
+            for (int j = 0; matches && j < required.size(); j++) {
+                Postings list = required.get(j);
+                matches = list == driver || list.contains(document);
+            }
+            String ISBN = ISBNs.get(document);
+            if (matches && !results.contains(ISBN)) {
+                results.add(ISBN);
+            }
+        }
+    }
+
+    /**
+     * Splits a text into normalized tokens: lower-cased, without diacritics, and split on anything
+     * which is not a letter or a digit.
+     *
+     * @param text The text to be split.
+     * @return The tokens of the text, in order.
+     */
+    static List<String> tokenize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>();
+        for (String token : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * A growable, sorted array of document numbers.
+     * Documents are numbered in insertion order, so appending keeps the array sorted.
+     */
+    private static final class Postings {
+        int[] documents = new int[2];
+        int size;
+
+        void add(int document) {
+            if (size > 0 && documents[size - 1] == document) {
+                return;
+            }
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size + (size >> 1) + 1);
+            }
+            documents[size++] = document;
+        }
+
+        boolean contains(int document) {
+            return Arrays.binarySearch(documents, 0, size, document) >= 0;
+        }
+    }
+}
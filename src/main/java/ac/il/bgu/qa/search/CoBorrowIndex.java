@@ -0,0 +1,352 @@
+package ac.il.bgu.qa.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An online index of which books are borrowed by the same patrons, answering "patrons who borrowed this
+ * also borrowed" recommendations.
+ * <p>
+ * Every borrow is paired with the last few books borrowed by the same user, and the count of each pair is
+ * incremented in both directions of a sparse co-borrow matrix. Each row of the matrix maps the neighbours
+ * of one book to their scores in an open-addressing table keyed by the ISBN as a {@code long}, and keeps
+ * its top neighbours in a small array updated on every increment, so recommending reads no more than that
+ * array.
+ * <p>
+ * Scores decay exponentially with the given half-life, so recent borrows weigh more than old ones. Rather
+ * than decaying every score over time, increments grow with time (forward decay), and a row rescales its
+ * scores, dropping those which decayed below a single old borrow, once its increments grow large. A row
+ * also keeps at most a bounded number of neighbours, dropping its weakest quarter when full, so memory is
+ * bounded by the number of books times that bound. Recommendations name each book by the ISBN it was first
+ * borrowed with, hyphens included, so they can be looked up in the catalog.
+ */
+public class CoBorrowIndex {
+
+    // The score below which a neighbour is dropped when its row rescales.
+    private static final float MIN_SCORE = 1f / 16;
+    // The number of half-lives after which a row rescales, keeping increments well within float precision.
+    private static final int RESCALE_HALF_LIVES = 20;
+
+    // The rows of the matrix, keyed by ISBN.
+    private final ConcurrentMap<Long, Row> rows = new ConcurrentHashMap<>();
+    // The ISBN of each book as it was first borrowed, keyed by its packed digits.
+    private final ConcurrentMap<Long, String> borrowedISBNs = new ConcurrentHashMap<>();
+    // The recently borrowed books of each user.
+    private final ConcurrentMap<String, History> histories = new ConcurrentHashMap<>();
+
+    // The number of earlier borrows of the same user each borrow is paired with.
+    private final int historySize;
+    // The number of top neighbours kept for recommendations.
+    private final int topK;
+    // The maximal number of neighbours of a book.
+    private final int maxNeighbors;
+    // The half-life of scores, in milliseconds.
+    private final long halfLifeMillis;
+
+    /**
+     * Constructs a new CoBorrowIndex.
+     *
+     * @param historySize    The number of earlier borrows of the same user each borrow is paired with.
+     * @param topK           The maximal number of recommendations for a book.
+     * @param maxNeighbors   The maximal number of neighbours kept per book, at least twice {@code topK}.
+     * @param halfLifeMillis The time after which a co-borrow counts half, in milliseconds.
+     */
+    public CoBorrowIndex(int historySize, int topK, int maxNeighbors, long halfLifeMillis) {
+        if (historySize <= 0 || topK <= 0 || maxNeighbors < 2 * topK) {
+            throw new IllegalArgumentException("Invalid index size.");
+        } else if (halfLifeMillis <= 0) {
+            throw new IllegalArgumentException("Invalid half-life.");
+        }
+        this.historySize = historySize;
+        this.topK = topK;
+        this.maxNeighbors = maxNeighbors;
+        this.halfLifeMillis = halfLifeMillis;
+    }
+
+    /**
+     * Records that a user borrowed a book, pairing it with the user's recent borrows.
+     *
+     * @param ISBN      The International Standard Book Number of the book, hyphens allowed.
+     * @param userId    The Id of the user.
+     * @param nowMillis The time of the borrow, in milliseconds.
+     */
+    public void recordBorrow(String ISBN, String userId, long nowMillis) {
+        long book = keyOf(ISBN);
+        if (!borrowedISBNs.containsKey(book)) {
+            borrowedISBNs.putIfAbsent(book, ISBN);
+        }
+        History history = histories.computeIfAbsent(userId, id -> new History(historySize));
+        long[] earlier = history.add(book);
+        Row row = null;
+        for (long other : earlier) {
+            if (other == book) {
+                continue;
+            }
+            if (row == null) {
+                row = rowOf(book);
+            }
+            row.add(other, nowMillis);
+            rowOf(other).add(book, nowMillis);
+        }
+    }
+
+    /**
+     * Recommends the books most often borrowed by the patrons who borrowed a book.
+     *
+     * @param ISBN The International Standard Book Number of the book, hyphens allowed.
+     * @param k    The maximal number of recommendations.
+     * @return The ISBNs of up to {@code k} books, as they were first borrowed, best first.
+     */
+    public List<String> recommend(String ISBN, int k) {
+        Row row = rows.get(keyOf(ISBN));
+        if (row == null || k <= 0) {
+            return Collections.emptyList();
+        }
+        long[] neighbors = row.top();
+        List<String> ISBNs = new ArrayList<>(Math.min(k, neighbors.length));
+        for (int i = 0; i < neighbors.length && i < k; i++) {
+            ISBNs.add(borrowedISBNs.get(neighbors[i]));
+        }
+        return ISBNs;
+    }
+
+    /**
+     * Retrieves the number of books with at least one neighbour.
+     *
+     * @return The number of rows of the matrix.
+     */
+    public int getBooks() {
+        return rows.size();
+    }
+
+    /**
+     * Retrieves the number of neighbours kept over all books.
+     *
+     * @return The number of non-zero entries of the matrix.
+     */
+    public long getEntries() {
+        long entries = 0;
+        for (Row row : rows.values()) {
+            entries += row.size();
+        }
+        return entries;
+    }
+
+    private Row rowOf(long book) {
+        Row row = rows.get(book);
+        if (row == null) {
+            Row created = new Row();
+            row = rows.putIfAbsent(book, created);
+            if (row == null) {
+                row = created;
+            }
+        }
+        return row;
+    }
+
+    // Packs the digits of an ISBN into a long, ignoring hyphens.
+    private static long keyOf(String ISBN) {
+        long key = 0;
+        for (int i = 0; i < ISBN.length(); i++) {
+            char c = ISBN.charAt(i);
+            if (c >= '0' && c <= '9') {
+                key = key * 10 + (c - '0');
+            } else if (c != '-') {
+                throw new IllegalArgumentException("Invalid ISBN.");
+            }
+        }
+        return key;
+    }
+
+    // The last books borrowed by a user, oldest overwritten first.
+    private static final class History {
+        private final long[] books;
+        private int size;
+        private int next;
+
+        private History(int capacity) {
+            books = new long[capacity];
+        }
+
+        // Adds a borrow, returning the borrows before it.
+        private synchronized long[] add(long book) {
+            long[] earlier = Arrays.copyOf(books, size);
+            books[next] = book;
+            next = (next + 1) % books.length;
+            size = Math.min(size + 1, books.length);
+            return earlier;
+        }
+    }
+
+    // The neighbours of one book and their scores. Guarded by itself.
+    private final class Row {
+        // An open-addressing table of the neighbours, with -1 marking free slots.
+        private long[] keys = newKeys(8);
+        private float[] scores = new float[8];
+        private int size;
+        // The time increments are measured from.
+        private long epochMillis = -1;
+
+        // The neighbours with the highest scores, unordered.
+        private final long[] topKeys = new long[topK];
+        private final float[] topScores = new float[topK];
+        private int topSize;
+
+        private synchronized void add(long neighbor, long nowMillis) {
+            if (epochMillis < 0) {
+                epochMillis = nowMillis;
+            } else if (nowMillis - epochMillis > RESCALE_HALF_LIVES * halfLifeMillis) {
+                rescale(nowMillis);
+            }
+            float increment = (float) Math.pow(2, (double) Math.max(0, nowMillis - epochMillis) / halfLifeMillis);
+            int slot = slotOf(neighbor);
+            if (keys[slot] != neighbor) {
+                if (size >= maxNeighbors) {
+                    prune();
+                }
+                if (4 * (size + 1) > 3 * keys.length) {
+                    rehash(keys.length * 2);
+                }
+                slot = slotOf(neighbor);
+                keys[slot] = neighbor;
+                size++;
+            }
+            scores[slot] += increment;
+            offerTop(neighbor, scores[slot]);
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        // Returns the top neighbours, best first.
+        private synchronized long[] top() {
+            long[] top = Arrays.copyOf(topKeys, topSize);
+            float[] score = Arrays.copyOf(topScores, topSize);
+            // An insertion sort, since the top is small.
+            for (int i = 1; i < top.length; i++) {
+                long key = top[i];
+                float value = score[i];
+                int j = i - 1;
+                for (; j >= 0 && score[j] < value; j--) {
+                    top[j + 1] = top[j];
+                    score[j + 1] = score[j];
+                }
+                top[j + 1] = key;
+                score[j + 1] = value;
+            }
+            return top;
+        }
+
+        // Scores only grow between rescales, so a neighbour can only enter the top when incremented.
+        private void offerTop(long neighbor, float score) {
+            int weakest = -1;
+            for (int i = 0; i < topSize; i++) {
+                if (topKeys[i] == neighbor) {
+                    topScores[i] = score;
+                    return;
+                } else if (weakest < 0 || topScores[i] < topScores[weakest]) {
+                    weakest = i;
+                }
+            }
+            if (topSize < topK) {
+                topKeys[topSize] = neighbor;
+                topScores[topSize++] = score;
+            } else if (score > topScores[weakest]) {
+                topKeys[weakest] = neighbor;
+                topScores[weakest] = score;
+            }
+        }
+
+        // Moves the epoch to now, decaying every score and dropping those which decayed below the minimum.
+        private void rescale(long nowMillis) {
+            float factor = (float) Math.pow(2, -(double) (nowMillis - epochMillis) / halfLifeMillis);
+            for (int i = 0; i < keys.length; i++) {
+                scores[i] *= factor;
+            }
+            epochMillis = nowMillis;
+            rebuild(MIN_SCORE, 0);
+        }
+
+        // Drops the weakest quarter of the neighbours.
+        private void prune() {
+            float[] present = new float[size];
+            int count = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != -1) {
+                    present[count++] = scores[i];
+                }
+            }
+            Arrays.sort(present);
+            int drop = Math.max(1, size / 4);
+            float threshold = present[drop - 1];
+            int below = 0;
+            while (present[below] < threshold) {
+                below++;
+            }
+            rebuild(threshold, drop - below);
+        }
+
+        // Drops the neighbours scoring below the threshold, and the given number of those scoring exactly it.
+        private void rebuild(float threshold, int dropAtThreshold) {
+            long[] oldKeys = keys;
+            float[] oldScores = scores;
+            keys = newKeys(oldKeys.length);
+            scores = new float[oldKeys.length];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == -1 || oldScores[i] < threshold) {
+                    continue;
+                } else if (oldScores[i] == threshold && dropAtThreshold > 0) {
+                    dropAtThreshold--;
+                    continue;
+                }
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                scores[slot] = oldScores[i];
+                size++;
+            }
+            // Rebuild the top from the remaining neighbours, with their current scores.
+            topSize = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != -1) {
+                    offerTop(keys[i], scores[i]);
+                }
+            }
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            float[] oldScores = scores;
+            keys = newKeys(capacity);
+            scores = new float[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1) {
+                    int slot = slotOf(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    scores[slot] = oldScores[i];
+                }
+            }
+        }
+
+        // Returns the slot holding the neighbour, or the free slot it would be put in.
+        private int slotOf(long neighbor) {
+            int mask = keys.length - 1;
+            int slot = (int) (neighbor * 0x9E3779B97F4A7C15L >>> 40) & mask;
+            while (keys[slot] != -1 && keys[slot] != neighbor) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    private static long[] newKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, -1);
+        return keys;
+    }
+}
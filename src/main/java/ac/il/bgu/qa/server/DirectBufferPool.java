@@ -0,0 +1,60 @@
+package ac.il.bgu.qa.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of equally sized direct byte buffers, so that connections do not allocate
+ * (and later free) off-heap memory as they come and go.
+ */
+public class DirectBufferPool {
+
+    // The capacity of every buffer.
+    private final int bufferSize;
+    // The most buffers kept in the pool when released.
+    private final int maxPooled;
+    // The buffers available for reuse.
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    // The number of buffers in the queue.
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * Constructs a new DirectBufferPool.
+     *
+     * @param bufferSize The capacity of every buffer, in bytes.
+     * @param maxPooled  The most buffers kept for reuse.
+     */
+    public DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, allocating one if the pool is empty.
+     *
+     * @return A direct buffer ready to be written.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used afterwards.
+     *
+     * @param buffer A buffer taken from this pool.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || pooled.incrementAndGet() > maxPooled) {
+            pooled.updateAndGet(count -> Math.min(count, maxPooled));
+            return;
+        }
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,313 @@
+package ac.il.bgu.qa.server;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.UserNotRegisteredException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A client of {@link LibraryServer}, sending requests over one connection.
+ * <p>
+ * Requests are pipelined: every call encodes its request and returns a future without waiting for earlier
+ * responses, and a reader thread completes the futures as responses arrive. With auto-flush enabled (the
+ * default) each request is written immediately; otherwise requests accumulate in the output buffer until it
+ * fills up or {@link #flush()} is called, so a batch of requests costs a single write.
+ * <p>
+ * Failed requests complete their futures with the library exception matching the response status, and
+ * with {@link IOException} if the connection is lost. The client may be used by several threads.
+ */
+public class LibraryClient implements Closeable {
+
+    // The connection to the server, in blocking mode.
+    private final SocketChannel channel;
+    // The buffer requests are encoded into, guarded by this.
+    private final ByteBuffer out = ByteBuffer.allocateDirect(4 * WireProtocol.MAX_FRAME_SIZE);
+    // The buffer responses are read into, used by the reader thread only.
+    private final ByteBuffer in = ByteBuffer.allocateDirect(4 * WireProtocol.MAX_FRAME_SIZE);
+    // The requests awaiting a response, by request Id.
+    private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+    // The Id of the next request.
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    // The thread reading responses.
+    private final Thread reader;
+
+    // Whether every request is written immediately, guarded by this.
+    private boolean autoFlush = true;
+    // The failure which closed the connection, if any.
+    private volatile IOException failure;
+
+    /**
+     * Connects a new LibraryClient to a server.
+     *
+     * @param address The address of the server.
+     * @throws IOException If the connection could not be made.
+     */
+    public LibraryClient(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.socket().setTcpNoDelay(true);
+        reader = new Thread(this::readLoop, "library-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sets whether every request is written as soon as it is made.
+     *
+     * @param autoFlush True to write every request immediately, false to write them on {@link #flush()}.
+     */
+    public synchronized void setAutoFlush(boolean autoFlush) {
+        this.autoFlush = autoFlush;
+    }
+
+    /**
+     * Adds a book to the library.
+     *
+     * @param ISBN   The ISBN of the book.
+     * @param title  The title of the book.
+     * @param author The author of the book.
+     * @return A future completed when the book was added.
+     */
+    public CompletableFuture<Void> addBook(String ISBN, String title, String author) {
+        long packedISBN = WireProtocol.packISBN(ISBN);
+        return send(WireProtocol.ADD_BOOK, null, buffer -> {
+            buffer.putLong(packedISBN);
+            WireProtocol.putString(buffer, title);
+            WireProtocol.putString(buffer, author);
+        });
+    }
+
+    /**
+     * Registers a user with the library. The server decides how the user is notified.
+     *
+     * @param userId The Id of the user.
+     * @param name   The name of the user.
+     * @return A future completed when the user was registered.
+     */
+    public CompletableFuture<Void> registerUser(String userId, String name) {
+        long packedUserId = WireProtocol.packUserId(userId);
+        return send(WireProtocol.REGISTER_USER, null, buffer -> {
+            buffer.putLong(packedUserId);
+            WireProtocol.putString(buffer, name);
+        });
+    }
+
+    /**
+     * Borrows a book.
+     *
+     * @param ISBN   The ISBN of the book.
+     * @param userId The Id of the borrowing user.
+     * @return A future completed when the book was borrowed.
+     */
+    public CompletableFuture<Void> borrowBook(String ISBN, String userId) {
+        long packedISBN = WireProtocol.packISBN(ISBN);
+        long packedUserId = WireProtocol.packUserId(userId);
+        return send(WireProtocol.BORROW_BOOK, null, buffer -> {
+            buffer.putLong(packedISBN);
+            buffer.putLong(packedUserId);
+        });
+    }
+
+    /**
+     * Returns a borrowed book.
+     *
+     * @param ISBN The ISBN of the book.
+     * @return A future completed when the book was returned.
+     */
+    public CompletableFuture<Void> returnBook(String ISBN) {
+        long packedISBN = WireProtocol.packISBN(ISBN);
+        return send(WireProtocol.RETURN_BOOK, null, buffer -> buffer.putLong(packedISBN));
+    }
+
+    /**
+     * Retrieves a book, which must be available, and notifies the user of its reviews.
+     *
+     * @param ISBN   The ISBN of the book.
+     * @param userId The Id of the requesting user.
+     * @return A future completed with the book. Its ISBN carries no hyphens.
+     */
+    public CompletableFuture<Book> getBookByISBN(String ISBN, String userId) {
+        long packedISBN = WireProtocol.packISBN(ISBN);
+        long packedUserId = WireProtocol.packUserId(userId);
+        String normalizedISBN = WireProtocol.unpackISBN(packedISBN);
+        return send(WireProtocol.GET_BOOK, normalizedISBN, buffer -> {
+            buffer.putLong(packedISBN);
+            buffer.putLong(packedUserId);
+        });
+    }
+
+    /**
+     * Writes every buffered request.
+     *
+     * @throws IOException If the connection failed.
+     */
+    public synchronized void flush() throws IOException {
+        out.flip();
+        try {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } finally {
+            out.compact();
+        }
+    }
+
+    /**
+     * Retrieves the number of requests awaiting a response.
+     *
+     * @return The number of outstanding requests.
+     */
+    public int getOutstanding() {
+        return pending.size();
+    }
+
+    /**
+     * Closes the connection. Outstanding requests fail.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Closing anyway.
+        }
+        failAll(new IOException("Client closed."));
+    }
+
+    // Encodes a request payload into the output buffer.
+    private interface Payload {
+        void writeTo(ByteBuffer buffer);
+    }
+
+    // A request awaiting its response. The ISBN is set for requests answered with a book.
+    private static final class Pending {
+        private final String ISBN;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        private Pending(String ISBN) {
+            this.ISBN = ISBN;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> send(byte opcode, String ISBN, Payload payload) {
+        int requestId = nextRequestId.getAndIncrement();
+        Pending request = new Pending(ISBN);
+        pending.put(requestId, request);
+        try {
+            synchronized (this) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (out.remaining() < WireProtocol.LENGTH_SIZE + WireProtocol.MAX_FRAME_SIZE) {
+                    flush();
+                }
+                int start = out.position();
+                out.position(start + WireProtocol.LENGTH_SIZE);
+                out.put(opcode);
+                out.putInt(requestId);
+                try {
+                    payload.writeTo(out);
+                } catch (RuntimeException e) {
+                    out.position(start);
+                    throw e;
+                }
+                int length = out.position() - start - WireProtocol.LENGTH_SIZE;
+                if (length > WireProtocol.MAX_FRAME_SIZE) {
+                    out.position(start);
+                    throw new IllegalArgumentException("Request too large.");
+                }
+                out.putInt(start, length);
+                if (autoFlush) {
+                    flush();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            pending.remove(requestId);
+            request.future.completeExceptionally(e);
+        }
+        return (CompletableFuture<T>) (CompletableFuture<?>) request.future;
+    }
+
+    private void readLoop() {
+        try {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                while (in.remaining() >= WireProtocol.LENGTH_SIZE) {
+                    int length = in.getInt(in.position());
+                    if (length < WireProtocol.HEADER_SIZE || length > WireProtocol.MAX_FRAME_SIZE) {
+                        throw new IOException("Malformed response.");
+                    } else if (in.remaining() < WireProtocol.LENGTH_SIZE + length) {
+                        break;
+                    }
+                    int end = in.position() + WireProtocol.LENGTH_SIZE + length;
+                    in.position(in.position() + WireProtocol.LENGTH_SIZE);
+                    complete(in);
+                    in.position(end);
+                }
+                in.compact();
+            }
+            failAll(new IOException("Connection closed by server."));
+        } catch (IOException e) {
+            failAll(e);
+        }
+    }
+
+    private void complete(ByteBuffer frame) {
+        byte status = frame.get();
+        Pending request = pending.remove(frame.getInt());
+        if (request == null) {
+            return;
+        }
+        if (status != WireProtocol.OK) {
+            request.future.completeExceptionally(exceptionOf(status, WireProtocol.getString(frame)));
+        } else if (request.ISBN != null) {
+            Book book = new Book(request.ISBN, WireProtocol.getString(frame), WireProtocol.getString(frame));
+            if (frame.get() != 0) {
+                book.borrow();
+            }
+            request.future.complete(book);
+        } else {
+            request.future.complete(null);
+        }
+    }
+
+    private static RuntimeException exceptionOf(byte status, String message) {
+        switch (status) {
+            case WireProtocol.INVALID_ARGUMENT:
+                return new IllegalArgumentException(message);
+            case WireProtocol.BOOK_NOT_FOUND:
+                return new BookNotFoundException(message);
+            case WireProtocol.USER_NOT_REGISTERED:
+                return new UserNotRegisteredException(message);
+            case WireProtocol.BOOK_ALREADY_BORROWED:
+                return new BookAlreadyBorrowedException(message);
+            case WireProtocol.BOOK_NOT_BORROWED:
+                return new BookNotBorrowedException(message);
+            default:
+                return new IllegalStateException(message);
+        }
+    }
+
+    private void failAll(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        for (Integer requestId : pending.keySet()) {
+            Pending request = pending.remove(requestId);
+            if (request != null) {
+                request.future.completeExceptionally(e);
+            }
+        }
+    }
+}
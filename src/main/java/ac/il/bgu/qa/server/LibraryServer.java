@@ -0,0 +1,377 @@
+package ac.il.bgu.qa.server;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.UserNotRegisteredException;
+import ac.il.bgu.qa.services.NotificationService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * A non-blocking server exposing a {@link Library} over the {@link WireProtocol}.
+ * <p>
+ * One acceptor thread hands new connections round-robin to a fixed set of event loops, by default one per
+ * core, each owning a selector. A connection is served entirely by its loop: frames are decoded straight
+ * from the connection's pooled direct input buffer, executed against the library in arrival order, and their
+ * responses are gathered in a pooled direct output buffer which is written once per read, so pipelined
+ * requests cost one read and one write system call per batch. When a client does not read its responses,
+ * the loop stops decoding its requests until the output buffer drains.
+ * <p>
+ * Library calls run on the event loop, so a slow database or review service stalls every connection of that
+ * loop; the library should be backed by services with bounded latency, e.g. behind timeouts.
+ */
+public class LibraryServer implements Closeable {
+
+    // The capacity of connection buffers. An output buffer always has room for a frame of maximal size.
+    private static final int BUFFER_SIZE = 4 * WireProtocol.MAX_FRAME_SIZE;
+
+    // The library requests are executed against.
+    private final Library library;
+    // Creates the notification service of users registered over the network, by user Id.
+    private final Function<String, NotificationService> notificationServices;
+    // The pool of connection buffers.
+    private final DirectBufferPool bufferPool;
+    // The event loops serving the connections.
+    private final EventLoop[] eventLoops;
+
+    // The listening channel, and the thread accepting connections on it.
+    private ServerSocketChannel serverChannel;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    /**
+     * Constructs a new LibraryServer with one event loop per available processor.
+     *
+     * @param library              The library requests are executed against.
+     * @param notificationServices Creates the notification service of a user registered over the network.
+     */
+    public LibraryServer(Library library, Function<String, NotificationService> notificationServices) {
+        this(library, notificationServices, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new LibraryServer.
+     *
+     * @param library              The library requests are executed against.
+     * @param notificationServices Creates the notification service of a user registered over the network.
+     * @param eventLoops           The number of event loops.
+     */
+    public LibraryServer(Library library, Function<String, NotificationService> notificationServices, int eventLoops) {
+        if (library == null || notificationServices == null) {
+            throw new IllegalArgumentException("Invalid library.");
+        } else if (eventLoops < 1) {
+            throw new IllegalArgumentException("Invalid event loop count.");
+        }
+        this.library = library;
+        this.notificationServices = notificationServices;
+        this.bufferPool = new DirectBufferPool(BUFFER_SIZE, 1024);
+        this.eventLoops = new EventLoop[eventLoops];
+    }
+
+    /**
+     * Starts listening and serving connections.
+     *
+     * @param address The address to listen on. Port 0 picks a free port.
+     * @return The address the server listens on.
+     * @throws IOException If the server could not bind or open its selectors.
+     */
+    public synchronized InetSocketAddress start(InetSocketAddress address) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Server already started.");
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 1024);
+        running = true;
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(Selector.open());
+            Thread thread = new Thread(eventLoops[i], "library-server-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        acceptor = new Thread(this::acceptLoop, "library-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Stops accepting connections and closes every open connection.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            // Closing anyway.
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.selector.wakeup();
+        }
+    }
+
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                EventLoop eventLoop = eventLoops[next];
+                next = (next + 1) % eventLoops.length;
+                eventLoop.pending.add(channel);
+                eventLoop.selector.wakeup();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                // A failed accept only affects that connection.
+            }
+        }
+    }
+
+    // The state of one client connection.
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer in;
+        private final ByteBuffer out;
+
+        private Connection(SocketChannel channel, ByteBuffer in, ByteBuffer out) {
+            this.channel = channel;
+            this.in = in;
+            this.out = out;
+        }
+    }
+
+    // A selector and the connections registered with it, served by one thread.
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+
+        private EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerPending();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                }
+            } catch (IOException e) {
+                // The selector itself failed; the loop's connections are closed below.
+            } finally {
+                for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                    closeConnection(key);
+                }
+                for (SocketChannel channel; (channel = pending.poll()) != null; ) {
+                    closeQuietly(channel);
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // Nothing left to release.
+                }
+            }
+        }
+
+        private void registerPending() {
+            for (SocketChannel channel; (channel = pending.poll()) != null; ) {
+                try {
+                    Connection connection = new Connection(channel, bufferPool.acquire(), bufferPool.acquire());
+                    channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (ClosedChannelException e) {
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    // The output drained, so decoding may resume where it stopped.
+                    flush(key, connection);
+                    process(connection);
+                    flush(key, connection);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    if (connection.channel.read(connection.in) < 0) {
+                        closeConnection(key);
+                        return;
+                    }
+                    process(connection);
+                    flush(key, connection);
+                }
+            } catch (IOException | ProtocolException e) {
+                closeConnection(key);
+            }
+        }
+
+        private void flush(SelectionKey key, Connection connection) throws IOException {
+            ByteBuffer out = connection.out;
+            out.flip();
+            connection.channel.write(out);
+            out.compact();
+            if (key.isValid()) {
+                key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+        }
+
+        private void closeConnection(SelectionKey key) {
+            // Detach the connection, so that a key cancelled here but still registered until the next select
+            // does not release its buffers again when the loop shuts down.
+            Connection connection = (Connection) key.attach(null);
+            key.cancel();
+            if (connection == null) {
+                return;
+            }
+            closeQuietly(connection.channel);
+            bufferPool.release(connection.in);
+            bufferPool.release(connection.out);
+        }
+    }
+
+    // Decodes and executes every complete frame in the input buffer for which a response fits the output buffer.
+    private void process(Connection connection) {
+        ByteBuffer in = connection.in;
+        ByteBuffer out = connection.out;
+        in.flip();
+        while (in.remaining() >= WireProtocol.LENGTH_SIZE
+                && out.remaining() >= WireProtocol.LENGTH_SIZE + WireProtocol.MAX_FRAME_SIZE) {
+            int length = in.getInt(in.position());
+            if (length < WireProtocol.HEADER_SIZE || length > WireProtocol.MAX_FRAME_SIZE) {
+                throw new ProtocolException();
+            } else if (in.remaining() < WireProtocol.LENGTH_SIZE + length) {
+                break;
+            }
+            int end = in.position() + WireProtocol.LENGTH_SIZE + length;
+            in.position(in.position() + WireProtocol.LENGTH_SIZE);
+            ByteBuffer frame = in.duplicate();
+            frame.limit(end);
+            in.position(end);
+            execute(frame, out);
+        }
+        in.compact();
+    }
+
+    // Executes one request frame and appends its response to the output buffer.
+    private void execute(ByteBuffer frame, ByteBuffer out) {
+        byte opcode = frame.get();
+        int requestId = frame.getInt();
+        int start = out.position();
+        // Leave room for the length, written once the response is complete.
+        out.position(start + WireProtocol.LENGTH_SIZE);
+        out.put(WireProtocol.OK);
+        out.putInt(requestId);
+        try {
+            switch (opcode) {
+                case WireProtocol.ADD_BOOK: {
+                    String ISBN = WireProtocol.unpackISBN(frame.getLong());
+                    String title = WireProtocol.getString(frame);
+                    String author = WireProtocol.getString(frame);
+                    library.addBook(new Book(ISBN, title, author));
+                    break;
+                }
+                case WireProtocol.REGISTER_USER: {
+                    String userId = WireProtocol.unpackUserId(frame.getLong());
+                    String name = WireProtocol.getString(frame);
+                    library.registerUser(new User(name, userId, notificationServices.apply(userId)));
+                    break;
+                }
+                case WireProtocol.BORROW_BOOK:
+                    library.borrowBook(WireProtocol.unpackISBN(frame.getLong()), WireProtocol.unpackUserId(frame.getLong()));
+                    break;
+                case WireProtocol.RETURN_BOOK:
+                    library.returnBook(WireProtocol.unpackISBN(frame.getLong()));
+                    break;
+                case WireProtocol.GET_BOOK: {
+                    Book book = library.getBookByISBN(WireProtocol.unpackISBN(frame.getLong()),
+                            WireProtocol.unpackUserId(frame.getLong()));
+                    WireProtocol.putString(out, book.getTitle());
+                    WireProtocol.putString(out, book.getAuthor());
+                    out.put((byte) (book.isBorrowed() ? 1 : 0));
+                    if (out.position() - start - WireProtocol.LENGTH_SIZE > WireProtocol.MAX_FRAME_SIZE) {
+                        throw new IllegalStateException("Response too large.");
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown opcode.");
+            }
+        } catch (RuntimeException e) {
+            // Replace whatever was written with an error response.
+            out.position(start + WireProtocol.LENGTH_SIZE);
+            out.put(statusOf(e));
+            out.putInt(requestId);
+            WireProtocol.putString(out, truncate(e.getMessage()));
+        }
+        out.putInt(start, out.position() - start - WireProtocol.LENGTH_SIZE);
+    }
+
+    private static byte statusOf(RuntimeException e) {
+        if (e instanceof IllegalArgumentException || e instanceof BufferOverflowException
+                || e instanceof BufferUnderflowException) {
+            return WireProtocol.INVALID_ARGUMENT;
+        } else if (e instanceof BookNotFoundException) {
+            return WireProtocol.BOOK_NOT_FOUND;
+        } else if (e instanceof UserNotRegisteredException) {
+            return WireProtocol.USER_NOT_REGISTERED;
+        } else if (e instanceof BookAlreadyBorrowedException) {
+            return WireProtocol.BOOK_ALREADY_BORROWED;
+        } else if (e instanceof BookNotBorrowedException) {
+            return WireProtocol.BOOK_NOT_BORROWED;
+        }
+        return WireProtocol.FAILED;
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return "";
+        }
+        return message.length() > 1024 ? message.substring(0, 1024) : message;
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already closed.
+        }
+    }
+
+    // Thrown when a client sends a malformed frame; its connection is closed.
+    private static final class ProtocolException extends RuntimeException {
+        private ProtocolException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package ac.il.bgu.qa.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The compact binary protocol spoken between {@link LibraryServer} and {@link LibraryClient}.
+ * <p>
+ * Every message is a frame: a 4-byte big-endian length of the rest of the frame, a 1-byte opcode
+ * (requests) or status (responses), a 4-byte request Id chosen by the client, and a payload.
+ * Requests may be pipelined: a client can send many frames before reading any response, and responses
+ * come back on the same connection in request order, tagged with their request Ids.
+ * <p>
+ * ISBNs travel as the 8-byte number formed by their 13 digits (hyphens removed), user Ids as the 8-byte
+ * number formed by their 12 digits, and strings as a 2-byte length followed by UTF-8 bytes.
+ * <pre>
+ * ADD_BOOK      ISBN, title, author     -> OK
+ * REGISTER_USER user Id, name           -> OK
+ * BORROW_BOOK   ISBN, user Id           -> OK
+ * RETURN_BOOK   ISBN                    -> OK
+ * GET_BOOK      ISBN, user Id           -> OK title, author, borrowed (1 byte)
+ * </pre>
+ * Failed requests are answered with the status matching the library's exception and a message string.
+ */
+public final class WireProtocol {
+
+    // The size of the length field.
+    public static final int LENGTH_SIZE = 4;
+    // The size of the opcode or status and request Id following the length.
+    public static final int HEADER_SIZE = 5;
+    // The maximal length of a frame, excluding the length field.
+    public static final int MAX_FRAME_SIZE = 16 * 1024;
+
+    // Request opcodes.
+    public static final byte ADD_BOOK = 1;
+    public static final byte REGISTER_USER = 2;
+    public static final byte BORROW_BOOK = 3;
+    public static final byte RETURN_BOOK = 4;
+    public static final byte GET_BOOK = 5;
+
+    // Response statuses.
+    public static final byte OK = 0;
+    public static final byte INVALID_ARGUMENT = 1;
+    public static final byte BOOK_NOT_FOUND = 2;
+    public static final byte USER_NOT_REGISTERED = 3;
+    public static final byte BOOK_ALREADY_BORROWED = 4;
+    public static final byte BOOK_NOT_BORROWED = 5;
+    public static final byte FAILED = 6;
+
+    private WireProtocol() {
+    }
+
+    /**
+     * Packs an ISBN into the number formed by its digits.
+     *
+     * @param ISBN The ISBN, with or without hyphens.
+     * @return The packed ISBN.
+     * @throws IllegalArgumentException If the ISBN does not consist of 13 digits.
+     */
+    public static long packISBN(String ISBN) {
+        return packDigits(ISBN, 13, "Invalid ISBN.");
+    }
+
+    /**
+     * Unpacks an ISBN into its 13 digits, without hyphens.
+     *
+     * @param packed The packed ISBN.
+     * @return The ISBN.
+     */
+    public static String unpackISBN(long packed) {
+        return unpackDigits(packed, 13);
+    }
+
+    /**
+     * Packs a user Id into the number formed by its digits.
+     *
+     * @param userId The user Id.
+     * @return The packed user Id.
+     * @throws IllegalArgumentException If the user Id does not consist of 12 digits.
+     */
+    public static long packUserId(String userId) {
+        return packDigits(userId, 12, "Invalid user Id.");
+    }
+
+    /**
+     * Unpacks a user Id into its 12 digits.
+     *
+     * @param packed The packed user Id.
+     * @return The user Id.
+     */
+    public static String unpackUserId(long packed) {
+        return unpackDigits(packed, 12);
+    }
+
+    /**
+     * Writes a string as a 2-byte length followed by its UTF-8 bytes.
+     *
+     * @param buffer The buffer to write to.
+     * @param value  The string to be written. Null is written as an empty string.
+     * @throws IllegalArgumentException If the string is longer than 65535 bytes in UTF-8.
+     */
+    public static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long.");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #putString(ByteBuffer, String)}.
+     *
+     * @param buffer The buffer to read from.
+     * @return The string.
+     */
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long packDigits(String value, int digits, String error) {
+        if (value == null) {
+            throw new IllegalArgumentException(error);
+        }
+        long packed = 0;
+        int count = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '-' && digits == 13) {
+                continue;
+            } else if (c < '0' || c > '9' || ++count > digits) {
+                throw new IllegalArgumentException(error);
+            }
+            packed = packed * 10 + (c - '0');
+        }
+        if (count != digits) {
+            throw new IllegalArgumentException(error);
+        }
+        return packed;
+    }
+
+    private static String unpackDigits(long packed, int digits) {
+        char[] chars = new char[digits];
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + packed % 10);
+            packed /= 10;
+        }
+        return new String(chars);
+    }
+}
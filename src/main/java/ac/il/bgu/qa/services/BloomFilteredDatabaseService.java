@@ -0,0 +1,229 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.util.ScalableBloomFilter;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * A {@link DatabaseService} which answers lookups of unknown ISBNs and user Ids without a database
+ * round trip, by consulting a Bloom filter of every key added through it.
+ * <p>
+ * The filters only know about books and users added through this instance. Entries written to the
+ * database by other means are reported as missing until {@link #rebuild(Iterable, Iterable)} is called
+ * with a full scan of the catalog.
+ */
+public class BloomFilteredDatabaseService implements DatabaseService {
+
+    // The database the filters guard.
+    private final DatabaseService delegate;
+
+    // The sizing of newly built filters.
+    private final int expectedBooks;
+    private final int expectedUsers;
+    private final double falsePositiveRate;
+
+    // The filters currently consulted on lookups.
+    private volatile Filters current;
+
+    // The filters being built by a rebuild in progress, or null if no rebuild is running.
+    private Filters rebuilding;
+
+    // Writers share the lock, rebuilds take it exclusively only to install and swap filters.
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    // Held for the whole of a rebuild, so that only one rebuild at a time receives the keys added meanwhile.
+    private final Object rebuildMonitor = new Object();
+
+    // Number of lookups answered by the filters without reaching the database.
+    private final AtomicLong skippedLookups = new AtomicLong();
+
+    /**
+     * Constructs a new BloomFilteredDatabaseService.
+     *
+     * @param delegate          The database service to guard.
+     * @param expectedBooks     The number of books the filter is initially sized for.
+     * @param expectedUsers     The number of users the filter is initially sized for.
+     * @param falsePositiveRate The probability that a lookup of an unknown key still reaches the database.
+     */
+    public BloomFilteredDatabaseService(DatabaseService delegate, int expectedBooks, int expectedUsers, double falsePositiveRate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        }
+        this.delegate = delegate;
+        this.expectedBooks = expectedBooks;
+        this.expectedUsers = expectedUsers;
+        this.falsePositiveRate = falsePositiveRate;
+        this.current = newFilters();
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        delegate.addBook(ISBN, book);
+        rebuildLock.readLock().lock();
+        try {
+            current.books.put(ISBN);
+            if (rebuilding != null) {
+                rebuilding.books.put(ISBN);
+            }
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        delegate.registerUser(id, user);
+        rebuildLock.readLock().lock();
+        try {
+            current.users.put(id);
+            if (rebuilding != null) {
+                rebuilding.users.put(id);
+            }
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        if (ISBN == null || !current.books.mightContain(ISBN)) {
+            skippedLookups.incrementAndGet();
+            return null;
+        }
+        return delegate.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        if (userId == null || !current.users.mightContain(userId)) {
+            skippedLookups.incrementAndGet();
+            return null;
+        }
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        delegate.borrowBook(ISBN, userId);
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        delegate.returnBook(ISBN);
+    }
+
+    @Override
+    public void returnBook(String ISBN, String userId) {
+        delegate.returnBook(ISBN, userId);
+    }
+
+    @Override
+    public boolean supportsConditionalUpdates() {
+        return delegate.supportsConditionalUpdates();
+    }
+
+    @Override
+    public boolean compareAndSetBorrowed(String ISBN, long expectedVersion, String userId) {
+        return delegate.compareAndSetBorrowed(ISBN, expectedVersion, userId);
+    }
+
+    @Override
+    public boolean compareAndSetReturned(String ISBN, long expectedVersion, String userId) {
+        return delegate.compareAndSetReturned(ISBN, expectedVersion, userId);
+    }
+
+    @Override
+    public List<String> getHolders(String ISBN) {
+        return delegate.getHolders(ISBN);
+    }
+
+    @Override
+    public Spliterator<Book> scanBooks() {
+        return delegate.scanBooks();
+    }
+
+    @Override
+    public Spliterator<User> scanUsers() {
+        return delegate.scanUsers();
+    }
+
+    @Override
+    public <R> Spliterator<R> scanBooks(BookQuery query, Function<? super Book, ? extends R> projection) {
+        return delegate.scanBooks(query, projection);
+    }
+
+    /**
+     * Replaces the filters with new ones built from a full scan of the catalog.
+     * Books and users added while the rebuild is running are kept in the new filters. Rebuilds run one at a
+     * time, and if the scan fails the current filters are kept, so that no existing key is reported missing.
+     *
+     * @param ISBNs   The ISBNs of every book in the database.
+     * @param userIds The Ids of every user in the database.
+     */
+    public void rebuild(Iterable<String> ISBNs, Iterable<String> userIds) {
+        synchronized (rebuildMonitor) {
+            Filters fresh = newFilters();
+            rebuildLock.writeLock().lock();
+            try {
+                rebuilding = fresh;
+            } finally {
+                rebuildLock.writeLock().unlock();
+            }
+            boolean scanned = false;
+            try {
+                for (String ISBN : ISBNs) {
+                    fresh.books.put(ISBN);
+                }
+                for (String userId : userIds) {
+                    fresh.users.put(userId);
+                }
+                scanned = true;
+            } finally {
+                rebuildLock.writeLock().lock();
+                try {
+                    // Only install the new filters if the scan completed.
+                    if (scanned) {
+                        current = fresh;
+                    }
+                    rebuilding = null;
+                } finally {
+                    rebuildLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of lookups answered as missing without querying the database.
+     *
+     * @return The number of skipped database lookups.
+     */
+    public long getSkippedLookups() {
+        return skippedLookups.get();
+    }
+
+    private Filters newFilters() {
+        return new Filters(new ScalableBloomFilter(expectedBooks, falsePositiveRate),
+                new ScalableBloomFilter(expectedUsers, falsePositiveRate));
+    }
+
+    /**
+     * The pair of filters for book ISBNs and user Ids.
+     */
+    private static final class Filters {
+        final ScalableBloomFilter books;
+        final ScalableBloomFilter users;
+
+        Filters(ScalableBloomFilter books, ScalableBloomFilter users) {
+            this.books = books;
+            this.users = users;
+        }
+    }
+}
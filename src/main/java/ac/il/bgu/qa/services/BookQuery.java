@@ -0,0 +1,91 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+
+/**
+ * The books a catalog scan selects, given to {@link DatabaseService#scanBooks(BookQuery, java.util.function.Function)}
+ * so that the database filters them where it stores them, using an index where it has one.
+ */
+public final class BookQuery {
+
+    /**
+     * Selects books by the state of their copies.
+     */
+    public enum Availability {
+        /** Every book. */
+        ANY,
+        /** Books with at least one copy available. */
+        AVAILABLE,
+        /** Books with at least one copy borrowed. A partially borrowed book is both available and borrowed. */
+        BORROWED
+    }
+
+    /** Selects every book. */
+    public static final BookQuery ALL = new BookQuery(null, Availability.ANY);
+
+    // The author of the selected books, or null for any author.
+    private final String author;
+    // The state of the copies of the selected books.
+    private final Availability availability;
+
+    /**
+     * Constructs a new BookQuery.
+     *
+     * @param author       The author of the selected books, or null for any author.
+     * @param availability The state of the copies of the selected books.
+     */
+    public BookQuery(String author, Availability availability) {
+        if (availability == null) {
+            throw new IllegalArgumentException("Invalid availability.");
+        }
+        this.author = author;
+        this.availability = availability;
+    }
+
+    /**
+     * Retrieves the author of the selected books.
+     *
+     * @return The author, or null for any author.
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * Retrieves the state of the copies of the selected books.
+     *
+     * @return The availability.
+     */
+    public Availability getAvailability() {
+        return availability;
+    }
+
+    /**
+     * Checks whether the query selects every book.
+     *
+     * @return true if neither the author nor the availability is restricted.
+     */
+    public boolean isAll() {
+        return author == null && availability == Availability.ANY;
+    }
+
+    /**
+     * Checks whether the query selects a book.
+     *
+     * @param book The book.
+     * @return true if the book is selected.
+     */
+    public boolean matches(Book book) {
+        if (author != null && !author.equals(book.getAuthor())) {
+            return false;
+        }
+        switch (availability) {
+            case AVAILABLE:
+                return book.getAvailableCopies() > 0;
+            case BORROWED:
+                return book.hasBorrowedCopies();
+            default:
+                return true;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A read-through near cache placed in front of another {@link DatabaseService}.
+ * <p>
+ * Books and users are kept in two separate size-bounded LRU caches. Lookups that return null
+ * from the underlying database are cached as well (negative caching), so repeated duplicate checks
+ * in {@code Library.addBook} and {@code Library.registerUser} do not reach the database.
+ * <p>
+ * Borrow-state consistency guarantees:
+ * <ul>
+ *     <li>Every write ({@code addBook}, {@code registerUser}, {@code borrowBook}, {@code returnBook}) is
+ *     forwarded to the underlying database first, and only then updates or invalidates the cache.</li>
+ *     <li>{@code borrowBook} and {@code returnBook} invalidate the cached book, so the next lookup through
+ *     this instance reads the borrowed state the database recorded.</li>
+ *     <li>The cache is local to this instance. Writes made through other instances or directly on the
+ *     database are not seen until the entry is evicted or {@link #invalidateAll()} is called, so a book's
+ *     borrowed state may be stale when several libraries share one database.</li>
+ *     <li>A value read from the database is only cached if no write to the same key went through this instance
+ *     while it was being read, so a slow read can never overwrite a newer write or undo an invalidation.</li>
+ * </ul>
+ */
+public class CachingDatabaseService implements DatabaseService {
+
+    // Marker stored in the cache for keys the database does not know (negative caching).
+    private static final Object MISSING = new Object();
+
+    // The database this cache is placed in front of.
+    private final DatabaseService delegate;
+
+    // Cached books, keyed by ISBN.
+    private final LruCache bookCache;
+
+    // Cached users, keyed by user Id.
+    private final LruCache userCache;
+
+    // Hit and miss counters for both caches.
+    private final AtomicLong bookHits = new AtomicLong();
+    private final AtomicLong bookMisses = new AtomicLong();
+    private final AtomicLong userHits = new AtomicLong();
+    private final AtomicLong userMisses = new AtomicLong();
+
+    /**
+     * Constructs a new CachingDatabaseService.
+     *
+     * @param delegate          The database service to read through to.
+     * @param maxCachedBooks    The maximal number of book entries (including misses) kept in the cache.
+     * @param maxCachedUsers    The maximal number of user entries (including misses) kept in the cache.
+     */
+    public CachingDatabaseService(DatabaseService delegate, int maxCachedBooks, int maxCachedUsers) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        } else if (maxCachedBooks <= 0 || maxCachedUsers <= 0) {
+            throw new IllegalArgumentException("Invalid cache size.");
+        }
+        this.delegate = delegate;
+        this.bookCache = new LruCache(maxCachedBooks);
+        this.userCache = new LruCache(maxCachedUsers);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        delegate.addBook(ISBN, book);
+        bookCache.put(ISBN, book);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        delegate.registerUser(id, user);
+        userCache.put(id, user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        Object cached = bookCache.get(ISBN);
+        if (cached != null) {
+            bookHits.incrementAndGet();
+            return cached == MISSING ? null : (Book) cached;
+        }
+        bookMisses.incrementAndGet();
+        long stamp = bookCache.beginRead(ISBN);
+        Object read = null;
+        try {
+            Book book = delegate.getBookByISBN(ISBN);
+            read = book == null ? MISSING : book;
+            return book;
+        } finally {
+            bookCache.endRead(ISBN, read, stamp);
+        }
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        Object cached = userCache.get(userId);
+        if (cached != null) {
+            userHits.incrementAndGet();
+            return cached == MISSING ? null : (User) cached;
+        }
+        userMisses.incrementAndGet();
+        long stamp = userCache.beginRead(userId);
+        Object read = null;
+        try {
+            User user = delegate.getUserById(userId);
+            read = user == null ? MISSING : user;
+            return user;
+        } finally {
+            userCache.endRead(userId, read, stamp);
+        }
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        delegate.borrowBook(ISBN, userId);
+        bookCache.remove(ISBN);
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        delegate.returnBook(ISBN);
+        bookCache.remove(ISBN);
+    }
+
+    @Override
+    public void returnBook(String ISBN, String userId) {
+        delegate.returnBook(ISBN, userId);
+        bookCache.remove(ISBN);
+    }
+
+    @Override
+    public boolean supportsConditionalUpdates() {
+        return delegate.supportsConditionalUpdates();
+    }
+
+    // A failed conditional update also invalidates the cached book, which is known to be outdated.
+    @Override
+    public boolean compareAndSetBorrowed(String ISBN, long expectedVersion, String userId) {
+        try {
+            return delegate.compareAndSetBorrowed(ISBN, expectedVersion, userId);
+        } finally {
+            bookCache.remove(ISBN);
+        }
+    }
+
+    @Override
+    public boolean compareAndSetReturned(String ISBN, long expectedVersion, String userId) {
+        try {
+            return delegate.compareAndSetReturned(ISBN, expectedVersion, userId);
+        } finally {
+            bookCache.remove(ISBN);
+        }
+    }
+
+    @Override
+    public List<String> getHolders(String ISBN) {
+        return delegate.getHolders(ISBN);
+    }
+
+    @Override
+    public Spliterator<Book> scanBooks() {
+        // Scans read the database directly, so that they do not evict the cached working set.
+        return delegate.scanBooks();
+    }
+
+    @Override
+    public Spliterator<User> scanUsers() {
+        return delegate.scanUsers();
+    }
+
+    @Override
+    public <R> Spliterator<R> scanBooks(BookQuery query, Function<? super Book, ? extends R> projection) {
+        return delegate.scanBooks(query, projection);
+    }
+
+    /**
+     * Drops every cached book and user, including cached misses.
+     */
+    public void invalidateAll() {
+        bookCache.clear();
+        userCache.clear();
+    }
+
+    /**
+     * Retrieves the number of book lookups answered from the cache.
+     *
+     * @return The number of book cache hits.
+     */
+    public long getBookHits() {
+        return bookHits.get();
+    }
+
+    /**
+     * Retrieves the number of book lookups that had to read from the database.
+     *
+     * @return The number of book cache misses.
+     */
+    public long getBookMisses() {
+        return bookMisses.get();
+    }
+
+    /**
+     * Retrieves the number of user lookups answered from the cache.
+     *
+     * @return The number of user cache hits.
+     */
+    public long getUserHits() {
+        return userHits.get();
+    }
+
+    /**
+     * Retrieves the number of user lookups that had to read from the database.
+     *
+     * @return The number of user cache misses.
+     */
+    public long getUserMisses() {
+        return userMisses.get();
+    }
+
+    /**
+     * Calculates the ratio of book lookups answered from the cache.
+     *
+     * @return The book hit ratio between 0 and 1, or 0 if no lookup was made.
+     */
+    public double getBookHitRatio() {
+        return ratio(bookHits.get(), bookMisses.get());
+    }
+
+    /**
+     * Calculates the ratio of user lookups answered from the cache.
+     *
+     * @return The user hit ratio between 0 and 1, or 0 if no lookup was made.
+     */
+    public double getUserHitRatio() {
+        return ratio(userHits.get(), userMisses.get());
+    }
+
+    private static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * A synchronized LRU map which evicts its least recently used entry once it grows past its capacity.
+     * Keys being read from the database carry a stamp, bumped by every write to the key, so a read-through
+     * fill can detect a concurrent write to its own key and skip caching. Only keys with a read in progress
+     * have a stamp, so writes to other keys never keep a miss from being cached.
+     */
+    private static final class LruCache {
+        private final Map<String, Object> entries;
+        // The stamps of the keys being read, removed once their last read ended.
+        private final Map<String, Stamp> stamps = new HashMap<>();
+
+        LruCache(final int capacity) {
+            this.entries = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized Object get(String key) {
+            return entries.get(key);
+        }
+
+        // Registers a read of the key from the database, returning the key's stamp to pass to endRead.
+        synchronized long beginRead(String key) {
+            Stamp stamp = stamps.computeIfAbsent(key, k -> new Stamp());
+            stamp.readers++;
+            return stamp.version;
+        }
+
+        // Ends a read of the key, caching the value read unless it is null or the key was written meanwhile.
+        synchronized void endRead(String key, Object value, long expectedVersion) {
+            Stamp stamp = stamps.get(key);
+            if (value != null && stamp.version == expectedVersion) {
+                entries.put(key, value);
+            }
+            if (--stamp.readers == 0) {
+                stamps.remove(key);
+            }
+        }
+
+        synchronized void put(String key, Object value) {
+            written(key);
+            entries.put(key, value);
+        }
+
+        synchronized void remove(String key) {
+            written(key);
+            entries.remove(key);
+        }
+
+        synchronized void clear() {
+            for (Stamp stamp : stamps.values()) {
+                stamp.version++;
+            }
+            entries.clear();
+        }
+
+        private void written(String key) {
+            Stamp stamp = stamps.get(key);
+            if (stamp != null) {
+                stamp.version++;
+            }
+        }
+    }
+
+    // The version and number of reads in progress of a key being read from the database.
+    private static final class Stamp {
+        private long version;
+        private int readers;
+    }
+}
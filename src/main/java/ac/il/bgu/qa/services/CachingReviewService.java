@@ -0,0 +1,139 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link ReviewService} which keeps the reviews of recently requested books for a fixed time.
+ * <p>
+ * Cached review lists are immutable and returned as the same instance until they expire, so callers may
+ * cache whatever they derive from them. Refresh listeners are told whenever the reviews of a book are
+ * refetched or invalidated, so such derived caches can drop their entry. Failed fetches are not cached.
+ * <p>
+ * Closing is forwarded to the underlying service on every call, as the library closes the review service
+ * after each fetch.
+ */
+public class CachingReviewService implements ReviewService {
+
+    // The review service reviews are fetched from.
+    private final ReviewService delegate;
+    // The time reviews are kept, in nanoseconds.
+    private final long ttlNanos;
+    // The clock expiry is measured with.
+    private final LongSupplier nanoClock;
+    // The cached reviews, keyed by ISBN, in least recently used order. Guarded by itself.
+    private final Map<String, Entry> entries;
+    // The listeners told about refreshed books.
+    private final List<Consumer<String>> refreshListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructs a new CachingReviewService.
+     *
+     * @param delegate   The review service to fetch reviews from.
+     * @param ttl        The time reviews are kept.
+     * @param unit       The unit of the time to keep reviews.
+     * @param maxEntries The maximal number of books whose reviews are kept.
+     */
+    public CachingReviewService(ReviewService delegate, long ttl, TimeUnit unit, int maxEntries) {
+        this(delegate, ttl, unit, maxEntries, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new CachingReviewService measuring expiry with the given clock.
+     *
+     * @param delegate   The review service to fetch reviews from.
+     * @param ttl        The time reviews are kept.
+     * @param unit       The unit of the time to keep reviews.
+     * @param maxEntries The maximal number of books whose reviews are kept.
+     * @param nanoClock  The clock, in nanoseconds.
+     */
+    public CachingReviewService(ReviewService delegate, long ttl, TimeUnit unit, final int maxEntries, LongSupplier nanoClock) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        } else if (ttl <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("Invalid cache size.");
+        }
+        this.delegate = delegate;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        long now = nanoClock.getAsLong();
+        synchronized (entries) {
+            Entry entry = entries.get(ISBN);
+            if (entry != null && now - entry.fetchedNanos < ttlNanos) {
+                return entry.reviews;
+            }
+        }
+        List<String> fetched = delegate.getReviewsForBook(ISBN);
+        if (fetched == null) {
+            return null;
+        }
+        List<String> reviews = Collections.unmodifiableList(new ArrayList<>(fetched));
+        synchronized (entries) {
+            entries.put(ISBN, new Entry(reviews, now));
+        }
+        notifyRefreshed(ISBN);
+        return reviews;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * Drops the cached reviews of a book, so they are fetched again on the next request.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    public void invalidate(String ISBN) {
+        synchronized (entries) {
+            entries.remove(ISBN);
+        }
+        notifyRefreshed(ISBN);
+    }
+
+    /**
+     * Registers a listener told with the ISBN of every book whose reviews are refetched or invalidated.
+     *
+     * @param listener The listener, called on the thread which fetched or invalidated the reviews.
+     */
+    public void addRefreshListener(Consumer<String> listener) {
+        refreshListeners.add(listener);
+    }
+
+    private void notifyRefreshed(String ISBN) {
+        for (Consumer<String> listener : refreshListeners) {
+            listener.accept(ISBN);
+        }
+    }
+
+    // The reviews of a book and the time they were fetched.
+    private static final class Entry {
+        private final List<String> reviews;
+        private final long fetchedNanos;
+
+        private Entry(List<String> reviews, long fetchedNanos) {
+            this.reviews = reviews;
+            this.fetchedNanos = fetchedNanos;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ac.il.bgu.qa.services;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Traverses several spliterators one after another, such as the scans of the shards of a database.
+ * Splitting first divides the parts between the halves, then splits the last remaining part.
+ *
+ * @param <T> The type of the elements.
+ */
+final class ConcatSpliterator<T> implements Spliterator<T> {
+
+    private final List<Spliterator<T>> parts;
+    // The range of parts left to traverse.
+    private int from;
+    private final int to;
+
+    ConcatSpliterator(List<Spliterator<T>> parts) {
+        this(parts, 0, parts.size());
+    }
+
+    private ConcatSpliterator(List<Spliterator<T>> parts, int from, int to) {
+        this.parts = parts;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (to - from > 1) {
+            int middle = (from + to) >>> 1;
+            Spliterator<T> prefix = new ConcatSpliterator<>(parts, from, middle);
+            from = middle;
+            return prefix;
+        }
+        return from < to ? parts.get(from).trySplit() : null;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        while (from < to) {
+            if (parts.get(from).tryAdvance(action)) {
+                return true;
+            }
+            from++;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        Objects.requireNonNull(action);
+        for (; from < to; from++) {
+            parts.get(from).forEachRemaining(action);
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = 0;
+        for (int i = from; i < to; i++) {
+            size += parts.get(i).estimateSize();
+            if (size < 0) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        // The parts are separate sources, so only the characteristics every part has carry over.
+        int characteristics = ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        for (int i = from; i < to; i++) {
+            characteristics &= parts.get(i).characteristics();
+        }
+        return characteristics;
+    }
+}
@@ -2,6 +2,11 @@ package ac.il.bgu.qa.services;
 
 import ac.il.bgu.qa.Book;
 import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Function;
 
 /**
  * Provides an interface for services responsible for managing the database of books and users.
@@ -56,4 +61,108 @@ public interface DatabaseService {
      * @param ISBN The International Standard Book Number of the book to be returned.
      */
     void returnBook(String ISBN);
+
+    /**
+     * Returns the copy of a book held by a specific user. Databases tracking the holder of every copy
+     * of a multi-copy book should override this, and reject the return if the user holds no copy;
+     * by default the user is ignored.
+     *
+     * @param ISBN   The International Standard Book Number of the book being returned.
+     * @param userId The unique identifier for the user returning the book.
+     * @throws BookNotBorrowedException If the database tracks holders and the user holds no copy of the book.
+     */
+    default void returnBook(String ISBN, String userId) {
+        returnBook(ISBN);
+    }
+
+    /**
+     * Retrieves the Ids of the users currently holding copies of a book, one entry per copy, so that loans can be
+     * moved with their book between databases. Databases tracking the holder of every copy should override this.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Ids of the borrowing users in borrowing order, empty if the book is not borrowed.
+     * @throws UnsupportedOperationException If holders are not tracked.
+     */
+    default List<String> getHolders(String ISBN) {
+        throw new UnsupportedOperationException("Holders not tracked.");
+    }
+
+    /**
+     * Checks whether this database applies {@link #compareAndSetBorrowed(String, long, String)} and
+     * {@link #compareAndSetReturned(String, long, String)} atomically. A library uses them instead of changing
+     * the book itself when the database is shared by several libraries, whose books are separate copies.
+     *
+     * @return true if conditional updates are supported, false by default.
+     */
+    default boolean supportsConditionalUpdates() {
+        return false;
+    }
+
+    /**
+     * Borrows a copy of a book for a user, only if the stored book is still at the expected version.
+     * The check, marking the copy as borrowed, incrementing the version and associating the copy with the
+     * user happen atomically.
+     *
+     * @param ISBN            The International Standard Book Number of the book to be borrowed.
+     * @param expectedVersion The version of the book the borrow is based on.
+     * @param userId          The unique identifier for the user borrowing the book.
+     * @return true if the copy was borrowed, false if the book changed since the expected version.
+     * @throws UnsupportedOperationException If conditional updates are not supported.
+     */
+    default boolean compareAndSetBorrowed(String ISBN, long expectedVersion, String userId) {
+        throw new UnsupportedOperationException("Conditional updates not supported.");
+    }
+
+    /**
+     * Returns a copy of a book, only if the stored book is still at the expected version.
+     * The check, marking the copy as returned and incrementing the version happen atomically.
+     *
+     * @param ISBN            The International Standard Book Number of the book being returned.
+     * @param expectedVersion The version of the book the return is based on.
+     * @param userId          The unique identifier for the user returning the book, or null if unknown.
+     * @return true if the copy was returned, false if the book changed since the expected version.
+     * @throws BookNotBorrowedException      If the user is given and holds no copy of the book.
+     * @throws UnsupportedOperationException If conditional updates are not supported.
+     */
+    default boolean compareAndSetReturned(String ISBN, long expectedVersion, String userId) {
+        throw new UnsupportedOperationException("Conditional updates not supported.");
+    }
+
+    /**
+     * Scans every book of the database, for reports over the whole catalog. The returned spliterator is
+     * weakly consistent: it reflects the books present when it was created and may or may not reflect later
+     * changes. Databases which can should return one which is sized and splits evenly, so that parallel
+     * streams over it scale with the number of cores.
+     *
+     * @return A spliterator over the books.
+     * @throws UnsupportedOperationException If scans are not supported.
+     */
+    default Spliterator<Book> scanBooks() {
+        throw new UnsupportedOperationException("Scans not supported.");
+    }
+
+    /**
+     * Scans every registered user of the database, with the same consistency as {@link #scanBooks()}.
+     *
+     * @return A spliterator over the users.
+     * @throws UnsupportedOperationException If scans are not supported.
+     */
+    default Spliterator<User> scanUsers() {
+        throw new UnsupportedOperationException("Scans not supported.");
+    }
+
+    /**
+     * Scans the books selected by a query, projected to the values a report needs. By default the query and
+     * the projection are applied to every book of {@link #scanBooks()} as it is traversed; databases with an
+     * index on a selected attribute should override this to traverse only the matching books.
+     *
+     * @param query      The books to scan.
+     * @param projection Maps each selected book to the scanned value.
+     * @param <R>        The type of the scanned values.
+     * @return A spliterator over the projected values of the selected books.
+     * @throws UnsupportedOperationException If scans are not supported.
+     */
+    default <R> Spliterator<R> scanBooks(BookQuery query, Function<? super Book, ? extends R> projection) {
+        return new ScanSpliterator<>(scanBooks(), query.isAll() ? null : query::matches, projection);
+    }
 }
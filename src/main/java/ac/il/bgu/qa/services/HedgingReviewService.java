@@ -0,0 +1,237 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ReviewService} which cuts tail latency by hedging requests over several replicas.
+ * <p>
+ * Each request goes to one replica, chosen round-robin. If it has not answered within the configured
+ * percentile of recent latencies, a second request is sent to the next replica, and the first successful
+ * answer wins. Every request which lost is cancelled, the first one included, so that a hung replica holds no
+ * thread past the call. The delay is computed from the latencies of first requests only, since those of
+ * requests won by a hedge are bounded by the delay itself and would let it drift; a first request cut short
+ * by a winning hedge is recorded at the time it had taken, a lower bound of its latency, so that a slow
+ * replica keeps the delay up. Hedges are limited by a budget: each request earns
+ * {@code maxHedgeRatio} of a hedge, so on average at most that fraction of requests are hedged, and a slow
+ * backend cannot double the load on its replicas.
+ */
+public class HedgingReviewService implements ReviewService {
+
+    // Number of recent latencies the hedging delay is computed from.
+    private static final int LATENCY_SAMPLES = 1024;
+    // The hedging delay is recomputed after this many new samples.
+    private static final int RECOMPUTE_INTERVAL = 64;
+    // The most hedges which can be saved up in the budget.
+    private static final double MAX_SAVED_HEDGES = 10;
+
+    // The replicas requests are sent to.
+    private final List<ReviewService> replicas;
+    // The executor running the requests.
+    private final ExecutorService executor;
+    // The percentile of recent latencies after which a request is hedged.
+    private final double hedgePercentile;
+    // The fraction of requests which may be hedged on average.
+    private final double maxHedgeRatio;
+
+    // Index of the next primary replica.
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    // Ring buffer of recent latencies, guarded by this.
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private long recordedLatencies;
+    // The current hedging delay, in nanoseconds.
+    private volatile long hedgeDelayNanos;
+
+    // Hedges currently available in the budget, guarded by this.
+    private double hedgeBudget = MAX_SAVED_HEDGES;
+
+    // Metrics.
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong hedgesDenied = new AtomicLong();
+
+    /**
+     * Constructs a new HedgingReviewService.
+     *
+     * @param replicas          The review service replicas. At least two are needed for hedging.
+     * @param executor          The executor running the requests.
+     * @param hedgePercentile   The percentile of recent latencies after which a request is hedged, e.g. 95.
+     * @param maxHedgeRatio     The fraction of requests which may be hedged on average, e.g. 0.05.
+     * @param initialDelay      The hedging delay used until enough latencies were recorded.
+     * @param unit              The unit of the initial delay.
+     */
+    public HedgingReviewService(List<? extends ReviewService> replicas, ExecutorService executor, double hedgePercentile,
+                                double maxHedgeRatio, long initialDelay, TimeUnit unit) {
+        if (replicas == null || replicas.isEmpty() || replicas.contains(null)) {
+            throw new IllegalArgumentException("Invalid replicas.");
+        } else if (hedgePercentile <= 0 || hedgePercentile >= 100) {
+            throw new IllegalArgumentException("Invalid hedge percentile.");
+        } else if (maxHedgeRatio < 0 || maxHedgeRatio > 1) {
+            throw new IllegalArgumentException("Invalid hedge ratio.");
+        }
+        this.replicas = new ArrayList<ReviewService>(replicas);
+        this.executor = executor;
+        this.hedgePercentile = hedgePercentile;
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.hedgeDelayNanos = unit.toNanos(initialDelay);
+    }
+
+    @Override
+    public List<String> getReviewsForBook(final String ISBN) throws ReviewException {
+        requests.incrementAndGet();
+        earnHedge();
+        int primary = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        CompletionService<List<String>> completion = new ExecutorCompletionService<>(executor);
+        List<Future<List<String>>> calls = new ArrayList<>(2);
+        final ReviewService primaryReplica = replicas.get(primary);
+        // The start of the first request, or 0 until it starts. Its latency is recorded once, by whichever ends it.
+        final AtomicLong primaryStart = new AtomicLong();
+        final AtomicBoolean primaryRecorded = new AtomicBoolean();
+        calls.add(completion.submit(() -> {
+            primaryStart.set(System.nanoTime());
+            List<String> reviews = primaryReplica.getReviewsForBook(ISBN);
+            if (primaryRecorded.compareAndSet(false, true)) {
+                recordLatency(System.nanoTime() - primaryStart.get());
+            }
+            return reviews;
+        }));
+        try {
+            Future<List<String>> done = completion.poll(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+            if (done == null && replicas.size() > 1) {
+                if (spendHedge()) {
+                    hedges.incrementAndGet();
+                    calls.add(submit(completion, replicas.get((primary + 1) % replicas.size()), ISBN));
+                } else {
+                    hedgesDenied.incrementAndGet();
+                }
+            }
+
+            // Take the first successful answer; if every request failed, rethrow the first failure.
+            RuntimeException failure = null;
+            for (int outstanding = calls.size(); outstanding > 0; outstanding--) {
+                if (done == null) {
+                    done = completion.take();
+                }
+                try {
+                    List<String> reviews = done.get();
+                    if (done != calls.get(0)) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    return reviews;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause() : new ReviewException("Review service failed.");
+                    }
+                }
+                done = null;
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReviewException("Interrupted while fetching reviews.");
+        } finally {
+            // Cancel every request which lost the race. A first request cut short took at least as long as it ran.
+            long started = primaryStart.get();
+            if (calls.get(0).cancel(true) && started != 0 && primaryRecorded.compareAndSet(false, true)) {
+                recordLatency(System.nanoTime() - started);
+            }
+            for (int i = 1; i < calls.size(); i++) {
+                calls.get(i).cancel(true);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ReviewService replica : replicas) {
+            replica.close();
+        }
+    }
+
+    /**
+     * Retrieves the current delay after which requests are hedged.
+     *
+     * @return The hedging delay, in nanoseconds.
+     */
+    public long getHedgeDelayNanos() {
+        return hedgeDelayNanos;
+    }
+
+    /**
+     * Retrieves the number of requests made.
+     *
+     * @return The number of requests.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Retrieves the number of hedged requests sent.
+     *
+     * @return The number of hedges.
+     */
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    /**
+     * Retrieves the number of hedged requests which answered before the original request.
+     *
+     * @return The number of winning hedges.
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * Retrieves the number of hedges not sent because the budget was exhausted.
+     *
+     * @return The number of denied hedges.
+     */
+    public long getHedgesDenied() {
+        return hedgesDenied.get();
+    }
+
+    private Future<List<String>> submit(CompletionService<List<String>> completion, final ReviewService replica, final String ISBN) {
+        return completion.submit(() -> replica.getReviewsForBook(ISBN));
+    }
+
+    private synchronized void earnHedge() {
+        hedgeBudget = Math.min(MAX_SAVED_HEDGES, hedgeBudget + maxHedgeRatio);
+    }
+
+    private synchronized boolean spendHedge() {
+        if (hedgeBudget < 1) {
+            return false;
+        }
+        hedgeBudget--;
+        return true;
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        latencies[(int) (recordedLatencies % LATENCY_SAMPLES)] = nanos;
+        recordedLatencies++;
+        if (recordedLatencies % RECOMPUTE_INTERVAL == 0) {
+            int count = (int) Math.min(recordedLatencies, LATENCY_SAMPLES);
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            hedgeDelayNanos = sorted[Math.min(count - 1, (int) Math.ceil(hedgePercentile / 100 * count) - 1)];
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.util.AppendOnlyArray;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * A thread-safe {@link DatabaseService} which keeps books and users in memory.
+ * Useful as a backend for tests, benchmarks and local deployments.
+ * <p>
+ * Books and users are kept in chunked arrays in the order they were first added, indexed by ISBN and by
+ * user Id, so that scans read them in place, are sized and split evenly for parallel streams. The books
+ * are also indexed by author, so that scans of one author's books only traverse those.
+ */
+public class InMemoryDatabaseService implements DatabaseService {
+
+    // The books in the database, and the index of each one keyed by ISBN. Books are replaced, never removed.
+    private final AppendOnlyArray<Book> books = new AppendOnlyArray<>();
+    private final ConcurrentMap<String, Integer> bookSlots = new ConcurrentHashMap<>();
+
+    // The users in the database, and the index of each one keyed by user Id.
+    private final AppendOnlyArray<User> users = new AppendOnlyArray<>();
+    private final ConcurrentMap<String, Integer> userSlots = new ConcurrentHashMap<>();
+
+    // The indices of the books of each author, keyed by author.
+    private final ConcurrentMap<String, Set<Integer>> booksByAuthor = new ConcurrentHashMap<>();
+
+    // The Ids of the users currently holding copies of each borrowed book, in borrowing order, keyed by ISBN.
+    // The lists are never modified; every change replaces the list of its book.
+    private final ConcurrentMap<String, List<String>> borrowers = new ConcurrentHashMap<>();
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        // The book is stored while its ISBN is locked, so that replacements of one book stay in order.
+        bookSlots.compute(ISBN, (key, slot) -> {
+            if (slot == null) {
+                slot = books.add(book);
+            } else {
+                Book previous = books.get(slot);
+                books.set(slot, book);
+                if (previous.getAuthor() != null && !previous.getAuthor().equals(book.getAuthor())) {
+                    Set<Integer> slots = booksByAuthor.get(previous.getAuthor());
+                    if (slots != null) {
+                        slots.remove(slot);
+                    }
+                }
+            }
+            if (book.getAuthor() != null) {
+                booksByAuthor.computeIfAbsent(book.getAuthor(), author -> ConcurrentHashMap.newKeySet()).add(slot);
+            }
+            return slot;
+        });
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        userSlots.compute(id, (key, slot) -> {
+            if (slot == null) {
+                return users.add(user);
+            }
+            users.set(slot, user);
+            return slot;
+        });
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        Integer slot = ISBN == null ? null : bookSlots.get(ISBN);
+        return slot == null ? null : books.get(slot);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        Integer slot = userId == null ? null : userSlots.get(userId);
+        return slot == null ? null : users.get(slot);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        borrowers.compute(ISBN, (key, holders) -> {
+            List<String> updated = holders == null ? new ArrayList<>(1) : new ArrayList<>(holders);
+            updated.add(userId);
+            return Collections.unmodifiableList(updated);
+        });
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        // Without a user, the copy held the longest is returned.
+        borrowers.computeIfPresent(ISBN, (key, holders) -> without(holders, 0));
+    }
+
+    @Override
+    public void returnBook(String ISBN, String userId) {
+        borrowers.compute(ISBN, (key, holders) -> {
+            int index = holders == null ? -1 : holders.indexOf(userId);
+            if (index < 0) {
+                throw new BookNotBorrowedException("Book wasn't borrowed!");
+            }
+            return without(holders, index);
+        });
+    }
+
+    @Override
+    public Spliterator<Book> scanBooks() {
+        return books.spliterator();
+    }
+
+    @Override
+    public Spliterator<User> scanUsers() {
+        return users.spliterator();
+    }
+
+    @Override
+    public <R> Spliterator<R> scanBooks(BookQuery query, Function<? super Book, ? extends R> projection) {
+        if (query.getAuthor() == null) {
+            return DatabaseService.super.scanBooks(query, projection);
+        }
+        // Traverse only the author's books. The query is checked again, since a book may have changed author.
+        Set<Integer> slots = booksByAuthor.get(query.getAuthor());
+        Spliterator<Book> authored = new ScanSpliterator<>(slots == null ? Spliterators.<Integer>emptySpliterator()
+                : slots.spliterator(), null, books::get);
+        return new ScanSpliterator<>(authored, query::matches, projection);
+    }
+
+    /**
+     * Retrieves the Id of the user who has held a copy of a book the longest.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrowing user, or null if the book is not borrowed.
+     */
+    public String getBorrower(String ISBN) {
+        List<String> holders = borrowers.get(ISBN);
+        return holders == null ? null : holders.get(0);
+    }
+
+    @Override
+    public List<String> getHolders(String ISBN) {
+        List<String> holders = borrowers.get(ISBN);
+        return holders == null ? Collections.<String>emptyList() : holders;
+    }
+
+    /**
+     * Retrieves a live, unmodifiable view of the books in the database.
+     *
+     * @return The books in the database.
+     */
+    public Collection<Book> getBooks() {
+        return view(books);
+    }
+
+    /**
+     * Retrieves a live, unmodifiable view of the users in the database.
+     *
+     * @return The users in the database.
+     */
+    public Collection<User> getUsers() {
+        return view(users);
+    }
+
+    // Returns a live, unmodifiable view of the elements of an array.
+    private static <T> Collection<T> view(final AppendOnlyArray<T> elements) {
+        return new AbstractCollection<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return Spliterators.iterator(elements.spliterator());
+            }
+
+            @Override
+            public Spliterator<T> spliterator() {
+                return elements.spliterator();
+            }
+
+            @Override
+            public int size() {
+                return elements.size();
+            }
+        };
+    }
+
+    // Returns the holders without the entry at the given index, or null if none are left.
+    private static List<String> without(List<String> holders, int index) {
+        if (holders.size() == 1) {
+            return null;
+        }
+        List<String> updated = new ArrayList<>(holders);
+        updated.remove(index);
+        return Collections.unmodifiableList(updated);
+    }
+}
@@ -0,0 +1,75 @@
+package ac.il.bgu.qa.services;
+
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Filters and projects the elements of a source spliterator as they are traversed, splitting along with it.
+ * Without a filter the scan keeps the source's size.
+ *
+ * @param <T> The type of the source elements.
+ * @param <R> The type of the projected elements.
+ */
+final class ScanSpliterator<T, R> implements Spliterator<R> {
+
+    private final Spliterator<T> source;
+    // Selects the source elements to project, or null to project all of them.
+    private final Predicate<? super T> filter;
+    private final Function<? super T, ? extends R> projection;
+
+    ScanSpliterator(Spliterator<T> source, Predicate<? super T> filter, Function<? super T, ? extends R> projection) {
+        this.source = source;
+        this.filter = filter;
+        this.projection = projection;
+    }
+
+    @Override
+    public Spliterator<R> trySplit() {
+        Spliterator<T> prefix = source.trySplit();
+        return prefix == null ? null : new ScanSpliterator<>(prefix, filter, projection);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super R> action) {
+        Objects.requireNonNull(action);
+        boolean[] found = new boolean[1];
+        while (!found[0] && source.tryAdvance(element -> {
+            if (filter == null || filter.test(element)) {
+                found[0] = true;
+                action.accept(projection.apply(element));
+            }
+        })) {
+            // Skip the elements the filter rejects.
+        }
+        return found[0];
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super R> action) {
+        Objects.requireNonNull(action);
+        if (filter == null) {
+            source.forEachRemaining(element -> action.accept(projection.apply(element)));
+        } else {
+            source.forEachRemaining(element -> {
+                if (filter.test(element)) {
+                    action.accept(projection.apply(element));
+                }
+            });
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        return source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+        // Projection may merge or nullify elements; filtering makes the size an estimate.
+        int kept = filter == null ? ORDERED | SIZED | SUBSIZED : ORDERED;
+        return source.characteristics() & kept;
+    }
+}
@@ -0,0 +1,337 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A {@link DatabaseService} which spreads books and users over several backing database services.
+ * <p>
+ * Each book is routed by a hash of its normalized ISBN (hyphens removed), so that the hyphenated and
+ * plain forms of an ISBN land on the same shard. Each user is routed by their 12-digit Id.
+ * Batch lookups and whole-shard operations are fanned out to the shards in parallel.
+ */
+public class ShardedDatabaseService implements DatabaseService {
+
+    // The backing database services, indexed by shard number.
+    private final List<DatabaseService> shards;
+
+    // The executor running parallel fan-out operations.
+    private final ExecutorService executor;
+
+    // Whether the shards may hold old copies of entries which now route to another shard, left by a reshard.
+    private final boolean staleCopies;
+
+    /**
+     * Constructs a new ShardedDatabaseService.
+     *
+     * @param shards   The backing database services. Their order defines the shard numbers.
+     * @param executor The executor used to query shards in parallel.
+     */
+    public ShardedDatabaseService(List<? extends DatabaseService> shards, ExecutorService executor) {
+        this(shards, executor, false);
+    }
+
+    private ShardedDatabaseService(List<? extends DatabaseService> shards, ExecutorService executor, boolean staleCopies) {
+        if (shards == null || shards.isEmpty() || shards.contains(null)) {
+            throw new IllegalArgumentException("Invalid shards.");
+        } else if (executor == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<DatabaseService>(shards));
+        this.executor = executor;
+        this.staleCopies = staleCopies;
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        bookShard(ISBN).addBook(ISBN, book);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        userShard(id).registerUser(id, user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return bookShard(ISBN).getBookByISBN(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return userShard(userId).getUserById(userId);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        bookShard(ISBN).borrowBook(ISBN, userId);
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        bookShard(ISBN).returnBook(ISBN);
+    }
+
+    @Override
+    public void returnBook(String ISBN, String userId) {
+        bookShard(ISBN).returnBook(ISBN, userId);
+    }
+
+    // Supported only if every shard supports conditional updates.
+    @Override
+    public boolean supportsConditionalUpdates() {
+        for (DatabaseService shard : shards) {
+            if (!shard.supportsConditionalUpdates()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean compareAndSetBorrowed(String ISBN, long expectedVersion, String userId) {
+        return bookShard(ISBN).compareAndSetBorrowed(ISBN, expectedVersion, userId);
+    }
+
+    @Override
+    public boolean compareAndSetReturned(String ISBN, long expectedVersion, String userId) {
+        return bookShard(ISBN).compareAndSetReturned(ISBN, expectedVersion, userId);
+    }
+
+    @Override
+    public List<String> getHolders(String ISBN) {
+        return bookShard(ISBN).getHolders(ISBN);
+    }
+
+    @Override
+    public Spliterator<Book> scanBooks() {
+        if (!staleCopies) {
+            return scanShards(DatabaseService::scanBooks);
+        }
+        return scanShards(shard -> ownBooks(shard, shard.scanBooks(), Function.identity()));
+    }
+
+    @Override
+    public Spliterator<User> scanUsers() {
+        if (!staleCopies) {
+            return scanShards(DatabaseService::scanUsers);
+        }
+        return scanShards(shard -> new ScanSpliterator<>(shard.scanUsers(),
+                user -> shards.get(userShardIndex(user.getId())) == shard, Function.<User>identity()));
+    }
+
+    @Override
+    public <R> Spliterator<R> scanBooks(BookQuery query, Function<? super Book, ? extends R> projection) {
+        if (!staleCopies) {
+            return scanShards(shard -> shard.scanBooks(query, projection));
+        }
+        // Project after dropping the old copies, which can only be recognized by the book.
+        return scanShards(shard -> ownBooks(shard, shard.scanBooks(query, Function.<Book>identity()), projection));
+    }
+
+    /**
+     * Fetches several books at once, querying every involved shard in parallel.
+     *
+     * @param ISBNs The ISBNs of the books to fetch.
+     * @return The found books keyed by ISBN. ISBNs with no book are left out.
+     */
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        Map<Integer, List<String>> byShard = new HashMap<>();
+        for (String ISBN : ISBNs) {
+            byShard.computeIfAbsent(bookShardIndex(ISBN), k -> new ArrayList<>()).add(ISBN);
+        }
+        return batch(byShard, DatabaseService::getBookByISBN);
+    }
+
+    /**
+     * Fetches several users at once, querying every involved shard in parallel.
+     *
+     * @param userIds The Ids of the users to fetch.
+     * @return The found users keyed by Id. Ids with no user are left out.
+     */
+    public Map<String, User> getUsersById(Collection<String> userIds) {
+        Map<Integer, List<String>> byShard = new HashMap<>();
+        for (String userId : userIds) {
+            byShard.computeIfAbsent(userShardIndex(userId), k -> new ArrayList<>()).add(userId);
+        }
+        return batch(byShard, DatabaseService::getUserById);
+    }
+
+    /**
+     * Runs an operation on every shard in parallel, for example a scan supported by the backing services.
+     *
+     * @param operation The operation to run on each shard.
+     * @param <R>       The type of the operation's result.
+     * @return The results of the operation, in shard order.
+     */
+    public <R> List<R> fanOut(final Function<DatabaseService, R> operation) {
+        List<Callable<R>> tasks = new ArrayList<>();
+        for (final DatabaseService shard : shards) {
+            tasks.add(() -> operation.apply(shard));
+        }
+        return invokeAll(tasks);
+    }
+
+    /**
+     * Builds a sharded database over a new set of shards, moving every book and user whose shard changed,
+     * together with the loans of the books' borrowed copies. Shards present in both sets keep the entries that
+     * still route to them, so growing from N to 2N shards by appending new shards moves only about half the
+     * entries. Entries are copied, not deleted, from their old shard, since {@link DatabaseService} has no
+     * removal operation. Lookups and updates no longer reach the old copies, and the scans of the new database
+     * skip them, so they are only visible through the backing services themselves. Writes must be paused while
+     * resharding, and this database must not be used afterwards.
+     *
+     * @param newShards The backing database services of the new layout.
+     * @param ISBNs     The ISBNs of every book in the database.
+     * @param userIds   The Ids of every user in the database.
+     * @return The sharded database service over the new layout.
+     * @throws UnsupportedOperationException If a moved book is on loan and its shard does not track holders.
+     */
+    public ShardedDatabaseService reshard(List<? extends DatabaseService> newShards, Iterable<String> ISBNs, Iterable<String> userIds) {
+        ShardedDatabaseService target = new ShardedDatabaseService(newShards, executor, true);
+        for (String ISBN : ISBNs) {
+            DatabaseService from = bookShard(ISBN);
+            DatabaseService to = target.bookShard(ISBN);
+            if (from != to) {
+                Book book = from.getBookByISBN(ISBN);
+                if (book != null) {
+                    to.addBook(ISBN, book);
+                    // Move the holders of the borrowed copies, so their returns reach the new shard.
+                    if (book.hasBorrowedCopies()) {
+                        for (String userId : from.getHolders(ISBN)) {
+                            to.borrowBook(ISBN, userId);
+                        }
+                    }
+                }
+            }
+        }
+        for (String userId : userIds) {
+            DatabaseService from = userShard(userId);
+            DatabaseService to = target.userShard(userId);
+            if (from != to) {
+                User user = from.getUserById(userId);
+                if (user != null) {
+                    to.registerUser(userId, user);
+                }
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Retrieves the number of shards.
+     *
+     * @return The number of backing database services.
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Computes the shard a book is stored on.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The shard number.
+     */
+    public int bookShardIndex(String ISBN) {
+        String normalized = ISBN == null ? "" : ISBN.replace("-", "");
+        return Math.floorMod(spread(normalized.hashCode()), shards.size());
+    }
+
+    /**
+     * Computes the shard a user is stored on.
+     *
+     * @param userId The unique identifier of the user.
+     * @return The shard number.
+     */
+    public int userShardIndex(String userId) {
+        if (userId != null && userId.matches("\\d{12}")) {
+            return (int) (Long.parseLong(userId) % shards.size());
+        }
+        return Math.floorMod(spread(userId == null ? 0 : userId.hashCode()), shards.size());
+    }
+
+    // Concatenates the scans of the shards, which splits across shards before splitting any one shard's scan.
+    private <T> Spliterator<T> scanShards(Function<DatabaseService, Spliterator<T>> scan) {
+        List<Spliterator<T>> parts = new ArrayList<>(shards.size());
+        for (DatabaseService shard : shards) {
+            parts.add(scan.apply(shard));
+        }
+        return new ConcatSpliterator<>(parts);
+    }
+
+    // Keeps the books of a shard's scan which route to that shard, projected.
+    private <R> Spliterator<R> ownBooks(DatabaseService shard, Spliterator<Book> books, Function<? super Book, ? extends R> projection) {
+        return new ScanSpliterator<>(books, book -> bookShard(book.getISBN()) == shard, projection);
+    }
+
+    private DatabaseService bookShard(String ISBN) {
+        return shards.get(bookShardIndex(ISBN));
+    }
+
+    private DatabaseService userShard(String userId) {
+        return shards.get(userShardIndex(userId));
+    }
+
+    // Spreads the bits of a String hash code so that similar keys land on different shards.
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private <V> Map<String, V> batch(Map<Integer, List<String>> keysByShard, final BiFunction<DatabaseService, String, V> lookup) {
+        List<Callable<Map<String, V>>> tasks = new ArrayList<>();
+        for (final Map.Entry<Integer, List<String>> entry : keysByShard.entrySet()) {
+            final DatabaseService shard = shards.get(entry.getKey());
+            tasks.add(() -> {
+                Map<String, V> found = new HashMap<>();
+                for (String key : entry.getValue()) {
+                    V value = lookup.apply(shard, key);
+                    if (value != null) {
+                        found.put(key, value);
+                    }
+                }
+                return found;
+            });
+        }
+        Map<String, V> result = new HashMap<>();
+        for (Map<String, V> found : invokeAll(tasks)) {
+            result.putAll(found);
+        }
+        return result;
+    }
+
+    private <R> List<R> invokeAll(List<Callable<R>> tasks) {
+        try {
+            List<R> results = new ArrayList<>();
+            for (Future<R> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying shards.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Shard query failed.", e.getCause());
+        }
+    }
+}
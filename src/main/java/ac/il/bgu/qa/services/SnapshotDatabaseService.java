@@ -0,0 +1,277 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.util.PersistentHashMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * A thread-safe in-memory {@link DatabaseService} whose reads never lock.
+ * <p>
+ * The whole database is one immutable {@link Snapshot} of persistent hash maps, held in an atomic reference.
+ * Readers dereference it once and look up in that version; writers build the next version, sharing every
+ * untouched node of the tries, and publish it with a compare-and-set, retrying if another writer won.
+ * A reader therefore always sees a consistent state, and {@link #snapshot()} gives reports a point-in-time
+ * view which later writes do not disturb.
+ * <p>
+ * The snapshot's borrower records are the point-in-time loan state. The borrowed flag of a {@link Book} belongs
+ * to the shared book object, which the {@link ac.il.bgu.qa.Library} mutates in place, so reports should
+ * consult {@link Snapshot#getBorrower(String)} rather than the flag.
+ */
+public class SnapshotDatabaseService implements DatabaseService {
+
+    // The current version of the database.
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        update(snapshot -> snapshot.with(snapshot.books.plus(ISBN, book), snapshot.users, snapshot.borrowers));
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        update(snapshot -> snapshot.with(snapshot.books, snapshot.users.plus(id, user), snapshot.borrowers));
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return ISBN == null ? null : current.get().books.get(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return userId == null ? null : current.get().users.get(userId);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        update(snapshot -> {
+            List<String> holders = new ArrayList<>(snapshot.getHolders(ISBN));
+            holders.add(userId);
+            return snapshot.withHolders(ISBN, holders);
+        });
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        // Without a user, the copy held the longest is returned.
+        update(snapshot -> snapshot.withoutHolder(ISBN, 0));
+    }
+
+    @Override
+    public void returnBook(String ISBN, String userId) {
+        update(snapshot -> {
+            int index = snapshot.getHolders(ISBN).indexOf(userId);
+            if (index < 0) {
+                throw new BookNotBorrowedException("Book wasn't borrowed!");
+            }
+            return snapshot.withoutHolder(ISBN, index);
+        });
+    }
+
+    @Override
+    public List<String> getHolders(String ISBN) {
+        return current.get().getHolders(ISBN);
+    }
+
+    /**
+     * Scans the books of the current version, which later writes do not disturb.
+     *
+     * @return A sized spliterator over the books, splitting along the trie.
+     */
+    @Override
+    public Spliterator<Book> scanBooks() {
+        return new ScanSpliterator<>(current.get().books.spliterator(), null, Map.Entry::getValue);
+    }
+
+    /**
+     * Scans the users of the current version, which later writes do not disturb.
+     *
+     * @return A sized spliterator over the users, splitting along the trie.
+     */
+    @Override
+    public Spliterator<User> scanUsers() {
+        return new ScanSpliterator<>(current.get().users.spliterator(), null, Map.Entry::getValue);
+    }
+
+    /**
+     * Retrieves the current version of the database, which stays unchanged by later writes.
+     *
+     * @return The current snapshot.
+     */
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    private void update(UnaryOperator<Snapshot> change) {
+        Snapshot snapshot;
+        Snapshot next;
+        do {
+            snapshot = current.get();
+            next = change.apply(snapshot);
+        } while (next != snapshot && !current.compareAndSet(snapshot, next));
+    }
+
+    /**
+     * An immutable version of the database.
+     */
+    public static final class Snapshot {
+
+        private static final Snapshot EMPTY = new Snapshot(0, PersistentHashMap.<String, Book>empty(),
+                PersistentHashMap.<String, User>empty(), PersistentHashMap.<String, List<String>>empty());
+
+        // The number of writes which produced this version.
+        private final long version;
+        // The books keyed by ISBN, the users keyed by user Id, and the Ids of the users holding copies keyed by ISBN.
+        private final PersistentHashMap<String, Book> books;
+        private final PersistentHashMap<String, User> users;
+        private final PersistentHashMap<String, List<String>> borrowers;
+
+        private Snapshot(long version, PersistentHashMap<String, Book> books, PersistentHashMap<String, User> users,
+                         PersistentHashMap<String, List<String>> borrowers) {
+            this.version = version;
+            this.books = books;
+            this.users = users;
+            this.borrowers = borrowers;
+        }
+
+        // Returns the next version with the given maps, or this version if nothing changed.
+        private Snapshot with(PersistentHashMap<String, Book> books, PersistentHashMap<String, User> users,
+                              PersistentHashMap<String, List<String>> borrowers) {
+            if (books == this.books && users == this.users && borrowers == this.borrowers) {
+                return this;
+            }
+            return new Snapshot(version + 1, books, users, borrowers);
+        }
+
+        // Returns the next version with the given holders of a book.
+        private Snapshot withHolders(String ISBN, List<String> holders) {
+            PersistentHashMap<String, List<String>> updated = holders.isEmpty()
+                    ? borrowers.minus(ISBN) : borrowers.plus(ISBN, Collections.unmodifiableList(holders));
+            return with(books, users, updated);
+        }
+
+        // Returns the next version without the holder at the given index, or this version if the index is negative.
+        private Snapshot withoutHolder(String ISBN, int index) {
+            if (index < 0 || getHolders(ISBN).isEmpty()) {
+                return this;
+            }
+            List<String> holders = new ArrayList<>(getHolders(ISBN));
+            holders.remove(index);
+            return withHolders(ISBN, holders);
+        }
+
+        /**
+         * Retrieves the number of writes which produced this version.
+         *
+         * @return The version number.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Retrieves a book.
+         *
+         * @param ISBN The International Standard Book Number of the book.
+         * @return The book, or null if it was not in the database at this version.
+         */
+        public Book getBook(String ISBN) {
+            return books.get(ISBN);
+        }
+
+        /**
+         * Retrieves a user.
+         *
+         * @param userId The Id of the user.
+         * @return The user, or null if the user was not registered at this version.
+         */
+        public User getUser(String userId) {
+            return users.get(userId);
+        }
+
+        /**
+         * Retrieves the Id of the user who had held a copy of a book the longest at this version.
+         *
+         * @param ISBN The International Standard Book Number of the book.
+         * @return The Id of the borrowing user, or null if the book was not borrowed.
+         */
+        public String getBorrower(String ISBN) {
+            List<String> holders = borrowers.get(ISBN);
+            return holders == null ? null : holders.get(0);
+        }
+
+        /**
+         * Retrieves the Ids of the users holding copies of a book at this version, one entry per copy.
+         *
+         * @param ISBN The International Standard Book Number of the book.
+         * @return The Ids of the borrowing users in borrowing order, empty if the book was not borrowed.
+         */
+        public List<String> getHolders(String ISBN) {
+            List<String> holders = borrowers.get(ISBN);
+            return holders == null ? Collections.<String>emptyList() : holders;
+        }
+
+        /**
+         * Retrieves the number of books.
+         *
+         * @return The number of books at this version.
+         */
+        public int getBookCount() {
+            return books.size();
+        }
+
+        /**
+         * Retrieves the number of users.
+         *
+         * @return The number of users at this version.
+         */
+        public int getUserCount() {
+            return users.size();
+        }
+
+        /**
+         * Retrieves the number of books with at least one borrowed copy.
+         *
+         * @return The number of books on loan at this version.
+         */
+        public int getBorrowedCount() {
+            return borrowers.size();
+        }
+
+        /**
+         * Iterates over the books of this version, in no particular order.
+         *
+         * @return The books, keyed by ISBN.
+         */
+        public Iterable<Map.Entry<String, Book>> books() {
+            return books;
+        }
+
+        /**
+         * Iterates over the users of this version, in no particular order.
+         *
+         * @return The users, keyed by user Id.
+         */
+        public Iterable<Map.Entry<String, User>> users() {
+            return users;
+        }
+
+        /**
+         * Iterates over the loans of this version, in no particular order.
+         *
+         * @return The Ids of the users holding copies, keyed by ISBN.
+         */
+        public Iterable<Map.Entry<String, List<String>>> loans() {
+            return borrowers;
+        }
+    }
+}
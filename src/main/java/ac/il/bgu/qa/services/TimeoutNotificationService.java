@@ -0,0 +1,68 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.util.Deadline;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link NotificationService} which abandons calls to another notification service once they exceed
+ * a timeout, or the current {@link Deadline} if it is earlier. An abandoned attempt fails with a
+ * {@link NotificationException}, like any other failed attempt.
+ * <p>
+ * Calls run on the given executor while the caller waits at most the time budget. An abandoned call is
+ * interrupted; a delegate which ignores interrupts keeps its executor thread busy until it returns.
+ */
+public class TimeoutNotificationService implements NotificationService {
+
+    // The notification service calls are forwarded to.
+    private final NotificationService delegate;
+
+    // The maximal duration of a call, in nanoseconds.
+    private final long timeoutNanos;
+
+    // The executor running the forwarded calls.
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a new TimeoutNotificationService.
+     *
+     * @param delegate The notification service calls are forwarded to.
+     * @param timeout  The maximal duration of a call.
+     * @param unit     The unit of the timeout.
+     * @param executor The executor running the forwarded calls.
+     */
+    public TimeoutNotificationService(NotificationService delegate, long timeout, TimeUnit unit, ExecutorService executor) {
+        this.delegate = delegate;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.executor = executor;
+    }
+
+    @Override
+    public void notifyUser(final String userId, final String message) throws NotificationException {
+        long budget = Deadline.remainingNanos(timeoutNanos);
+        if (budget <= 0) {
+            throw new NotificationException("Deadline exceeded before notifying.");
+        }
+        Future<?> call = executor.submit(() -> delegate.notifyUser(userId, message));
+        try {
+            call.get(budget, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            throw new NotificationException("Notification service timed out.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new NotificationException("Notification service failed.");
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new NotificationException("Interrupted while notifying.");
+        }
+    }
+}
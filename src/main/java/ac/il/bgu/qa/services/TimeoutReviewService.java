@@ -0,0 +1,88 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.util.Deadline;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link ReviewService} which abandons calls to another review service once they exceed a timeout,
+ * or the current {@link Deadline} if it is earlier.
+ * <p>
+ * Calls run on the given executor while the caller waits at most the time budget. An abandoned call is
+ * interrupted; a delegate which ignores interrupts keeps its executor thread busy until it returns, so
+ * the executor should not be shared with latency-sensitive work.
+ */
+public class TimeoutReviewService implements ReviewService {
+
+    // The review service calls are forwarded to.
+    private final ReviewService delegate;
+
+    // The maximal duration of a call, in nanoseconds.
+    private final long timeoutNanos;
+
+    // The executor running the forwarded calls.
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a new TimeoutReviewService.
+     *
+     * @param delegate The review service calls are forwarded to.
+     * @param timeout  The maximal duration of a call.
+     * @param unit     The unit of the timeout.
+     * @param executor The executor running the forwarded calls.
+     */
+    public TimeoutReviewService(ReviewService delegate, long timeout, TimeUnit unit, ExecutorService executor) {
+        this.delegate = delegate;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.executor = executor;
+    }
+
+    @Override
+    public List<String> getReviewsForBook(final String ISBN) throws ReviewException {
+        long budget = Deadline.remainingNanos(timeoutNanos);
+        if (budget <= 0) {
+            throw new ReviewException("Deadline exceeded before fetching reviews.");
+        }
+        Future<List<String>> call = executor.submit(() -> delegate.getReviewsForBook(ISBN));
+        try {
+            return call.get(budget, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            throw new ReviewException("Review service timed out.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ReviewException("Review service failed.");
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ReviewException("Interrupted while fetching reviews.");
+        }
+    }
+
+    @Override
+    public void close() {
+        // Closing is cleanup, so a hung close is abandoned silently after the time budget.
+        // Once the deadline passed, the close still runs but is not waited for.
+        long budget = Deadline.remainingNanos(timeoutNanos);
+        Future<?> call = executor.submit(delegate::close);
+        if (budget <= 0) {
+            return;
+        }
+        try {
+            call.get(budget, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            call.cancel(true);
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+    }
+}
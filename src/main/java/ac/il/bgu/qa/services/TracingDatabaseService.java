@@ -0,0 +1,178 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.jfr.EventRecorder;
+import ac.il.bgu.qa.jfr.ServiceCallSpan;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Function;
+
+/**
+ * A {@link DatabaseService} which records every call to another database service as a
+ * service call event in the running flight recordings. Costs next to nothing when no recording
+ * enables the event.
+ */
+public class TracingDatabaseService implements DatabaseService {
+
+    // The kind of service recorded in the events.
+    private static final String SERVICE = "database";
+
+    // The database service calls are forwarded to.
+    private final DatabaseService delegate;
+
+    /**
+     * Constructs a new TracingDatabaseService.
+     *
+     * @param delegate The database service calls are forwarded to.
+     */
+    public TracingDatabaseService(DatabaseService delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        ServiceCallSpan event = EventRecorder.beginServiceCall();
+        try {
+            delegate.addBook(ISBN, book);
+        } catch (RuntimeException e) {
+            event.finish(SERVICE, "addBook", ISBN, e);
+            throw e;
+        }
+        event.finish(SERVICE, "addBook", ISBN, null);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        ServiceCallSpan event = EventRecorder.beginServiceCall();
+        try {
+            delegate.registerUser(id, user);
+        } catch (RuntimeException e) {
+            event.finish(SERVICE, "registerUser", null, e);
+            throw e;
+        }
+        event.finish(SERVICE, "registerUser", null, null);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        ServiceCallSpan event = EventRecorder.beginServiceCall();
+        Book book;
+        try {
+            book = delegate.getBookByISBN(ISBN);
+        } catch (RuntimeException e) {
+            event.finish(SERVICE, "getBookByISBN", ISBN, e);
+            throw e;
+        }
+        event.finish(SERVICE, "getBookByISBN", ISBN, null);
+        return book;
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        ServiceCallSpan event = EventRecorder.beginServiceCall();
+        User user;
+        try {
+            user = delegate.getUserById(userId);
+        } catch (RuntimeException e) {
+            event.finish(SERVICE, "getUserById", null, e);
+            throw e;
+        }
+        event.finish(SERVICE, "getUserById", null, null);
+        return user;
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        ServiceCallSpan event = EventRecorder.beginServiceCall();
+        try {
+            delegate.borrowBook(ISBN, userId);
+        } catch (RuntimeException e) {
+            event.finish(SERVICE, "borrowBook", ISBN, e);
+            throw e;
+        }
+        event.finish(SERVICE, "borrowBook", ISBN, null);
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        ServiceCallSpan event = EventRecorder.beginServiceCall();
+        try {
+            delegate.returnBook(ISBN);
+        } catch (RuntimeException e) {
+            event.finish(SERVICE, "returnBook", ISBN, e);
+            throw e;
+        }
+        event.finish(SERVICE, "returnBook", ISBN, null);
+    }
+
+    @Override
+    public void returnBook(String ISBN, String userId) {
+        ServiceCallSpan event = EventRecorder.beginServiceCall();
+        try {
+            delegate.returnBook(ISBN, userId);
+        } catch (RuntimeException e) {
+            event.finish(SERVICE, "returnBook", ISBN, e);
+            throw e;
+        }
+        event.finish(SERVICE, "returnBook", ISBN, null);
+    }
+
+    @Override
+    public boolean supportsConditionalUpdates() {
+        return delegate.supportsConditionalUpdates();
+    }
+
+    @Override
+    public boolean compareAndSetBorrowed(String ISBN, long expectedVersion, String userId) {
+        ServiceCallSpan event = EventRecorder.beginServiceCall();
+        boolean updated;
+        try {
+            updated = delegate.compareAndSetBorrowed(ISBN, expectedVersion, userId);
+        } catch (RuntimeException e) {
+            event.finish(SERVICE, "compareAndSetBorrowed", ISBN, e);
+            throw e;
+        }
+        event.finish(SERVICE, "compareAndSetBorrowed", ISBN, null);
+        return updated;
+    }
+
+    @Override
+    public boolean compareAndSetReturned(String ISBN, long expectedVersion, String userId) {
+        ServiceCallSpan event = EventRecorder.beginServiceCall();
+        boolean updated;
+        try {
+            updated = delegate.compareAndSetReturned(ISBN, expectedVersion, userId);
+        } catch (RuntimeException e) {
+            event.finish(SERVICE, "compareAndSetReturned", ISBN, e);
+            throw e;
+        }
+        event.finish(SERVICE, "compareAndSetReturned", ISBN, null);
+        return updated;
+    }
+
+    @Override
+    public List<String> getHolders(String ISBN) {
+        return delegate.getHolders(ISBN);
+    }
+
+    @Override
+    public Spliterator<Book> scanBooks() {
+        // Scans are lazy, so the call itself does no work worth tracing.
+        return delegate.scanBooks();
+    }
+
+    @Override
+    public Spliterator<User> scanUsers() {
+        return delegate.scanUsers();
+    }
+
+    @Override
+    public <R> Spliterator<R> scanBooks(BookQuery query, Function<? super Book, ? extends R> projection) {
+        return delegate.scanBooks(query, projection);
+    }
+}
@@ -0,0 +1,43 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.jfr.EventRecorder;
+import ac.il.bgu.qa.jfr.ServiceCallSpan;
+
+/**
+ * A {@link NotificationService} which records every call to another notification service as a
+ * service call event in the running flight recordings. Costs next to nothing when no recording
+ * enables the event.
+ */
+public class TracingNotificationService implements NotificationService {
+
+    // The kind of service recorded in the events.
+    private static final String SERVICE = "notification";
+
+    // The notification service calls are forwarded to.
+    private final NotificationService delegate;
+
+    /**
+     * Constructs a new TracingNotificationService.
+     *
+     * @param delegate The notification service calls are forwarded to.
+     */
+    public TracingNotificationService(NotificationService delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void notifyUser(String userId, String message) throws NotificationException {
+        ServiceCallSpan event = EventRecorder.beginServiceCall();
+        try {
+            delegate.notifyUser(userId, message);
+        } catch (RuntimeException e) {
+            event.finish(SERVICE, "notifyUser", null, e);
+            throw e;
+        }
+        event.finish(SERVICE, "notifyUser", null, null);
+    }
+}
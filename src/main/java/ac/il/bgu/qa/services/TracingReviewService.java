@@ -0,0 +1,59 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.jfr.EventRecorder;
+import ac.il.bgu.qa.jfr.ServiceCallSpan;
+
+import java.util.List;
+
+/**
+ * A {@link ReviewService} which records every call to another review service as a
+ * service call event in the running flight recordings. Costs next to nothing when no recording
+ * enables the event.
+ */
+public class TracingReviewService implements ReviewService {
+
+    // The kind of service recorded in the events.
+    private static final String SERVICE = "review";
+
+    // The review service calls are forwarded to.
+    private final ReviewService delegate;
+
+    /**
+     * Constructs a new TracingReviewService.
+     *
+     * @param delegate The review service calls are forwarded to.
+     */
+    public TracingReviewService(ReviewService delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        ServiceCallSpan event = EventRecorder.beginServiceCall();
+        List<String> reviews;
+        try {
+            reviews = delegate.getReviewsForBook(ISBN);
+        } catch (RuntimeException e) {
+            event.finish(SERVICE, "getReviewsForBook", ISBN, e);
+            throw e;
+        }
+        event.finish(SERVICE, "getReviewsForBook", ISBN, null);
+        return reviews;
+    }
+
+    @Override
+    public void close() {
+        ServiceCallSpan event = EventRecorder.beginServiceCall();
+        try {
+            delegate.close();
+        } catch (RuntimeException e) {
+            event.finish(SERVICE, "close", null, e);
+            throw e;
+        }
+        event.finish(SERVICE, "close", null, null);
+    }
+}
@@ -0,0 +1,177 @@
+package ac.il.bgu.qa.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A thread-safe sequence of elements which only grows, stored in chunks of fixed size.
+ * <p>
+ * Appends are serialised and reads never lock: the size is published after the element is written, so a
+ * reader sees every element below the size it read. Elements may be replaced, but never removed. Growing
+ * copies only the table of chunks, never the elements. A {@link #spliterator()} covers the elements present
+ * when it was created, seeing each one as it was or as replaced since; it is sized, splits in halves rounded
+ * to whole chunks, and traverses a chunk at a time with a tight loop over its array.
+ *
+ * @param <T> The type of the elements.
+ */
+public final class AppendOnlyArray<T> {
+
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // The chunks, allocated as they are first written.
+    private volatile AtomicReferenceArray<T>[] chunks = newTable(1);
+    // The number of elements, written after the element itself.
+    private volatile int size;
+
+    /**
+     * Appends an element.
+     *
+     * @param element The element, not null.
+     * @return The index of the element.
+     */
+    public synchronized int add(T element) {
+        Objects.requireNonNull(element);
+        int index = size;
+        if (index == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Array is full.");
+        }
+        AtomicReferenceArray<T>[] table = chunks;
+        int chunk = index >>> CHUNK_SHIFT;
+        if (chunk == table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        if (table[chunk] == null) {
+            table[chunk] = new AtomicReferenceArray<>(CHUNK_SIZE);
+        }
+        table[chunk].set(index & CHUNK_MASK, element);
+        chunks = table;
+        size = index + 1;
+        return index;
+    }
+
+    /**
+     * Replaces an element.
+     *
+     * @param index   The index of the element.
+     * @param element The new element, not null.
+     * @throws IndexOutOfBoundsException If there is no element at the index.
+     */
+    public void set(int index, T element) {
+        Objects.requireNonNull(element);
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        chunks[index >>> CHUNK_SHIFT].set(index & CHUNK_MASK, element);
+    }
+
+    /**
+     * Retrieves an element.
+     *
+     * @param index The index of the element.
+     * @return The element.
+     * @throws IndexOutOfBoundsException If there is no element at the index.
+     */
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        return chunks[index >>> CHUNK_SHIFT].get(index & CHUNK_MASK);
+    }
+
+    /**
+     * Retrieves the number of elements.
+     *
+     * @return The number of elements appended so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates a spliterator over the elements appended so far, in order.
+     *
+     * @return A sized and subsized spliterator.
+     */
+    public Spliterator<T> spliterator() {
+        // Read the size first, so that the chunks read after it hold every element below it.
+        int fence = size;
+        return new ChunkSpliterator<>(chunks, 0, fence);
+    }
+
+    // Creates a table of chunks; generic arrays can only be created raw.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> AtomicReferenceArray<T>[] newTable(int length) {
+        return new AtomicReferenceArray[length];
+    }
+
+    // Traverses a range of indices of a fixed table of chunks.
+    private static final class ChunkSpliterator<T> implements Spliterator<T> {
+        private final AtomicReferenceArray<T>[] chunks;
+        private int index;
+        private final int fence;
+
+        private ChunkSpliterator(AtomicReferenceArray<T>[] chunks, int index, int fence) {
+            this.chunks = chunks;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int remaining = fence - index;
+            if (remaining < 2) {
+                return null;
+            }
+            int middle = index + (remaining >>> 1);
+            if (remaining > CHUNK_SIZE) {
+                // Split on a chunk boundary, so that no chunk is traversed by two threads.
+                int aligned = middle & ~CHUNK_MASK;
+                middle = aligned > index ? aligned : Math.min(fence, (index & ~CHUNK_MASK) + CHUNK_SIZE);
+            }
+            Spliterator<T> prefix = new ChunkSpliterator<>(chunks, index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            if (index >= fence) {
+                return false;
+            }
+            int current = index++;
+            action.accept(chunks[current >>> CHUNK_SHIFT].get(current & CHUNK_MASK));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            int current = index;
+            index = fence;
+            while (current < fence) {
+                AtomicReferenceArray<T> chunk = chunks[current >>> CHUNK_SHIFT];
+                int end = Math.min(fence - (current & ~CHUNK_MASK), CHUNK_SIZE);
+                for (int i = current & CHUNK_MASK; i < end; i++) {
+                    action.accept(chunk.get(i));
+                }
+                current = (current & ~CHUNK_MASK) + end;
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ac.il.bgu.qa.util;
+
+import java.util.Arrays;
+
+/**
+ * A count-min sketch estimating how many times each string was counted, in a fixed amount of memory.
+ * Estimates are never lower than the true count, and exceed it by more than {@code epsilon * total}
+ * with probability at most {@code delta}. Not thread-safe.
+ */
+public class CountMinSketch {
+
+    // Number of counters per row.
+    private final int width;
+    // One row of counters per hash function.
+    private final long[][] counts;
+
+    /**
+     * Constructs a new CountMinSketch.
+     *
+     * @param epsilon The relative error of the estimates, as a fraction of the total count.
+     * @param delta   The probability of an estimate exceeding the error bound.
+     */
+    public CountMinSketch(double epsilon, double delta) {
+        if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("Invalid error bounds.");
+        }
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.counts = new long[(int) Math.ceil(Math.log(1 / delta))][width];
+    }
+
+    /**
+     * Adds to the count of a string.
+     *
+     * @param key   The string to be counted.
+     * @param count The amount to add.
+     */
+    public void add(String key, long count) {
+        int h1 = key.hashCode();
+        int h2 = spread(h1);
+        for (int row = 0; row < counts.length; row++) {
+            counts[row][index(h1, h2, row)] += count;
+        }
+    }
+
+    /**
+     * Estimates the count of a string.
+     *
+     * @param key The string to be estimated.
+     * @return The estimated count, never lower than the true count.
+     */
+    public long estimate(String key) {
+        int h1 = key.hashCode();
+        int h2 = spread(h1);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < counts.length; row++) {
+            min = Math.min(min, counts[row][index(h1, h2, row)]);
+        }
+        return min;
+    }
+
+    /**
+     * Resets all counts to zero.
+     */
+    public void clear() {
+        for (long[] row : counts) {
+            Arrays.fill(row, 0);
+        }
+    }
+
+    private int index(int h1, int h2, int row) {
+        return Math.floorMod(h1 + row * h2, width);
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+}
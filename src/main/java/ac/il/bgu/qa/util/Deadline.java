@@ -0,0 +1,110 @@
+package ac.il.bgu.qa.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A point in time by which a call must complete, carried implicitly through the calls it makes.
+ * <p>
+ * A deadline is attached to the current thread with {@link #run(Deadline, Runnable)} or
+ * {@link #supply(Deadline, Supplier)}, and read back with {@link #current()} by the code that calls
+ * external services, so that library operations and service wrappers can share one time budget
+ * without changing their signatures. Nested deadlines never extend an enclosing one.
+ */
+public final class Deadline {
+
+    // The deadline attached to each thread, or null if it has none.
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    // The deadline, as a value of System.nanoTime().
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Creates a deadline a given duration from now.
+     *
+     * @param duration The time budget.
+     * @param unit     The unit of the time budget.
+     * @return The deadline.
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(duration));
+    }
+
+    /**
+     * Retrieves the deadline attached to the current thread.
+     *
+     * @return The current deadline, or null if the thread has none.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Computes the time left for the current thread, capped by a maximum.
+     *
+     * @param maxNanos The maximal time to return, in nanoseconds.
+     * @return The time left before the current deadline, or {@code maxNanos} if it is shorter or there is no deadline.
+     */
+    public static long remainingNanos(long maxNanos) {
+        Deadline deadline = CURRENT.get();
+        return deadline == null ? maxNanos : Math.min(maxNanos, deadline.remainingNanos());
+    }
+
+    /**
+     * Runs an action with a deadline attached to the current thread.
+     *
+     * @param deadline The deadline to attach.
+     * @param action   The action to run.
+     */
+    public static void run(Deadline deadline, Runnable action) {
+        supply(deadline, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs an action with a deadline attached to the current thread and returns its result.
+     * If the thread already has an earlier deadline, the earlier one stays in effect.
+     *
+     * @param deadline The deadline to attach.
+     * @param action   The action to run.
+     * @param <T>      The type of the action's result.
+     * @return The result of the action.
+     */
+    public static <T> T supply(Deadline deadline, Supplier<T> action) {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(previous != null && previous.deadlineNanos - deadline.deadlineNanos < 0 ? previous : deadline);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Computes the time left before the deadline.
+     *
+     * @return The time left in nanoseconds, negative if the deadline passed.
+     */
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    /**
+     * Checks whether the deadline passed.
+     *
+     * @return true if no time is left, otherwise false.
+     */
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+}
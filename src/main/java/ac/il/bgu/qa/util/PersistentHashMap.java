@@ -0,0 +1,490 @@
+package ac.il.bgu.qa.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * An immutable hash map, implemented as a hash array mapped trie.
+ * <p>
+ * Each level of the trie consumes 5 bits of a key's hash, and a node stores only its occupied slots, indexed
+ * through a 32-bit bitmap. Updates return a new map which shares every untouched node with the old one, so a
+ * change copies at most one node per level (about log32 of the size) and old versions stay valid forever.
+ * This makes the map safe to read from any number of threads without synchronization once published.
+ *
+ * @param <K> The type of keys.
+ * @param <V> The type of values.
+ */
+public final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+    // The number of hash bits consumed per level.
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final PersistentHashMap EMPTY = new PersistentHashMap(new BitmapNode(0, new Object[0]), 0);
+
+    // The root of the trie. Never null; empty maps have an empty root.
+    private final BitmapNode root;
+    // The number of entries.
+    private final int size;
+
+    private PersistentHashMap(BitmapNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Retrieves the empty map.
+     *
+     * @param <K> The type of keys.
+     * @param <V> The type of values.
+     * @return The empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Retrieves the number of entries.
+     *
+     * @return The size of the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks up the value of a key.
+     *
+     * @param key The key. Must not be null.
+     * @return The value, or null if the key is absent.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int hash = hash(key);
+        Object node = root;
+        for (int shift = 0; ; shift += BITS) {
+            if (node instanceof BitmapNode) {
+                BitmapNode bitmapNode = (BitmapNode) node;
+                int bit = 1 << ((hash >>> shift) & MASK);
+                if ((bitmapNode.bitmap & bit) == 0) {
+                    return null;
+                }
+                node = bitmapNode.children[Integer.bitCount(bitmapNode.bitmap & (bit - 1))];
+            } else if (node instanceof Leaf) {
+                Leaf<K, V> leaf = (Leaf<K, V>) node;
+                return leaf.hash == hash && leaf.key.equals(key) ? leaf.value : null;
+            } else {
+                return ((CollisionNode) node).get(hash, key);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a key is present.
+     *
+     * @param key The key. Must not be null.
+     * @return True if the map holds the key.
+     */
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns a map with a key set to a value.
+     *
+     * @param key   The key. Must not be null.
+     * @param value The value. Must not be null.
+     * @return The updated map, or this map if the key already had this value.
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Null keys and values are not supported.");
+        }
+        int[] added = new int[1];
+        BitmapNode newRoot = (BitmapNode) plus(root, 0, new Leaf<>(hash(key), key, value), added);
+        return newRoot == root ? this : new PersistentHashMap<>(newRoot, size + added[0]);
+    }
+
+    /**
+     * Returns a map without a key.
+     *
+     * @param key The key. Must not be null.
+     * @return The updated map, or this map if the key was absent.
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        Object newRoot = minus(root, 0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        } else if (newRoot == null) {
+            return empty();
+        } else if (!(newRoot instanceof BitmapNode)) {
+            // A single entry or collision remained; keep the root a bitmap node.
+            newRoot = new BitmapNode(0, new Object[0]).with(nodeHash(newRoot), 0, newRoot);
+        }
+        return new PersistentHashMap<>((BitmapNode) newRoot, size - 1);
+    }
+
+    /**
+     * Iterates over the entries, in no particular order.
+     *
+     * @return An iterator over the entries of this version of the map.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(root);
+    }
+
+    /**
+     * Creates a spliterator over the entries, in no particular order.
+     * <p>
+     * It splits along the trie, handing half of the remaining subtrees to the new spliterator and descending
+     * into the last subtree when only one is left, so parallel scans divide the map about evenly.
+     *
+     * @return A spliterator over the entries of this version of the map, sized until it is split.
+     */
+    @Override
+    public Spliterator<Map.Entry<K, V>> spliterator() {
+        return new EntrySpliterator<>(new Object[]{root}, 0, 1, size, true);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    // The hash of a leaf or collision node.
+    private static int nodeHash(Object node) {
+        return node instanceof Leaf ? ((Leaf<?, ?>) node).hash : ((CollisionNode) node).hash;
+    }
+
+    private static Object plus(Object node, int shift, Leaf<?, ?> leaf, int[] added) {
+        if (node instanceof BitmapNode) {
+            BitmapNode bitmapNode = (BitmapNode) node;
+            int bit = 1 << ((leaf.hash >>> shift) & MASK);
+            int index = Integer.bitCount(bitmapNode.bitmap & (bit - 1));
+            if ((bitmapNode.bitmap & bit) == 0) {
+                added[0] = 1;
+                return bitmapNode.insert(bit, index, leaf);
+            }
+            Object child = bitmapNode.children[index];
+            Object newChild = plus(child, shift + BITS, leaf, added);
+            return newChild == child ? bitmapNode : bitmapNode.replace(index, newChild);
+        } else if (node instanceof Leaf) {
+            Leaf<?, ?> existing = (Leaf<?, ?>) node;
+            if (existing.hash == leaf.hash && existing.key.equals(leaf.key)) {
+                return existing.value.equals(leaf.value) ? existing : leaf;
+            }
+            added[0] = 1;
+            if (existing.hash == leaf.hash) {
+                return new CollisionNode(leaf.hash, new Leaf<?, ?>[]{existing, leaf});
+            }
+            return split(existing, existing.hash, leaf, shift);
+        } else {
+            CollisionNode collision = (CollisionNode) node;
+            if (collision.hash != leaf.hash) {
+                added[0] = 1;
+                return split(collision, collision.hash, leaf, shift);
+            }
+            return collision.plus(leaf, added);
+        }
+    }
+
+    // Builds the nodes separating an existing leaf or collision node from a new leaf with a different hash.
+    private static Object split(Object existing, int existingHash, Leaf<?, ?> leaf, int shift) {
+        int existingIndex = (existingHash >>> shift) & MASK;
+        int leafIndex = (leaf.hash >>> shift) & MASK;
+        if (existingIndex == leafIndex) {
+            return new BitmapNode(1 << leafIndex, new Object[]{split(existing, existingHash, leaf, shift + BITS)});
+        }
+        return new BitmapNode((1 << existingIndex) | (1 << leafIndex),
+                existingIndex < leafIndex ? new Object[]{existing, leaf} : new Object[]{leaf, existing});
+    }
+
+    // Returns the node without the key: the same node if absent, null if nothing is left, or a lone leaf
+    // or collision node which the parent should store in place of the node.
+    private static Object minus(Object node, int shift, int hash, Object key) {
+        if (node instanceof BitmapNode) {
+            BitmapNode bitmapNode = (BitmapNode) node;
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmapNode.bitmap & bit) == 0) {
+                return bitmapNode;
+            }
+            int index = Integer.bitCount(bitmapNode.bitmap & (bit - 1));
+            Object child = bitmapNode.children[index];
+            Object newChild = minus(child, shift + BITS, hash, key);
+            if (newChild == child) {
+                return bitmapNode;
+            } else if (newChild == null) {
+                if (bitmapNode.children.length == 1) {
+                    return null;
+                }
+                BitmapNode removed = bitmapNode.remove(bit, index);
+                // Let the parent absorb a node left with a single entry.
+                return removed.children.length == 1 && !(removed.children[0] instanceof BitmapNode)
+                        ? removed.children[0] : removed;
+            } else if (bitmapNode.children.length == 1 && !(newChild instanceof BitmapNode)) {
+                return newChild;
+            }
+            return bitmapNode.replace(index, newChild);
+        } else if (node instanceof Leaf) {
+            Leaf<?, ?> leaf = (Leaf<?, ?>) node;
+            return leaf.hash == hash && leaf.key.equals(key) ? null : leaf;
+        } else {
+            return ((CollisionNode) node).minus(hash, key);
+        }
+    }
+
+    // An entry of the map.
+    private static final class Leaf<K, V> implements Map.Entry<K, V> {
+        private final int hash;
+        private final K key;
+        private final V value;
+
+        private Leaf(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException("The map is immutable.");
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    // A trie node holding the children of its occupied slots, in slot order.
+    private static final class BitmapNode {
+        private final int bitmap;
+        private final Object[] children;
+
+        private BitmapNode(int bitmap, Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        private BitmapNode insert(int bit, int index, Object child) {
+            Object[] newChildren = new Object[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newChildren[index] = child;
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            return new BitmapNode(bitmap | bit, newChildren);
+        }
+
+        private BitmapNode replace(int index, Object child) {
+            Object[] newChildren = children.clone();
+            newChildren[index] = child;
+            return new BitmapNode(bitmap, newChildren);
+        }
+
+        private BitmapNode remove(int bit, int index) {
+            Object[] newChildren = new Object[children.length - 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(children, index + 1, newChildren, index, newChildren.length - index);
+            return new BitmapNode(bitmap & ~bit, newChildren);
+        }
+
+        // Returns this empty node holding a single child at the slot of the given hash.
+        private BitmapNode with(int hash, int shift, Object child) {
+            return insert(1 << ((hash >>> shift) & MASK), 0, child);
+        }
+    }
+
+    // The entries whose keys have the same full hash.
+    private static final class CollisionNode {
+        private final int hash;
+        private final Leaf<?, ?>[] leaves;
+
+        private CollisionNode(int hash, Leaf<?, ?>[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <V> V get(int hash, Object key) {
+            if (hash == this.hash) {
+                for (Leaf<?, ?> leaf : leaves) {
+                    if (leaf.key.equals(key)) {
+                        return (V) leaf.value;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private Object plus(Leaf<?, ?> leaf, int[] added) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(leaf.key)) {
+                    if (leaves[i].value.equals(leaf.value)) {
+                        return this;
+                    }
+                    Leaf<?, ?>[] newLeaves = leaves.clone();
+                    newLeaves[i] = leaf;
+                    return new CollisionNode(hash, newLeaves);
+                }
+            }
+            added[0] = 1;
+            Leaf<?, ?>[] newLeaves = Arrays.copyOf(leaves, leaves.length + 1);
+            newLeaves[leaves.length] = leaf;
+            return new CollisionNode(hash, newLeaves);
+        }
+
+        private Object minus(int hash, Object key) {
+            if (hash != this.hash) {
+                return this;
+            }
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(key)) {
+                    if (leaves.length == 2) {
+                        return leaves[1 - i];
+                    }
+                    Leaf<?, ?>[] newLeaves = new Leaf<?, ?>[leaves.length - 1];
+                    System.arraycopy(leaves, 0, newLeaves, 0, i);
+                    System.arraycopy(leaves, i + 1, newLeaves, i, newLeaves.length - i);
+                    return new CollisionNode(hash, newLeaves);
+                }
+            }
+            return this;
+        }
+    }
+
+    // Splits the trie by subtrees, walking each subtree depth first.
+    private static final class EntrySpliterator<K, V> implements Spliterator<Map.Entry<K, V>> {
+        // The subtrees not started yet are nodes[index] to nodes[fence - 1].
+        private Object[] nodes;
+        private int index;
+        private int fence;
+        // Walks the subtree being traversed, or null if none is.
+        private EntryIterator<K, V> current;
+        // The number of entries left: exact until split, then estimated from the share of subtrees.
+        private long estimate;
+        private boolean sized;
+
+        private EntrySpliterator(Object[] nodes, int index, int fence, long estimate, boolean sized) {
+            this.nodes = nodes;
+            this.index = index;
+            this.fence = fence;
+            this.estimate = estimate;
+            this.sized = sized;
+        }
+
+        @Override
+        public Spliterator<Map.Entry<K, V>> trySplit() {
+            // Descend into the last subtree left, so that its children can be divided.
+            while (fence - index == 1 && !(nodes[index] instanceof Leaf)) {
+                Object node = nodes[index];
+                nodes = node instanceof BitmapNode ? ((BitmapNode) node).children : ((CollisionNode) node).leaves;
+                index = 0;
+                fence = nodes.length;
+            }
+            int remaining = fence - index;
+            if (remaining < 2) {
+                return null;
+            }
+            int middle = index + (remaining >>> 1);
+            long prefixEstimate = estimate * (middle - index) / remaining;
+            EntrySpliterator<K, V> prefix = new EntrySpliterator<>(nodes, index, middle, prefixEstimate, false);
+            index = middle;
+            estimate -= prefixEstimate;
+            sized = false;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+            Objects.requireNonNull(action);
+            while (current == null || !current.hasNext()) {
+                if (index == fence) {
+                    current = null;
+                    return false;
+                }
+                current = new EntryIterator<>(nodes[index++]);
+            }
+            action.accept(current.next());
+            if (estimate > 0) {
+                estimate--;
+            }
+            return true;
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return sized ? IMMUTABLE | DISTINCT | NONNULL | SIZED : IMMUTABLE | DISTINCT | NONNULL;
+        }
+    }
+
+    // Walks the trie depth first.
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Deque<Object> stack = new ArrayDeque<>();
+        private Leaf<K, V> next;
+
+        private EntryIterator(Object node) {
+            stack.push(node);
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf<K, V> entry = next;
+            advance();
+            return entry;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (next == null && !stack.isEmpty()) {
+                Object node = stack.pop();
+                if (node instanceof Leaf) {
+                    next = (Leaf<K, V>) node;
+                } else if (node instanceof BitmapNode) {
+                    Object[] children = ((BitmapNode) node).children;
+                    for (int i = children.length - 1; i >= 0; i--) {
+                        stack.push(children[i]);
+                    }
+                } else {
+                    Leaf<?, ?>[] leaves = ((CollisionNode) node).leaves;
+                    for (int i = leaves.length - 1; i >= 0; i--) {
+                        stack.push(leaves[i]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package ac.il.bgu.qa.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter over strings which grows as elements are added.
+ * <p>
+ * The filter is made of a chain of stages. Once a stage holds its planned number of elements, a new
+ * stage with twice the capacity and half the false positive rate is appended, so the overall false
+ * positive rate stays below the configured one no matter how many elements are added.
+ * A filter may report that it contains an element that was never added, but never the opposite.
+ */
+public class ScalableBloomFilter {
+
+    // Each new stage gets this fraction of the false positive rate of the previous one.
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    // The false positive rate of the whole filter.
+    private final double falsePositiveRate;
+
+    // The stages of the filter, oldest first. Replaced as a whole when a stage is appended.
+    private volatile Stage[] stages;
+
+    /**
+     * Constructs a new ScalableBloomFilter.
+     *
+     * @param expectedElements  The number of elements the first stage is sized for.
+     * @param falsePositiveRate The maximal probability of reporting an element that was never added.
+     */
+    public ScalableBloomFilter(int expectedElements, double falsePositiveRate) {
+        if (expectedElements <= 0) {
+            throw new IllegalArgumentException("Invalid expected elements.");
+        } else if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid false positive rate.");
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        this.stages = new Stage[]{new Stage(expectedElements, falsePositiveRate * (1 - TIGHTENING_RATIO))};
+    }
+
+    /**
+     * Adds an element to the filter.
+     *
+     * @param element The element to be added.
+     */
+    public void put(String element) {
+        long[] hash = hash(element);
+        Stage[] current = stages;
+        Stage last = current[current.length - 1];
+        if (last.count.get() >= last.capacity) {
+            last = grow(current);
+        }
+        last.put(hash);
+    }
+
+    /**
+     * Checks whether an element might have been added to the filter.
+     *
+     * @param element The element to be checked.
+     * @return false if the element was definitely never added, true if it might have been.
+     */
+    public boolean mightContain(String element) {
+        long[] hash = hash(element);
+        for (Stage stage : stages) {
+            if (stage.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the configured false positive rate of the filter.
+     *
+     * @return The false positive rate.
+     */
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * Retrieves the number of bits currently allocated by all stages of the filter.
+     *
+     * @return The size of the filter in bits.
+     */
+    public long getBitSize() {
+        long bits = 0;
+        for (Stage stage : stages) {
+            bits += stage.bitCount;
+        }
+        return bits;
+    }
+
+    // Appends a new stage unless another thread already did so, and returns the last stage.
+    private synchronized Stage grow(Stage[] seen) {
+        Stage[] current = stages;
+        if (current != seen) {
+            return current[current.length - 1];
+        }
+        Stage last = current[current.length - 1];
+        Stage[] grown = new Stage[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        long capacity = Math.min(last.capacity * 2L, Integer.MAX_VALUE);
+        grown[current.length] = new Stage((int) capacity, last.falsePositiveRate * TIGHTENING_RATIO);
+        stages = grown;
+        return grown[current.length];
+    }
+
+    // Computes two independent 64 bit hashes (MurmurHash3 x64 finalizer over a FNV-1a pass).
+    private static long[] hash(String element) {
+        byte[] bytes = element.getBytes(StandardCharsets.UTF_8);
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        long h1 = mix(h);
+        long h2 = mix(h ^ 0x9e3779b97f4a7c15L) | 1;
+        return new long[]{h1, h2};
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * A fixed size Bloom filter stage with lock-free bit setting.
+     */
+    private static final class Stage {
+        final int capacity;
+        final double falsePositiveRate;
+        final long bitCount;
+        final int hashCount;
+        final AtomicLongArray words;
+        final AtomicLong count = new AtomicLong();
+
+        Stage(int capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            // Optimal sizes: m = -n ln(p) / (ln 2)^2, k = (m / n) ln 2
+            long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitCount = Math.max(64, (bits + 63) / 64 * 64);
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+            this.words = new AtomicLongArray((int) (bitCount / 64));
+        }
+
+        void put(long[] hash) {
+            boolean changed = false;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = index(hash, i);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long old;
+                do {
+                    old = words.get(word);
+                    if ((old & mask) != 0) {
+                        break;
+                    }
+                } while (!words.compareAndSet(word, old, old | mask));
+                changed |= (old & mask) == 0;
+            }
+            if (changed) {
+                count.incrementAndGet();
+            }
+        }
+
+        boolean mightContain(long[] hash) {
+            for (int i = 0; i < hashCount; i++) {
+                long bit = index(hash, i);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Kirsch-Mitzenmacher double hashing: h1 + i * h2.
+        private long index(long[] hash, int i) {
+            return ((hash[0] + i * hash[1]) & Long.MAX_VALUE) % bitCount;
+        }
+    }
+}
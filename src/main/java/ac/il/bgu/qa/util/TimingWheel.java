@@ -0,0 +1,269 @@
+package ac.il.bgu.qa.util;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel, scheduling values to expire at given times with O(1) insertion and
+ * O(1) cancellation.
+ * <p>
+ * Time advances in ticks of a fixed length. The wheel has several levels of 64 slots each: level 0
+ * holds timeouts due in the current 64 ticks, level 1 timeouts due in the current 64 * 64 ticks, and so on.
+ * Each slot is an intrusive doubly-linked list, so no memory is allocated per tick and each scheduled
+ * value costs a single node. When time reaches the start of a higher level slot, its timeouts are moved
+ * down to the lower levels. Timeouts further away than the top level covers wait in an overflow list.
+ * Not thread-safe.
+ *
+ * @param <T> The type of the scheduled values.
+ */
+public class TimingWheel<T> {
+
+    // Number of bits of the tick number covered by each level (64 slots).
+    private static final int BITS_PER_LEVEL = 6;
+    private static final int SLOTS = 1 << BITS_PER_LEVEL;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    // The length of a tick, in milliseconds.
+    private final long tickMillis;
+    // The heads of the slot lists, indexed by level and slot.
+    private final Timeout<T>[][] slots;
+    // Timeouts beyond the range of the top level.
+    private Timeout<T> overflow;
+    // The last tick processed.
+    private long currentTick;
+    // The number of scheduled timeouts.
+    private int size;
+    // The number of scheduled timeouts in each level, the last entry counting the overflow list.
+    private final int[] levelSizes;
+
+    /**
+     * Constructs a new TimingWheel.
+     *
+     * @param tickMillis The length of a tick in milliseconds. Timeouts fire at most one tick late.
+     * @param levels     The number of levels. The wheel covers 64^levels ticks without overflow.
+     * @param nowMillis  The current time, in milliseconds.
+     */
+    public TimingWheel(long tickMillis, int levels, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Invalid tick length.");
+        } else if (levels <= 0 || levels * BITS_PER_LEVEL >= 63) {
+            throw new IllegalArgumentException("Invalid number of levels.");
+        }
+        this.tickMillis = tickMillis;
+        this.slots = newSlots(levels);
+        this.levelSizes = new int[levels + 1];
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Schedules a value to expire at a given time.
+     *
+     * @param value          The value to be scheduled.
+     * @param deadlineMillis The time at which the value expires, in milliseconds.
+     * @return A handle which can be used to cancel the timeout.
+     */
+    public Timeout<T> schedule(T value, long deadlineMillis) {
+        // Round the deadline up to a tick, never earlier than the next tick.
+        long deadlineTick = Math.max(currentTick + 1, (deadlineMillis + tickMillis - 1) / tickMillis);
+        Timeout<T> timeout = new Timeout<>(value, deadlineMillis, deadlineTick, this);
+        insert(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Cancels a scheduled timeout. Cancelling a timeout which already expired or was cancelled has no effect.
+     *
+     * @param timeout The handle returned when the timeout was scheduled.
+     * @return true if the timeout was cancelled, false if it was no longer scheduled.
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout.wheel != this || !timeout.scheduled) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Advances the wheel to a given time, expiring every timeout due until then.
+     *
+     * @param nowMillis The current time, in milliseconds.
+     * @param expired   Receives the value of every expired timeout, in deadline order (to tick precision).
+     */
+    public void advanceTo(long nowMillis, Consumer<? super T> expired) {
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            if (size == 0) {
+                // Nothing is scheduled, so skip ahead without visiting the empty slots.
+                currentTick = targetTick;
+                return;
+            }
+            // If the lowest levels are empty, nothing can expire before the next slot of the lowest
+            // non-empty level starts, so skip ahead to just before it.
+            int lowest = 0;
+            while (levelSizes[lowest] == 0) {
+                lowest++;
+            }
+            if (lowest > 0) {
+                int shift = BITS_PER_LEVEL * lowest;
+                long nextSlotTick = ((currentTick >>> shift) + 1) << shift;
+                currentTick = Math.min(nextSlotTick - 1, targetTick);
+                if (currentTick == targetTick) {
+                    return;
+                }
+            }
+            currentTick++;
+            cascade();
+            int slot = (int) (currentTick & SLOT_MASK);
+            Timeout<T> timeout = slots[0][slot];
+            slots[0][slot] = null;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.scheduled = false;
+                timeout.prev = null;
+                timeout.next = null;
+                size--;
+                levelSizes[0]--;
+                expired.accept(timeout.value);
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of scheduled timeouts.
+     *
+     * @return The number of timeouts which neither expired nor were cancelled.
+     */
+    public int size() {
+        return size;
+    }
+
+    // Moves the timeouts of every higher level slot starting at the current tick down to the lower levels.
+    private void cascade() {
+        int levels = slots.length;
+        if ((currentTick & ((1L << (BITS_PER_LEVEL * levels)) - 1)) == 0) {
+            Timeout<T> timeout = overflow;
+            overflow = null;
+            levelSizes[levels] = 0;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                reinsert(timeout);
+                timeout = next;
+            }
+        }
+        for (int level = levels - 1; level > 0; level--) {
+            if ((currentTick & ((1L << (BITS_PER_LEVEL * level)) - 1)) == 0) {
+                int slot = (int) ((currentTick >>> (BITS_PER_LEVEL * level)) & SLOT_MASK);
+                Timeout<T> timeout = slots[level][slot];
+                slots[level][slot] = null;
+                while (timeout != null) {
+                    levelSizes[level]--;
+                    Timeout<T> next = timeout.next;
+                    reinsert(timeout);
+                    timeout = next;
+                }
+            }
+        }
+    }
+
+    private void reinsert(Timeout<T> timeout) {
+        timeout.prev = null;
+        timeout.next = null;
+        insert(timeout);
+    }
+
+    // Links a timeout into the lowest level whose current rotation contains its deadline.
+    private void insert(Timeout<T> timeout) {
+        long deadlineTick = timeout.deadlineTick;
+        timeout.scheduled = true;
+        for (int level = 0; level < slots.length; level++) {
+            int shift = BITS_PER_LEVEL * (level + 1);
+            if ((deadlineTick >>> shift) == (currentTick >>> shift)) {
+                int slot = (int) ((deadlineTick >>> (BITS_PER_LEVEL * level)) & SLOT_MASK);
+                timeout.level = level;
+                timeout.slot = slot;
+                timeout.next = slots[level][slot];
+                if (timeout.next != null) {
+                    timeout.next.prev = timeout;
+                }
+                slots[level][slot] = timeout;
+                levelSizes[level]++;
+                return;
+            }
+        }
+        timeout.level = -1;
+        timeout.next = overflow;
+        if (overflow != null) {
+            overflow.prev = timeout;
+        }
+        overflow = timeout;
+        levelSizes[slots.length]++;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        levelSizes[timeout.level < 0 ? slots.length : timeout.level]--;
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else if (timeout.level < 0) {
+            overflow = timeout.next;
+        } else {
+            slots[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.scheduled = false;
+    }
+
+    // Creates the slots of every level; generic arrays can only be created raw.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Timeout<T>[][] newSlots(int levels) {
+        return new Timeout[levels][SLOTS];
+    }
+
+    /**
+     * A value scheduled on a timing wheel, doubling as a node of the wheel's slot lists.
+     *
+     * @param <T> The type of the scheduled value.
+     */
+    public static final class Timeout<T> {
+        private final T value;
+        private final long deadlineMillis;
+        private final long deadlineTick;
+        private final TimingWheel<T> wheel;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        private int level;
+        private int slot;
+        private boolean scheduled;
+
+        private Timeout(T value, long deadlineMillis, long deadlineTick, TimingWheel<T> wheel) {
+            this.value = value;
+            this.deadlineMillis = deadlineMillis;
+            this.deadlineTick = deadlineTick;
+            this.wheel = wheel;
+        }
+
+        /**
+         * Retrieves the scheduled value.
+         *
+         * @return The value.
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * Retrieves the time at which the value expires.
+         *
+         * @return The deadline, in milliseconds.
+         */
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+    }
+}
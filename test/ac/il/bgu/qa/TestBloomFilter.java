@@ -0,0 +1,140 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.services.BloomFilteredDatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import org.junit.jupiter.api.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestBloomFilter {
+    private static final int BOOKS = 10_000;
+
+    private InMemoryDatabaseService store;
+    private BloomFilteredDatabaseService database;
+
+    @BeforeEach
+    void setUpObjects() {
+        // a filter sized for a tenth of the books, so it has to grow
+        store = new InMemoryDatabaseService();
+        database = new BloomFilteredDatabaseService(store, BOOKS / 10, 100, 0.01);
+    }
+
+    @Test
+    void GivenBooksAdded_WhenGetBookByISBN_ThenEveryBookFound() {
+        List<String> ISBNs = addBooks(0, BOOKS);
+        database.registerUser("123456789012", new User("Mocked name", "123456789012", null));
+        // no added book or user is ever reported missing
+        for (String ISBN : ISBNs) {
+            Assertions.assertNotNull(database.getBookByISBN(ISBN));
+        }
+        Assertions.assertNotNull(database.getUserById("123456789012"));
+        // and most unknown books are answered without reaching the database
+        for (int i = BOOKS; i < 2 * BOOKS; i++) {
+            Assertions.assertNull(database.getBookByISBN("isbn" + i));
+        }
+        Assertions.assertTrue(database.getSkippedLookups() > BOOKS * 0.9);
+    }
+
+    @Test
+    void GivenBooksAddedDuringRebuild_WhenRebuildCompletes_ThenNewBooksFound() {
+        List<String> ISBNs = addBooks(0, BOOKS);
+        // books are added while the scan is half way through
+        database.rebuild(whileIterating(ISBNs, BOOKS / 2, () -> addBooks(BOOKS, 100)), Collections.<String>emptyList());
+        for (int i = 0; i < BOOKS + 100; i++) {
+            Assertions.assertNotNull(database.getBookByISBN("isbn" + i));
+        }
+    }
+
+    @Test
+    void GivenOverlappingRebuilds_WhenBooksAddedDuringBoth_ThenEveryBookFound() throws Exception {
+        List<String> ISBNs = addBooks(0, BOOKS);
+        // a book written to the database directly, which only a rebuild makes known to the filters
+        store.addBook("direct", new Book("direct", "Mocked title", "Mocked author"));
+        ISBNs.add("direct");
+        Assertions.assertNull(database.getBookByISBN("direct"));
+
+        // the first rebuild stops half way, while a second rebuild over the live catalog is requested
+        CountDownLatch scanning = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        Thread first = new Thread(() -> database.rebuild(whileIterating(ISBNs, BOOKS / 2, () -> {
+            scanning.countDown();
+            await(resume);
+        }), Collections.<String>emptyList()));
+        first.start();
+        scanning.await();
+        Thread second = new Thread(() -> database.rebuild(() -> store.getBooks().stream().map(Book::getISBN).iterator(),
+                Collections.<String>emptyList()));
+        second.start();
+        addBooks(BOOKS, 100);
+        resume.countDown();
+        first.join(5_000);
+        second.join(5_000);
+        addBooks(BOOKS + 100, 100);
+
+        // the rebuilt filters know the direct book and every book added before, during and after the rebuilds
+        Assertions.assertNotNull(database.getBookByISBN("direct"));
+        for (int i = 0; i < BOOKS + 200; i++) {
+            Assertions.assertNotNull(database.getBookByISBN("isbn" + i));
+        }
+    }
+
+    @Test
+    void GivenFailingScan_WhenRebuild_ThenCurrentFiltersKept() {
+        List<String> ISBNs = addBooks(0, BOOKS);
+        // the scan fails half way
+        Assertions.assertThrows(IllegalStateException.class, () -> database.rebuild(whileIterating(ISBNs, BOOKS / 2, () -> {
+            throw new IllegalStateException("Scan failed.");
+        }), Collections.<String>emptyList()));
+
+        // books added before and after the failed rebuild are still found, and a later rebuild succeeds
+        addBooks(BOOKS, 100);
+        for (int i = 0; i < BOOKS + 100; i++) {
+            Assertions.assertNotNull(database.getBookByISBN("isbn" + i));
+        }
+        database.rebuild(Collections.singletonList("isbn0"), Collections.<String>emptyList());
+        Assertions.assertNotNull(database.getBookByISBN("isbn0"));
+        Assertions.assertNull(database.getBookByISBN("isbn1"));
+    }
+
+    // Adds books with the given serial numbers through the filtered database, returning their ISBNs.
+    private List<String> addBooks(int from, int count) {
+        List<String> ISBNs = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            String ISBN = "isbn" + i;
+            database.addBook(ISBN, new Book(ISBN, "Mocked title", "Mocked author"));
+            ISBNs.add(ISBN);
+        }
+        return ISBNs;
+    }
+
+    // Returns the keys, running an action once the given number of them were iterated.
+    private static Iterable<String> whileIterating(List<String> keys, int after, Runnable action) {
+        return () -> new Iterator<String>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < keys.size();
+            }
+
+            @Override
+            public String next() {
+                if (next == after) {
+                    action.run();
+                }
+                return keys.get(next++);
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
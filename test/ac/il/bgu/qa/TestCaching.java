@@ -0,0 +1,125 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.services.CachingDatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class TestCaching {
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String OTHER_ISBN = "978-0-201-63361-0";
+    private static final String USER_ID = "123456789012";
+
+    private InMemoryDatabaseService store;
+    private CachingDatabaseService database;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUpObjects() {
+        // a cache in front of a database spied on, holding one book and one user
+        store = Mockito.spy(new InMemoryDatabaseService());
+        store.addBook(ISBN, new Book(ISBN, "Mocked title", "Mocked author", 2));
+        store.registerUser(USER_ID, new User("Mocked name", USER_ID, null));
+        database = new CachingDatabaseService(store, 10, 10);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void GivenCachedBookAndUser_WhenLookedUpAgain_ThenDatabaseReadOnce() {
+        Assertions.assertNotNull(database.getBookByISBN(ISBN));
+        Assertions.assertNotNull(database.getBookByISBN(ISBN));
+        Assertions.assertNotNull(database.getUserById(USER_ID));
+        Assertions.assertNotNull(database.getUserById(USER_ID));
+
+        Mockito.verify(store, Mockito.times(1)).getBookByISBN(ISBN);
+        Mockito.verify(store, Mockito.times(1)).getUserById(USER_ID);
+        Assertions.assertEquals(1, database.getBookHits());
+        Assertions.assertEquals(1, database.getBookMisses());
+        Assertions.assertEquals(0.5, database.getUserHitRatio());
+    }
+
+    @Test
+    void GivenUnknownBook_WhenLookedUpTwice_ThenMissCachedUntilAdded() {
+        Assertions.assertNull(database.getBookByISBN(OTHER_ISBN));
+        Assertions.assertNull(database.getBookByISBN(OTHER_ISBN));
+        Mockito.verify(store, Mockito.times(1)).getBookByISBN(OTHER_ISBN);
+        Assertions.assertEquals(1, database.getBookHits());
+
+        // adding the book through the cache replaces the cached miss
+        database.addBook(OTHER_ISBN, new Book(OTHER_ISBN, "Mocked title", "Mocked author"));
+        Assertions.assertNotNull(database.getBookByISBN(OTHER_ISBN));
+        Mockito.verify(store, Mockito.times(1)).getBookByISBN(OTHER_ISBN);
+    }
+
+    @Test
+    void GivenCachedBook_WhenBorrowedAndReturned_ThenNextLookupReadsDatabase() {
+        database.getBookByISBN(ISBN);
+        database.borrowBook(ISBN, USER_ID);
+        database.getBookByISBN(ISBN);
+        Mockito.verify(store, Mockito.times(2)).getBookByISBN(ISBN);
+
+        database.returnBook(ISBN, USER_ID);
+        database.getBookByISBN(ISBN);
+        Mockito.verify(store, Mockito.times(3)).getBookByISBN(ISBN);
+
+        database.borrowBook(ISBN, USER_ID);
+        database.getBookByISBN(ISBN);
+        database.returnBook(ISBN);
+        database.getBookByISBN(ISBN);
+        Mockito.verify(store, Mockito.times(5)).getBookByISBN(ISBN);
+    }
+
+    @Test
+    void GivenSlowRead_WhenSameBookWrittenMeanwhile_ThenReadNotCached() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        slowFirstRead(reading, resume);
+
+        // the book is invalidated while the first lookup is still reading it
+        Future<Book> slow = executor.submit(() -> database.getBookByISBN(ISBN));
+        Assertions.assertTrue(reading.await(5, TimeUnit.SECONDS));
+        database.borrowBook(ISBN, USER_ID);
+        resume.countDown();
+        slow.get(5, TimeUnit.SECONDS);
+
+        // the value read before the borrow is not cached, so the next lookup reads the database again
+        Assertions.assertNotNull(database.getBookByISBN(ISBN));
+        Mockito.verify(store, Mockito.times(2)).getBookByISBN(ISBN);
+    }
+
+    @Test
+    void GivenSlowRead_WhenOtherBookWrittenMeanwhile_ThenReadCached() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        slowFirstRead(reading, resume);
+
+        // writes to another book do not keep the first lookup from being cached
+        Future<Book> slow = executor.submit(() -> database.getBookByISBN(ISBN));
+        Assertions.assertTrue(reading.await(5, TimeUnit.SECONDS));
+        database.addBook(OTHER_ISBN, new Book(OTHER_ISBN, "Mocked title", "Mocked author"));
+        database.borrowBook(OTHER_ISBN, USER_ID);
+        resume.countDown();
+        slow.get(5, TimeUnit.SECONDS);
+
+        database.getBookByISBN(ISBN);
+        Mockito.verify(store, Mockito.times(1)).getBookByISBN(ISBN);
+    }
+
+    // Makes the first read of the book from the database wait until resumed.
+    private void slowFirstRead(CountDownLatch reading, CountDownLatch resume) {
+        Mockito.doAnswer(invocation -> {
+            reading.countDown();
+            resume.await(5, TimeUnit.SECONDS);
+            return invocation.callRealMethod();
+        }).doCallRealMethod().when(store).getBookByISBN(ISBN);
+    }
+}
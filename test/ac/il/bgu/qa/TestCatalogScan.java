@@ -0,0 +1,111 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.services.BookQuery;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.services.ShardedDatabaseService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+public class TestCatalogScan {
+    private static final int BOOKS = 10_000;
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private InMemoryDatabaseService database;
+    private Library library;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up a library over an in-memory database of many books by ten authors, every third one borrowed
+        MockitoAnnotations.initMocks(this);
+        database = new InMemoryDatabaseService();
+        library = new Library(database, reviewService);
+        for (int i = 0; i < BOOKS; i++) {
+            Book book = new Book("isbn-" + i, "Title " + i, "Author " + i % 10);
+            if (i % 3 == 0) {
+                book.borrow();
+            }
+            database.addBook(book.getISBN(), book);
+        }
+    }
+
+    @Test
+    void GivenManyBooks_WhenScanBooks_ThenSizedAndSplitOnChunks() {
+        Spliterator<Book> books = database.scanBooks();
+
+        // the scan knows its exact size, and splits off whole chunks of the catalog
+        Assertions.assertTrue(books.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+        Assertions.assertEquals(BOOKS, books.getExactSizeIfKnown());
+        Spliterator<Book> prefix = books.trySplit();
+        Assertions.assertEquals(4096, prefix.getExactSizeIfKnown());
+        Assertions.assertEquals(BOOKS - 4096, books.getExactSizeIfKnown());
+
+        // a parallel stream visits every book exactly once
+        Set<String> ISBNs = StreamSupport.stream(database.scanBooks(), true).map(Book::getISBN).collect(Collectors.toSet());
+        Assertions.assertEquals(BOOKS, ISBNs.size());
+    }
+
+    @Test
+    void GivenBorrowedBooks_WhenCountBorrowedBooksByAuthor_ThenOnlyBorrowedCounted() {
+        Map<String, Long> counts = library.countBorrowedBooksByAuthor();
+
+        // every author has a thousand books, a third of which are borrowed
+        Assertions.assertEquals(10, counts.size());
+        Assertions.assertEquals(334L, (long) counts.get("Author 0"));
+        Assertions.assertEquals(333L, (long) counts.get("Author 1"));
+        Assertions.assertEquals(BOOKS / 3 + 1, counts.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    void GivenAuthorQuery_WhenBookChangesAuthor_ThenScanFollowsIndex() {
+        // replace a book of one author with a book of another
+        database.addBook("isbn-1", new Book("isbn-1", "Title 1", "Author 2"));
+
+        long first = StreamSupport.stream(database.scanBooks(
+                new BookQuery("Author 1", BookQuery.Availability.ANY), Book::getISBN), true).count();
+        Set<String> second = StreamSupport.stream(database.scanBooks(
+                new BookQuery("Author 2", BookQuery.Availability.AVAILABLE), Book::getISBN), false).collect(Collectors.toSet());
+
+        // the replaced book moved between the authors, and availability was applied to the author's books
+        Assertions.assertEquals(999, first);
+        Assertions.assertTrue(second.contains("isbn-1"));
+        Assertions.assertEquals(668, second.size());
+        Assertions.assertEquals(0, library.scanBooks(new BookQuery("Nobody", BookQuery.Availability.ANY), Function.identity(), true).count());
+    }
+
+    @Test
+    void GivenShardedDatabase_WhenScanUsers_ThenEveryShardScanned() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            InMemoryDatabaseService first = new InMemoryDatabaseService();
+            InMemoryDatabaseService second = new InMemoryDatabaseService();
+            DatabaseService sharded = new ShardedDatabaseService(Arrays.asList(first, second), executor);
+            for (int i = 0; i < 100; i++) {
+                String userId = String.format("%012d", i);
+                sharded.registerUser(userId, new User("Mocked name", userId, notificationService));
+            }
+
+            Spliterator<User> users = sharded.scanUsers();
+
+            // the concatenated scan is sized, and its first split divides the shards
+            Assertions.assertEquals(100, users.getExactSizeIfKnown());
+            Assertions.assertEquals(first.getUsers().size(), users.trySplit().getExactSizeIfKnown());
+            Assertions.assertEquals(100, StreamSupport.stream(sharded.scanUsers(), true).map(User::getId).distinct().count());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.util.CountMinSketch;
+import org.junit.jupiter.api.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class TestCountMinSketch {
+    private static final double EPSILON = 0.001;
+    private static final double DELTA = 0.01;
+
+    @Test
+    void GivenSkewedCounts_WhenEstimate_ThenNeverUndercountAndWithinErrorBound() {
+        // a hundred thousand counts over ten thousand keys, a few of them far more frequent than the rest
+        CountMinSketch sketch = new CountMinSketch(EPSILON, DELTA);
+        Map<String, Long> counts = new HashMap<>();
+        Random random = new Random(42);
+        long total = 0;
+        for (int i = 0; i < 100_000; i++) {
+            String key = "978" + (random.nextInt(4) == 0 ? random.nextInt(10) : random.nextInt(10_000));
+            long count = 1 + random.nextInt(3);
+            sketch.add(key, count);
+            counts.merge(key, count, Long::sum);
+            total += count;
+        }
+
+        // no estimate is low, and at most a fraction delta of them exceed the bound of epsilon times the total
+        int exceeding = 0;
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            long estimate = sketch.estimate(entry.getKey());
+            Assertions.assertTrue(estimate >= entry.getValue(), entry.getKey());
+            if (estimate - entry.getValue() > EPSILON * total) {
+                exceeding++;
+            }
+        }
+        Assertions.assertTrue(exceeding <= DELTA * counts.size(), "exceeding " + exceeding);
+    }
+
+    @Test
+    void GivenUncountedKey_WhenEstimate_ThenWithinErrorBound() {
+        CountMinSketch sketch = new CountMinSketch(EPSILON, DELTA);
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add("counted" + i, 1);
+        }
+        int exceeding = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (sketch.estimate("uncounted" + i) > EPSILON * 10_000) {
+                exceeding++;
+            }
+        }
+        Assertions.assertTrue(exceeding <= DELTA * 10_000, "exceeding " + exceeding);
+    }
+
+    @Test
+    void GivenCounts_WhenClear_ThenEveryEstimateZero() {
+        CountMinSketch sketch = new CountMinSketch(EPSILON, DELTA);
+        sketch.add("978", 5);
+        Assertions.assertEquals(5, sketch.estimate("978"));
+
+        sketch.clear();
+        Assertions.assertEquals(0, sketch.estimate("978"));
+    }
+
+    @Test
+    void GivenInvalidErrorBounds_WhenConstructed_ThenIllegalArgumentException() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(0, DELTA));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(EPSILON, 1));
+    }
+}
@@ -0,0 +1,178 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.notifications.DeadLetter;
+import ac.il.bgu.qa.notifications.DeadLetterQueue;
+import ac.il.bgu.qa.notifications.DeadLetterRedelivery;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class TestDeadLetterQueue {
+    private static final long SECOND = 1_000L;
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String USER_ID = "123456789123";
+    private static final String MESSAGE = "Reviews for 'Mocked title':\nGood\nBad";
+
+    @TempDir
+    Path directory;
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private VirtualClock clock;
+    private InMemoryDatabaseService databaseService;
+    private DeadLetterQueue queue;
+
+    @BeforeEach
+    void setUpObjects() throws IOException {
+        MockitoAnnotations.initMocks(this);
+        clock = new VirtualClock(1_000_000_000_000L);
+        databaseService = new InMemoryDatabaseService();
+        databaseService.addBook(ISBN, new Book(ISBN, "Mocked title", "Mocked author"));
+        databaseService.registerUser(USER_ID, new User("Mocked name", USER_ID, notificationService));
+        queue = new DeadLetterQueue(directory, 10);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        queue.close();
+    }
+
+    @Test
+    void GivenFailingNotificationService_WhenNotifyWithQueue_ThenNotificationIsQueuedWithoutRetrying() {
+        Library library = new Library(databaseService, reviewService);
+        library.setDeadLetterQueue(queue);
+        library.setClock(clock);
+        Mockito.when(reviewService.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("Good", "Bad"));
+        Mockito.doThrow(new NotificationException("down")).when(notificationService).notifyUser(anyString(), anyString());
+        library.notifyUserWithBookReviews(ISBN, USER_ID);
+        // a single attempt is made on the caller's thread, and the notification waits in the queue
+        Mockito.verify(notificationService, Mockito.times(1)).notifyUser(USER_ID, MESSAGE);
+        Assertions.assertEquals(1, queue.getDepth());
+    }
+
+    @Test
+    void GivenSameNotificationTwice_WhenOffer_ThenQueuedOnce() {
+        Assertions.assertTrue(queue.offer(USER_ID, ISBN, MESSAGE, clock.millis()));
+        Assertions.assertTrue(queue.offer(USER_ID, ISBN, MESSAGE, clock.millis()));
+        Assertions.assertEquals(1, queue.getDepth());
+        Assertions.assertEquals(1, queue.getDuplicates());
+    }
+
+    @Test
+    void GivenFullQueue_WhenOffer_ThenRejected() {
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(queue.offer(USER_ID, ISBN, MESSAGE + i, clock.millis()));
+        }
+        Assertions.assertFalse(queue.offer(USER_ID, ISBN, MESSAGE + 10, clock.millis()));
+        Assertions.assertEquals(10, queue.getDepth());
+        Assertions.assertEquals(1, queue.getRejected());
+    }
+
+    @Test
+    void GivenQueuedLetters_WhenReopened_ThenLettersSurviveAndDeliveredOnesAreGone() throws IOException {
+        queue.offer(USER_ID, ISBN, "first", clock.millis());
+        queue.offer(USER_ID, ISBN, "second", clock.millis() + SECOND);
+        queue.remove(queue.due(clock.millis(), 1).get(0));
+        queue.close();
+        // simulate a crash in the middle of writing a record
+        Files.write(directory.resolve("dead-letters.log"), "A torn".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        queue = new DeadLetterQueue(directory, 10);
+        Assertions.assertEquals(1, queue.getDepth());
+        DeadLetter letter = queue.due(clock.millis() + SECOND, 10).get(0);
+        Assertions.assertEquals("second", letter.getMessage());
+        // the age is measured from when the letter was first queued
+        Assertions.assertEquals(2 * SECOND, queue.getOldestAgeMillis(clock.millis() + 3 * SECOND));
+        // the queue keeps working after the torn record
+        Assertions.assertTrue(queue.offer(USER_ID, ISBN, "third", clock.millis()));
+        queue.close();
+        queue = new DeadLetterQueue(directory, 10);
+        Assertions.assertEquals(2, queue.getDepth());
+    }
+
+    @Test
+    void GivenRecoveringNotificationService_WhenRedeliver_ThenDeliveredOnceAfterBackoff() {
+        DeadLetterRedelivery redelivery = new DeadLetterRedelivery(queue, databaseService, clock, SECOND, 60 * SECOND);
+        queue.offer(USER_ID, ISBN, MESSAGE, clock.millis());
+        Mockito.doThrow(new NotificationException("down")).when(notificationService).notifyUser(anyString(), anyString());
+        Assertions.assertEquals(0, redelivery.redeliver());
+        Assertions.assertEquals(1, redelivery.getFailedAttempts());
+        // the letter is not retried before its backoff passed
+        Assertions.assertEquals(0, redelivery.redeliver());
+        Assertions.assertEquals(1, redelivery.getFailedAttempts());
+        Mockito.reset(notificationService);
+        clock.advance(SECOND);
+        Assertions.assertEquals(1, redelivery.redeliver());
+        Mockito.verify(notificationService, Mockito.times(1)).notifyUser(eq(USER_ID), eq(MESSAGE));
+        Assertions.assertEquals(0, queue.getDepth());
+        // delivered letters are not delivered again
+        clock.advance(60 * SECOND);
+        Assertions.assertEquals(0, redelivery.redeliver());
+        Mockito.verify(notificationService, Mockito.times(1)).notifyUser(eq(USER_ID), eq(MESSAGE));
+    }
+
+    @Test
+    void GivenUnregisteredUser_WhenRedeliver_ThenLetterIsDropped() {
+        DeadLetterRedelivery redelivery = new DeadLetterRedelivery(queue, databaseService, clock, SECOND, 60 * SECOND);
+        queue.offer("999999999999", ISBN, MESSAGE, clock.millis());
+        Assertions.assertEquals(0, redelivery.redeliver());
+        Assertions.assertEquals(1, redelivery.getDropped());
+        Assertions.assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    void GivenFailingUserLookup_WhenRedeliver_ThenLetterRetriedLaterAndOthersDelivered() {
+        DatabaseService failing = Mockito.spy(databaseService);
+        Mockito.doThrow(new IllegalStateException("Database down.")).when(failing).getUserById("999999999999");
+        DeadLetterRedelivery redelivery = new DeadLetterRedelivery(queue, failing, clock, SECOND, 60 * SECOND);
+        queue.offer("999999999999", ISBN, MESSAGE, clock.millis());
+        queue.offer(USER_ID, ISBN, MESSAGE, clock.millis());
+        // the letter whose user could not be looked up stays queued, and the pass goes on to the next letter
+        Assertions.assertEquals(1, redelivery.redeliver());
+        Assertions.assertEquals(1, redelivery.getFailedLookups());
+        Assertions.assertEquals(1, queue.getDepth());
+        Mockito.verify(notificationService, Mockito.times(1)).notifyUser(eq(USER_ID), eq(MESSAGE));
+        // and it is retried once its backoff passed
+        clock.advance(SECOND);
+        Assertions.assertEquals(0, redelivery.redeliver());
+        Assertions.assertEquals(2, redelivery.getFailedLookups());
+    }
+
+    @Test
+    void GivenFailingUserLookup_WhenStarted_ThenLaterPassesStillRun() throws InterruptedException {
+        DatabaseService failing = Mockito.mock(DatabaseService.class);
+        Mockito.when(failing.getUserById(anyString())).thenThrow(new IllegalStateException("Database down."));
+        DeadLetterRedelivery redelivery = new DeadLetterRedelivery(queue, failing, clock, 1, 1);
+        queue.offer(USER_ID, ISBN, MESSAGE, clock.millis());
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            redelivery.start(scheduler, 1, TimeUnit.MILLISECONDS);
+            // the letter becomes due again on every pass, which keeps failing without cancelling the passes
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (redelivery.getFailedLookups() < 3 && System.nanoTime() < deadline) {
+                clock.advance(SECOND);
+                Thread.sleep(1);
+            }
+            Assertions.assertTrue(redelivery.getFailedLookups() >= 3, "failed lookups " + redelivery.getFailedLookups());
+            Assertions.assertEquals(1, queue.getDepth());
+        } finally {
+            redelivery.close();
+            scheduler.shutdownNow();
+        }
+    }
+}
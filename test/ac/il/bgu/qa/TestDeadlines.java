@@ -0,0 +1,162 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.services.*;
+import ac.il.bgu.qa.util.Deadline;
+import org.junit.jupiter.api.*;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestDeadlines {
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String USER_ID = "123456789123";
+
+    private ExecutorService executor;
+    private InMemoryDatabaseService databaseService;
+    private AtomicInteger notificationAttempts;
+    private PrintStream originalErrStream;
+
+    @BeforeEach
+    void setUpObjects() {
+        // calls to the slow stubs run on their own threads, so they can be abandoned
+        executor = Executors.newCachedThreadPool();
+        databaseService = new InMemoryDatabaseService();
+        databaseService.addBook(ISBN, new Book(ISBN, "Mocked title", "Mocked author"));
+        notificationAttempts = new AtomicInteger();
+        // hide the retry messages printed by the library
+        originalErrStream = System.err;
+        System.setErr(new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setErr(originalErrStream);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void GivenHungReviewService_WhenGetReviewsWithTimeout_ThenReviewExceptionAfterTimeout() {
+        ReviewService reviews = new TimeoutReviewService(slowReviewService(10_000), 100, TimeUnit.MILLISECONDS, executor);
+        long start = System.nanoTime();
+        Assertions.assertThrows(ReviewException.class, () -> reviews.getReviewsForBook(ISBN));
+        // the call is abandoned after about the timeout, not after the 10 seconds the stub hangs
+        assertElapsedBetween(start, 100, 2_000);
+    }
+
+    @Test
+    void GivenHungCloseOfReviewService_WhenClose_ThenReturnsAfterTimeout() {
+        ReviewService reviews = new TimeoutReviewService(slowReviewService(10_000), 100, TimeUnit.MILLISECONDS, executor);
+        long start = System.nanoTime();
+        reviews.close();
+        assertElapsedBetween(start, 100, 2_000);
+    }
+
+    @Test
+    void GivenDeadlineShorterThanTimeout_WhenGetReviews_ThenDeadlineWins() {
+        ReviewService reviews = new TimeoutReviewService(slowReviewService(10_000), 5, TimeUnit.SECONDS, executor);
+        long start = System.nanoTime();
+        Assertions.assertThrows(ReviewException.class,
+                () -> Deadline.run(Deadline.after(100, TimeUnit.MILLISECONDS), () -> reviews.getReviewsForBook(ISBN)));
+        assertElapsedBetween(start, 100, 2_000);
+    }
+
+    @Test
+    void GivenHungReviewService_WhenNotifyWithDeadline_ThenReviewServiceUnavailable() {
+        Library library = new Library(databaseService,
+                new TimeoutReviewService(slowReviewService(10_000), 5, TimeUnit.SECONDS, executor));
+        registerUser(fastNotificationService());
+        long start = System.nanoTime();
+        Assertions.assertThrows(ReviewServiceUnavailableException.class,
+                () -> Deadline.run(Deadline.after(200, TimeUnit.MILLISECONDS), () -> library.notifyUserWithBookReviews(ISBN, USER_ID)));
+        assertElapsedBetween(start, 200, 2_000);
+    }
+
+    @Test
+    void GivenExpiredDeadline_WhenNotify_ThenDeadlineExceededWithoutCallingServices() {
+        AtomicInteger reviewCalls = new AtomicInteger();
+        Library library = new Library(databaseService, new ReviewService() {
+            public List<String> getReviewsForBook(String ISBN) {
+                reviewCalls.incrementAndGet();
+                return Collections.singletonList("review");
+            }
+
+            public void close() {
+            }
+        });
+        registerUser(fastNotificationService());
+        Assertions.assertThrows(DeadlineExceededException.class,
+                () -> Deadline.run(Deadline.after(-1, TimeUnit.MILLISECONDS), () -> library.notifyUserWithBookReviews(ISBN, USER_ID)));
+        Assertions.assertEquals(0, reviewCalls.get());
+        Assertions.assertEquals(0, notificationAttempts.get());
+    }
+
+    @Test
+    void GivenHungNotificationService_WhenNotifyWithDeadline_ThenRetriesStopWhenBudgetRunsOut() {
+        Library library = new Library(databaseService, slowReviewService(0));
+        // every attempt times out after 100ms, and a retry needs at least 100ms left
+        registerUser(new TimeoutNotificationService(slowNotificationService(10_000), 100, TimeUnit.MILLISECONDS, executor));
+        library.setMinRetryBudgetNanos(TimeUnit.MILLISECONDS.toNanos(100));
+        long start = System.nanoTime();
+        Assertions.assertThrows(NotificationException.class,
+                () -> Deadline.run(Deadline.after(250, TimeUnit.MILLISECONDS), () -> library.notifyUserWithBookReviews(ISBN, USER_ID)));
+        // two attempts fit in the budget instead of the five hung attempts without a deadline
+        assertElapsedBetween(start, 200, 2_000);
+        Assertions.assertEquals(2, notificationAttempts.get());
+    }
+
+    @Test
+    void GivenNoDeadline_WhenNotificationKeepsTimingOut_ThenAllFiveAttemptsAreMade() {
+        Library library = new Library(databaseService, slowReviewService(0));
+        registerUser(new TimeoutNotificationService(slowNotificationService(10_000), 20, TimeUnit.MILLISECONDS, executor));
+        Assertions.assertThrows(NotificationException.class, () -> library.notifyUserWithBookReviews(ISBN, USER_ID));
+        Assertions.assertEquals(5, notificationAttempts.get());
+    }
+
+    private void registerUser(NotificationService notificationService) {
+        databaseService.registerUser(USER_ID, new User("Mocked name", USER_ID, notificationService));
+    }
+
+    private static void assertElapsedBetween(long startNanos, long minMillis, long maxMillis) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        Assertions.assertTrue(elapsed >= minMillis - 5 && elapsed < maxMillis, "elapsed " + elapsed + "ms");
+    }
+
+    // A review service which takes the given time to answer and to close.
+    private static ReviewService slowReviewService(final long millis) {
+        return new ReviewService() {
+            public List<String> getReviewsForBook(String ISBN) {
+                sleep(millis);
+                return Collections.singletonList("Mocked review");
+            }
+
+            public void close() {
+                sleep(millis);
+            }
+        };
+    }
+
+    // A notification service which takes the given time to answer.
+    private NotificationService slowNotificationService(final long millis) {
+        return (userId, message) -> {
+            notificationAttempts.incrementAndGet();
+            sleep(millis);
+        };
+    }
+
+    private NotificationService fastNotificationService() {
+        return (userId, message) -> notificationAttempts.incrementAndGet();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
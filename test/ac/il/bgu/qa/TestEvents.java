@@ -0,0 +1,159 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.events.BorrowAnalytics;
+import ac.il.bgu.qa.events.LibraryEvent;
+import ac.il.bgu.qa.events.LibraryEventSink;
+import ac.il.bgu.qa.notifications.DeadLetterQueue;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.mockito.ArgumentMatchers.anyString;
+
+public class TestEvents {
+    private static final long DAY = 86_400_000L;
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String OTHER_ISBN = "978-0-201-63361-0";
+    private static final String USER_ID = "123456789012";
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    @TempDir
+    Path directory;
+    private VirtualClock clock;
+    private InMemoryDatabaseService databaseService;
+    private Library library;
+    private List<LibraryEvent> events;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up a library on a virtual clock, recording the events it publishes
+        MockitoAnnotations.initMocks(this);
+        clock = new VirtualClock(1_000_000_000_000L);
+        databaseService = new InMemoryDatabaseService();
+        library = new Library(databaseService, reviewService);
+        library.setClock(clock);
+        events = new ArrayList<>();
+        library.setEventSink(events::add);
+    }
+
+    @Test
+    void GivenEventSink_WhenBooksAndUsersChange_ThenEventPerChange() {
+        library.addBook(new Book(ISBN, "Mocked title", "Mocked author"));
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+        clock.advance(DAY);
+        library.borrowBook(ISBN, USER_ID);
+        clock.advance(DAY);
+        library.returnBook(ISBN, USER_ID);
+
+        Assertions.assertEquals(Arrays.asList(LibraryEvent.Type.BOOK_ADDED, LibraryEvent.Type.USER_REGISTERED,
+                LibraryEvent.Type.BORROWED, LibraryEvent.Type.RETURNED), typesOf(events));
+        // each event names the book and user involved, at the time of the change
+        assertEvent(events.get(0), ISBN, null, clock.millis() - 2 * DAY);
+        assertEvent(events.get(1), null, USER_ID, clock.millis() - 2 * DAY);
+        assertEvent(events.get(2), ISBN, USER_ID, clock.millis() - DAY);
+        assertEvent(events.get(3), ISBN, USER_ID, clock.millis());
+    }
+
+    @Test
+    void GivenFailedOperation_WhenEventSinkSet_ThenNoEventPublished() {
+        library.addBook(new Book(ISBN, "Mocked title", "Mocked author"));
+        events.clear();
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> library.addBook(new Book(ISBN, "Mocked title", "Mocked author")));
+        Assertions.assertThrows(RuntimeException.class, () -> library.borrowBook(ISBN, USER_ID));
+        Assertions.assertEquals(new ArrayList<LibraryEvent>(), events);
+    }
+
+    @Test
+    void GivenNotifications_WhenSentFailedOrDeferred_ThenMatchingEvents() throws IOException {
+        library.addBook(new Book(ISBN, "Mocked title", "Mocked author"));
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+        Mockito.when(reviewService.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("Good", "Bad"));
+        events.clear();
+
+        library.notifyUserWithBookReviews(ISBN, USER_ID);
+        Mockito.doThrow(new NotificationException("down")).when(notificationService).notifyUser(anyString(), anyString());
+        Assertions.assertThrows(NotificationException.class, () -> library.notifyUserWithBookReviews(ISBN, USER_ID));
+        // with a dead-letter queue, the failed notification is deferred instead
+        try (DeadLetterQueue queue = new DeadLetterQueue(directory, 10)) {
+            library.setDeadLetterQueue(queue);
+            library.notifyUserWithBookReviews(ISBN, USER_ID);
+        }
+
+        Assertions.assertEquals(Arrays.asList(LibraryEvent.Type.NOTIFICATION_SENT, LibraryEvent.Type.NOTIFICATION_FAILED,
+                LibraryEvent.Type.NOTIFICATION_DEFERRED), typesOf(events));
+        for (LibraryEvent event : events) {
+            assertEvent(event, ISBN, USER_ID, clock.millis());
+        }
+    }
+
+    @Test
+    void GivenFailingEventSink_WhenOperations_ThenOperationsSucceedAndFailuresCounted() {
+        LibraryEventSink failing = Mockito.mock(LibraryEventSink.class);
+        Mockito.doThrow(new IllegalStateException("Sink down.")).when(failing).publish(Mockito.any());
+        library.setEventSink(failing);
+
+        library.addBook(new Book(ISBN, "Mocked title", "Mocked author"));
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+        library.borrowBook(ISBN, USER_ID);
+        Assertions.assertTrue(databaseService.getBookByISBN(ISBN).isBorrowed());
+        library.returnBook(ISBN, USER_ID);
+        Assertions.assertFalse(databaseService.getBookByISBN(ISBN).isBorrowed());
+
+        Mockito.verify(failing, Mockito.times(4)).publish(Mockito.any());
+        Assertions.assertEquals(4, library.getFailedEventPublishes());
+    }
+
+    @Test
+    void GivenBorrowAnalytics_WhenBooksBorrowedAndReturned_ThenTopBooksAndLoanDurations() {
+        BorrowAnalytics analytics = new BorrowAnalytics(DAY, 7, 1);
+        library.setEventSink(analytics);
+        library.addBook(new Book(ISBN, "Mocked title", "Mocked author"));
+        library.addBook(new Book(OTHER_ISBN, "Mocked title", "Mocked author"));
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+
+        // the first book is borrowed twice for a day, the other once for three days
+        for (int i = 0; i < 2; i++) {
+            library.borrowBook(ISBN, USER_ID);
+            clock.advance(DAY);
+            library.returnBook(ISBN, USER_ID);
+        }
+        library.borrowBook(OTHER_ISBN, USER_ID);
+        clock.advance(3 * DAY);
+        library.returnBook(OTHER_ISBN, USER_ID);
+
+        Assertions.assertEquals(Arrays.asList(ISBN), analytics.getTopBorrowed(clock.millis()));
+        Assertions.assertEquals(2, analytics.estimateBorrows(ISBN, clock.millis()));
+        Assertions.assertEquals(5 * DAY / 3.0, analytics.getAverageLoanMillis(), 1);
+        Assertions.assertTrue(analytics.getLoanMillisPercentile(100) >= 3 * DAY);
+        // a week later, the borrows fell out of the window, but the loan durations are kept
+        clock.advance(7 * DAY);
+        Assertions.assertEquals(new ArrayList<String>(), analytics.getTopBorrowed(clock.millis()));
+        Assertions.assertEquals(0, analytics.estimateBorrows(ISBN, clock.millis()));
+        Assertions.assertEquals(3, Arrays.stream(analytics.getLoanDurationHistogram()).sum());
+    }
+
+    private static List<LibraryEvent.Type> typesOf(List<LibraryEvent> events) {
+        List<LibraryEvent.Type> types = new ArrayList<>();
+        for (LibraryEvent event : events) {
+            types.add(event.getType());
+        }
+        return types;
+    }
+
+    private static void assertEvent(LibraryEvent event, String ISBN, String userId, long timestamp) {
+        Assertions.assertEquals(ISBN, event.getISBN(), event.toString());
+        Assertions.assertEquals(userId, event.getUserId(), event.toString());
+        Assertions.assertEquals(timestamp, event.getTimestamp(), event.toString());
+    }
+}
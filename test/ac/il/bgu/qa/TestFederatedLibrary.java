@@ -0,0 +1,120 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.federation.Branch;
+import ac.il.bgu.qa.federation.BranchAvailability;
+import ac.il.bgu.qa.federation.FederatedLibrary;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class TestFederatedLibrary {
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String USER_ID = "123456789012";
+    private static final long DELAY_MILLIS = 200;
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private ExecutorService executor;
+    private List<Branch> branches;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up three branches, each answering lookups after a delay, with the user registered everywhere
+        MockitoAnnotations.initMocks(this);
+        executor = Executors.newCachedThreadPool();
+        branches = new ArrayList<>();
+        for (String name : Arrays.asList("north", "south", "east")) {
+            branches.add(branch(name, DELAY_MILLIS));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void GivenSlowBranches_WhenLookup_ThenTakesSlowestBranchNotSum() {
+        branches.get(1).getLibrary().addBook(new Book(ISBN, "Mocked title", "Mocked author", 2));
+        FederatedLibrary federation = new FederatedLibrary(branches, executor, 5, TimeUnit.SECONDS);
+
+        long start = System.nanoTime();
+        List<BranchAvailability> availability = federation.lookup(ISBN);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // the branches were asked in parallel, and answers come back in branch order
+        Assertions.assertTrue(millis < 3 * DELAY_MILLIS, "lookup took " + millis + " ms");
+        Assertions.assertEquals(BranchAvailability.Status.NOT_FOUND, availability.get(0).getStatus());
+        Assertions.assertEquals(BranchAvailability.Status.AVAILABLE, availability.get(1).getStatus());
+        Assertions.assertEquals(2, availability.get(1).getAvailableCopies());
+        Assertions.assertEquals(BranchAvailability.Status.NOT_FOUND, availability.get(2).getStatus());
+    }
+
+    @Test
+    void GivenBranchSlowerThanTimeout_WhenLookup_ThenBranchTimedOut() {
+        branches.set(2, branch("east", 5_000));
+        FederatedLibrary federation = new FederatedLibrary(branches, executor, 500, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        List<BranchAvailability> availability = federation.lookup(ISBN);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // the slow branch is reported once the timeout passes, without waiting for it
+        Assertions.assertTrue(millis < 2_000, "lookup took " + millis + " ms");
+        Assertions.assertEquals(BranchAvailability.Status.TIMED_OUT, availability.get(2).getStatus());
+        Assertions.assertEquals(1, federation.getTimeouts());
+        Assertions.assertThrows(BranchUnavailableException.class, () -> federation.borrowBook(ISBN, USER_ID));
+    }
+
+    @Test
+    void GivenFreeCopyAtOneBranch_WhenBorrowBook_ThenBorrowedFromThatBranch() {
+        branches.get(0).getLibrary().addBook(new Book(ISBN, "Mocked title", "Mocked author"));
+        branches.get(2).getLibrary().addBook(new Book(ISBN, "Mocked title", "Mocked author"));
+        branches.get(0).getLibrary().borrowBook(ISBN, USER_ID);
+        FederatedLibrary federation = new FederatedLibrary(branches, executor, 5, TimeUnit.SECONDS);
+
+        Assertions.assertTrue(federation.isAvailableAnywhere(ISBN));
+        Assertions.assertEquals("east", federation.borrowBook(ISBN, USER_ID));
+        // every copy is now out
+        Assertions.assertFalse(federation.isAvailableAnywhere(ISBN));
+        Assertions.assertThrows(BookAlreadyBorrowedException.class, () -> federation.borrowBook(ISBN, USER_ID));
+
+        federation.returnBook("east", ISBN, USER_ID);
+        Assertions.assertTrue(federation.isAvailableAnywhere(ISBN));
+    }
+
+    @Test
+    void GivenNoBranchHasBook_WhenBorrowBook_ThenBookNotFoundException() {
+        FederatedLibrary federation = new FederatedLibrary(branches, executor, 5, TimeUnit.SECONDS);
+
+        Assertions.assertThrows(BookNotFoundException.class, () -> federation.borrowBook(ISBN, USER_ID));
+    }
+
+    // a branch whose database answers lookups after a delay
+    private Branch branch(String name, final long delayMillis) {
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService() {
+            @Override
+            public Book getBookByISBN(String ISBN) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getBookByISBN(ISBN);
+            }
+        };
+        Library library = new Library(databaseService, reviewService);
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+        return new Branch(name, library, databaseService);
+    }
+}
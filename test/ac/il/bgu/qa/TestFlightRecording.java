@@ -0,0 +1,137 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.services.TracingDatabaseService;
+import ac.il.bgu.qa.services.TracingNotificationService;
+import ac.il.bgu.qa.services.TracingReviewService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.*;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TestFlightRecording {
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String USER_ID = "123456789012";
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    @TempDir
+    Path directory;
+    private Library library;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up a library whose services record their calls, with one book and one user
+        MockitoAnnotations.initMocks(this);
+        library = new Library(new TracingDatabaseService(new InMemoryDatabaseService()), new TracingReviewService(reviewService));
+        library.addBook(new Book(ISBN, "Mocked title", "Mocked author"));
+        library.registerUser(new User("Mocked name", USER_ID, new TracingNotificationService(notificationService)));
+    }
+
+    @Test
+    void GivenRecording_WhenBorrowBook_ThenDatabaseCallsNestedInOperation() throws Exception {
+        List<RecordedEvent> events = record(() -> library.borrowBook(ISBN, USER_ID));
+
+        RecordedEvent operation = single(events, "ac.il.bgu.qa.LibraryOperation");
+        Assertions.assertEquals("borrowBook", operation.getString("operation"));
+        Assertions.assertEquals("OK", operation.getString("outcome"));
+        Assertions.assertEquals(ISBN.replace("-", "").hashCode(), operation.getInt("isbnHash"));
+        // every database call of the borrow happened on the same thread, within the operation
+        List<String> calls = new ArrayList<>();
+        for (RecordedEvent call : named(events, "ac.il.bgu.qa.ServiceCall")) {
+            assertNested(operation, call);
+            calls.add(call.getString("service") + "." + call.getString("method"));
+        }
+        Assertions.assertEquals(Arrays.asList("database.getBookByISBN", "database.getUserById", "database.borrowBook"), calls);
+    }
+
+    @Test
+    void GivenFailingNotifications_WhenGetBookByISBN_ThenEveryRetryAttemptRecorded() throws Exception {
+        Mockito.when(reviewService.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("Great", "Dull"));
+        Mockito.doThrow(new NotificationException("Mocked failure")).when(notificationService).notifyUser(Mockito.eq(USER_ID), Mockito.anyString());
+
+        List<RecordedEvent> events = record(() -> library.getBookByISBN(ISBN, USER_ID));
+
+        // getBookByISBN succeeds, and the notification operation nested in it failed
+        List<RecordedEvent> operations = named(events, "ac.il.bgu.qa.LibraryOperation");
+        RecordedEvent outer = operations.stream().filter(e -> e.getString("operation").equals("getBookByISBN")).findFirst().get();
+        RecordedEvent inner = operations.stream().filter(e -> e.getString("operation").equals("notifyUserWithBookReviews")).findFirst().get();
+        Assertions.assertEquals("OK", outer.getString("outcome"));
+        Assertions.assertEquals("NotificationException", inner.getString("outcome"));
+        assertNested(outer, inner);
+
+        // five failed attempts, each wrapping one failed call to the notification service
+        List<RecordedEvent> attempts = named(events, "ac.il.bgu.qa.NotificationAttempt");
+        Assertions.assertEquals(Arrays.asList(1, 2, 3, 4, 5), attempts.stream().map(e -> e.getInt("attempt")).collect(Collectors.toList()));
+        List<RecordedEvent> notifications = named(events, "ac.il.bgu.qa.ServiceCall").stream()
+                .filter(e -> e.getString("service").equals("notification")).collect(Collectors.toList());
+        Assertions.assertEquals(5, notifications.size());
+        for (int i = 0; i < attempts.size(); i++) {
+            Assertions.assertEquals("NotificationException", attempts.get(i).getString("outcome"));
+            assertNested(inner, attempts.get(i));
+            assertNested(attempts.get(i), notifications.get(i));
+        }
+        // the review service was called within the notification operation
+        Assertions.assertTrue(named(events, "ac.il.bgu.qa.ServiceCall").stream()
+                .anyMatch(e -> e.getString("method").equals("getReviewsForBook") && isNested(inner, e)));
+    }
+
+    @Test
+    void GivenRecording_WhenOperationFails_ThenOutcomeIsException() throws Exception {
+        List<RecordedEvent> events = record(() -> {
+            Assertions.assertThrows(UserNotRegisteredException.class, () -> library.borrowBook(ISBN, "999999999999"));
+        });
+
+        RecordedEvent operation = single(events, "ac.il.bgu.qa.LibraryOperation");
+        Assertions.assertEquals("UserNotRegisteredException", operation.getString("outcome"));
+    }
+
+    // runs the action while recording the library's events, and returns them in the order they started
+    private List<RecordedEvent> record(Runnable action) throws Exception {
+        Path file = directory.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : Arrays.asList("ac.il.bgu.qa.LibraryOperation", "ac.il.bgu.qa.ServiceCall", "ac.il.bgu.qa.NotificationAttempt")) {
+                recording.enable(name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        events.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+        return events;
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).collect(Collectors.toList());
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = named(events, name);
+        Assertions.assertEquals(1, matching.size());
+        return matching.get(0);
+    }
+
+    private static boolean isNested(RecordedEvent outer, RecordedEvent inner) {
+        return outer.getThread().getJavaThreadId() == inner.getThread().getJavaThreadId()
+                && !inner.getStartTime().isBefore(outer.getStartTime())
+                && !inner.getEndTime().isAfter(outer.getEndTime());
+    }
+
+    private static void assertNested(RecordedEvent outer, RecordedEvent inner) {
+        Assertions.assertTrue(isNested(outer, inner), inner + " is not nested in " + outer);
+    }
+}
@@ -0,0 +1,97 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.services.HedgingReviewService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestHedging {
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final long SLOW_MILLIS = 20;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUpObjects() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void GivenSlowAndFastReplica_WhenHedgesWin_ThenLosersCancelledAndDelayKept() throws InterruptedException {
+        // half the requests go first to a replica answering in 20 ms, the other half to one answering at once
+        StubReplica slow = new StubReplica(SLOW_MILLIS);
+        StubReplica fast = new StubReplica(0);
+        HedgingReviewService hedging = new HedgingReviewService(Arrays.asList(slow, fast), executor, 90, 1, 2, TimeUnit.MILLISECONDS);
+
+        // every request first sent to the slow replica is hedged after 2 ms, and won by the fast one
+        for (int i = 0; i < 128; i++) {
+            Assertions.assertEquals(Collections.singletonList("review"), hedging.getReviewsForBook(ISBN));
+        }
+        Assertions.assertEquals(64, hedging.getHedgeWins());
+        Assertions.assertTrue(hedging.getHedges() >= 64);
+
+        // the slow requests which lost are cancelled instead of holding a thread until they answer
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (slow.interrupted.get() < 64 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        Assertions.assertTrue(slow.interrupted.get() >= 64, "interrupted " + slow.interrupted.get());
+        Assertions.assertEquals(0, slow.completed.get());
+
+        // they are recorded at the time they had taken, so the delay does not drift down to the fast replica's latency
+        Assertions.assertTrue(hedging.getHedgeDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(1),
+                "hedge delay " + hedging.getHedgeDelayNanos());
+    }
+
+    @Test
+    void GivenHedgeBudget_WhenEveryRequestSlow_ThenHedgesLimitedToRatio() {
+        // both replicas answer well after the initial delay, and a tenth of the requests may be hedged
+        HedgingReviewService hedging = new HedgingReviewService(Arrays.asList(new StubReplica(SLOW_MILLIS), new StubReplica(SLOW_MILLIS)),
+                executor, 50, 0.1, 0, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 50; i++) {
+            hedging.getReviewsForBook(ISBN);
+        }
+        // the saved-up budget of ten hedges plus one earned every ten requests
+        Assertions.assertTrue(hedging.getHedges() <= 15, "hedges " + hedging.getHedges());
+        Assertions.assertEquals(50, hedging.getHedges() + hedging.getHedgesDenied());
+    }
+
+    // A replica answering after a fixed latency.
+    private static final class StubReplica implements ReviewService {
+        private final long millis;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger interrupted = new AtomicInteger();
+
+        private StubReplica(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public List<String> getReviewsForBook(String ISBN) {
+            if (millis > 0) {
+                try {
+                    Thread.sleep(millis);
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                    throw new IllegalStateException("Interrupted.");
+                }
+            }
+            completed.incrementAndGet();
+            return Collections.singletonList("review");
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
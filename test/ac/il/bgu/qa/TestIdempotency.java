@@ -0,0 +1,164 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.loans.IdempotencyTable;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestIdempotency {
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String USER_ID = "123456789012";
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private InMemoryDatabaseService databaseService;
+    private AtomicLong nanos;
+    private IdempotencyTable table;
+    private Library library;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up a library with a single-copy book, a user and an idempotency table keeping keys for a minute
+        MockitoAnnotations.initMocks(this);
+        databaseService = Mockito.spy(new InMemoryDatabaseService());
+        nanos = new AtomicLong();
+        table = new IdempotencyTable(1, TimeUnit.MINUTES, 100, nanos::get);
+        library = new Library(databaseService, reviewService);
+        library.setIdempotencyTable(table);
+        library.addBook(new Book(ISBN, "Mocked title", "Mocked author"));
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+        Mockito.clearInvocations(databaseService);
+    }
+
+    @Test
+    void GivenBorrowWithKey_WhenRetried_ThenOriginalOutcomeReplayedWithoutDatabase() {
+        library.borrowBook(ISBN, USER_ID, "kiosk-1");
+        Mockito.clearInvocations(databaseService);
+
+        // the retry succeeds like the original, without reaching the database
+        Assertions.assertDoesNotThrow(() -> library.borrowBook(ISBN, USER_ID, "kiosk-1"));
+        Mockito.verifyNoInteractions(databaseService);
+        Assertions.assertEquals(1, table.getReplays());
+        Assertions.assertEquals(USER_ID, databaseService.getBorrower(ISBN));
+
+        // a new key borrows again, and the book is taken
+        Assertions.assertThrows(BookAlreadyBorrowedException.class, () -> library.borrowBook(ISBN, USER_ID, "kiosk-2"));
+    }
+
+    @Test
+    void GivenReturnWithKey_WhenRetried_ThenNoBookNotBorrowedException() {
+        library.borrowBook(ISBN, USER_ID);
+        library.returnBook(ISBN, USER_ID, "kiosk-1");
+
+        Assertions.assertDoesNotThrow(() -> library.returnBook(ISBN, USER_ID, "kiosk-1"));
+        Mockito.verify(databaseService, Mockito.times(1)).returnBook(ISBN, USER_ID);
+
+        // once the key expires, the retry runs again and finds the book returned
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        Assertions.assertThrows(BookNotBorrowedException.class, () -> library.returnBook(ISBN, USER_ID, "kiosk-1"));
+    }
+
+    @Test
+    void GivenKeyOfOtherRequest_WhenBorrow_ThenIllegalArgumentException() {
+        library.borrowBook(ISBN, USER_ID, "kiosk-1");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> library.returnBook(ISBN, USER_ID, "kiosk-1"));
+        Assertions.assertEquals(USER_ID, databaseService.getBorrower(ISBN));
+    }
+
+    @Test
+    void GivenRejectedAndFailedBorrows_WhenRetried_ThenRejectionReplayedAndFailureRerun() {
+        // a rejection is replayed
+        Assertions.assertThrows(UserNotRegisteredException.class, () -> library.borrowBook(ISBN, "999999999999", "kiosk-1"));
+        Assertions.assertThrows(UserNotRegisteredException.class, () -> library.borrowBook(ISBN, "999999999999", "kiosk-1"));
+        Mockito.verify(databaseService, Mockito.times(1)).getUserById("999999999999");
+
+        // a database failure is not, so the retry borrows the book
+        Mockito.doThrow(new IllegalStateException("Mocked failure")).doCallRealMethod().when(databaseService).borrowBook(ISBN, USER_ID);
+        Assertions.assertThrows(IllegalStateException.class, () -> library.borrowBook(ISBN, USER_ID, "kiosk-2"));
+        library.returnBook(ISBN);
+        library.borrowBook(ISBN, USER_ID, "kiosk-2");
+        Assertions.assertEquals(USER_ID, databaseService.getBorrower(ISBN));
+    }
+
+    @Test
+    void GivenBorrowInProgress_WhenRetriedConcurrently_ThenRetryWaitsAndReplays() throws Exception {
+        // the first borrow blocks in the database until released
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            entered.countDown();
+            release.await();
+            return invocation.callRealMethod();
+        }).when(databaseService).borrowBook(ISBN, USER_ID);
+        Thread first = new Thread(() -> library.borrowBook(ISBN, USER_ID, "kiosk-1"));
+        first.start();
+        entered.await();
+
+        Throwable[] retryFailure = new Throwable[1];
+        Thread retry = new Thread(() -> {
+            try {
+                library.borrowBook(ISBN, USER_ID, "kiosk-1");
+            } catch (Throwable t) {
+                retryFailure[0] = t;
+            }
+        });
+        retry.start();
+        retry.join(100);
+        Assertions.assertTrue(retry.isAlive());
+
+        release.countDown();
+        first.join();
+        retry.join();
+        Assertions.assertNull(retryFailure[0]);
+        Mockito.verify(databaseService, Mockito.times(1)).borrowBook(ISBN, USER_ID);
+    }
+
+    @Test
+    void GivenBorrowInProgressFailingWithError_WhenRetriedConcurrently_ThenRetryRunsAgain() throws Exception {
+        // the first borrow blocks looking up the user until released, then fails with an error
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            entered.countDown();
+            release.await();
+            throw new AssertionError("Mocked error");
+        }).doCallRealMethod().when(databaseService).getUserById(USER_ID);
+        Throwable[] failures = new Throwable[2];
+        Thread first = new Thread(() -> {
+            try {
+                library.borrowBook(ISBN, USER_ID, "kiosk-1");
+            } catch (Throwable t) {
+                failures[0] = t;
+            }
+        });
+        first.start();
+        entered.await();
+        Thread retry = new Thread(() -> {
+            try {
+                library.borrowBook(ISBN, USER_ID, "kiosk-1");
+            } catch (Throwable t) {
+                failures[1] = t;
+            }
+        });
+        retry.start();
+
+        // the error forgets the key, so the waiting retry borrows the book instead of waiting forever
+        release.countDown();
+        first.join();
+        retry.join(5_000);
+        Assertions.assertFalse(retry.isAlive());
+        Assertions.assertTrue(failures[0] instanceof AssertionError);
+        Assertions.assertNull(failures[1]);
+        Assertions.assertEquals(USER_ID, databaseService.getBorrower(ISBN));
+        Mockito.verify(databaseService, Mockito.times(1)).borrowBook(ISBN, USER_ID);
+        Assertions.assertEquals(0, table.getReplays());
+    }
+}
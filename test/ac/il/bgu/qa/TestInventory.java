@@ -0,0 +1,215 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestInventory {
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final int COPIES = 20;
+    private static final int USERS = 200;
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private InMemoryDatabaseService databaseService;
+    private Library library;
+    private Book book;
+    private List<String> userIds;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up a library over an in-memory database holding one title with 20 copies, and 200 users
+        MockitoAnnotations.initMocks(this);
+        databaseService = new InMemoryDatabaseService();
+        library = new Library(databaseService, reviewService);
+        book = new Book(ISBN, "Mocked title", "Mocked author", COPIES);
+        library.addBook(book);
+        userIds = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            String userId = String.format("%012d", 100_000_000_000L + i);
+            userIds.add(userId);
+            library.registerUser(new User("Mocked name", userId, notificationService));
+        }
+    }
+
+    @Test
+    void GivenInvalidCopies_WhenCreateBook_ThenIllegalArgumentException() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Book(ISBN, "Mocked title", "Mocked author", 0));
+    }
+
+    @Test
+    void GivenMultiCopyBook_WhenBorrowAllCopies_ThenBookIsBorrowedOnlyAfterLastCopy() {
+        for (int i = 0; i < COPIES; i++) {
+            Assertions.assertFalse(book.isBorrowed());
+            library.borrowBook(ISBN, userIds.get(i));
+        }
+        // every copy is out, so the next borrow fails
+        Assertions.assertTrue(book.isBorrowed());
+        Assertions.assertEquals(0, book.getAvailableCopies());
+        Assertions.assertThrows(BookAlreadyBorrowedException.class, () -> library.borrowBook(ISBN, userIds.get(COPIES)));
+        Assertions.assertEquals(userIds.subList(0, COPIES), databaseService.getHolders(ISBN));
+    }
+
+    @Test
+    void GivenMultiCopyBook_WhenUserReturnsCopy_ThenThatUserNoLongerHoldsIt() {
+        library.borrowBook(ISBN, userIds.get(0));
+        library.borrowBook(ISBN, userIds.get(1));
+        library.borrowBook(ISBN, userIds.get(2));
+        library.returnBook(ISBN, userIds.get(1));
+        Assertions.assertEquals(2, book.getBorrowedCopies());
+        Assertions.assertEquals(2, databaseService.getHolders(ISBN).size());
+        Assertions.assertFalse(databaseService.getHolders(ISBN).contains(userIds.get(1)));
+    }
+
+    @Test
+    void GivenNoBorrowedCopies_WhenReturnBook_ThenBookNotBorrowedException() {
+        library.borrowBook(ISBN, userIds.get(0));
+        library.returnBook(ISBN, userIds.get(0));
+        Assertions.assertThrows(BookNotBorrowedException.class, () -> library.returnBook(ISBN, userIds.get(0)));
+        Assertions.assertEquals(COPIES, book.getAvailableCopies());
+    }
+
+    @Test
+    void GivenUserHoldingNoCopy_WhenReturnBook_ThenBookNotBorrowedExceptionAndCopiesUnchanged() {
+        library.borrowBook(ISBN, userIds.get(0));
+        // another user cannot return the copy they do not hold
+        Assertions.assertThrows(BookNotBorrowedException.class, () -> library.returnBook(ISBN, userIds.get(1)));
+        Assertions.assertEquals(1, book.getBorrowedCopies());
+        Assertions.assertEquals(userIds.subList(0, 1), databaseService.getHolders(ISBN));
+        // the holder still returns it, leaving the copies and the holders in agreement
+        library.returnBook(ISBN, userIds.get(0));
+        Assertions.assertEquals(COPIES, book.getAvailableCopies());
+        Assertions.assertTrue(databaseService.getHolders(ISBN).isEmpty());
+    }
+
+    @Test
+    void GivenBookWithSomeCopiesOut_WhenAddBook_ThenIllegalArgumentException() {
+        Book partlyBorrowed = new Book("978-0-306-40615-7", "Mocked title", "Mocked author", 3);
+        partlyBorrowed.borrow();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> library.addBook(partlyBorrowed));
+        Assertions.assertNull(databaseService.getBookByISBN("978-0-306-40615-7"));
+    }
+
+    @Test
+    void GivenManyThreads_WhenAllBorrowAtOnce_ThenExactlyTheCopiesAreLent() throws InterruptedException {
+        final AtomicInteger borrowed = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        runConcurrently(USERS, index -> {
+            try {
+                library.borrowBook(ISBN, userIds.get(index));
+                borrowed.incrementAndGet();
+            } catch (BookAlreadyBorrowedException e) {
+                rejected.incrementAndGet();
+            }
+        });
+        // no copy is lent twice and no free copy is refused
+        Assertions.assertEquals(COPIES, borrowed.get());
+        Assertions.assertEquals(USERS - COPIES, rejected.get());
+        Assertions.assertEquals(0, book.getAvailableCopies());
+        Assertions.assertEquals(COPIES, databaseService.getHolders(ISBN).size());
+    }
+
+    @Test
+    void GivenManyThreads_WhenBorrowingAndReturningRepeatedly_ThenCopiesAreNeverOverBorrowed() throws InterruptedException {
+        final AtomicInteger overBorrowed = new AtomicInteger();
+        final AtomicInteger outstanding = new AtomicInteger();
+        runConcurrently(64, index -> {
+            String userId = userIds.get(index);
+            for (int i = 0; i < 2_000; i++) {
+                try {
+                    library.borrowBook(ISBN, userId);
+                } catch (BookAlreadyBorrowedException e) {
+                    continue;
+                }
+                // count the copies this test holds; it may never exceed the number of copies
+                if (outstanding.incrementAndGet() > COPIES) {
+                    overBorrowed.incrementAndGet();
+                }
+                outstanding.decrementAndGet();
+                library.returnBook(ISBN, userId);
+            }
+        });
+        Assertions.assertEquals(0, overBorrowed.get());
+        Assertions.assertEquals(COPIES, book.getAvailableCopies());
+        Assertions.assertTrue(databaseService.getHolders(ISBN).isEmpty());
+    }
+
+    @Test
+    void GivenBorrowsAndReturns_WhenGetVersion_ThenVersionCountsChanges() {
+        library.borrowBook(ISBN, userIds.get(0));
+        library.borrowBook(ISBN, userIds.get(1));
+        library.returnBook(ISBN, userIds.get(0));
+        Assertions.assertEquals(3, book.getVersion());
+        // a conditional borrow at an outdated version changes nothing
+        Assertions.assertFalse(book.compareAndBorrow(2));
+        Assertions.assertTrue(book.compareAndBorrow(3));
+        Assertions.assertEquals(COPIES - 2, book.getAvailableCopies());
+    }
+
+    @Test
+    void GivenConditionalDatabase_WhenVersionConflict_ThenLibraryRereadsAndRetries() {
+        // a shared database whose first conditional borrow loses against another library
+        DatabaseService sharedDatabase = Mockito.mock(DatabaseService.class);
+        Mockito.when(sharedDatabase.supportsConditionalUpdates()).thenReturn(true);
+        Mockito.when(sharedDatabase.getBookByISBN(ISBN)).thenReturn(
+                new Book(ISBN, "Mocked title", "Mocked author", COPIES, 5, 7),
+                new Book(ISBN, "Mocked title", "Mocked author", COPIES, 4, 8));
+        Mockito.when(sharedDatabase.getUserById(userIds.get(0))).thenReturn(new User("Mocked name", userIds.get(0), notificationService));
+        Mockito.when(sharedDatabase.compareAndSetBorrowed(ISBN, 7, userIds.get(0))).thenReturn(false);
+        Mockito.when(sharedDatabase.compareAndSetBorrowed(ISBN, 8, userIds.get(0))).thenReturn(true);
+
+        new Library(sharedDatabase, reviewService).borrowBook(ISBN, userIds.get(0));
+
+        // the borrow was applied by the database at the version read again, not by the library
+        Mockito.verify(sharedDatabase).compareAndSetBorrowed(ISBN, 8, userIds.get(0));
+        Mockito.verify(sharedDatabase, Mockito.times(2)).getBookByISBN(ISBN);
+        Mockito.verify(sharedDatabase, Mockito.never()).borrowBook(ISBN, userIds.get(0));
+    }
+
+    @Test
+    void GivenConditionalDatabase_WhenConflictsPersist_ThenUpdateConflictException() {
+        DatabaseService sharedDatabase = Mockito.mock(DatabaseService.class);
+        Mockito.when(sharedDatabase.supportsConditionalUpdates()).thenReturn(true);
+        Mockito.when(sharedDatabase.getBookByISBN(ISBN)).thenReturn(new Book(ISBN, "Mocked title", "Mocked author", COPIES));
+        Mockito.when(sharedDatabase.getUserById(userIds.get(0))).thenReturn(new User("Mocked name", userIds.get(0), notificationService));
+
+        Library sharedLibrary = new Library(sharedDatabase, reviewService);
+        Assertions.assertThrows(UpdateConflictException.class, () -> sharedLibrary.borrowBook(ISBN, userIds.get(0)));
+    }
+
+    private interface Worker {
+        void run(int index);
+    }
+
+    // Runs the worker on the given number of threads, released together.
+    private static void runConcurrently(int threads, final Worker worker) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            new Thread(() -> {
+                try {
+                    start.await();
+                    worker.run(index);
+                } catch (Throwable e) {
+                    failures.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        Assertions.assertEquals(0, failures.get());
+    }
+}
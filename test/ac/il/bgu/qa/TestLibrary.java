@@ -108,6 +108,27 @@ public class TestLibrary {
         // case of double '' in name
         Mockito.when(book.getAuthor()).thenReturn("auth''or");
         Assertions.assertThrows(IllegalArgumentException.class, () -> library.addBook(book), "Invalid author.");
+        // case of double . in name
+        Mockito.when(book.getAuthor()).thenReturn("auth..or");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> library.addBook(book), "Invalid author.");
+        // case of double space in name
+        Mockito.when(book.getAuthor()).thenReturn("auth  or");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> library.addBook(book), "Invalid author.");
+        // case of mixed consecutive special chars in name
+        Mockito.when(book.getAuthor()).thenReturn("auth-'or");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> library.addBook(book), "Invalid author.");
+    }
+
+    @Test
+    void GivenValidAuthorFormats_WhenAddBook_ThenBookIsAdded() {
+        // initials followed by a space, hyphens, apostrophes and non latin letters are all valid
+        String[] authors = {"J. R. R. Tolkien", "Jean-Paul Sartre", "Flannery O'Connor", "Gabriel Garc\u00eda M\u00e1rquez", "\u6751\u4e0a\u6625\u6a39"};
+        for (String author : authors) {
+            Mockito.when(book.getAuthor()).thenReturn(author);
+            library.addBook(book);
+        }
+        // verify that the book was added once per author
+        Mockito.verify(databaseService, Mockito.times(authors.length)).addBook(book.getISBN(), book);
     }
 
     @Test
@@ -306,6 +327,7 @@ public class TestLibrary {
     void GivenBorrowedBook_WhenReturnBook_ThenBookIsReturned() {
         // test that a book is returned successfully
         Mockito.when(book.isBorrowed()).thenReturn(true);
+        Mockito.when(book.hasBorrowedCopies()).thenReturn(true);
         Mockito.when(databaseService.getBookByISBN(book.getISBN())).thenReturn(book);
         library.returnBook(book.getISBN());
         // verify that the book was returned
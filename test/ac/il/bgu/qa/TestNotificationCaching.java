@@ -0,0 +1,150 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.notifications.NotificationPayloadCache;
+import ac.il.bgu.qa.services.CachingReviewService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TestNotificationCaching {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String OTHER_ISBN = "978-0-201-63361-0";
+    private static final String USER_ID = "123456789012";
+    private static final String OTHER_USER_ID = "210987654321";
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    // The time of the fake clock, in nanoseconds.
+    private long now;
+    private CachingReviewService cachingReviewService;
+    private NotificationPayloadCache payloadCache;
+
+    @BeforeEach
+    void setUpObjects() {
+        // a review cache keeping two books for a minute on a fake clock, and a payload cache of two books
+        MockitoAnnotations.initMocks(this);
+        now = 1_000 * SECOND;
+        cachingReviewService = new CachingReviewService(reviewService, 60, TimeUnit.SECONDS, 2, () -> now);
+        payloadCache = new NotificationPayloadCache(2);
+    }
+
+    @Test
+    void GivenCachedReviews_WhenFetchedWithinTtl_ThenSameListWithoutDelegateCall() {
+        Mockito.when(reviewService.getReviewsForBook(ISBN)).thenReturn(new ArrayList<>(Arrays.asList("Good", "Bad")));
+
+        List<String> reviews = cachingReviewService.getReviewsForBook(ISBN);
+        now += 59 * SECOND;
+        Assertions.assertSame(reviews, cachingReviewService.getReviewsForBook(ISBN));
+        Assertions.assertEquals(Arrays.asList("Good", "Bad"), reviews);
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> reviews.add("Mocked review"));
+        Mockito.verify(reviewService, Mockito.times(1)).getReviewsForBook(ISBN);
+        // closing is forwarded even when the reviews came from the cache
+        cachingReviewService.close();
+        Mockito.verify(reviewService).close();
+    }
+
+    @Test
+    void GivenCachedReviews_WhenTtlPasses_ThenFetchedAgain() {
+        Mockito.when(reviewService.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("Good")).thenReturn(Arrays.asList("Good", "New"));
+
+        cachingReviewService.getReviewsForBook(ISBN);
+        now += 60 * SECOND;
+        Assertions.assertEquals(Arrays.asList("Good", "New"), cachingReviewService.getReviewsForBook(ISBN));
+        Mockito.verify(reviewService, Mockito.times(2)).getReviewsForBook(ISBN);
+    }
+
+    @Test
+    void GivenFailedFetches_WhenFetchedAgain_ThenNotCached() {
+        Mockito.when(reviewService.getReviewsForBook(ISBN))
+                .thenThrow(new ReviewException("down")).thenReturn(null).thenReturn(Arrays.asList("Good"));
+
+        Assertions.assertThrows(ReviewException.class, () -> cachingReviewService.getReviewsForBook(ISBN));
+        Assertions.assertNull(cachingReviewService.getReviewsForBook(ISBN));
+        Assertions.assertEquals(Arrays.asList("Good"), cachingReviewService.getReviewsForBook(ISBN));
+        Assertions.assertEquals(Arrays.asList("Good"), cachingReviewService.getReviewsForBook(ISBN));
+        Mockito.verify(reviewService, Mockito.times(3)).getReviewsForBook(ISBN);
+    }
+
+    @Test
+    void GivenManyBooks_WhenFetched_ThenLeastRecentlyUsedEvicted() {
+        Mockito.when(reviewService.getReviewsForBook(Mockito.anyString())).thenReturn(Arrays.asList("Good"));
+        String third = "978-0-596-00712-6";
+
+        cachingReviewService.getReviewsForBook(ISBN);
+        cachingReviewService.getReviewsForBook(OTHER_ISBN);
+        cachingReviewService.getReviewsForBook(ISBN);
+        cachingReviewService.getReviewsForBook(third);
+        // the other book was the least recently used of the two kept, so only it is fetched again
+        cachingReviewService.getReviewsForBook(ISBN);
+        cachingReviewService.getReviewsForBook(OTHER_ISBN);
+        Mockito.verify(reviewService, Mockito.times(1)).getReviewsForBook(ISBN);
+        Mockito.verify(reviewService, Mockito.times(2)).getReviewsForBook(OTHER_ISBN);
+    }
+
+    @Test
+    void GivenRefreshListener_WhenReviewsRefetchedOrInvalidated_ThenPayloadDropped() {
+        List<String> refreshed = new ArrayList<>();
+        cachingReviewService.addRefreshListener(refreshed::add);
+        cachingReviewService.addRefreshListener(payloadCache::invalidate);
+        Mockito.when(reviewService.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("Good"));
+
+        String message = payloadCache.getPayload(ISBN, "Mocked title", cachingReviewService.getReviewsForBook(ISBN));
+        Assertions.assertSame(message, payloadCache.getPayload(ISBN, "Mocked title", cachingReviewService.getReviewsForBook(ISBN)));
+        Assertions.assertEquals(1, payloadCache.getHits());
+        // invalidating the reviews drops the payload, though the reviews fetched again are equal
+        cachingReviewService.invalidate(ISBN);
+        String rerendered = payloadCache.getPayload(ISBN, "Mocked title", cachingReviewService.getReviewsForBook(ISBN));
+        Assertions.assertEquals(message, rerendered);
+        Assertions.assertNotSame(message, rerendered);
+        Assertions.assertEquals(2, payloadCache.getMisses());
+        // the listener heard of the first fetch, the invalidation and the fetch after it
+        Assertions.assertEquals(Arrays.asList(ISBN, ISBN, ISBN), refreshed);
+    }
+
+    @Test
+    void GivenCachedPayload_WhenTitleOrReviewsChange_ThenReRendered() {
+        List<String> reviews = new ArrayList<>(Arrays.asList("Good"));
+        String message = payloadCache.getPayload(ISBN, "Mocked title", reviews);
+        Assertions.assertEquals(NotificationPayloadCache.render("Mocked title", reviews), message);
+
+        // the cache kept a copy, so changing the caller's list is noticed
+        reviews.add("Bad");
+        Assertions.assertEquals("Reviews for 'Mocked title':\nGood\nBad", payloadCache.getPayload(ISBN, "Mocked title", reviews));
+        Assertions.assertEquals("Reviews for 'Other title':\nGood\nBad", payloadCache.getPayload(ISBN, "Other title", reviews));
+        Assertions.assertEquals(0, payloadCache.getHits());
+        Assertions.assertEquals(3, payloadCache.getMisses());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new NotificationPayloadCache(0));
+    }
+
+    @Test
+    void GivenPayloadCache_WhenUsersNotifiedAboutSameBook_ThenRenderedOnceUntilReviewsChange() {
+        Library library = new Library(new InMemoryDatabaseService(), cachingReviewService);
+        library.setNotificationPayloadCache(payloadCache);
+        library.addBook(new Book(ISBN, "Mocked title", "Mocked author"));
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+        library.registerUser(new User("Mocked name", OTHER_USER_ID, notificationService));
+        Mockito.when(reviewService.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("Good")).thenReturn(Arrays.asList("Good", "Bad"));
+
+        library.notifyUserWithBookReviews(ISBN, USER_ID);
+        library.notifyUserWithBookReviews(ISBN, OTHER_USER_ID);
+        Assertions.assertEquals(1, payloadCache.getMisses());
+        Assertions.assertEquals(1, payloadCache.getHits());
+
+        // once the reviews expire and change, the next user gets the new reviews
+        now += 60 * SECOND;
+        library.notifyUserWithBookReviews(ISBN, USER_ID);
+        Mockito.verify(notificationService, Mockito.times(1)).notifyUser(USER_ID, "Reviews for 'Mocked title':\nGood");
+        Mockito.verify(notificationService).notifyUser(OTHER_USER_ID, "Reviews for 'Mocked title':\nGood");
+        Mockito.verify(notificationService).notifyUser(USER_ID, "Reviews for 'Mocked title':\nGood\nBad");
+        Assertions.assertEquals(2, payloadCache.getMisses());
+    }
+}
@@ -0,0 +1,156 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.events.BorrowAnalytics;
+import ac.il.bgu.qa.loans.OverdueTracker;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class TestOverdueTracker {
+    private static final long MINUTE = 60_000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String OTHER_ISBN = "9780132350884";
+    private static final String THIRD_ISBN = "978-0-306-40615-7";
+    private static final String USER_ID = "123456789123";
+    private static final String OTHER_USER_ID = "123456789124";
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private VirtualClock clock;
+    private OverdueTracker tracker;
+    private Library library;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up a library over an in-memory database, running on a virtual clock with 14 day loans
+        MockitoAnnotations.initMocks(this);
+        clock = new VirtualClock(1_000_000_000_000L);
+        tracker = new OverdueTracker(14 * DAY, MINUTE, clock.millis());
+        library = new Library(new InMemoryDatabaseService(), reviewService);
+        library.setClock(clock);
+        library.setOverdueTracker(tracker);
+        library.addBook(new Book(ISBN, "Mocked title", "Mocked author"));
+        library.addBook(new Book(OTHER_ISBN, "Other title", "Other author"));
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+    }
+
+    @Test
+    void GivenBorrowedBook_WhenDueTimePasses_ThenUserIsReminded() {
+        library.borrowBook(ISBN, USER_ID);
+        // the due time is recorded when borrowing
+        Assertions.assertEquals(clock.millis() + 14 * DAY, tracker.getDueMillis(ISBN));
+        // no reminder before the due time
+        clock.advance(14 * DAY - MINUTE);
+        Assertions.assertEquals(0, tracker.advanceTo(clock.millis()));
+        Mockito.verify(notificationService, Mockito.never()).notifyUser(anyString(), anyString());
+        // a single reminder once the due time passed
+        clock.advance(2 * MINUTE);
+        Assertions.assertEquals(1, tracker.advanceTo(clock.millis()));
+        Mockito.verify(notificationService).notifyUser(eq(USER_ID), contains("Mocked title"));
+        // the reminder is not repeated
+        clock.advance(DAY);
+        Assertions.assertEquals(0, tracker.advanceTo(clock.millis()));
+        Mockito.verify(notificationService, Mockito.times(1)).notifyUser(anyString(), anyString());
+    }
+
+    @Test
+    void GivenReturnedBook_WhenDueTimePasses_ThenUserIsNotReminded() {
+        library.borrowBook(ISBN, USER_ID);
+        clock.advance(3 * DAY);
+        library.returnBook(ISBN);
+        // returning cancels the due time
+        Assertions.assertNull(tracker.getDueMillis(ISBN));
+        Assertions.assertEquals(0, tracker.getPendingLoans());
+        clock.advance(30 * DAY);
+        Assertions.assertEquals(0, tracker.advanceTo(clock.millis()));
+        Mockito.verify(notificationService, Mockito.never()).notifyUser(anyString(), anyString());
+    }
+
+    @Test
+    void GivenTwoHoldersOfOneTitle_WhenFirstBorrowerReturns_ThenOnlyTheirLoanEnds() {
+        // a title with two copies, borrowed by two users three days apart
+        BorrowAnalytics analytics = new BorrowAnalytics(DAY, 7, 10);
+        library.setEventSink(analytics);
+        library.addBook(new Book(THIRD_ISBN, "Two copies", "Mocked author", 2));
+        NotificationService otherService = Mockito.mock(NotificationService.class);
+        library.registerUser(new User("Other name", OTHER_USER_ID, otherService));
+        library.borrowBook(THIRD_ISBN, USER_ID);
+        clock.advance(3 * DAY);
+        library.borrowBook(THIRD_ISBN, OTHER_USER_ID);
+        // the second borrow keeps the first borrower's due time
+        Assertions.assertEquals(clock.millis() + 11 * DAY, tracker.getDueMillis(THIRD_ISBN, USER_ID));
+        Assertions.assertEquals(clock.millis() + 14 * DAY, tracker.getDueMillis(THIRD_ISBN, OTHER_USER_ID));
+        Assertions.assertEquals(2, tracker.getPendingLoans());
+
+        // the second borrower returns after a day, ending only their own loan
+        clock.advance(DAY);
+        library.returnBook(THIRD_ISBN, OTHER_USER_ID);
+        Assertions.assertNull(tracker.getDueMillis(THIRD_ISBN, OTHER_USER_ID));
+        Assertions.assertNotNull(tracker.getDueMillis(THIRD_ISBN, USER_ID));
+        Assertions.assertEquals(DAY, analytics.getAverageLoanMillis(), 0);
+
+        // the first borrower is still reminded when their loan is due
+        clock.advance(11 * DAY);
+        Assertions.assertEquals(1, tracker.advanceTo(clock.millis()));
+        Mockito.verify(notificationService).notifyUser(eq(USER_ID), contains("Two copies"));
+        Mockito.verify(otherService, Mockito.never()).notifyUser(anyString(), anyString());
+
+        // their return records the duration of their own loan
+        library.returnBook(THIRD_ISBN, USER_ID);
+        Assertions.assertEquals((DAY + 15 * DAY) / 2.0, analytics.getAverageLoanMillis(), 0);
+    }
+
+    @Test
+    void GivenLoansWithDifferentDueTimes_WhenTimeAdvances_ThenRemindersFireInOrder() {
+        library.borrowBook(ISBN, USER_ID);
+        clock.advance(5 * DAY);
+        library.borrowBook(OTHER_ISBN, USER_ID);
+        // advancing past the first due time only fires the first loan
+        clock.advance(10 * DAY);
+        Assertions.assertEquals(1, tracker.advanceTo(clock.millis()));
+        Mockito.verify(notificationService).notifyUser(eq(USER_ID), contains("Mocked title"));
+        Mockito.verify(notificationService, Mockito.never()).notifyUser(eq(USER_ID), contains("Other title"));
+        // advancing past the second due time fires the second loan
+        clock.advance(5 * DAY);
+        Assertions.assertEquals(1, tracker.advanceTo(clock.millis()));
+        Mockito.verify(notificationService).notifyUser(eq(USER_ID), contains("Other title"));
+    }
+
+    @Test
+    void GivenLoanBeyondWheelRange_WhenDueTimePasses_ThenUserIsReminded() {
+        // a one-second tick makes a one year loan overflow the wheel's 64^4 ticks
+        tracker = new OverdueTracker(365 * DAY, 1, clock.millis());
+        tracker.loanStarted(ISBN, "Mocked title", new User("Mocked name", USER_ID, notificationService), clock.millis());
+        clock.advance(365 * DAY - 1);
+        Assertions.assertEquals(0, tracker.advanceTo(clock.millis()));
+        clock.advance(1);
+        Assertions.assertEquals(1, tracker.advanceTo(clock.millis()));
+    }
+
+    @Test
+    void GivenManyLoans_WhenTimeAdvances_ThenEveryLoanFiresExactlyOnce() {
+        tracker = new OverdueTracker(DAY, MINUTE, clock.millis());
+        User user = new User("Mocked name", USER_ID, notificationService);
+        // start 10000 loans spread over 10 days, and end every other one
+        for (int i = 0; i < 10_000; i++) {
+            tracker.loanStarted("isbn" + i, "title", user, clock.millis() + i * MINUTE / 7 * 10);
+        }
+        for (int i = 0; i < 10_000; i += 2) {
+            Assertions.assertTrue(tracker.loanEnded("isbn" + i));
+        }
+        int fired = 0;
+        for (int day = 0; day < 12; day++) {
+            clock.advance(DAY);
+            fired += tracker.advanceTo(clock.millis());
+        }
+        Assertions.assertEquals(5_000, fired);
+        Assertions.assertEquals(0, tracker.getPendingLoans());
+    }
+}
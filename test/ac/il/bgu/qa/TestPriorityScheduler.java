@@ -0,0 +1,189 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.admission.PrioritizedDatabaseService;
+import ac.il.bgu.qa.admission.PriorityScheduler;
+import ac.il.bgu.qa.admission.PriorityScheduler.Policy;
+import ac.il.bgu.qa.admission.PriorityScheduler.Priority;
+import ac.il.bgu.qa.admission.ScheduledLibrary;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestPriorityScheduler {
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String OTHER_ISBN = "978-0-306-40615-7";
+    private static final String USER_ID = "123456789012";
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private PriorityScheduler scheduler;
+
+    @BeforeEach
+    void setUpObjects() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @AfterEach
+    void closeScheduler() {
+        if (scheduler != null) {
+            scheduler.close();
+        }
+    }
+
+    @Test
+    void GivenQueuedWorkInEveryClass_WhenThreadFrees_ThenWeightedFairOrder() throws Exception {
+        // one thread, interactive work weighted twice as much as the other classes, and a service level never at risk
+        scheduler = new PriorityScheduler(1, 1, TimeUnit.HOURS, new Policy(2, 1, 1, 1), new Policy(1, 1, 1, 1), new Policy(1, 1, 1, 1));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(Priority.BULK, () -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        started.await();
+
+        // queue four tasks of every class behind the running one
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (Priority priority : Priority.values()) {
+            for (int i = 0; i < 4; i++) {
+                results.add(scheduler.submit(priority, () -> order.add(priority.name().substring(0, 1))));
+            }
+        }
+        release.countDown();
+        for (Future<Boolean> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+
+        // interactive work got twice the turns until it ran out, and the bulk class, behind by its running task, came last
+        Assertions.assertEquals(Arrays.asList("I", "I", "N", "I", "I", "N", "B", "N", "B", "N", "B", "B"), order);
+        Assertions.assertEquals(4, scheduler.getCompleted(Priority.INTERACTIVE));
+    }
+
+    @Test
+    void GivenInteractiveAtRisk_WhenBulkQueued_ThenBulkHeldUntilRiskPasses() throws Exception {
+        // one thread and a 20 ms objective, at risk past 10 ms
+        scheduler = new PriorityScheduler(1, 20, TimeUnit.MILLISECONDS);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(Priority.NOTIFICATION, () -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        started.await();
+
+        // an interactive task waits behind the notification for longer than half the objective
+        Future<String> interactive = scheduler.submit(Priority.INTERACTIVE, () -> "done");
+        Future<String> bulk = scheduler.submit(Priority.BULK, () -> "done");
+        Thread.sleep(15);
+        Assertions.assertTrue(scheduler.isInteractiveAtRisk());
+        release.countDown();
+
+        // the interactive task runs, while the slow latency it measured keeps the bulk task held back
+        Assertions.assertEquals("done", interactive.get(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        Assertions.assertFalse(bulk.isDone());
+        Assertions.assertTrue(scheduler.getPreemptions() >= 1);
+
+        // without further interactive work, the risk passes and the bulk task runs
+        Assertions.assertEquals("done", bulk.get(5, TimeUnit.SECONDS));
+        Assertions.assertFalse(scheduler.isInteractiveAtRisk());
+    }
+
+    @Test
+    void GivenBulkDatabaseLimit_WhenBulkTasksCallDatabase_ThenCallsLimited() throws Exception {
+        // four threads for bulk work, but a single database call at a time
+        scheduler = new PriorityScheduler(4, 1, TimeUnit.HOURS, new Policy(8, 4, 4, 4), new Policy(2, 4, 4, 4), new Policy(1, 4, 1, 1));
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        DatabaseService slow = new InMemoryDatabaseService() {
+            @Override
+            public Book getBookByISBN(String ISBN) {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                return super.getBookByISBN(ISBN);
+            }
+        };
+        DatabaseService database = new PrioritizedDatabaseService(slow, scheduler);
+
+        List<Future<Book>> lookups = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            lookups.add(scheduler.submit(Priority.BULK, () -> database.getBookByISBN(ISBN)));
+        }
+        for (Future<Book> lookup : lookups) {
+            lookup.get(5, TimeUnit.SECONDS);
+        }
+
+        // the bulk class never had more than one call in flight, while calls from outside the scheduler are not limited
+        Assertions.assertEquals(1, maxInFlight.get());
+        Assertions.assertNull(database.getBookByISBN(ISBN));
+    }
+
+    @Test
+    void GivenBusyTaskCancelled_WhenNextTasksSubmitted_ThenWorkerRunsThemUninterrupted() throws Exception {
+        // a single thread, busy with a task which does not respond to interrupts
+        scheduler = new PriorityScheduler(1, 1, TimeUnit.HOURS);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean release = new AtomicBoolean();
+        Future<Boolean> busy = scheduler.submit(Priority.BULK, () -> {
+            started.countDown();
+            while (!release.get()) {
+                Thread.yield();
+            }
+            return true;
+        });
+        started.await();
+        Assertions.assertTrue(busy.cancel(true));
+        release.set(true);
+        while (scheduler.getCompleted(Priority.BULK) == 0) {
+            Thread.sleep(1);
+        }
+
+        // the cancellation's interrupt neither stops the worker nor reaches the tasks after it
+        Assertions.assertFalse(scheduler.submit(Priority.INTERACTIVE, () -> Thread.currentThread().isInterrupted()).get(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        Assertions.assertFalse(scheduler.submit(Priority.BULK, () -> Thread.currentThread().isInterrupted()).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void GivenScheduledLibrary_WhenImportAndBorrow_ThenLibraryBehaviourKept() throws Exception {
+        scheduler = new PriorityScheduler(2, 1, TimeUnit.SECONDS);
+        InMemoryDatabaseService store = new InMemoryDatabaseService();
+        Library library = new Library(new PrioritizedDatabaseService(store, scheduler), reviewService);
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+        ScheduledLibrary scheduled = new ScheduledLibrary(library, scheduler);
+
+        // the import runs as bulk work and reports the number of books added
+        Future<Integer> imported = scheduled.importBooks(Arrays.asList(
+                new Book(ISBN, "Mocked title", "Mocked author"), new Book(OTHER_ISBN, "Other title", "Mocked author")));
+        Assertions.assertEquals(2, (int) imported.get(5, TimeUnit.SECONDS));
+
+        // interactive operations complete before returning, and rethrow the library's exceptions
+        scheduled.borrowBook(ISBN, USER_ID);
+        Assertions.assertTrue(store.getBookByISBN(ISBN).isBorrowed());
+        Assertions.assertThrows(BookNotFoundException.class, () -> scheduled.borrowBook("978-3-16-148410-0", USER_ID));
+        scheduled.returnBook(ISBN, USER_ID);
+        Assertions.assertFalse(store.getBookByISBN(ISBN).isBorrowed());
+        Assertions.assertEquals(3, scheduler.getCompleted(Priority.INTERACTIVE));
+    }
+}
@@ -0,0 +1,167 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.admission.AimdConcurrencyLimiter;
+import ac.il.bgu.qa.admission.RateLimitedLibrary;
+import ac.il.bgu.qa.admission.TokenBucketRateLimiter;
+import ac.il.bgu.qa.admission.TokenBucketRateLimiter.Operation;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.concurrent.TimeUnit;
+
+public class TestRateLimiting {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String USER_ID = "123456789012";
+    private static final String OTHER_USER_ID = "210987654321";
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    // The time of the fake clock, in nanoseconds.
+    private long now;
+    private TokenBucketRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUpObjects() {
+        // a rate limiter on a fake clock, letting each user borrow once a second with bursts of three
+        MockitoAnnotations.initMocks(this);
+        now = 1_000 * SECOND;
+        rateLimiter = new TokenBucketRateLimiter(() -> now);
+        rateLimiter.setLimit(Operation.BORROW_BOOK, 1, 3);
+    }
+
+    @Test
+    void GivenFullBucket_WhenBurst_ThenBurstAdmittedAndRestRejected() {
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(rateLimiter.tryAcquire(USER_ID, Operation.BORROW_BOOK));
+        }
+        Assertions.assertFalse(rateLimiter.tryAcquire(USER_ID, Operation.BORROW_BOOK));
+        // operations without a limit are always admitted
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertTrue(rateLimiter.tryAcquire(USER_ID, Operation.GET_BOOK));
+        }
+    }
+
+    @Test
+    void GivenEmptyBucket_WhenTimePasses_ThenRefilledAtRateUpToBurst() {
+        drain(USER_ID);
+
+        // a permit a second comes back
+        now += SECOND - MILLISECOND;
+        Assertions.assertFalse(rateLimiter.tryAcquire(USER_ID, Operation.BORROW_BOOK));
+        now += MILLISECOND;
+        Assertions.assertTrue(rateLimiter.tryAcquire(USER_ID, Operation.BORROW_BOOK));
+        Assertions.assertFalse(rateLimiter.tryAcquire(USER_ID, Operation.BORROW_BOOK));
+
+        // however long the user waits, the bucket holds no more than the burst
+        now += 60 * SECOND;
+        drain(USER_ID);
+    }
+
+    @Test
+    void GivenUserOverRate_WhenOtherUserAcquires_ThenOtherUserAdmitted() {
+        drain(USER_ID);
+
+        drain(OTHER_USER_ID);
+        Assertions.assertFalse(rateLimiter.tryAcquire(USER_ID, Operation.BORROW_BOOK));
+    }
+
+    @Test
+    void GivenIdleBuckets_WhenEvictIdle_ThenOnlyRefilledBucketsRemoved() {
+        drain(USER_ID);
+        now += 2 * SECOND;
+        rateLimiter.tryAcquire(OTHER_USER_ID, Operation.BORROW_BOOK);
+        Assertions.assertEquals(0, rateLimiter.evictIdle());
+
+        // both buckets refill completely, and evicted buckets are recreated full
+        now += 3 * SECOND;
+        Assertions.assertEquals(2, rateLimiter.evictIdle());
+        drain(USER_ID);
+    }
+
+    @Test
+    void GivenLimitRemoved_WhenAcquire_ThenAlwaysAdmitted() {
+        drain(USER_ID);
+        rateLimiter.removeLimit(Operation.BORROW_BOOK);
+
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertTrue(rateLimiter.tryAcquire(USER_ID, Operation.BORROW_BOOK));
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> rateLimiter.setLimit(Operation.BORROW_BOOK, 0, 1));
+    }
+
+    @Test
+    void GivenUserOverRate_WhenTryBorrowBook_ThenRejectedWithoutReachingLibrary() {
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService();
+        Library library = new Library(databaseService, reviewService);
+        library.addBook(new Book(ISBN, "Mocked title", "Mocked author", 10));
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+        RateLimitedLibrary limited = new RateLimitedLibrary(library, rateLimiter);
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(limited.tryBorrowBook(ISBN, USER_ID));
+        }
+        Assertions.assertFalse(limited.tryBorrowBook(ISBN, USER_ID));
+        Assertions.assertEquals(7, databaseService.getBookByISBN(ISBN).getAvailableCopies());
+        Assertions.assertEquals(1, limited.getRejected());
+        // admitted calls throw like the library does
+        Assertions.assertTrue(limited.tryAddBook(USER_ID, new Book("978-0-201-63361-0", "Mocked title", "Mocked author")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> limited.tryAddBook(USER_ID, null));
+    }
+
+    @Test
+    void GivenLimitReached_WhenTryAcquire_ThenRejectedUntilReleased() {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(2, 1, 10, 10 * MILLISECOND, 0.5);
+        Assertions.assertTrue(limiter.tryAcquire());
+        Assertions.assertTrue(limiter.tryAcquire());
+        Assertions.assertFalse(limiter.tryAcquire());
+        Assertions.assertEquals(2, limiter.getInFlight());
+        Assertions.assertEquals(1, limiter.getRejected());
+
+        limiter.release(MILLISECOND, true);
+        Assertions.assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void GivenFastSuccessfulCalls_WhenReleased_ThenLimitGrowsAboutOnePerRoundUpToMax() {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(2, 1, 4, 10 * MILLISECOND, 0.5);
+        // each success adds 1 / limit, so two then three calls raise the limit by one
+        completeCalls(limiter, 2, MILLISECOND, true);
+        Assertions.assertEquals(2, limiter.getLimit());
+        completeCalls(limiter, 1, MILLISECOND, true);
+        Assertions.assertEquals(3, limiter.getLimit());
+        completeCalls(limiter, 100, MILLISECOND, true);
+        Assertions.assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void GivenFailedOrSlowCalls_WhenReleased_ThenLimitHalvedDownToMin() {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(8, 2, 10, 10 * MILLISECOND, 0.5);
+        completeCalls(limiter, 1, MILLISECOND, false);
+        Assertions.assertEquals(4, limiter.getLimit());
+        // a successful call over the latency target counts as overload as well
+        completeCalls(limiter, 1, 20 * MILLISECOND, true);
+        Assertions.assertEquals(2, limiter.getLimit());
+        completeCalls(limiter, 5, MILLISECOND, false);
+        Assertions.assertEquals(2, limiter.getLimit());
+    }
+
+    // Takes the whole burst of a user, checking the call after it is rejected.
+    private void drain(String userId) {
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(rateLimiter.tryAcquire(userId, Operation.BORROW_BOOK));
+        }
+        Assertions.assertFalse(rateLimiter.tryAcquire(userId, Operation.BORROW_BOOK));
+    }
+
+    private static void completeCalls(AimdConcurrencyLimiter limiter, int calls, long latencyNanos, boolean succeeded) {
+        for (int i = 0; i < calls; i++) {
+            Assertions.assertTrue(limiter.tryAcquire());
+            limiter.release(latencyNanos, succeeded);
+        }
+    }
+}
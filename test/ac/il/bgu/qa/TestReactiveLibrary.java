@@ -0,0 +1,315 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.reactive.*;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestReactiveLibrary {
+    private static final Executor DIRECT = Runnable::run;
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String USER_ID = "123456789012";
+    private static final String OTHER_USER_ID = "210987654321";
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private InMemoryDatabaseService databaseService;
+    private Library library;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up a library with ten single-copy books and two users
+        MockitoAnnotations.initMocks(this);
+        databaseService = Mockito.spy(new InMemoryDatabaseService());
+        library = new Library(databaseService, reviewService);
+        library.addBook(new Book(ISBN, "Mocked title", "Mocked author"));
+        for (int i = 0; i < 9; i++) {
+            library.addBook(new Book(isbn(i), "Mocked title", "Mocked author"));
+        }
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+        library.registerUser(new User("Mocked name", OTHER_USER_ID, notificationService));
+    }
+
+    @Test
+    void GivenCommandStream_WhenExecuted_ThenResultsInCommandOrder() {
+        Mockito.when(reviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Great"));
+        List<LibraryCommand> commands = Arrays.asList(LibraryCommand.borrow(ISBN, USER_ID),
+                LibraryCommand.borrow(ISBN, OTHER_USER_ID), LibraryCommand.notify(ISBN, USER_ID));
+        ReactiveLibrary reactive = new ReactiveLibrary(library, DIRECT, 1);
+        RecordingSubscriber<CommandResult> subscriber = new RecordingSubscriber<>();
+
+        reactive.execute(new IterablePublisher<>(commands, DIRECT)).subscribe(subscriber);
+        subscriber.request(Long.MAX_VALUE);
+
+        // the failed borrow is reported by its result, and the stream completes
+        Assertions.assertTrue(subscriber.completed);
+        Assertions.assertEquals(3, subscriber.items.size());
+        Assertions.assertSame(commands.get(1), subscriber.items.get(1).getCommand());
+        Assertions.assertTrue(subscriber.items.get(0).isSuccess());
+        Assertions.assertTrue(subscriber.items.get(1).getFailure() instanceof BookAlreadyBorrowedException);
+        Assertions.assertTrue(subscriber.items.get(2).isSuccess());
+        Mockito.verify(notificationService).notifyUser(Mockito.eq(USER_ID), Mockito.anyString());
+        Assertions.assertNull(subscriber.violation);
+    }
+
+    @Test
+    void GivenSlowSubscriber_WhenResultsRequested_ThenCommandsPulledOnlyOnDemand() {
+        CountingIterable<LibraryCommand> commands = new CountingIterable<>(borrowsOfEveryBook());
+        ReactiveLibrary reactive = new ReactiveLibrary(library, DIRECT, 4);
+        RecordingSubscriber<CommandResult> subscriber = new RecordingSubscriber<>();
+        reactive.execute(new IterablePublisher<>(commands, DIRECT)).subscribe(subscriber);
+
+        // nothing is read or borrowed before results are requested
+        Assertions.assertEquals(0, commands.read.get());
+        subscriber.request(2);
+        Assertions.assertEquals(2, commands.read.get());
+        Assertions.assertEquals(2, subscriber.items.size());
+        subscriber.request(3);
+        Assertions.assertEquals(5, commands.read.get());
+        Mockito.verify(databaseService, Mockito.times(5)).borrowBook(Mockito.anyString(), Mockito.eq(USER_ID));
+
+        // cancelling stops the stream and the command source
+        subscriber.subscription.cancel();
+        subscriber.request(5);
+        Assertions.assertEquals(5, commands.read.get());
+        Assertions.assertEquals(5, subscriber.items.size());
+        Assertions.assertFalse(subscriber.completed);
+        Assertions.assertNull(subscriber.violation);
+    }
+
+    @Test
+    void GivenNonPositiveRequest_WhenRequested_ThenIllegalArgumentExceptionAndSourceCancelled() {
+        CountingIterable<LibraryCommand> commands = new CountingIterable<>(borrowsOfEveryBook());
+        RecordingSubscriber<CommandResult> results = new RecordingSubscriber<>();
+        new ReactiveLibrary(library, DIRECT, 4).execute(new IterablePublisher<>(commands, DIRECT)).subscribe(results);
+        RecordingSubscriber<Book> books = new RecordingSubscriber<>();
+        new IterablePublisher<>(databaseService.getBooks(), DIRECT).subscribe(books);
+
+        results.request(0);
+        books.request(-1);
+
+        Assertions.assertTrue(results.error instanceof IllegalArgumentException);
+        Assertions.assertTrue(books.error instanceof IllegalArgumentException);
+        // the command source was cancelled before any command was read
+        results.request(1);
+        Assertions.assertEquals(0, commands.read.get());
+        Assertions.assertNull(results.violation);
+    }
+
+    @Test
+    void GivenSubscribedProcessor_WhenSecondSubscriber_ThenRejected() {
+        Flow.Publisher<CommandResult> results = new ReactiveLibrary(library, DIRECT, 1)
+                .execute(new IterablePublisher<>(borrowsOfEveryBook(), DIRECT));
+        results.subscribe(new RecordingSubscriber<>());
+        RecordingSubscriber<CommandResult> second = new RecordingSubscriber<>();
+
+        results.subscribe(second);
+
+        Assertions.assertNotNull(second.subscription);
+        Assertions.assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    @Test
+    void GivenSubscriberBehind_WhenNotifyUser_ThenNotificationExceptionUntilRequested() {
+        PublishingNotificationService notifications = new PublishingNotificationService(2);
+        // without a subscriber, notifications are refused
+        Assertions.assertThrows(NotificationException.class, () -> notifications.notifyUser(USER_ID, "first"));
+
+        RecordingSubscriber<Notification> subscriber = new RecordingSubscriber<>();
+        notifications.subscribe(subscriber);
+        notifications.notifyUser(USER_ID, "second");
+        notifications.notifyUser(USER_ID, "third");
+        // the buffer is full until the subscriber requests
+        Assertions.assertThrows(NotificationException.class, () -> notifications.notifyUser(USER_ID, "fourth"));
+        Assertions.assertEquals(2, notifications.getRefused());
+
+        subscriber.request(1);
+        notifications.notifyUser(USER_ID, "fifth");
+        Assertions.assertEquals(1, subscriber.items.size());
+        Assertions.assertEquals("second", subscriber.items.get(0).getMessage());
+
+        // closing completes the stream once the buffered notifications are delivered
+        notifications.close();
+        Assertions.assertFalse(subscriber.completed);
+        subscriber.request(2);
+        Assertions.assertEquals("fifth", subscriber.items.get(2).getMessage());
+        Assertions.assertTrue(subscriber.completed);
+        Assertions.assertNull(subscriber.violation);
+    }
+
+    @Test
+    void GivenManyReviews_WhenStreamingReviewService_ThenOnlyNeededReviewsStreamed() {
+        List<String> all = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            all.add("Review " + i);
+        }
+        CountingIterable<String> reviews = new CountingIterable<>(all);
+        StreamingReviewService service = new StreamingReviewService(ISBN -> new IterablePublisher<>(reviews, DIRECT), 3, 1, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(Arrays.asList("Review 0", "Review 1", "Review 2"), service.getReviewsForBook(ISBN));
+        Assertions.assertEquals(3, reviews.read.get());
+    }
+
+    @Test
+    void GivenThreadPool_WhenSubscriberRequestsOneAtATime_ThenEveryResultInOrder() throws Exception {
+        // each command borrows or returns a different book, so commands in flight together do not conflict
+        List<LibraryCommand> commands = new ArrayList<>();
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 9; i++) {
+                commands.add(round % 2 == 0 ? LibraryCommand.borrow(isbn(i), USER_ID) : LibraryCommand.returnBook(isbn(i), USER_ID));
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            RecordingSubscriber<CommandResult> subscriber = new RecordingSubscriber<>();
+            subscriber.requestOnNext = true;
+            new ReactiveLibrary(library, pool, 8).execute(new IterablePublisher<>(commands, pool)).subscribe(subscriber);
+
+            subscriber.request(1);
+
+            Assertions.assertTrue(subscriber.terminated.await(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(subscriber.completed);
+            Assertions.assertNull(subscriber.violation);
+            Assertions.assertEquals(commands.size(), subscriber.items.size());
+            for (int i = 0; i < commands.size(); i++) {
+                Assertions.assertSame(commands.get(i), subscriber.items.get(i).getCommand());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private List<LibraryCommand> borrowsOfEveryBook() {
+        List<LibraryCommand> commands = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            commands.add(LibraryCommand.borrow(isbn(i), USER_ID));
+        }
+        return commands;
+    }
+
+    // returns a valid ISBN-13 with the given serial number
+    private static String isbn(int serial) {
+        String digits = "978" + String.format("%09d", serial);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    // an iterable counting the items read from its iterators
+    private static final class CountingIterable<T> implements Iterable<T> {
+        private final List<T> items;
+        private final AtomicInteger read = new AtomicInteger();
+
+        private CountingIterable(List<T> items) {
+            this.items = items;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            Iterator<T> iterator = items.iterator();
+            return new Iterator<T>() {
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                public T next() {
+                    read.incrementAndGet();
+                    return iterator.next();
+                }
+            };
+        }
+    }
+
+    // a subscriber recording its signals and the first violation of the reactive streams rules it saw
+    private static final class RecordingSubscriber<T> implements Flow.Subscriber<T> {
+        private final List<T> items = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch terminated = new CountDownLatch(1);
+        private final AtomicBoolean inSignal = new AtomicBoolean();
+        private volatile Flow.Subscription subscription;
+        private volatile Throwable error;
+        private volatile boolean completed;
+        private volatile String violation;
+        private volatile boolean requestOnNext;
+        private long requested;
+
+        void request(long n) {
+            synchronized (this) {
+                requested = n == Long.MAX_VALUE ? n : requested + n;
+            }
+            subscription.request(n);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            enter("onSubscribe");
+            if (this.subscription != null) {
+                violation = "onSubscribe called twice";
+            }
+            this.subscription = subscription;
+            exit();
+        }
+
+        @Override
+        public void onNext(T item) {
+            enter("onNext");
+            synchronized (this) {
+                if (requested != Long.MAX_VALUE && items.size() >= requested) {
+                    violation = "onNext beyond the requested items";
+                }
+            }
+            items.add(item);
+            exit();
+            if (requestOnNext) {
+                request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            enter("onError");
+            error = throwable;
+            exit();
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            enter("onComplete");
+            completed = true;
+            exit();
+            terminated.countDown();
+        }
+
+        private void enter(String signal) {
+            if (!inSignal.compareAndSet(false, true)) {
+                violation = signal + " called concurrently";
+            } else if (!signal.equals("onSubscribe") && subscription == null) {
+                violation = signal + " called before onSubscribe";
+            } else if (terminated.getCount() == 0) {
+                violation = signal + " called after a terminal signal";
+            }
+        }
+
+        private void exit() {
+            inSignal.set(false);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.replication.ChangeLog;
+import ac.il.bgu.qa.replication.PrimaryDatabaseService;
+import ac.il.bgu.qa.replication.ReplicaDatabaseService;
+import ac.il.bgu.qa.replication.ReplicaReadRouter;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TestReadReplicas {
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String USER_ID = "123456789012";
+    private static final String OTHER_USER_ID = "210987654321";
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private VirtualClock clock;
+    private InMemoryDatabaseService primaryStore;
+    private PrimaryDatabaseService primary;
+    private ReplicaDatabaseService replica;
+    private Library library;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up a library over a primary database with one replica, which has not applied anything yet
+        MockitoAnnotations.initMocks(this);
+        Mockito.when(reviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Great"));
+        clock = new VirtualClock(0);
+        ChangeLog log = new ChangeLog(clock);
+        primaryStore = new InMemoryDatabaseService();
+        primary = new PrimaryDatabaseService(primaryStore, log);
+        replica = new ReplicaDatabaseService(log, clock);
+        library = new Library(primary, reviewService);
+        library.addBook(new Book(ISBN, "Mocked title", "Mocked author", 2));
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+        library.registerUser(new User("Mocked name", OTHER_USER_ID, notificationService));
+    }
+
+    @Test
+    void GivenReplicaCaughtUp_WhenGetBookByISBN_ThenReadFromReplica() {
+        ReplicaReadRouter router = new ReplicaReadRouter(primary, Collections.singletonList(replica), 0, false);
+        library.setReadRouter(router);
+        replica.catchUp();
+
+        Book book = library.getBookByISBN(ISBN, USER_ID);
+
+        // the book and the user were read from the replica, which keeps copies of its own
+        Assertions.assertEquals(0, router.getPrimaryReads());
+        Assertions.assertTrue(router.getReplicaReads() >= 2);
+        Assertions.assertNotSame(primaryStore.getBookByISBN(ISBN), book);
+        Assertions.assertEquals("Mocked title", book.getTitle());
+        Mockito.verify(notificationService).notifyUser(Mockito.eq(USER_ID), Mockito.anyString());
+    }
+
+    @Test
+    void GivenStaleReplica_WhenStalenessBoundExceeded_ThenReadFromPrimary() {
+        ReplicaReadRouter router = new ReplicaReadRouter(primary, Collections.singletonList(replica), 50, false);
+
+        // the replica has missed the writes for 100 ms, longer than the bound
+        clock.advance(100);
+        Assertions.assertEquals(100, replica.getStalenessMillis());
+        Assertions.assertSame(primary, router.forRead(USER_ID));
+
+        // once caught up, it serves reads again, until it misses writes for too long
+        Assertions.assertEquals(3, replica.catchUp());
+        Assertions.assertSame(replica, router.forRead(USER_ID));
+        library.borrowBook(ISBN, USER_ID);
+        clock.advance(30);
+        Assertions.assertSame(replica, router.forRead(USER_ID));
+        clock.advance(30);
+        Assertions.assertSame(primary, router.forRead(USER_ID));
+    }
+
+    @Test
+    void GivenUnshippedBorrow_WhenReadYourWrites_ThenOnlyBorrowerReadsFromPrimary() {
+        ReplicaReadRouter router = new ReplicaReadRouter(primary, Collections.singletonList(replica), Long.MAX_VALUE, true);
+        library.setReadRouter(router);
+        replica.catchUp();
+
+        library.borrowBook(ISBN, USER_ID);
+
+        // the borrower must see the borrow, which the replica has not applied yet; other users need not
+        Assertions.assertSame(primary, router.forRead(USER_ID));
+        Assertions.assertSame(replica, router.forRead(OTHER_USER_ID));
+        Assertions.assertEquals(2, replica.getBookByISBN(ISBN).getAvailableCopies());
+
+        replica.catchUp();
+        Assertions.assertSame(replica, router.forRead(USER_ID));
+        Assertions.assertEquals(1, replica.getBookByISBN(ISBN).getAvailableCopies());
+    }
+
+    @Test
+    void GivenBorrowsAndReturns_WhenReplicaCatchesUp_ThenReplicaMatchesPrimaryAndLogDrained() {
+        library.borrowBook(ISBN, USER_ID);
+        library.borrowBook(ISBN, OTHER_USER_ID);
+        library.returnBook(ISBN);
+        library.borrowBook(ISBN, USER_ID);
+        library.returnBook(ISBN, OTHER_USER_ID);
+
+        Assertions.assertEquals(8, replica.catchUp());
+
+        // the replica holds the same copies, versions and loans as the primary
+        Book expected = primaryStore.getBookByISBN(ISBN);
+        Book actual = replica.getBookByISBN(ISBN);
+        Assertions.assertEquals(expected.getAvailableCopies(), actual.getAvailableCopies());
+        Assertions.assertEquals(expected.getVersion(), actual.getVersion());
+        Assertions.assertEquals(Arrays.asList(USER_ID), replica.getHolders(ISBN));
+        Assertions.assertEquals(primaryStore.getHolders(ISBN), replica.getHolders(ISBN));
+        Assertions.assertEquals(8, replica.getAppliedSequence());
+        Assertions.assertEquals(0, primary.getChangeLog().size());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> replica.borrowBook(ISBN, USER_ID));
+    }
+
+    @Test
+    void GivenLogDiscardedChanges_WhenReplicaAdded_ThenReplicaSeededWithEveryWrite() {
+        library.borrowBook(ISBN, USER_ID);
+        // the only replica reads every change, so the log discards them
+        Assertions.assertEquals(4, replica.catchUp());
+        Assertions.assertEquals(0, primary.getChangeLog().size());
+
+        // a replica added later starts from the discarded writes, then applies the retained ones
+        ReplicaDatabaseService added = new ReplicaDatabaseService(primary.getChangeLog(), clock);
+        library.borrowBook(ISBN, OTHER_USER_ID);
+        library.returnBook(ISBN, USER_ID);
+        Assertions.assertEquals(2, added.catchUp());
+        Assertions.assertEquals(0, added.getStalenessMillis());
+        Assertions.assertEquals(1, added.getBookByISBN(ISBN).getAvailableCopies());
+        Assertions.assertEquals(primaryStore.getBookByISBN(ISBN).getVersion(), added.getBookByISBN(ISBN).getVersion());
+        Assertions.assertEquals(Arrays.asList(OTHER_USER_ID), added.getHolders(ISBN));
+
+        // reads routed to it find the existing book and users
+        library.setReadRouter(new ReplicaReadRouter(primary, Collections.singletonList(added), 0, false));
+        Assertions.assertEquals("Mocked title", library.getBookByISBN(ISBN, USER_ID).getTitle());
+        Assertions.assertNotNull(added.getUserById(OTHER_USER_ID));
+    }
+}
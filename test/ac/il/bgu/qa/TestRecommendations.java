@@ -0,0 +1,95 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.search.CoBorrowIndex;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TestRecommendations {
+    private static final String DUNE = "978-0-441-17271-9";
+    private static final String FOUNDATION = "978-0-553-29335-7";
+    private static final String NEUROMANCER = "978-0-441-56959-5";
+    private static final long HOUR = 3_600_000L;
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private Library library;
+    private CoBorrowIndex index;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up a library with three books, three users and a co-borrow index pairing each borrow with the last two
+        MockitoAnnotations.initMocks(this);
+        library = new Library(new InMemoryDatabaseService(), reviewService);
+        index = new CoBorrowIndex(2, 4, 8, HOUR);
+        library.setCoBorrowIndex(index);
+        for (String ISBN : Arrays.asList(DUNE, FOUNDATION, NEUROMANCER)) {
+            library.addBook(new Book(ISBN, "Mocked title", "Mocked author", 10));
+        }
+        for (int i = 1; i <= 3; i++) {
+            library.registerUser(new User("Mocked name", "00000000000" + i, notificationService));
+        }
+    }
+
+    @Test
+    void GivenNoCoBorrowIndex_WhenRecommend_ThenIllegalStateException() {
+        library.setCoBorrowIndex(null);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> library.recommend(DUNE, 3));
+    }
+
+    @Test
+    void GivenBorrowsBySameUsers_WhenRecommend_ThenMostCoBorrowedFirst() {
+        // two users borrowed dune with foundation, one of them also with neuromancer
+        library.borrowBook(DUNE, "000000000001");
+        library.borrowBook(FOUNDATION, "000000000001");
+        library.borrowBook(FOUNDATION, "000000000002");
+        library.borrowBook(DUNE, "000000000002");
+        library.borrowBook(NEUROMANCER, "000000000002");
+
+        Assertions.assertEquals(Arrays.asList(FOUNDATION, NEUROMANCER), library.recommend(DUNE, 3));
+        Assertions.assertEquals(Collections.singletonList(FOUNDATION), library.recommend(DUNE, 1));
+        // recommendations keep the ISBNs as borrowed, so they can be looked up in the catalog
+        Assertions.assertEquals("Mocked title", library.getBookByISBN(library.recommend(DUNE, 1).get(0), "000000000003").getTitle());
+        // a book nobody borrowed has no recommendations
+        Assertions.assertEquals(Collections.emptyList(), library.recommend("978-0-13-149505-0", 3));
+    }
+
+    @Test
+    void GivenOldCoBorrows_WhenNewerCoBorrowsArrive_ThenNewerOutrankOlder() {
+        // three old co-borrows of dune with foundation, then two recent ones with neuromancer
+        long now = 0;
+        for (int i = 0; i < 3; i++) {
+            index.recordBorrow(DUNE, "a" + i, now);
+            index.recordBorrow(FOUNDATION, "a" + i, now);
+        }
+        now += 2 * HOUR;
+        for (int i = 0; i < 2; i++) {
+            index.recordBorrow(DUNE, "b" + i, now);
+            index.recordBorrow(NEUROMANCER, "b" + i, now);
+        }
+
+        // the old co-borrows decayed to a quarter, below the recent ones
+        Assertions.assertEquals(Arrays.asList(NEUROMANCER, FOUNDATION), index.recommend(DUNE, 2));
+    }
+
+    @Test
+    void GivenManyNeighbors_WhenRecordBorrow_ThenNeighborsBoundedAndTopKept() {
+        // every user borrows dune, then a book of their own; user 0's book is co-borrowed three times
+        for (int i = 0; i < 100; i++) {
+            index.recordBorrow(DUNE, "user" + i, 0);
+            index.recordBorrow(String.format("978%010d", i), "user" + i, 0);
+        }
+        index.recordBorrow(DUNE, "user0", 0);
+        index.recordBorrow(String.format("978%010d", 0), "user0", 0);
+
+        // dune keeps at most 8 neighbours, and the most co-borrowed one survives the pruning
+        Assertions.assertTrue(index.getEntries() <= 100 + 8);
+        Assertions.assertEquals(String.format("978%010d", 0), index.recommend(DUNE, 1).get(0));
+    }
+}
@@ -0,0 +1,101 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.search.CatalogSearchIndex;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TestSearch {
+    private static final String PRAGMATIC = "978-0-201-61622-4";
+    private static final String PEARLS = "978-0-201-65788-3";
+    private static final String CODERS = "978-1-4302-1948-4";
+    private static final String CLEAN_CODE = "978-0-13-235088-4";
+    private static final String USER_ID = "123456789012";
+    private static final String OTHER_USER_ID = "210987654321";
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private CatalogSearchIndex index;
+    private Library library;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up a library indexing four books, one of them with two copies, and two users
+        MockitoAnnotations.initMocks(this);
+        index = new CatalogSearchIndex();
+        library = new Library(new InMemoryDatabaseService(), reviewService);
+        library.setSearchIndex(index);
+        library.addBook(new Book(PRAGMATIC, "The Pragmatic Programmer", "Andrew Hunt"));
+        library.addBook(new Book(PEARLS, "Programming Pearls", "Jon Bentley", 2));
+        library.addBook(new Book(CODERS, "Coders at Work", "Peter Seibel"));
+        library.addBook(new Book(CLEAN_CODE, "Clean Code", "Robert Martin"));
+        library.registerUser(new User("Mocked name", USER_ID, notificationService));
+        library.registerUser(new User("Mocked name", OTHER_USER_ID, notificationService));
+    }
+
+    @Test
+    void GivenNoSearchIndex_WhenSearchBooks_ThenIllegalStateException() {
+        library.setSearchIndex(null);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> library.searchBooks("code", 10, false));
+    }
+
+    @Test
+    void GivenIncompleteLastWord_WhenSearchBooks_ThenPrefixMatches() {
+        Assertions.assertEquals(Arrays.asList(PRAGMATIC, PEARLS), library.searchBooks("prog", 10, false));
+        // earlier words must match whole words
+        Assertions.assertEquals(Collections.singletonList(PRAGMATIC), library.searchBooks("pragmatic prog", 10, false));
+        Assertions.assertEquals(Collections.emptyList(), library.searchBooks("prag prog", 10, false));
+        // authors are searched as well, regardless of case
+        Assertions.assertEquals(Collections.singletonList(PEARLS), library.searchBooks("BENTLEY", 10, false));
+    }
+
+    @Test
+    void GivenWholeAndPrefixMatches_WhenSearchBooks_ThenWholeWordsFirstUpToLimit() {
+        // coders was added first, but only clean code has the whole word
+        Assertions.assertEquals(Arrays.asList(CLEAN_CODE, CODERS), library.searchBooks("code", 10, false));
+        Assertions.assertEquals(Collections.singletonList(CLEAN_CODE), library.searchBooks("code", 1, false));
+        Assertions.assertEquals(Collections.emptyList(), library.searchBooks("code", 0, false));
+        Assertions.assertEquals(Collections.emptyList(), library.searchBooks(" ,. ", 10, false));
+    }
+
+    @Test
+    void GivenTextWithDiacritics_WhenSearch_ThenMatchedWithoutThem() {
+        index.addBook(new Book("978-0-465-02656-2", "G\u00f6del, Escher, Bach", "Douglas Hofstadter"));
+
+        Assertions.assertEquals(Collections.singletonList("978-0-465-02656-2"), index.search("godel esch", 10, false));
+        Assertions.assertEquals(Collections.singletonList("978-0-465-02656-2"), index.search("G\u00d6DEL", 10, false));
+        // adding the same book again does not index it twice
+        index.addBook(new Book("978-0-465-02656-2", "G\u00f6del, Escher, Bach", "Douglas Hofstadter"));
+        Assertions.assertEquals(5, index.size());
+    }
+
+    @Test
+    void GivenBorrowedBook_WhenSearchAvailableOnly_ThenLeftOutUntilReturned() {
+        library.borrowBook(PRAGMATIC, USER_ID);
+
+        Assertions.assertEquals(Collections.singletonList(PEARLS), library.searchBooks("prog", 10, true));
+        Assertions.assertEquals(Arrays.asList(PRAGMATIC, PEARLS), library.searchBooks("prog", 10, false));
+
+        library.returnBook(PRAGMATIC, USER_ID);
+        Assertions.assertEquals(Arrays.asList(PRAGMATIC, PEARLS), library.searchBooks("prog", 10, true));
+    }
+
+    @Test
+    void GivenBookWithTwoCopies_WhenBorrowed_ThenAvailableUntilLastCopyOut() {
+        library.borrowBook(PEARLS, USER_ID);
+        Assertions.assertEquals(Collections.singletonList(PEARLS), library.searchBooks("pearls", 10, true));
+
+        library.borrowBook(PEARLS, OTHER_USER_ID);
+        Assertions.assertEquals(Collections.emptyList(), library.searchBooks("pearls", 10, true));
+
+        // returning one copy makes the book available again
+        library.returnBook(PEARLS, USER_ID);
+        Assertions.assertEquals(Collections.singletonList(PEARLS), library.searchBooks("pearls", 10, true));
+    }
+}
@@ -0,0 +1,242 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.errors.UserNotRegisteredException;
+import ac.il.bgu.qa.server.LibraryClient;
+import ac.il.bgu.qa.server.LibraryServer;
+import ac.il.bgu.qa.server.WireProtocol;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class TestServer {
+    private static final String ISBN = "978-0-13-149505-0";
+    private static final String OTHER_ISBN = "978-0-201-63361-0";
+    private static final String USER_ID = "012345678901";
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private InMemoryDatabaseService databaseService;
+    private LibraryServer server;
+    private InetSocketAddress address;
+    private LibraryClient client;
+
+    @BeforeEach
+    void setUpObjects() throws IOException {
+        // a server on a free local port with a single event loop, and a client connected to it
+        MockitoAnnotations.initMocks(this);
+        Mockito.when(reviewService.getReviewsForBook(Mockito.anyString())).thenReturn(Arrays.asList("Good"));
+        databaseService = new InMemoryDatabaseService();
+        server = new LibraryServer(new Library(databaseService, reviewService), userId -> notificationService, 1);
+        address = server.start(new InetSocketAddress("127.0.0.1", 0));
+        client = new LibraryClient(address);
+    }
+
+    @AfterEach
+    void shutDown() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void GivenIdentifiers_WhenPackedAndUnpacked_ThenDigitsRoundTrip() {
+        Assertions.assertEquals(9780131495050L, WireProtocol.packISBN(ISBN));
+        Assertions.assertEquals("9780131495050", WireProtocol.unpackISBN(WireProtocol.packISBN(ISBN)));
+        // leading zeros survive the round trip
+        Assertions.assertEquals(USER_ID, WireProtocol.unpackUserId(WireProtocol.packUserId(USER_ID)));
+
+        for (String invalid : Arrays.asList("978-0-13-149505", "97801314950501", "978-0-13-14950X-0", "")) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> WireProtocol.packISBN(invalid), invalid);
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> WireProtocol.packISBN(null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> WireProtocol.packUserId("0123-4567890"));
+    }
+
+    @Test
+    void GivenStrings_WhenPutAndGet_ThenRoundTrip() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        WireProtocol.putString(buffer, "Caf\u00e9 \u05e1\u05e4\u05e8");
+        WireProtocol.putString(buffer, null);
+        WireProtocol.putString(buffer, "");
+        buffer.flip();
+
+        Assertions.assertEquals("Caf\u00e9 \u05e1\u05e4\u05e8", WireProtocol.getString(buffer));
+        Assertions.assertEquals("", WireProtocol.getString(buffer));
+        Assertions.assertEquals("", WireProtocol.getString(buffer));
+        Assertions.assertFalse(buffer.hasRemaining());
+
+        char[] tooLong = new char[0x10000];
+        Arrays.fill(tooLong, 'a');
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> WireProtocol.putString(ByteBuffer.allocate(0x20000), new String(tooLong)));
+    }
+
+    @Test
+    void GivenClient_WhenBookAddedBorrowedAndReturned_ThenLibraryUpdated() throws Exception {
+        client.addBook(ISBN, "Mocked title", "Mocked author").get(5, TimeUnit.SECONDS);
+        client.registerUser(USER_ID, "Mocked name").get(5, TimeUnit.SECONDS);
+
+        Book book = client.getBookByISBN(ISBN, USER_ID).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals("9780131495050", book.getISBN());
+        Assertions.assertEquals("Mocked title", book.getTitle());
+        Assertions.assertEquals("Mocked author", book.getAuthor());
+        Assertions.assertFalse(book.isBorrowed());
+
+        client.borrowBook(ISBN, USER_ID).get(5, TimeUnit.SECONDS);
+        Assertions.assertTrue(databaseService.getBookByISBN("9780131495050").isBorrowed());
+        client.returnBook(ISBN).get(5, TimeUnit.SECONDS);
+        Assertions.assertFalse(databaseService.getBookByISBN("9780131495050").isBorrowed());
+        Assertions.assertEquals(0, client.getOutstanding());
+    }
+
+    @Test
+    void GivenFailingRequests_WhenSent_ThenLibraryExceptionsMapped() throws Exception {
+        client.addBook(ISBN, "Mocked title", "Mocked author").get(5, TimeUnit.SECONDS);
+        client.registerUser(USER_ID, "Mocked name").get(5, TimeUnit.SECONDS);
+
+        assertFailsWith(BookNotFoundException.class, client.borrowBook(OTHER_ISBN, USER_ID));
+        assertFailsWith(UserNotRegisteredException.class, client.borrowBook(ISBN, "210987654321"));
+        assertFailsWith(BookNotBorrowedException.class, client.returnBook(ISBN));
+        client.borrowBook(ISBN, USER_ID).get(5, TimeUnit.SECONDS);
+        assertFailsWith(BookAlreadyBorrowedException.class, client.borrowBook(ISBN, USER_ID));
+        // invalid arguments are rejected by the library, or thrown by the client before anything is sent
+        assertFailsWith(IllegalArgumentException.class, client.addBook(OTHER_ISBN, "Mocked title", "1nvalid author"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> client.addBook("978", "Mocked title", "Mocked author"));
+
+        // the connection still serves later requests
+        client.returnBook(ISBN).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void GivenPipelinedRequests_WhenFlushedOnce_ThenEveryResponseMatched() throws Exception {
+        client.registerUser(USER_ID, "Mocked name").get(5, TimeUnit.SECONDS);
+        client.setAutoFlush(false);
+        List<CompletableFuture<Void>> adds = new ArrayList<>();
+        List<CompletableFuture<Book>> gets = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            adds.add(client.addBook(isbn(i), "Title " + i, "Mocked author"));
+            gets.add(client.getBookByISBN(isbn(i), USER_ID));
+        }
+        Assertions.assertEquals(1000, client.getOutstanding());
+        client.flush();
+
+        for (int i = 0; i < 500; i++) {
+            adds.get(i).get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals("Title " + i, gets.get(i).get(5, TimeUnit.SECONDS).getTitle());
+        }
+        Assertions.assertEquals(0, client.getOutstanding());
+    }
+
+    @Test
+    void GivenFramesSplitAndBatched_WhenSentRaw_ThenResponsesInRequestOrder() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            // two frames in one write, the second of them split across two writes
+            ByteBuffer first = frame(WireProtocol.ADD_BOOK, 7, ISBN, "Mocked title", "Mocked author");
+            ByteBuffer second = frame(WireProtocol.RETURN_BOOK, 8, ISBN, null, null);
+            ByteBuffer batch = ByteBuffer.allocate(first.remaining() + 3);
+            batch.put(first).put(second.array(), 0, 3).flip();
+            write(channel, batch);
+            ByteBuffer response = read(channel);
+            Assertions.assertEquals(WireProtocol.OK, response.get());
+            Assertions.assertEquals(7, response.getInt());
+
+            second.position(3);
+            write(channel, second);
+            response = read(channel);
+            Assertions.assertEquals(WireProtocol.BOOK_NOT_BORROWED, response.get());
+            Assertions.assertEquals(8, response.getInt());
+            Assertions.assertEquals("Book wasn't borrowed!", WireProtocol.getString(response));
+
+            // an unknown opcode is an invalid argument, and a truncated payload as well
+            write(channel, frame((byte) 99, 9, null, null, null));
+            Assertions.assertEquals(WireProtocol.INVALID_ARGUMENT, read(channel).get());
+            ByteBuffer truncated = ByteBuffer.allocate(WireProtocol.LENGTH_SIZE + WireProtocol.HEADER_SIZE + 2);
+            truncated.putInt(WireProtocol.HEADER_SIZE + 2).put(WireProtocol.RETURN_BOOK).putInt(10).putShort((short) 0).flip();
+            write(channel, truncated);
+            Assertions.assertEquals(WireProtocol.INVALID_ARGUMENT, read(channel).get());
+        }
+    }
+
+    @Test
+    void GivenMalformedLength_WhenSentRaw_ThenConnectionClosed() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            ByteBuffer malformed = ByteBuffer.allocate(WireProtocol.LENGTH_SIZE);
+            malformed.putInt(WireProtocol.MAX_FRAME_SIZE + 1).flip();
+            write(channel, malformed);
+
+            Assertions.assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+        }
+        // other connections are not affected
+        client.addBook(ISBN, "Mocked title", "Mocked author").join();
+    }
+
+    private static void assertFailsWith(Class<? extends Throwable> type, CompletableFuture<?> future) throws Exception {
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(type, e.getCause().getClass(), e.getCause().toString());
+    }
+
+    // Encodes a request frame with an optional ISBN and two optional strings.
+    private static ByteBuffer frame(byte opcode, int requestId, String ISBN, String first, String second) {
+        ByteBuffer buffer = ByteBuffer.allocate(WireProtocol.MAX_FRAME_SIZE);
+        buffer.position(WireProtocol.LENGTH_SIZE);
+        buffer.put(opcode).putInt(requestId);
+        if (ISBN != null) {
+            buffer.putLong(WireProtocol.packISBN(ISBN));
+        }
+        if (first != null) {
+            WireProtocol.putString(buffer, first);
+            WireProtocol.putString(buffer, second);
+        }
+        buffer.putInt(0, buffer.position() - WireProtocol.LENGTH_SIZE);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void write(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Reads one response frame, returning it after its length.
+    private static ByteBuffer read(SocketChannel channel) throws IOException {
+        ByteBuffer length = readFully(channel, WireProtocol.LENGTH_SIZE);
+        return readFully(channel, length.getInt());
+    }
+
+    private static ByteBuffer readFully(SocketChannel channel, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Connection closed.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Returns a valid ISBN-13 with the given serial number.
+    private static String isbn(int serial) {
+        String digits = "978" + String.format("%09d", serial);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
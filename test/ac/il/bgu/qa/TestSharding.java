@@ -0,0 +1,154 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.services.BookQuery;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.services.ShardedDatabaseService;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.StreamSupport;
+
+public class TestSharding {
+    private static final int SHARDS = 4;
+    private static final int BOOKS = 200;
+    private static final int USERS = 50;
+
+    @Mock
+    private ReviewService reviewService;
+    @Mock
+    private NotificationService notificationService;
+    private ExecutorService executor;
+    private List<InMemoryDatabaseService> shards;
+    private ShardedDatabaseService database;
+    private List<String> ISBNs;
+    private List<String> userIds;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up a library over four shards, holding two-copy books and registered users
+        MockitoAnnotations.initMocks(this);
+        executor = Executors.newFixedThreadPool(2);
+        shards = newShards(SHARDS);
+        database = new ShardedDatabaseService(shards, executor);
+        Library library = new Library(database, reviewService);
+        ISBNs = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            String ISBN = isbn(i);
+            library.addBook(new Book(ISBN, "Mocked title", "Mocked author", 2));
+            ISBNs.add(ISBN);
+        }
+        userIds = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            String userId = String.format("%012d", 100_000_000_000L + i);
+            library.registerUser(new User("Mocked name", userId, notificationService));
+            userIds.add(userId);
+        }
+    }
+
+    @AfterEach
+    void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void GivenBooksOnLoan_WhenShardsDoubled_ThenEveryBookUserAndHolderReachable() {
+        // every book is lent to two users, and every other book got one copy back
+        Library library = new Library(database, reviewService);
+        for (int i = 0; i < BOOKS; i++) {
+            library.borrowBook(ISBNs.get(i), userIds.get(i % USERS));
+            library.borrowBook(ISBNs.get(i), userIds.get((i + 1) % USERS));
+            if (i % 2 == 0) {
+                library.returnBook(ISBNs.get(i), userIds.get(i % USERS));
+            }
+        }
+
+        // growing from four to eight shards keeps the first four
+        List<InMemoryDatabaseService> grown = new ArrayList<>(shards);
+        grown.addAll(newShards(SHARDS));
+        ShardedDatabaseService resharded = database.reshard(grown, ISBNs, userIds);
+        Assertions.assertEquals(2 * SHARDS, resharded.getShardCount());
+
+        // every book, user and holder is reachable through the new layout, and about half the books moved
+        int moved = 0;
+        for (int i = 0; i < BOOKS; i++) {
+            String ISBN = ISBNs.get(i);
+            Assertions.assertNotNull(resharded.getBookByISBN(ISBN));
+            List<String> expected = i % 2 == 0 ? Arrays.asList(userIds.get((i + 1) % USERS))
+                    : Arrays.asList(userIds.get(i % USERS), userIds.get((i + 1) % USERS));
+            Assertions.assertEquals(expected, resharded.getHolders(ISBN));
+            if (resharded.bookShardIndex(ISBN) >= SHARDS) {
+                moved++;
+            }
+        }
+        for (String userId : userIds) {
+            Assertions.assertNotNull(resharded.getUserById(userId));
+        }
+        Assertions.assertTrue(moved > BOOKS / 4 && moved < BOOKS * 3 / 4);
+
+        // the loans of moved books are returned on their new shard
+        Library reshardedLibrary = new Library(resharded, reviewService);
+        for (int i = 0; i < BOOKS; i++) {
+            reshardedLibrary.returnBook(ISBNs.get(i), userIds.get((i + 1) % USERS));
+            Assertions.assertEquals(i % 2 == 0 ? 2 : 1, resharded.getBookByISBN(ISBNs.get(i)).getAvailableCopies());
+        }
+    }
+
+    @Test
+    void GivenReshardedDatabase_WhenScanned_ThenOldCopiesSkipped() {
+        Library library = new Library(database, reviewService);
+        for (int i = 0; i < BOOKS; i += 4) {
+            library.borrowBook(ISBNs.get(i), userIds.get(i % USERS));
+        }
+        List<InMemoryDatabaseService> grown = new ArrayList<>(shards);
+        grown.addAll(newShards(SHARDS));
+        ShardedDatabaseService resharded = database.reshard(grown, ISBNs, userIds);
+
+        // the old shards still hold copies of the moved entries, but every scan sees each entry once
+        Assertions.assertTrue(grown.stream().mapToInt(shard -> shard.getBooks().size()).sum() > BOOKS);
+        Assertions.assertEquals(BOOKS, StreamSupport.stream(resharded.scanBooks(), true).map(Book::getISBN).distinct().count());
+        Assertions.assertEquals(BOOKS, StreamSupport.stream(resharded.scanBooks(), false).count());
+        Assertions.assertEquals(USERS, StreamSupport.stream(resharded.scanUsers(), true).count());
+        Assertions.assertEquals(BOOKS / 4, StreamSupport.stream(resharded.scanBooks(
+                new BookQuery("Mocked author", BookQuery.Availability.BORROWED), Book::getISBN), true).count());
+        Map<String, Long> borrowed = new Library(resharded, reviewService).countBorrowedBooksByAuthor();
+        Assertions.assertEquals(Long.valueOf(BOOKS / 4), borrowed.get("Mocked author"));
+    }
+
+    @Test
+    void GivenShardWithoutHolders_WhenReshardBookOnLoan_ThenUnsupportedOperationException() {
+        // a shard which does not track the holders of borrowed copies
+        DatabaseService untracked = Mockito.mock(DatabaseService.class);
+        Book borrowed = new Book(isbn(0), "Mocked title", "Mocked author", 2);
+        borrowed.borrow();
+        Mockito.when(untracked.getBookByISBN(Mockito.anyString())).thenReturn(borrowed);
+        Mockito.when(untracked.getHolders(Mockito.anyString())).thenThrow(new UnsupportedOperationException("Holders not tracked."));
+        ShardedDatabaseService single = new ShardedDatabaseService(Arrays.asList(untracked), executor);
+
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> single.reshard(newShards(2), ISBNs, userIds));
+    }
+
+    private static List<InMemoryDatabaseService> newShards(int count) {
+        List<InMemoryDatabaseService> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            shards.add(new InMemoryDatabaseService());
+        }
+        return shards;
+    }
+
+    // Returns a valid ISBN-13 with the given serial number.
+    private static String isbn(int serial) {
+        String digits = "978" + String.format("%09d", serial);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
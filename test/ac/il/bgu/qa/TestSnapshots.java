@@ -0,0 +1,265 @@
+package ac.il.bgu.qa;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.SnapshotDatabaseService;
+import ac.il.bgu.qa.util.PersistentHashMap;
+import org.junit.jupiter.api.*;
+import org.mockito.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.StreamSupport;
+
+public class TestSnapshots {
+    private static final int BOOKS = 100;
+    private static final int WRITERS = 4;
+    private static final int ROUNDS = 500;
+
+    @Mock
+    private NotificationService notificationService;
+    private SnapshotDatabaseService databaseService;
+
+    @BeforeEach
+    void setUpObjects() {
+        // set up a snapshot database of a hundred books and a user per writer
+        MockitoAnnotations.initMocks(this);
+        databaseService = new SnapshotDatabaseService();
+        for (int i = 0; i < BOOKS; i++) {
+            databaseService.addBook(isbn(i), new Book(isbn(i), "Title " + i, "Mocked author"));
+        }
+        for (int i = 0; i < WRITERS; i++) {
+            databaseService.registerUser(userId(i), new User("Mocked name", userId(i), notificationService));
+        }
+    }
+
+    @Test
+    void GivenRandomUpdates_WhenComparedToHashMap_ThenEveryVersionMatchesItsModel() {
+        // few distinct hashes over many keys, so that full collisions and shared hash prefixes are frequent
+        Random random = new Random(42);
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+        Map<Key, Integer> model = new HashMap<>();
+        List<PersistentHashMap<Key, Integer>> versions = new ArrayList<>();
+        List<Map<Key, Integer>> models = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            Key key = new Key(random.nextInt(2_000), random.nextInt(3) == 0);
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                model.remove(key);
+            } else {
+                Integer value = random.nextInt(4);
+                map = map.plus(key, value);
+                model.put(key, value);
+            }
+            Assertions.assertEquals(model.size(), map.size());
+            if (i % 1_000 == 0) {
+                versions.add(map);
+                models.add(new HashMap<>(model));
+            }
+        }
+        assertMatches(model, map);
+
+        // the older versions were not disturbed by the updates which followed them
+        for (int i = 0; i < versions.size(); i++) {
+            assertMatches(models.get(i), versions.get(i));
+        }
+    }
+
+    @Test
+    void GivenCollidingKeys_WhenAddedAndRemoved_ThenOldVersionsUnchanged() {
+        // three keys with the same full hash, and one sharing only the low bits of that hash
+        Key first = new Key(1, true);
+        Key second = new Key(8, true);
+        Key third = new Key(15, true);
+        Key near = new Key(33, false);
+        PersistentHashMap<Key, Integer> one = PersistentHashMap.<Key, Integer>empty().plus(first, 1);
+        PersistentHashMap<Key, Integer> three = one.plus(second, 2).plus(third, 3).plus(near, 4);
+        PersistentHashMap<Key, Integer> removed = three.minus(second).minus(first);
+
+        Assertions.assertEquals(1, one.size());
+        Assertions.assertNull(one.get(second));
+        Assertions.assertEquals(4, three.size());
+        Assertions.assertEquals(Integer.valueOf(2), three.get(second));
+        Assertions.assertEquals(2, removed.size());
+        Assertions.assertNull(removed.get(first));
+        Assertions.assertEquals(Integer.valueOf(3), removed.get(third));
+        Assertions.assertEquals(Integer.valueOf(4), removed.get(near));
+        // updates which change nothing return the same version
+        Assertions.assertSame(three, three.plus(third, 3));
+        Assertions.assertSame(three, three.minus(new Key(22, true)));
+        Assertions.assertSame(PersistentHashMap.empty(), removed.minus(third).minus(near));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> one.plus(first, null));
+    }
+
+    @Test
+    void GivenLargeMap_WhenSpliteratorSplit_ThenEvenHalvesCoveringEveryEntryOnce() {
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 100_000; i++) {
+            map = map.plus(i, i);
+        }
+        Spliterator<Map.Entry<Integer, Integer>> suffix = map.spliterator();
+        Assertions.assertEquals(100_000, suffix.getExactSizeIfKnown());
+
+        // the halves of each split hold about as many entries as each other
+        Spliterator<Map.Entry<Integer, Integer>> prefix = suffix.trySplit();
+        Assertions.assertEquals(-1, suffix.getExactSizeIfKnown());
+        long prefixCount = StreamSupport.stream(prefix, false).count();
+        Spliterator<Map.Entry<Integer, Integer>> quarter = suffix.trySplit();
+        long quarterCount = StreamSupport.stream(quarter, false).count();
+        long suffixCount = StreamSupport.stream(suffix, false).count();
+        Assertions.assertEquals(100_000, prefixCount + quarterCount + suffixCount);
+        Assertions.assertEquals(50_000, prefixCount, 5_000);
+        Assertions.assertEquals(25_000, quarterCount, 2_500);
+
+        // a parallel stream sees each entry once, as does a spliterator split down to single entries
+        Assertions.assertEquals(100_000, StreamSupport.stream(map.spliterator(), true).map(Map.Entry::getKey).distinct().count());
+        PersistentHashMap<Key, Integer> small = PersistentHashMap.<Key, Integer>empty()
+                .plus(new Key(1, true), 1).plus(new Key(8, true), 2).plus(new Key(33, false), 3);
+        Assertions.assertEquals(3, countSplit(small.spliterator()));
+        Assertions.assertEquals(0, countSplit(PersistentHashMap.<Key, Integer>empty().spliterator()));
+    }
+
+    @Test
+    void GivenSnapshot_WhenConcurrentWritersBorrowReturnAndAdd_ThenSnapshotUnchanged() throws Exception {
+        SnapshotDatabaseService.Snapshot before = databaseService.snapshot();
+        ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<?>> done = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            done.add(writers.submit(() -> {
+                start.await();
+                // each writer borrows and returns its own books, and adds a new book per round
+                for (int i = 0; i < ROUNDS; i++) {
+                    String ISBN = isbn(writer + WRITERS * (i % (BOOKS / WRITERS)));
+                    databaseService.borrowBook(ISBN, userId(writer));
+                    databaseService.returnBook(ISBN, userId(writer));
+                    String added = isbn(BOOKS + writer * ROUNDS + i);
+                    databaseService.addBook(added, new Book(added, "Title", "Mocked author"));
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        long version = before.getVersion();
+        while (running.get()) {
+            // every snapshot taken meanwhile is internally consistent, and versions only grow
+            SnapshotDatabaseService.Snapshot snapshot = databaseService.snapshot();
+            Assertions.assertTrue(snapshot.getVersion() >= version);
+            version = snapshot.getVersion();
+            Assertions.assertEquals(snapshot.getBookCount(), count(snapshot.books()));
+            Assertions.assertEquals(snapshot.getBorrowedCount(), count(snapshot.loans()));
+            Assertions.assertTrue(snapshot.getBorrowedCount() <= WRITERS);
+            running.set(!allDone(done));
+        }
+        for (Future<?> writer : done) {
+            writer.get(10, TimeUnit.SECONDS);
+        }
+        writers.shutdown();
+
+        // the first snapshot still shows the hundred books, none of them on loan
+        Assertions.assertEquals(BOOKS, before.getBookCount());
+        Assertions.assertEquals(BOOKS, count(before.books()));
+        Assertions.assertEquals(0, before.getBorrowedCount());
+        Assertions.assertNull(before.getBook(isbn(BOOKS)));
+        // and no write was lost to a racing writer
+        SnapshotDatabaseService.Snapshot after = databaseService.snapshot();
+        Assertions.assertEquals(BOOKS + WRITERS * ROUNDS, after.getBookCount());
+        Assertions.assertEquals(0, after.getBorrowedCount());
+        Assertions.assertEquals(before.getVersion() + 3L * WRITERS * ROUNDS, after.getVersion());
+    }
+
+    // Checks that a map holds exactly the entries of its model, iterating each of them once.
+    private static void assertMatches(Map<Key, Integer> model, PersistentHashMap<Key, Integer> map) {
+        Assertions.assertEquals(model.size(), map.size());
+        Map<Key, Integer> iterated = new HashMap<>();
+        for (Map.Entry<Key, Integer> entry : map) {
+            Assertions.assertNull(iterated.put(entry.getKey(), entry.getValue()), entry.toString());
+        }
+        Assertions.assertEquals(model, iterated);
+        for (Map.Entry<Key, Integer> entry : model.entrySet()) {
+            Assertions.assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        Assertions.assertNull(map.get(new Key(-1, false)));
+    }
+
+    // Counts the entries of a spliterator by splitting it as far as it goes.
+    private static long countSplit(Spliterator<?> spliterator) {
+        Spliterator<?> prefix = spliterator.trySplit();
+        if (prefix != null) {
+            return countSplit(prefix) + countSplit(spliterator);
+        }
+        long count = 0;
+        while (spliterator.tryAdvance(entry -> { })) {
+            count++;
+        }
+        return count;
+    }
+
+    private static int count(Iterable<?> entries) {
+        int count = 0;
+        for (Object ignored : entries) {
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean allDone(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            if (!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String userId(int writer) {
+        return String.format("%012d", writer);
+    }
+
+    // Returns a valid ISBN-13 with the given serial number.
+    private static String isbn(int serial) {
+        String digits = "978" + String.format("%09d", serial);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    // A key whose hash is either fully shared with other keys, or spread over the low bits only.
+    private static final class Key {
+        private final int id;
+        private final boolean colliding;
+
+        private Key(int id, boolean colliding) {
+            this.id = id;
+            this.colliding = colliding;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).id == id && ((Key) other).colliding == colliding;
+        }
+
+        @Override
+        public int hashCode() {
+            // colliding keys share one of seven hashes; the others differ only in their lowest ten bits
+            return colliding ? id % 7 : id & 0x3ff;
+        }
+
+        @Override
+        public String toString() {
+            return (colliding ? "c" : "k") + id;
+        }
+    }
+}
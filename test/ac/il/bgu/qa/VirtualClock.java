@@ -0,0 +1,40 @@
+package ac.il.bgu.qa;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A clock which only moves when advanced by the test.
+ */
+final class VirtualClock extends Clock {
+    private volatile long millis;
+
+    VirtualClock(long millis) {
+        this.millis = millis;
+    }
+
+    void advance(long delta) {
+        millis += delta;
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return this;
+    }
+}
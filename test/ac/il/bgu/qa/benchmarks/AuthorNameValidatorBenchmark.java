@@ -0,0 +1,77 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.AuthorNameValidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the throughput of {@link AuthorNameValidator} with the previous two-pass validation
+ * on a multilingual corpus of author names, including invalid ones as seen in catalog imports.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.AuthorNameValidatorBenchmark [names]}
+ */
+public class AuthorNameValidatorBenchmark {
+
+    // Realistic author names in several scripts, written with escapes to keep the source ASCII.
+    private static final String[] NAMES = {
+            "Jane Austen", "J. R. R. Tolkien", "Jean-Paul Sartre", "Flannery O'Connor", "Ursula K. Le Guin",
+            "Gabriel Garc\u00eda M\u00e1rquez", "Fran\u00e7oise Sagan", "G\u00fcnter Grass", "Halld\u00f3r Laxness",
+            "S\u00f8ren Kierkegaard", "Lev Tolstoy", "\u041b\u0435\u0432 \u0422\u043e\u043b\u0441\u0442\u043e\u0439",
+            "\u0391\u03c1\u03b9\u03c3\u03c4\u03bf\u03c4\u03ad\u03bb\u03b7\u03c2", "\u05e2\u05de\u05d5\u05e1 \u05e2\u05d5\u05d6",
+            "\u0646\u062c\u064a\u0628 \u0645\u062d\u0641\u0648\u0638", "\u6751\u4e0a\u6625\u6a39",
+            "\u5927\u6c5f\u5065\u4e09\u90ce", "\uae40\uc601\ud558", "Chimamanda Ngozi Adichie",
+            "Anne--Marie", "auth..or", "1author", "author!", "Mary  Shelley", "O'-Brien"
+    };
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(42);
+        List<String> corpus = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            corpus.add(NAMES[random.nextInt(NAMES.length)]);
+        }
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int valid = 0;
+            for (String name : corpus) {
+                if (legacyIsValid(name)) {
+                    valid++;
+                }
+            }
+            long legacy = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int validNew = 0;
+            for (String name : corpus) {
+                if (AuthorNameValidator.isValid(name)) {
+                    validNew++;
+                }
+            }
+            long table = System.nanoTime() - start;
+            System.out.printf("round %d: legacy %.1f ns/name (%d valid), table-driven %.1f ns/name (%d valid)%n",
+                    round, (double) legacy / count, valid, (double) table / count, validNew);
+        }
+    }
+
+    // The validation previously done by Library.isAuthorValid.
+    private static boolean legacyIsValid(String name) {
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+        if (!Character.isLetter(name.charAt(0)) || !Character.isLetter(name.charAt(name.length() - 1))) {
+            return false;
+        }
+        for (int i = 0; i < name.length() - 1; i++) {
+            char current = name.charAt(i);
+            char next = name.charAt(i + 1);
+            if (!Character.isLetter(current) && current != '-' && current != ' ' && current != '\'' && current != '.') {
+                return false;
+            }
+            if ((current == '-' && next == '-') || (current == '\'' && next == '\'')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,108 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.services.BookQuery;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.StreamSupport;
+
+/**
+ * Measures how parallel catalog scans of an {@link InMemoryDatabaseService} scale with the number of threads,
+ * over a catalog of ten million books by a thousand authors with every seventh book borrowed.
+ * <p>
+ * Each scan runs on a fork/join pool of the given parallelism: a full scan summing the copies, the same over
+ * the values of a {@link ConcurrentHashMap} of the books as a baseline, which is neither sized nor split on chunks,
+ * {@link Library#countBorrowedBooksByAuthor()} with the availability filter and the author projection pushed
+ * down, and one author's books selected through the author index against the same filter applied to the
+ * stream of every book. Run with enough heap, such as {@code -Xmx4g}.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.CatalogScanBenchmark [books] [maxThreads] [rounds]}
+ */
+public class CatalogScanBenchmark {
+
+    private static final int AUTHORS = 1_000;
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int books = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        System.out.printf("%d books, up to %d threads, %d cores, best of %d rounds%n",
+                books, maxThreads, Runtime.getRuntime().availableProcessors(), rounds);
+
+        final InMemoryDatabaseService database = new InMemoryDatabaseService();
+        final Library library = new Library(database, new StubServices.Reviews(new StubServices.Faults(0, 0)));
+        String[] authors = new String[AUTHORS];
+        for (int i = 0; i < AUTHORS; i++) {
+            authors[i] = "Author " + i;
+        }
+        final Map<String, Book> map = new ConcurrentHashMap<>();
+        long loadStart = System.nanoTime();
+        for (int i = 0; i < books; i++) {
+            Book book = new Book(isbn(i), "Title", authors[i % AUTHORS]);
+            if (i % 7 == 0) {
+                book.borrow();
+            }
+            database.addBook(book.getISBN(), book);
+            map.put(book.getISBN(), book);
+        }
+        System.out.printf("loaded in %.1f s%n", (System.nanoTime() - loadStart) / 1e9);
+
+        final BookQuery oneAuthor = new BookQuery(authors[42], BookQuery.Availability.AVAILABLE);
+        System.out.printf("%8s %14s %14s %14s %14s %14s%n", "threads", "scan (ms)", "map (ms)",
+                "by author (ms)", "indexed (ms)", "filtered (ms)");
+        double[] single = null;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            double[] millis = {
+                    best(pool, rounds, () -> StreamSupport.stream(database.scanBooks(), true).mapToLong(Book::getCopies).sum()),
+                    best(pool, rounds, () -> map.values().parallelStream().mapToLong(Book::getCopies).sum()),
+                    best(pool, rounds, () -> {
+                        Map<String, Long> counts = library.countBorrowedBooksByAuthor();
+                        return (long) counts.size();
+                    }),
+                    best(pool, rounds, () -> library.scanBooks(oneAuthor, Function.identity(), true).count()),
+                    best(pool, rounds, () -> StreamSupport.stream(database.scanBooks(), true).filter(oneAuthor::matches).count()),
+            };
+            pool.shutdown();
+            if (single == null) {
+                single = millis;
+            }
+            System.out.printf("%8d", threads);
+            for (int i = 0; i < millis.length; i++) {
+                System.out.printf(" %8.1f x%4.1f", millis[i], single[i] / millis[i]);
+            }
+            System.out.println();
+        }
+    }
+
+    // Returns the shortest duration of a scan over the rounds in milliseconds, after one warm-up run.
+    private static double best(ForkJoinPool pool, int rounds, Supplier<Long> scan) throws InterruptedException, ExecutionException {
+        // Parallel streams started from a task of a pool run on that pool.
+        long result = pool.submit(scan::get).get();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            if (pool.submit(scan::get).get() != result) {
+                throw new IllegalStateException("Scans disagree.");
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    // Returns a valid ISBN-13 with the given serial number.
+    private static String isbn(int serial) {
+        String digits = "978" + String.format("%09d", serial);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,121 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.search.CatalogSearchIndex;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the indexing rate of a {@link CatalogSearchIndex} and the latency of searches against it, over a
+ * catalog of a million books whose titles and authors are drawn from a Zipfian vocabulary.
+ * <p>
+ * Searches are timed for a single whole word, a short prefix matching many words, two words with the last
+ * one incomplete as typed in an autocomplete box, and the same with only available books. A writer thread
+ * borrows and returns books throughout, so searches contend with updates for the index lock.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.CatalogSearchBenchmark [books] [words] [threads] [searches]}
+ */
+public class CatalogSearchBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        final int books = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        final int words = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        final int searches = args.length > 3 ? Integer.parseInt(args[3]) : 200_000;
+
+        final String[] vocabulary = new String[words];
+        Random random = new Random(42);
+        for (int i = 0; i < words; i++) {
+            vocabulary[i] = word(random);
+        }
+        final ZipfianGenerator popularity = new ZipfianGenerator(words, 0.99, 42);
+        final String[] ISBNs = new String[books];
+        final CatalogSearchIndex index = new CatalogSearchIndex();
+        System.out.printf("%,d books over %,d words, %d search threads%n", books, words, threads);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < books; i++) {
+            ISBNs[i] = isbn(i);
+            String title = vocabulary[popularity.next()] + " " + vocabulary[popularity.next()] + " " + vocabulary[popularity.next()];
+            String author = vocabulary[popularity.next()] + " " + vocabulary[popularity.next()];
+            index.addBook(new Book(ISBNs[i], title, author));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("index: %,.0f books/s (%.1f s)%n", books / seconds, seconds);
+
+        // Borrow and return random books until the searches are done.
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            ThreadLocalRandom writes = ThreadLocalRandom.current();
+            while (running.get()) {
+                index.setBorrowed(ISBNs[writes.nextInt(books)], writes.nextBoolean());
+            }
+        });
+        writer.start();
+
+        String[] names = {"word", "prefix", "autocomplete", "available"};
+        System.out.printf("%14s %10s %10s %10s %10s %12s%n", "query", "p50 (us)", "p99 (us)", "p99.9 (us)", "max (us)", "results");
+        for (int kind = 0; kind < names.length; kind++) {
+            final int query = kind;
+            final LatencyHistogram latencies = new LatencyHistogram();
+            final long[] results = new long[threads];
+            final CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                new Thread(() -> {
+                    ZipfianGenerator terms = new ZipfianGenerator(words, 0.99, thread);
+                    for (int i = 0; i < searches / threads; i++) {
+                        String text = queryOf(query, vocabulary[terms.next()], vocabulary[terms.next()]);
+                        long begin = System.nanoTime();
+                        results[thread] += index.search(text, 10, query == 3).size();
+                        latencies.record(System.nanoTime() - begin);
+                    }
+                    done.countDown();
+                }).start();
+            }
+            done.await();
+            long found = 0;
+            for (long count : results) {
+                found += count;
+            }
+            System.out.printf("%14s %10.1f %10.1f %10.1f %10.1f %12.2f%n", names[kind],
+                    latencies.getValueAtPercentile(50) / 1e3, latencies.getValueAtPercentile(99) / 1e3,
+                    latencies.getValueAtPercentile(99.9) / 1e3, latencies.getMax() / 1e3, (double) found / latencies.getCount());
+        }
+        running.set(false);
+        writer.join();
+    }
+
+    // Returns the text of a query of the given kind over two vocabulary words.
+    private static String queryOf(int kind, String first, String second) {
+        switch (kind) {
+            case 0:
+                return first;
+            case 1:
+                return first.substring(0, 2);
+            default:
+                return first + " " + second.substring(0, Math.min(3, second.length()));
+        }
+    }
+
+    // Returns a random lower-case word of four to ten letters.
+    private static String word(Random random) {
+        char[] letters = new char[4 + random.nextInt(7)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    // Returns a valid ISBN-13 with the given serial number.
+    private static String isbn(int serial) {
+        String digits = "978" + String.format("%09d", serial);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
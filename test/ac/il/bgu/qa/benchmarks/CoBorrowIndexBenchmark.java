@@ -0,0 +1,77 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.search.CoBorrowIndex;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the ingest rate and the heap used by a {@link CoBorrowIndex} fed with millions of borrow events,
+ * and the latency of recommendations from it. Books are borrowed with a Zipfian popularity by uniformly
+ * chosen users, and time advances by a millisecond per event, so scores decay during the run.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.CoBorrowIndexBenchmark [events] [books] [users] [threads]}
+ */
+public class CoBorrowIndexBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        final int events = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        final int books = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        final int users = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        final String[] ISBNs = new String[books];
+        for (int i = 0; i < books; i++) {
+            ISBNs[i] = String.format("978%010d", i);
+        }
+        final String[] userIds = new String[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = String.format("%012d", i);
+        }
+        final ZipfianGenerator popularity = new ZipfianGenerator(books, 0.99, 42);
+        final CoBorrowIndex index = new CoBorrowIndex(8, 20, 200, TimeUnit.HOURS.toMillis(1));
+        long heapBefore = usedHeap();
+
+        System.out.printf("%,d events over %,d books and %,d users on %d threads%n", events, books, users, threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            final int stride = threads;
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int event = first; event < events; event += stride) {
+                    index.recordBorrow(ISBNs[popularity.next()], userIds[random.nextInt(users)], event);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long heapAfter = usedHeap();
+        System.out.printf("ingest: %,.0f events/s (%.1f s)%n", events / seconds, seconds);
+        System.out.printf("memory: %,d MB for %,d books with %,d entries, including %,d user histories%n",
+                (heapAfter - heapBefore) >> 20, index.getBooks(), index.getEntries(), users);
+
+        // Time recommendations for popular and unpopular books alike.
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int lookups = 1_000_000;
+        long found = 0;
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                found += index.recommend(ISBNs[random.nextInt(books)], 10).size();
+            }
+            System.out.printf("recommend: %.2f us per call%n", (System.nanoTime() - start) / 1e3 / lookups);
+        }
+        System.out.printf("(%,d recommendations)%n", found);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,287 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load test of a {@link Library} over {@link StubServices} with injected latency and failures.
+ * <p>
+ * Requests are issued at a fixed rate, whether or not earlier requests completed, and run on a pool of worker
+ * threads. Each request has an intended start time on the rate's schedule, and its response time is measured
+ * from that time rather than from when a worker picked it up, so time spent queued behind slow requests is
+ * counted and the report is free of coordinated omission. The time from pickup to completion is reported
+ * separately as the service time. The ISBNs of borrows, returns and lookups follow a Zipfian popularity.
+ * <p>
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.LibraryLoadTest [key=value ...]}, where the keys and their
+ * defaults are:
+ * <pre>
+ * rate=5000 seconds=20 warmup=5 threads=64      requests per second, measured and warm-up seconds, workers
+ * books=10000 users=10000 copies=3 zipf=0.99    catalog size, copies per book, Zipfian exponent
+ * get=70 borrow=12 return=12 add=6              operation mix, in relative weights
+ * dbMicros=20 dbFailures=0                      mean database latency and failure rate
+ * reviewMicros=300 reviewFailures=0.01          mean review service latency and failure rate
+ * notifyMicros=200 notifyFailures=0.01          mean notification latency and failure rate
+ * </pre>
+ */
+public class LibraryLoadTest {
+
+    private static final String[] OPERATIONS = {"get", "borrow", "return", "add"};
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> config = new LinkedHashMap<>();
+        for (String arg : "rate=5000 seconds=20 warmup=5 threads=64 books=10000 users=10000 copies=3 zipf=0.99 get=70 borrow=12 return=12 add=6 dbMicros=20 dbFailures=0 reviewMicros=300 reviewFailures=0.01 notifyMicros=200 notifyFailures=0.01".split(" ")) {
+            config.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0 || !config.containsKey(arg.substring(0, equals))) {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+            config.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        System.out.println(config);
+        new LibraryLoadTest(config).run();
+    }
+
+    private final int rate;
+    private final int seconds;
+    private final int warmup;
+    private final int threads;
+    private final int books;
+    private final int users;
+    private final int copies;
+    private final int[] cumulativeWeights = new int[OPERATIONS.length];
+
+    private final StubServices.Database database;
+    private final Library library;
+    private final ZipfianGenerator popularity;
+    private final String[] ISBNs;
+    private final String[] userIds;
+
+    // The outstanding loans as {ISBN, userId}, so returns return books which are borrowed.
+    private final ConcurrentLinkedQueue<String[]> loans = new ConcurrentLinkedQueue<>();
+    // The serial number of the next book added by the test.
+    private final AtomicInteger nextBook;
+
+    // The measurements of each operation, kept once the warm-up is over.
+    private final Map<String, Measurements> measurements = new LinkedHashMap<>();
+    private volatile boolean measuring;
+    // The number of requests scheduled but not yet completed.
+    private final AtomicLong inFlight = new AtomicLong();
+
+    private LibraryLoadTest(Map<String, String> config) {
+        rate = Integer.parseInt(config.get("rate"));
+        seconds = Integer.parseInt(config.get("seconds"));
+        warmup = Integer.parseInt(config.get("warmup"));
+        threads = Integer.parseInt(config.get("threads"));
+        books = Integer.parseInt(config.get("books"));
+        users = Integer.parseInt(config.get("users"));
+        copies = Integer.parseInt(config.get("copies"));
+        int total = 0;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            total += Integer.parseInt(config.get(OPERATIONS[i]));
+            cumulativeWeights[i] = total;
+            measurements.put(OPERATIONS[i], new Measurements());
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Invalid operation mix.");
+        }
+
+        database = new StubServices.Database(faults(config, "db"));
+        StubServices.Reviews reviews = new StubServices.Reviews(faults(config, "review"));
+        StubServices.Notifications notifications = new StubServices.Notifications(faults(config, "notify"));
+        library = new Library(database, reviews);
+        popularity = new ZipfianGenerator(books, Double.parseDouble(config.get("zipf")), 42);
+        System.out.printf("the most popular book gets %.1f%% of the traffic%n", popularity.topProbability() * 100);
+
+        // Load the catalog and the users directly into the database, without injected faults.
+        ISBNs = new String[books];
+        for (int i = 0; i < books; i++) {
+            ISBNs[i] = isbn(i);
+            database.load(new Book(ISBNs[i], "Title " + i, "Author Name", copies));
+        }
+        userIds = new String[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = String.format("%012d", i + 1);
+            database.load(new User("User " + i, userIds[i], notifications));
+        }
+        nextBook = new AtomicInteger(books);
+    }
+
+    private void run() throws InterruptedException {
+        // The library reports failed notifications on the console; keep them out of the report.
+        PrintStream console = System.out;
+        PrintStream discard = new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        PrintStream errors = System.err;
+        System.setOut(discard);
+        System.setErr(discard);
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+        long maxLagNanos = 0;
+        long nextReport = measureFrom;
+        for (long i = 0; ; i++) {
+            final long intended = start + i * intervalNanos;
+            if (intended >= end) {
+                break;
+            }
+            // Sleep until the request is due. A late dispatcher issues it at once, still timed from when it was due.
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            maxLagNanos = Math.max(maxLagNanos, now - intended);
+            if (!measuring && intended >= measureFrom) {
+                measuring = true;
+            }
+            if (measuring && now >= nextReport) {
+                console.printf("%3ds: %d in flight%n", TimeUnit.NANOSECONDS.toSeconds(now - measureFrom), inFlight.get());
+                nextReport += TimeUnit.SECONDS.toNanos(5);
+            }
+            final boolean measured = measuring;
+            inFlight.incrementAndGet();
+            workers.execute(() -> request(intended, measured));
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        System.setOut(console);
+        System.setErr(errors);
+
+        console.printf("%d req/s for %d s after %d s warm-up, %d workers; dispatcher lagged at most %.1f ms%n",
+                rate, seconds, warmup, threads, maxLagNanos / 1e6);
+        console.printf("%-7s %8s %8s | %34s | %34s%n", "", "", "",
+                "response time (ms, from schedule)", "service time (ms, from pickup)");
+        console.printf("%-7s %8s %8s | %8s %8s %8s %7s | %8s %8s %8s %7s%n",
+                "op", "count", "errors", "p50", "p99", "p99.9", "max", "p50", "p99", "p99.9", "max");
+        for (Map.Entry<String, Measurements> entry : measurements.entrySet()) {
+            Measurements m = entry.getValue();
+            console.printf("%-7s %8d %8d | %s | %s%n", entry.getKey(), m.response.getCount(), m.errorCount(),
+                    percentiles(m.response), percentiles(m.service));
+        }
+        for (Map.Entry<String, Measurements> entry : measurements.entrySet()) {
+            if (!entry.getValue().errors.isEmpty()) {
+                console.printf("%s errors: %s%n", entry.getKey(), new TreeMap<>(entry.getValue().errors));
+            }
+        }
+    }
+
+    // Runs one request of a random operation, recording it if it was issued after the warm-up.
+    private void request(long intendedNanos, boolean measured) {
+        long pickup = System.nanoTime();
+        String operation = pickOperation();
+        Throwable failure = null;
+        try {
+            perform(operation);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        long done = System.nanoTime();
+        inFlight.decrementAndGet();
+        if (measured) {
+            Measurements m = measurements.get(operation);
+            m.response.record(done - intendedNanos);
+            m.service.record(done - pickup);
+            if (failure != null) {
+                m.errors.computeIfAbsent(failure.getClass().getSimpleName(), name -> new AtomicLong()).incrementAndGet();
+            }
+        }
+    }
+
+    private String pickOperation() {
+        int ticket = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (ticket >= cumulativeWeights[i]) {
+            i++;
+        }
+        return OPERATIONS[i];
+    }
+
+    private void perform(String operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String userId = userIds[random.nextInt(users)];
+        switch (operation) {
+            case "get":
+                library.getBookByISBN(ISBNs[popularity.next()], userId);
+                break;
+            case "borrow": {
+                String ISBN = ISBNs[popularity.next()];
+                library.borrowBook(ISBN, userId);
+                loans.add(new String[]{ISBN, userId});
+                break;
+            }
+            case "return": {
+                // Return the oldest loan, or a popular book if nothing is borrowed.
+                String[] loan = loans.poll();
+                if (loan == null) {
+                    library.returnBook(ISBNs[popularity.next()], userId);
+                } else {
+                    library.returnBook(loan[0], loan[1]);
+                }
+                break;
+            }
+            default:
+                library.addBook(new Book(isbn(nextBook.getAndIncrement()), "New title", "Author Name", copies));
+        }
+    }
+
+    private static StubServices.Faults faults(Map<String, String> config, String service) {
+        return new StubServices.Faults(Long.parseLong(config.get(service + "Micros")),
+                Double.parseDouble(config.get(service + "Failures")));
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        return String.format("%8.2f %8.2f %8.2f %7.1f", histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6, histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMax() / 1e6);
+    }
+
+    // Returns a valid ISBN-13 with the given serial number.
+    private static String isbn(int serial) {
+        String digits = "978" + String.format("%09d", serial);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    // The latencies and errors of one operation.
+    private static final class Measurements {
+        private final LatencyHistogram response = new LatencyHistogram();
+        private final LatencyHistogram service = new LatencyHistogram();
+        private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+
+        private long errorCount() {
+            long count = 0;
+            for (AtomicLong errorsOfType : errors.values()) {
+                count += errorsOfType.get();
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.server.LibraryClient;
+import ac.il.bgu.qa.server.LibraryServer;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a {@link LibraryServer} over loopback with pipelined {@code getBookByISBN} requests, and reports
+ * throughput and batch round-trip latency percentiles. Each connection has its own thread, which sends
+ * {@code depth} requests in a single write and waits for all of their responses before the next batch.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.LibraryServerLoadGenerator [connections] [depth] [seconds] [eventLoops]}
+ */
+public class LibraryServerLoadGenerator {
+
+    private static final int BOOKS = 10_000;
+    private static final int USERS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int eventLoops = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        Library library = new Library(new InMemoryDatabaseService(), new ReviewService() {
+            public List<String> getReviewsForBook(String ISBN) {
+                return Collections.singletonList("A fine read.");
+            }
+
+            public void close() {
+            }
+        });
+        LibraryServer server = new LibraryServer(library, userId -> (id, message) -> { }, eventLoops);
+        InetSocketAddress address = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        // Load the catalog and the users over the wire, in one pipelined batch.
+        final String[] ISBNs = new String[BOOKS];
+        final String[] userIds = new String[USERS];
+        try (LibraryClient loader = new LibraryClient(address)) {
+            loader.setAutoFlush(false);
+            List<CompletableFuture<Void>> loads = new ArrayList<>();
+            for (int i = 0; i < BOOKS; i++) {
+                ISBNs[i] = isbn(i);
+                loads.add(loader.addBook(ISBNs[i], "Title " + i, "Author Name"));
+            }
+            for (int i = 0; i < USERS; i++) {
+                userIds[i] = String.format("%012d", i + 1);
+                loads.add(loader.registerUser(userIds[i], "User " + i));
+            }
+            loader.flush();
+            CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+        }
+
+        System.out.printf("%d connections, pipeline depth %d, %d event loops, %d seconds%n",
+                connections, depth, eventLoops, seconds);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final long[][] batchNanos = new long[connections][];
+        final int[] batches = new int[connections];
+        final CountDownLatch done = new CountDownLatch(connections);
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            final int connection = c;
+            new Thread(() -> {
+                long[] samples = new long[1 << 16];
+                int count = 0;
+                try (LibraryClient client = new LibraryClient(address)) {
+                    client.setAutoFlush(false);
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    CompletableFuture<?>[] batch = new CompletableFuture<?>[depth];
+                    while (System.nanoTime() < deadline) {
+                        long batchStart = System.nanoTime();
+                        for (int i = 0; i < depth; i++) {
+                            batch[i] = client.getBookByISBN(ISBNs[random.nextInt(BOOKS)], userIds[random.nextInt(USERS)]);
+                        }
+                        client.flush();
+                        for (CompletableFuture<?> future : batch) {
+                            try {
+                                future.join();
+                            } catch (RuntimeException e) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                        if (count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = System.nanoTime() - batchStart;
+                        requests.addAndGet(depth);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                batchNanos[connection] = samples;
+                batches[connection] = count;
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        server.close();
+
+        int total = 0;
+        for (int count : batches) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int c = 0; c < connections; c++) {
+            System.arraycopy(batchNanos[c], 0, all, offset, batches[c]);
+            offset += batches[c];
+        }
+        Arrays.sort(all);
+        System.out.printf("%.0f requests/s, %d failures%n", requests.get() / elapsed, failures.get());
+        if (total > 0) {
+            System.out.printf("batch round trip: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                    percentile(all, 50) / 1e3, percentile(all, 99) / 1e3, percentile(all, 99.9) / 1e3,
+                    all[total - 1] / 1e3);
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100 * sorted.length) - 1)];
+    }
+
+    // Returns a valid ISBN-13 with the given serial number.
+    private static String isbn(int serial) {
+        String digits = "978" + String.format("%09d", serial);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
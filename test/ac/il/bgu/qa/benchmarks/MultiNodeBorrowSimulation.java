@@ -0,0 +1,282 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.UpdateConflictException;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simulates several {@link Library} nodes sharing one remote database, each node reading its own copies of
+ * the books, and checks that no copy is ever borrowed twice.
+ * <p>
+ * Every node has threads borrowing random books of a small catalog and returning them later. The run is
+ * repeated for catalogs of decreasing size, i.e. increasing contention, once with conditional updates
+ * ({@link DatabaseService#compareAndSetBorrowed(String, long, String)}) and once with the plain
+ * read-then-write borrow, which double-borrows copies under contention. Each database call sleeps for the
+ * given round-trip time, widening the window between reading a book and updating it.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.MultiNodeBorrowSimulation [nodes] [threadsPerNode] [seconds] [roundTripMicros]}
+ */
+public class MultiNodeBorrowSimulation {
+
+    private static final int USERS = 1_000;
+    private static final int COPIES = 2;
+
+    public static void main(String[] args) throws InterruptedException {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        long roundTripNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 3 ? Long.parseLong(args[3]) : 50);
+
+        System.out.printf("%d nodes x %d threads, %d copies per book, %d us round trip, %d s per run%n",
+                nodes, threads, COPIES, TimeUnit.NANOSECONDS.toMicros(roundTripNanos), seconds);
+        System.out.printf("%-12s %6s %10s %10s %14s %12s %14s%n",
+                "mode", "books", "borrows/s", "returns/s", "conflicts/upd", "gave up", "over-borrowed");
+        // Warm up both paths before measuring.
+        run(true, 100, nodes, threads, 1, roundTripNanos, false);
+        run(false, 100, nodes, threads, 1, roundTripNanos, false);
+        for (boolean conditional : new boolean[]{true, false}) {
+            for (int books : new int[]{10_000, 1_000, 100, 10, 1}) {
+                run(conditional, books, nodes, threads, seconds, roundTripNanos, true);
+            }
+        }
+    }
+
+    private static void run(boolean conditional, int books, int nodes, int threads, int seconds, final long roundTripNanos,
+                            boolean report) throws InterruptedException {
+        final SharedStore store = new SharedStore(conditional);
+        final String[] ISBNs = new String[books];
+        for (int i = 0; i < books; i++) {
+            ISBNs[i] = isbn(i);
+            store.books.put(ISBNs[i], new Book(ISBNs[i], "Title " + i, "Author Name", COPIES));
+            store.holders.put(ISBNs[i], new ArrayList<>());
+        }
+        final String[] userIds = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            userIds[i] = String.format("%012d", i + 1);
+            store.users.put(userIds[i], new User("User " + i, userIds[i], (id, message) -> { }));
+        }
+
+        final AtomicLong borrows = new AtomicLong();
+        final AtomicLong returns = new AtomicLong();
+        final AtomicLong gaveUp = new AtomicLong();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final CountDownLatch done = new CountDownLatch(nodes * threads);
+        for (int n = 0; n < nodes; n++) {
+            final Library node = new Library(new NodeClient(store, roundTripNanos), new ReviewService() {
+                public List<String> getReviewsForBook(String ISBN) {
+                    return Collections.emptyList();
+                }
+
+                public void close() {
+                }
+            });
+            for (int t = 0; t < threads; t++) {
+                new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    List<String[]> loans = new ArrayList<>();
+                    while (System.nanoTime() < deadline) {
+                        try {
+                            if (loans.isEmpty() || random.nextBoolean()) {
+                                String ISBN = ISBNs[random.nextInt(ISBNs.length)];
+                                String userId = userIds[random.nextInt(USERS)];
+                                node.borrowBook(ISBN, userId);
+                                loans.add(new String[]{ISBN, userId});
+                                borrows.incrementAndGet();
+                            } else {
+                                String[] loan = loans.remove(random.nextInt(loans.size()));
+                                node.returnBook(loan[0], loan[1]);
+                                returns.incrementAndGet();
+                            }
+                        } catch (BookAlreadyBorrowedException | BookNotBorrowedException e) {
+                            // Expected under contention.
+                        } catch (UpdateConflictException e) {
+                            gaveUp.incrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                }).start();
+            }
+        }
+        done.await();
+
+        if (!report) {
+            return;
+        }
+        long updates = store.updates.get();
+        System.out.printf("%-12s %6d %10.0f %10.0f %14.3f %12d %14d%n",
+                conditional ? "conditional" : "read-write", books, (double) borrows.get() / seconds,
+                (double) returns.get() / seconds, updates == 0 ? 0 : (double) store.conflicts.get() / updates,
+                gaveUp.get(), store.maxOverBorrowed.get());
+    }
+
+    // Returns a valid ISBN-13 with the given serial number.
+    private static String isbn(int serial) {
+        String digits = "978" + String.format("%09d", serial);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    // The remote database shared by the nodes, holding the authoritative books and their holders.
+    private static final class SharedStore {
+        private final boolean conditional;
+        private final Map<String, Book> books = new ConcurrentHashMap<>();
+        private final Map<String, User> users = new ConcurrentHashMap<>();
+        // The holders of the copies of each book. Guarded by the list.
+        private final Map<String, List<String>> holders = new ConcurrentHashMap<>();
+
+        // The number of conditional updates applied and rejected.
+        private final AtomicLong updates = new AtomicLong();
+        private final AtomicLong conflicts = new AtomicLong();
+        // The most loans of one book beyond its number of copies, 0 unless a copy was borrowed twice.
+        private final AtomicLong maxOverBorrowed = new AtomicLong();
+
+        private SharedStore(boolean conditional) {
+            this.conditional = conditional;
+        }
+
+        private void addHolder(String ISBN, String userId) {
+            List<String> list = holders.get(ISBN);
+            synchronized (list) {
+                list.add(userId);
+                long over = list.size() - books.get(ISBN).getCopies();
+                maxOverBorrowed.accumulateAndGet(over, Math::max);
+            }
+        }
+
+        private void removeHolder(String ISBN, String userId) {
+            List<String> list = holders.get(ISBN);
+            synchronized (list) {
+                list.remove(userId);
+            }
+        }
+    }
+
+    // A node's connection to the shared store, handing out copies of the stored books as a remote database would.
+    private static final class NodeClient implements DatabaseService {
+        private final SharedStore store;
+        private final long roundTripNanos;
+
+        private NodeClient(SharedStore store, long roundTripNanos) {
+            this.store = store;
+            this.roundTripNanos = roundTripNanos;
+        }
+
+        private void roundTrip() {
+            if (roundTripNanos > 0) {
+                LockSupport.parkNanos(roundTripNanos);
+            }
+        }
+
+        @Override
+        public boolean supportsConditionalUpdates() {
+            return store.conditional;
+        }
+
+        @Override
+        public void addBook(String ISBN, Book book) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void registerUser(String id, User user) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Book getBookByISBN(String ISBN) {
+            roundTrip();
+            Book stored = store.books.get(ISBN);
+            if (stored == null) {
+                return null;
+            }
+            // Read the version first: a change between the two reads only makes the copy look outdated.
+            long version = stored.getVersion();
+            return new Book(ISBN, stored.getTitle(), stored.getAuthor(), stored.getCopies(),
+                    stored.getAvailableCopies(), version);
+        }
+
+        @Override
+        public User getUserById(String userId) {
+            roundTrip();
+            return store.users.get(userId);
+        }
+
+        // The plain write: record the loan without checking the book, as the node already did on its copy.
+        @Override
+        public void borrowBook(String ISBN, String userId) {
+            roundTrip();
+            store.addHolder(ISBN, userId);
+            Book stored = store.books.get(ISBN);
+            try {
+                stored.borrow();
+            } catch (IllegalStateException e) {
+                // The stored book has no copy left: the node borrowed a copy someone else holds.
+            }
+        }
+
+        @Override
+        public void returnBook(String ISBN) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void returnBook(String ISBN, String userId) {
+            roundTrip();
+            store.removeHolder(ISBN, userId);
+            try {
+                store.books.get(ISBN).returnBook();
+            } catch (IllegalStateException e) {
+                // Matches a double borrow above.
+            }
+        }
+
+        @Override
+        public boolean compareAndSetBorrowed(String ISBN, long expectedVersion, String userId) {
+            roundTrip();
+            // Apply the borrow and record the holder under the holders' lock, so they change together.
+            List<String> list = store.holders.get(ISBN);
+            synchronized (list) {
+                if (!store.books.get(ISBN).compareAndBorrow(expectedVersion)) {
+                    store.conflicts.incrementAndGet();
+                    return false;
+                }
+                store.updates.incrementAndGet();
+                store.addHolder(ISBN, userId);
+                return true;
+            }
+        }
+
+        @Override
+        public boolean compareAndSetReturned(String ISBN, long expectedVersion, String userId) {
+            roundTrip();
+            List<String> list = store.holders.get(ISBN);
+            synchronized (list) {
+                if (!store.books.get(ISBN).compareAndReturn(expectedVersion)) {
+                    store.conflicts.incrementAndGet();
+                    return false;
+                }
+                store.updates.incrementAndGet();
+                store.removeHolder(ISBN, userId);
+                return true;
+            }
+        }
+    }
+}
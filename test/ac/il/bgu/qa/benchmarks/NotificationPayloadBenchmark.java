@@ -0,0 +1,74 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.notifications.NotificationPayloadCache;
+import ac.il.bgu.qa.services.CachingReviewService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time and the heap allocated per {@code notifyUserWithBookReviews} call when thousands of users
+ * are notified about the same book, with and without a {@link NotificationPayloadCache}. Reviews come from a
+ * {@link CachingReviewService}, so the review list itself is not refetched.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.NotificationPayloadBenchmark [users] [reviews]}
+ */
+public class NotificationPayloadBenchmark {
+
+    private static final String ISBN = "978-0-13-149505-0";
+
+    public static void main(String[] args) {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int reviewCount = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        final List<String> reviews = new ArrayList<>();
+        for (int i = 0; i < reviewCount; i++) {
+            reviews.add("Review " + i + ": " + String.join(" ", Collections.nCopies(30, "gripping")));
+        }
+        ReviewService reviewService = new CachingReviewService(new ReviewService() {
+            public List<String> getReviewsForBook(String ISBN) {
+                return reviews;
+            }
+
+            public void close() {
+            }
+        }, 1, TimeUnit.HOURS, 1024);
+
+        InMemoryDatabaseService databaseService = new InMemoryDatabaseService();
+        databaseService.addBook(ISBN, new Book(ISBN, "A Bestseller", "Famous Author"));
+        String[] userIds = new String[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = String.format("%012d", i);
+            databaseService.registerUser(userIds[i], new User("User " + i, userIds[i], (id, message) -> { }));
+        }
+
+        Library plain = new Library(databaseService, reviewService);
+        Library cached = new Library(databaseService, reviewService);
+        NotificationPayloadCache payloadCache = new NotificationPayloadCache(1024);
+        cached.setNotificationPayloadCache(payloadCache);
+        for (int round = 0; round < 5; round++) {
+            System.out.printf("round %d: rendered %s, cached %s%n", round, run(plain, userIds), run(cached, userIds));
+        }
+        System.out.printf("payload cache: %d hits, %d misses%n", payloadCache.getHits(), payloadCache.getMisses());
+    }
+
+    // Returns the time and bytes allocated per notification.
+    private static String run(Library library, String[] userIds) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (String userId : userIds) {
+            library.notifyUserWithBookReviews(ISBN, userId);
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        return String.format("%.0f ns %d B/op", (double) nanos / userIds.length, allocated / userIds.length);
+    }
+}
@@ -0,0 +1,364 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.admission.PrioritizedDatabaseService;
+import ac.il.bgu.qa.admission.PrioritizedReviewService;
+import ac.il.bgu.qa.admission.PriorityScheduler;
+import ac.il.bgu.qa.admission.ScheduledLibrary;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Measures the latency of front-desk borrows and returns while a large catalog import runs concurrently,
+ * with every operation on one shared pool of threads in arrival order, and with a {@link PriorityScheduler}
+ * running borrows and returns as interactive work, review notifications as notification work and the import
+ * as bulk work, over services limited per class.
+ * <p>
+ * The database is a {@link StubServices} database behind a pool of connections, each call holding one for
+ * its latency. Borrows and returns are issued open-loop at a fixed rate and their latency is measured from
+ * their intended start; notifications are issued at a fixed rate without waiting for them. The import is
+ * split into as many parallel streams as there are threads, as an eager bulk loader would.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.PrioritySchedulerBenchmark [rate] [importBooks] [threads] [connections] [dbMicros] [sloMillis]}
+ */
+public class PrioritySchedulerBenchmark {
+
+    private static final int BOOKS = 1_000;
+    private static final int USERS = 1_000;
+    private static final int COPIES = 1_000;
+    private static final int NOTIFICATIONS_PER_INTERACTIVE = 4;
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int importBooks = args.length > 1 ? Integer.parseInt(args[1]) : 40_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int connections = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        long dbMicros = args.length > 4 ? Long.parseLong(args[4]) : 200;
+        long sloMillis = args.length > 5 ? Long.parseLong(args[5]) : 20;
+        System.out.printf("%d borrows and returns/s, %d books imported, %d threads, %d connections, %d us database, %d ms objective%n",
+                rate, importBooks, threads, connections, dbMicros, sloMillis);
+
+        // The library reports failed notifications on the console; keep them out of the report.
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+
+        console.printf("%-16s %10s %10s %10s %10s %12s %12s %12s%n", "mode", "p50 (ms)", "p99 (ms)", "p99.9 (ms)",
+                "max (ms)", "imported/s", "notified", "preemptions");
+        // Warm up before measuring.
+        run(null, "scheduler", rate, importBooks / 4, threads, connections, dbMicros, sloMillis);
+        for (String mode : new String[]{"no import", "shared pool", "scheduler"}) {
+            run(console, mode, rate, mode.equals("no import") ? 0 : importBooks, threads, connections, dbMicros, sloMillis);
+        }
+        System.setOut(console);
+    }
+
+    private static void run(PrintStream console, String mode, int rate, int importBooks, int threads, int connections,
+                            long dbMicros, long sloMillis) throws InterruptedException, ExecutionException {
+        PooledDatabase pooled = new PooledDatabase(new StubServices.Database(new StubServices.Faults(dbMicros, 0)), connections);
+        ReviewService reviews = new StubServices.Reviews(new StubServices.Faults(300, 0));
+        StubServices.Notifications notifications = new StubServices.Notifications(new StubServices.Faults(200, 0));
+        for (int i = 0; i < BOOKS; i++) {
+            pooled.database.load(new Book(isbn(i), "Title " + i, "Author Name", COPIES));
+        }
+        for (int i = 0; i < USERS; i++) {
+            pooled.database.load(new User("User " + i, String.format("%012d", i + 1), notifications));
+        }
+
+        final Front front;
+        final PriorityScheduler scheduler;
+        final ExecutorService shared;
+        if (mode.equals("scheduler")) {
+            scheduler = new PriorityScheduler(threads, sloMillis, TimeUnit.MILLISECONDS);
+            shared = null;
+            Library library = new Library(new PrioritizedDatabaseService(pooled, scheduler), new PrioritizedReviewService(reviews, scheduler));
+            front = new ScheduledFront(new ScheduledLibrary(library, scheduler), scheduler);
+        } else {
+            scheduler = null;
+            shared = Executors.newFixedThreadPool(threads);
+            front = new SharedFront(new Library(pooled, reviews), shared);
+        }
+
+        // Start the import, split into one stream per thread.
+        long start = System.nanoTime();
+        List<Future<Integer>> imports = new ArrayList<>();
+        int streams = importBooks == 0 ? 0 : threads;
+        for (int s = 0; s < streams; s++) {
+            List<Book> books = new ArrayList<>();
+            for (int i = BOOKS + s; i < BOOKS + importBooks; i += streams) {
+                books.add(new Book(isbn(i), "Imported " + i, "Author Name"));
+            }
+            imports.add(front.importBooks(books));
+        }
+
+        // Issue borrows and returns open-loop until the import is done, or for five seconds without one.
+        final LatencyHistogram latency = new LatencyHistogram();
+        ExecutorService clients = Executors.newCachedThreadPool();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long minEnd = start + TimeUnit.SECONDS.toNanos(5);
+        long importEnd = 0;
+        for (long n = 0; ; n++) {
+            final long intended = start + n * intervalNanos;
+            if (importEnd == 0 && allDone(imports)) {
+                importEnd = System.nanoTime();
+            }
+            if (intended >= minEnd && importEnd != 0) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            // Every user borrows a book and returns it on their next turn.
+            final int user = (int) (n % USERS);
+            final String userId = String.format("%012d", user + 1);
+            final String ISBN = isbn((int) ((n / USERS / 2 + user) % BOOKS));
+            final boolean borrow = (n / USERS) % 2 == 0;
+            clients.execute(() -> {
+                try {
+                    if (borrow) {
+                        front.borrowBook(ISBN, userId);
+                    } else {
+                        front.returnBook(ISBN, userId);
+                    }
+                } catch (RuntimeException e) {
+                    // Failed operations count with their latency as well.
+                }
+                latency.record(System.nanoTime() - intended);
+            });
+            for (int i = 0; i < NOTIFICATIONS_PER_INTERACTIVE; i++) {
+                front.notifyUserWithBookReviews(ISBN, userId);
+            }
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+        int imported = 0;
+        for (Future<Integer> result : imports) {
+            imported += result.get();
+        }
+        double importSeconds = importEnd == 0 || importBooks == 0 ? 1 : (importEnd - start) / 1e9;
+        if (console != null) {
+                console.printf("%-16s %10.2f %10.2f %10.2f %10.1f %12.0f %12d %12s%n", mode, latency.getValueAtPercentile(50) / 1e6,
+                    latency.getValueAtPercentile(99) / 1e6, latency.getValueAtPercentile(99.9) / 1e6, latency.getMax() / 1e6,
+                    imported / importSeconds, front.getNotified(), scheduler == null ? "-" : String.valueOf(scheduler.getPreemptions()));
+        }
+        if (scheduler != null) {
+            scheduler.close();
+        } else {
+            shared.shutdownNow();
+        }
+    }
+
+    private static boolean allDone(List<Future<Integer>> results) {
+        for (Future<Integer> result : results) {
+            if (!result.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns a valid ISBN-13 with the given serial number.
+    private static String isbn(int serial) {
+        String digits = "978" + String.format("%09d", serial);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    // The operations the benchmark runs, on a shared pool or on a scheduler.
+    private interface Front {
+        void borrowBook(String ISBN, String userId);
+
+        void returnBook(String ISBN, String userId);
+
+        void notifyUserWithBookReviews(String ISBN, String userId);
+
+        Future<Integer> importBooks(List<Book> books);
+
+        long getNotified();
+    }
+
+    // Runs every operation on one pool of threads, in arrival order.
+    private static final class SharedFront implements Front {
+        private final Library library;
+        private final ExecutorService pool;
+        private final AtomicLong notified = new AtomicLong();
+
+        private SharedFront(Library library, ExecutorService pool) {
+            this.library = library;
+            this.pool = pool;
+        }
+
+        @Override
+        public void borrowBook(String ISBN, String userId) {
+            await(pool.submit(() -> library.borrowBook(ISBN, userId)));
+        }
+
+        @Override
+        public void returnBook(String ISBN, String userId) {
+            await(pool.submit(() -> library.returnBook(ISBN, userId)));
+        }
+
+        @Override
+        public void notifyUserWithBookReviews(String ISBN, String userId) {
+            pool.execute(() -> {
+                library.notifyUserWithBookReviews(ISBN, userId);
+                notified.incrementAndGet();
+            });
+        }
+
+        @Override
+        public Future<Integer> importBooks(List<Book> books) {
+            return pool.submit(() -> {
+                for (Book book : books) {
+                    library.addBook(book);
+                }
+                return books.size();
+            });
+        }
+
+        @Override
+        public long getNotified() {
+            return notified.get();
+        }
+
+        private static void await(Future<?> result) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    // Runs every operation in its priority class.
+    private static final class ScheduledFront implements Front {
+        private final ScheduledLibrary library;
+        private final PriorityScheduler scheduler;
+
+        private ScheduledFront(ScheduledLibrary library, PriorityScheduler scheduler) {
+            this.library = library;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void borrowBook(String ISBN, String userId) {
+            library.borrowBook(ISBN, userId);
+        }
+
+        @Override
+        public void returnBook(String ISBN, String userId) {
+            library.returnBook(ISBN, userId);
+        }
+
+        @Override
+        public void notifyUserWithBookReviews(String ISBN, String userId) {
+            library.notifyUserWithBookReviews(ISBN, userId);
+        }
+
+        @Override
+        public Future<Integer> importBooks(List<Book> books) {
+            return library.importBooks(books);
+        }
+
+        @Override
+        public long getNotified() {
+            return scheduler.getCompleted(PriorityScheduler.Priority.NOTIFICATION);
+        }
+    }
+
+    // A database reached through a pool of connections, each call holding one for its duration.
+    private static final class PooledDatabase implements DatabaseService {
+        private final StubServices.Database database;
+        private final Semaphore connections;
+
+        private PooledDatabase(StubServices.Database database, int connections) {
+            this.database = database;
+            this.connections = new Semaphore(connections);
+        }
+
+        private <T> T call(Supplier<T> action) {
+            connections.acquireUninterruptibly();
+            try {
+                return action.get();
+            } finally {
+                connections.release();
+            }
+        }
+
+        @Override
+        public void addBook(String ISBN, Book book) {
+            call(() -> {
+                database.addBook(ISBN, book);
+                return null;
+            });
+        }
+
+        @Override
+        public void registerUser(String id, User user) {
+            call(() -> {
+                database.registerUser(id, user);
+                return null;
+            });
+        }
+
+        @Override
+        public Book getBookByISBN(String ISBN) {
+            return call(() -> database.getBookByISBN(ISBN));
+        }
+
+        @Override
+        public User getUserById(String userId) {
+            return call(() -> database.getUserById(userId));
+        }
+
+        @Override
+        public void borrowBook(String ISBN, String userId) {
+            call(() -> {
+                database.borrowBook(ISBN, userId);
+                return null;
+            });
+        }
+
+        @Override
+        public void returnBook(String ISBN) {
+            call(() -> {
+                database.returnBook(ISBN);
+                return null;
+            });
+        }
+
+        @Override
+        public void returnBook(String ISBN, String userId) {
+            call(() -> {
+                database.returnBook(ISBN, userId);
+                return null;
+            });
+        }
+    }
+}
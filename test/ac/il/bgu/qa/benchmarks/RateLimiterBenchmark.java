@@ -0,0 +1,66 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.admission.TokenBucketRateLimiter;
+import ac.il.bgu.qa.admission.TokenBucketRateLimiter.Operation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the per-call overhead of {@link TokenBucketRateLimiter#tryAcquire(String, Operation)},
+ * for admitted and rejected calls, on one thread and on all cores. The target is below 100ns per call.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.RateLimiterBenchmark [users] [callsPerThread]}
+ */
+public class RateLimiterBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int calls = args.length > 1 ? Integer.parseInt(args[1]) : 20_000_000;
+        String[] userIds = new String[users];
+        for (int i = 0; i < users; i++) {
+            userIds[i] = String.format("%012d", i);
+        }
+
+        TokenBucketRateLimiter admitting = new TokenBucketRateLimiter();
+        admitting.setLimit(Operation.GET_BOOK, 1e12, 1);
+        TokenBucketRateLimiter rejecting = new TokenBucketRateLimiter();
+        rejecting.setLimit(Operation.GET_BOOK, 1e-3, 1);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("round %d: admitted 1 thread %.1f ns/call, rejected 1 thread %.1f ns/call, "
+                            + "admitted %d threads %.1f ns/call per thread%n", round,
+                    run(admitting, userIds, calls, 1), run(rejecting, userIds, calls, 1),
+                    threads, run(admitting, userIds, calls, threads));
+        }
+    }
+
+    // Returns the average duration of a call on each thread, in nanoseconds.
+    private static double run(final TokenBucketRateLimiter limiter, final String[] userIds, final int calls, int threads)
+            throws InterruptedException {
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong admitted = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * 7919;
+            new Thread(() -> {
+                long count = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < calls; i++) {
+                    if (limiter.tryAcquire(userIds[(i + offset) % userIds.length], Operation.GET_BOOK)) {
+                        count++;
+                    }
+                }
+                totalNanos.addAndGet(System.nanoTime() - start);
+                admitted.addAndGet(count);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        // Print the admitted count so the loop cannot be optimized away.
+        if (admitted.get() < 0) {
+            System.out.println(admitted.get());
+        }
+        return (double) totalNanos.get() / threads / calls;
+    }
+}
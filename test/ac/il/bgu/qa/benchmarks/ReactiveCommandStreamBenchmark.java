@@ -0,0 +1,210 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.reactive.CommandResult;
+import ac.il.bgu.qa.reactive.Flow;
+import ac.il.bgu.qa.reactive.IterablePublisher;
+import ac.il.bgu.qa.reactive.LibraryCommand;
+import ac.il.bgu.qa.reactive.Notification;
+import ac.il.bgu.qa.reactive.PublishingNotificationService;
+import ac.il.bgu.qa.reactive.ReactiveLibrary;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs one long command stream through a {@link ReactiveLibrary} over {@link StubServices} with injected
+ * latency, and reports its throughput, the latency of each command from when it was pulled to when its
+ * result arrived, and the heap and thread count over time, which stay flat when backpressure holds.
+ * <p>
+ * The stream borrows and returns every book of the catalog in turn, with a review notification after every
+ * nine commands. Notifications are published to a subscriber requesting them in batches, and results are
+ * requested in batches by the result subscriber.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.ReactiveCommandStreamBenchmark [seconds] [threads] [maxInFlight] [batch] [dbMicros] [reviewMicros]}
+ */
+public class ReactiveCommandStreamBenchmark {
+
+    private static final int BOOKS = 10_000;
+    private static final int USERS = 1_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int maxInFlight = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        final int batch = args.length > 3 ? Integer.parseInt(args[3]) : 128;
+        long dbMicros = args.length > 4 ? Long.parseLong(args[4]) : 20;
+        long reviewMicros = args.length > 5 ? Long.parseLong(args[5]) : 300;
+        System.out.printf("%d s, %d threads, %d commands in flight, batches of %d, %d us database, %d us reviews%n",
+                seconds, threads, maxInFlight, batch, dbMicros, reviewMicros);
+
+        StubServices.Database database = new StubServices.Database(new StubServices.Faults(dbMicros, 0));
+        Library library = new Library(database, new StubServices.Reviews(new StubServices.Faults(reviewMicros, 0)));
+        PublishingNotificationService notifications = new PublishingNotificationService(1024);
+        final String[] ISBNs = new String[BOOKS];
+        for (int i = 0; i < BOOKS; i++) {
+            ISBNs[i] = isbn(i);
+            database.load(new Book(ISBNs[i], "Title " + i, "Author Name"));
+        }
+        final String[] userIds = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            userIds[i] = String.format("%012d", i + 1);
+            database.load(new User("User " + i, userIds[i], notifications));
+        }
+
+        // The library reports failed notifications on the console; keep them out of the report.
+        PrintStream console = System.out;
+        PrintStream discard = new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        PrintStream errors = System.err;
+        System.setOut(discard);
+        System.setErr(discard);
+
+        final AtomicLong delivered = new AtomicLong();
+        notifications.subscribe(new BatchSubscriber<Notification>(batch) {
+            @Override
+            void consume(Notification notification) {
+                delivered.incrementAndGet();
+            }
+        });
+
+        // The send time of every pulled command, in stream order, matched to the results which come in the same order.
+        final Queue<Long> sent = new ConcurrentLinkedQueue<>();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Iterable<LibraryCommand> commands = () -> new Iterator<LibraryCommand>() {
+            private long next;
+
+            public boolean hasNext() {
+                return System.nanoTime() < deadline;
+            }
+
+            public LibraryCommand next() {
+                long n = next++;
+                sent.add(System.nanoTime());
+                if (n % 10 == 9) {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    return LibraryCommand.notify(ISBNs[random.nextInt(BOOKS)], userIds[random.nextInt(USERS)]);
+                }
+                long pair = n - n / 10;
+                int book = (int) (pair % BOOKS);
+                String userId = userIds[book % USERS];
+                return (pair / BOOKS) % 2 == 0 ? LibraryCommand.borrow(ISBNs[book], userId)
+                        : LibraryCommand.returnBook(ISBNs[book], userId);
+            }
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ReactiveLibrary reactive = new ReactiveLibrary(library, pool, maxInFlight);
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Map<String, AtomicLong> outcomes = new ConcurrentHashMap<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicLong results = new AtomicLong();
+        reactive.execute(new IterablePublisher<>(commands, pool)).subscribe(new BatchSubscriber<CommandResult>(batch) {
+            @Override
+            void consume(CommandResult result) {
+                latency.record(System.nanoTime() - sent.poll());
+                results.incrementAndGet();
+                String outcome = result.getCommand().getType() + " " + (result.isSuccess() ? "OK" : result.getFailure().getClass().getSimpleName());
+                outcomes.computeIfAbsent(outcome, key -> new AtomicLong()).incrementAndGet();
+            }
+
+            @Override
+            void finished() {
+                done.countDown();
+            }
+        });
+
+        long start = System.nanoTime();
+        long previous = 0;
+        Runtime runtime = Runtime.getRuntime();
+        console.printf("%5s %10s %10s %12s %8s%n", "time", "results/s", "notified", "heap (MB)", "threads");
+        while (!done.await(5, TimeUnit.SECONDS)) {
+            long count = results.get();
+            console.printf("%4ds %10.0f %10d %12d %8d%n", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start),
+                    (count - previous) / 5.0, delivered.get(), (runtime.totalMemory() - runtime.freeMemory()) >> 20,
+                    Thread.activeCount());
+            previous = count;
+        }
+        pool.shutdown();
+        System.setOut(console);
+        System.setErr(errors);
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        console.printf("%d results in %.1f s: %.0f commands/s; latency p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.1f ms%n",
+                results.get(), elapsed, results.get() / elapsed, latency.getValueAtPercentile(50) / 1e6,
+                latency.getValueAtPercentile(99) / 1e6, latency.getValueAtPercentile(99.9) / 1e6, latency.getMax() / 1e6);
+        console.printf("%d notifications delivered, %d refused%n", delivered.get(), notifications.getRefused());
+        console.println(new TreeMap<>(outcomes));
+    }
+
+    // Returns a valid ISBN-13 with the given serial number.
+    private static String isbn(int serial) {
+        String digits = "978" + String.format("%09d", serial);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    // Requests items in batches, requesting the next batch once half of the current one arrived.
+    private abstract static class BatchSubscriber<T> implements Flow.Subscriber<T> {
+        private final int batch;
+        private Flow.Subscription subscription;
+        private long outstanding;
+
+        private BatchSubscriber(int batch) {
+            this.batch = batch;
+        }
+
+        abstract void consume(T item);
+
+        void finished() {
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            outstanding = batch;
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(T item) {
+            consume(item);
+            if (--outstanding <= batch / 2) {
+                outstanding += batch;
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            throwable.printStackTrace();
+            finished();
+        }
+
+        @Override
+        public void onComplete() {
+            finished();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.replication.ChangeLog;
+import ac.il.bgu.qa.replication.PrimaryDatabaseService;
+import ac.il.bgu.qa.replication.ReplicaDatabaseService;
+import ac.il.bgu.qa.replication.ReplicaReadRouter;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the read throughput of a {@link Library} whose reads are routed to a growing number of
+ * {@link ReplicaDatabaseService replicas}, while a few writers keep borrowing and returning books.
+ * <p>
+ * Replicas in one JVM share its processors, so to stand for separate database nodes each node, the primary
+ * as well as every replica, serves one call at a time and holds it for the given service time without using
+ * the processor. Read throughput is then bounded by the number of nodes serving reads, as it would be with
+ * remote replicas. Replicas catch up every millisecond; reads accept a bounded staleness and see their
+ * user's own writes.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.ReplicaReadBenchmark [readers] [writers] [seconds] [serviceMicros] [maxStalenessMillis]}
+ */
+public class ReplicaReadBenchmark {
+
+    private static final int BOOKS = 1_000;
+    private static final int USERS = 1_000;
+    private static final int COPIES = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        int readers = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int writers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        long serviceNanos = TimeUnit.MICROSECONDS.toNanos(args.length > 3 ? Long.parseLong(args[3]) : 200);
+        long maxStalenessMillis = args.length > 4 ? Long.parseLong(args[4]) : 100;
+
+        System.out.printf("%d readers, %d writers, %d us per database call, %d ms staleness bound, %d s per run%n",
+                readers, writers, TimeUnit.NANOSECONDS.toMicros(serviceNanos), maxStalenessMillis, seconds);
+        System.out.printf("%-8s %10s %10s %12s %14s%n", "replicas", "reads/s", "writes/s", "from replica", "max lag (ms)");
+        // Warm up before measuring.
+        run(2, readers, writers, 1, serviceNanos, maxStalenessMillis, false);
+        for (int replicas : new int[]{0, 1, 2, 4, 8}) {
+            run(replicas, readers, writers, seconds, serviceNanos, maxStalenessMillis, true);
+        }
+    }
+
+    private static void run(int replicaCount, int readers, int writers, int seconds, long serviceNanos,
+                            long maxStalenessMillis, boolean report) throws InterruptedException {
+        Clock clock = Clock.systemUTC();
+        ChangeLog log = new ChangeLog(clock);
+        PrimaryDatabaseService primary = new PrimaryDatabaseService(new PrimaryNode(serviceNanos), log);
+        List<ReplicaDatabaseService> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaCount; i++) {
+            replicas.add(new ReplicaNode(log, clock, serviceNanos));
+        }
+        ReplicaReadRouter router = new ReplicaReadRouter(primary, replicas, maxStalenessMillis, true);
+        final Library library = new Library(primary, new StubServices.Reviews(new StubServices.Faults(0, 0)));
+        library.setReadRouter(router);
+
+        final String[] ISBNs = new String[BOOKS];
+        for (int i = 0; i < BOOKS; i++) {
+            ISBNs[i] = isbn(i);
+            library.addBook(new Book(ISBNs[i], "Title " + i, "Author Name", COPIES));
+        }
+        final String[] userIds = new String[USERS];
+        StubServices.Notifications notifications = new StubServices.Notifications(new StubServices.Faults(0, 0));
+        for (int i = 0; i < USERS; i++) {
+            userIds[i] = String.format("%012d", i + 1);
+            library.registerUser(new User("User " + i, userIds[i], notifications));
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        for (ReplicaDatabaseService replica : replicas) {
+            replica.catchUp();
+            replica.start(scheduler, 1, TimeUnit.MILLISECONDS);
+        }
+
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong writes = new AtomicLong();
+        final AtomicLong maxLag = new AtomicLong();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final CountDownLatch done = new CountDownLatch(readers + writers + 1);
+        for (int t = 0; t < readers; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                while (System.nanoTime() < deadline) {
+                    try {
+                        library.getBookByISBN(ISBNs[random.nextInt(BOOKS)], userIds[random.nextInt(USERS)]);
+                    } catch (RuntimeException e) {
+                        // Every copy is out; the read still reached a database.
+                    }
+                    count++;
+                }
+                reads.addAndGet(count);
+                done.countDown();
+            }).start();
+        }
+        for (int t = 0; t < writers; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<String[]> loans = new ArrayList<>();
+                long count = 0;
+                while (System.nanoTime() < deadline) {
+                    try {
+                        if (loans.size() < 100 && (loans.isEmpty() || random.nextBoolean())) {
+                            String ISBN = ISBNs[random.nextInt(BOOKS)];
+                            String userId = userIds[random.nextInt(USERS)];
+                            library.borrowBook(ISBN, userId);
+                            loans.add(new String[]{ISBN, userId});
+                        } else {
+                            String[] loan = loans.remove(random.nextInt(loans.size()));
+                            library.returnBook(loan[0], loan[1]);
+                        }
+                        count++;
+                    } catch (RuntimeException e) {
+                        // Every copy is out.
+                    }
+                }
+                writes.addAndGet(count);
+                done.countDown();
+            }).start();
+        }
+        // Sample the lag of the replicas while the run lasts.
+        new Thread(() -> {
+            while (System.nanoTime() < deadline) {
+                for (ReplicaDatabaseService replica : replicas) {
+                    maxLag.accumulateAndGet(replica.getStalenessMillis(), Math::max);
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            done.countDown();
+        }).start();
+        done.await();
+        for (ReplicaDatabaseService replica : replicas) {
+            replica.close();
+        }
+        scheduler.shutdown();
+
+        if (!report) {
+            return;
+        }
+        long routed = router.getReplicaReads() + router.getPrimaryReads();
+        System.out.printf("%-8d %10.0f %10.0f %11.1f%% %14d%n", replicaCount, (double) reads.get() / seconds,
+                (double) writes.get() / seconds, routed == 0 ? 0 : 100.0 * router.getReplicaReads() / routed,
+                maxLag.get());
+    }
+
+    // Returns a valid ISBN-13 with the given serial number.
+    private static String isbn(int serial) {
+        String digits = "978" + String.format("%09d", serial);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    // Serves one call at a time, holding it for the service time without using the processor.
+    private static final class Capacity {
+        private final Semaphore worker = new Semaphore(1);
+        private final long serviceNanos;
+
+        private Capacity(long serviceNanos) {
+            this.serviceNanos = serviceNanos;
+        }
+
+        private void serve() {
+            worker.acquireUninterruptibly();
+            try {
+                LockSupport.parkNanos(serviceNanos);
+            } finally {
+                worker.release();
+            }
+        }
+    }
+
+    // The primary's database node. Loading the catalog is not delayed.
+    private static final class PrimaryNode extends InMemoryDatabaseService {
+        private final Capacity capacity;
+
+        private PrimaryNode(long serviceNanos) {
+            capacity = new Capacity(serviceNanos);
+        }
+
+        @Override
+        public Book getBookByISBN(String ISBN) {
+            capacity.serve();
+            return super.getBookByISBN(ISBN);
+        }
+
+        @Override
+        public User getUserById(String userId) {
+            capacity.serve();
+            return super.getUserById(userId);
+        }
+
+        @Override
+        public void borrowBook(String ISBN, String userId) {
+            capacity.serve();
+            super.borrowBook(ISBN, userId);
+        }
+
+        @Override
+        public void returnBook(String ISBN, String userId) {
+            capacity.serve();
+            super.returnBook(ISBN, userId);
+        }
+    }
+
+    // A replica's database node. Applying changes is not delayed.
+    private static final class ReplicaNode extends ReplicaDatabaseService {
+        private final Capacity capacity;
+
+        private ReplicaNode(ChangeLog log, Clock clock, long serviceNanos) {
+            super(log, clock);
+            capacity = new Capacity(serviceNanos);
+        }
+
+        @Override
+        public Book getBookByISBN(String ISBN) {
+            capacity.serve();
+            return super.getBookByISBN(ISBN);
+        }
+
+        @Override
+        public User getUserById(String userId) {
+            capacity.serve();
+            return super.getUserById(userId);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.ShardedDatabaseService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-threaded throughput benchmark of {@link ShardedDatabaseService} over 1, 4 and 16 in-memory shards.
+ * <p>
+ * Each shard is an {@link InMemoryDatabaseService} behind a single lock, modelling a backend that serves
+ * one request at a time, so the benchmark shows how throughput scales with the number of shards.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.ShardedDatabaseBenchmark [threads] [seconds]}
+ */
+public class ShardedDatabaseBenchmark {
+
+    private static final int BOOKS = 100_000;
+    private static final int USERS = 10_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        ExecutorService fanOut = Executors.newCachedThreadPool();
+        try {
+            for (int shardCount : new int[]{1, 4, 16}) {
+                List<DatabaseService> shards = new ArrayList<>();
+                for (int i = 0; i < shardCount; i++) {
+                    shards.add(new SingleConnectionDatabase(new InMemoryDatabaseService()));
+                }
+                ShardedDatabaseService database = new ShardedDatabaseService(shards, fanOut);
+                populate(database);
+                long ops = run(database, threads, seconds);
+                System.out.printf("shards=%2d threads=%d ops/s=%,d%n", shardCount, threads, ops / seconds);
+            }
+        } finally {
+            fanOut.shutdown();
+        }
+    }
+
+    private static void populate(DatabaseService database) {
+        for (int i = 0; i < BOOKS; i++) {
+            String ISBN = isbn(i);
+            database.addBook(ISBN, new Book(ISBN, "Title " + i, "Author"));
+        }
+        for (int i = 0; i < USERS; i++) {
+            String id = userId(i);
+            database.registerUser(id, new User("User " + i, id, (userId, message) -> { }));
+        }
+    }
+
+    // Runs a 90% read, 10% borrow/return mix on all threads and returns the number of operations.
+    private static long run(final DatabaseService database, int threads, int seconds) throws InterruptedException {
+        final AtomicLong ops = new AtomicLong();
+        final long end = System.nanoTime() + seconds * 1_000_000_000L;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                while (System.nanoTime() < end) {
+                    String ISBN = isbn(random.nextInt(BOOKS));
+                    int op = random.nextInt(100);
+                    if (op < 80) {
+                        database.getBookByISBN(ISBN);
+                    } else if (op < 90) {
+                        database.getUserById(userId(random.nextInt(USERS)));
+                    } else if (op < 95) {
+                        database.borrowBook(ISBN, userId(random.nextInt(USERS)));
+                    } else {
+                        database.returnBook(ISBN);
+                    }
+                    count++;
+                }
+                ops.addAndGet(count);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        return ops.get();
+    }
+
+    private static String isbn(int i) {
+        return String.format("978%010d", i);
+    }
+
+    private static String userId(int i) {
+        return String.format("%012d", i);
+    }
+
+    /**
+     * Serializes every call to the wrapped database, like a backend with a single connection.
+     */
+    private static final class SingleConnectionDatabase implements DatabaseService {
+        private final DatabaseService delegate;
+
+        SingleConnectionDatabase(DatabaseService delegate) {
+            this.delegate = delegate;
+        }
+
+        public synchronized void addBook(String ISBN, Book book) {
+            delegate.addBook(ISBN, book);
+        }
+
+        public synchronized void registerUser(String id, User user) {
+            delegate.registerUser(id, user);
+        }
+
+        public synchronized Book getBookByISBN(String ISBN) {
+            return delegate.getBookByISBN(ISBN);
+        }
+
+        public synchronized User getUserById(String userId) {
+            return delegate.getUserById(userId);
+        }
+
+        public synchronized void borrowBook(String ISBN, String userId) {
+            delegate.borrowBook(ISBN, userId);
+        }
+
+        public synchronized void returnBook(String ISBN) {
+            delegate.returnBook(ISBN);
+        }
+    }
+}
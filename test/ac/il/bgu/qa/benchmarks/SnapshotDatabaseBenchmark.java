@@ -0,0 +1,165 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.SnapshotDatabaseService;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Multi-threaded throughput benchmark of {@link SnapshotDatabaseService} against a database guarded by a
+ * read-write lock and against {@link InMemoryDatabaseService}, at 95/5 and 99/1 read/write mixes on 8 to 64
+ * threads. Reads look up a book and a user; writes borrow or return a book.
+ * Run with: {@code java ac.il.bgu.qa.benchmarks.SnapshotDatabaseBenchmark [seconds]}
+ */
+public class SnapshotDatabaseBenchmark {
+
+    private static final int BOOKS = 100_000;
+    private static final int USERS = 10_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        String[] ISBNs = new String[BOOKS];
+        for (int i = 0; i < BOOKS; i++) {
+            ISBNs[i] = "978" + String.format("%010d", i);
+        }
+        String[] userIds = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            userIds[i] = String.format("%012d", i);
+        }
+
+        Map<String, Supplier<DatabaseService>> databases = new LinkedHashMap<>();
+        databases.put("snapshot", SnapshotDatabaseService::new);
+        databases.put("read-write lock", ReadWriteLockDatabase::new);
+        databases.put("concurrent map", InMemoryDatabaseService::new);
+        for (int writePercent : new int[]{5, 1}) {
+            for (int threads : new int[]{8, 16, 32, 64}) {
+                StringBuilder line = new StringBuilder(String.format("%d/%d, %2d threads:", 100 - writePercent, writePercent, threads));
+                for (Map.Entry<String, Supplier<DatabaseService>> database : databases.entrySet()) {
+                    DatabaseService instance = database.getValue().get();
+                    for (int i = 0; i < BOOKS; i++) {
+                        instance.addBook(ISBNs[i], new Book(ISBNs[i], "Title " + i, "Author"));
+                    }
+                    for (int i = 0; i < USERS; i++) {
+                        instance.registerUser(userIds[i], new User("User " + i, userIds[i], (id, message) -> { }));
+                    }
+                    double opsPerSecond = run(instance, ISBNs, userIds, threads, writePercent, seconds);
+                    line.append(String.format("  %s %.2f Mops/s", database.getKey(), opsPerSecond / 1e6));
+                }
+                System.out.println(line);
+            }
+        }
+    }
+
+    // Returns the number of operations per second on all threads together.
+    private static double run(final DatabaseService database, final String[] ISBNs, final String[] userIds,
+                              int threads, final int writePercent, int seconds) throws InterruptedException {
+        final long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        final AtomicLong operations = new AtomicLong();
+        final AtomicLong found = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                long hits = 0;
+                while ((count & 255) != 0 || System.nanoTime() < deadline) {
+                    String ISBN = ISBNs[random.nextInt(ISBNs.length)];
+                    if (random.nextInt(100) < writePercent) {
+                        if (random.nextBoolean()) {
+                            database.borrowBook(ISBN, userIds[random.nextInt(userIds.length)]);
+                        } else {
+                            database.returnBook(ISBN);
+                        }
+                    } else if (database.getBookByISBN(ISBN) != null
+                            && database.getUserById(userIds[random.nextInt(userIds.length)]) != null) {
+                        hits++;
+                    }
+                    count++;
+                }
+                operations.addAndGet(count);
+                found.addAndGet(hits);
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        // Use the lookup results so they cannot be optimized away.
+        if (found.get() < 0) {
+            System.out.println(found.get());
+        }
+        return operations.get() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    // A database whose reads share, and whose writes exclude, a read-write lock.
+    private static final class ReadWriteLockDatabase implements DatabaseService {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, Book> books = new HashMap<>();
+        private final Map<String, User> users = new HashMap<>();
+        private final Map<String, String> borrowers = new HashMap<>();
+
+        public void addBook(String ISBN, Book book) {
+            lock.writeLock().lock();
+            try {
+                books.put(ISBN, book);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        public void registerUser(String id, User user) {
+            lock.writeLock().lock();
+            try {
+                users.put(id, user);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        public Book getBookByISBN(String ISBN) {
+            lock.readLock().lock();
+            try {
+                return books.get(ISBN);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        public User getUserById(String userId) {
+            lock.readLock().lock();
+            try {
+                return users.get(userId);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        public void borrowBook(String ISBN, String userId) {
+            lock.writeLock().lock();
+            try {
+                borrowers.put(ISBN, userId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        public void returnBook(String ISBN) {
+            lock.writeLock().lock();
+            try {
+                borrowers.remove(ISBN);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory stand-ins for the library's services, which add a latency to every call and fail a fraction of
+ * the calls, for load tests. Latencies are exponentially distributed around the given mean, so some calls
+ * are several times slower than the mean, as with real remote services.
+ */
+final class StubServices {
+
+    private StubServices() {
+    }
+
+    /**
+     * The latency and failure rate injected into the calls of a service.
+     */
+    static final class Faults {
+        private final long meanLatencyNanos;
+        private final double failureRate;
+
+        Faults(long meanLatencyMicros, double failureRate) {
+            if (meanLatencyMicros < 0 || failureRate < 0 || failureRate > 1) {
+                throw new IllegalArgumentException("Invalid faults.");
+            }
+            this.meanLatencyNanos = TimeUnit.MICROSECONDS.toNanos(meanLatencyMicros);
+            this.failureRate = failureRate;
+        }
+
+        // Waits for the call's latency, then returns whether the call fails.
+        boolean delayAndFail() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (meanLatencyNanos > 0) {
+                LockSupport.parkNanos((long) (-Math.log(1 - random.nextDouble()) * meanLatencyNanos));
+            }
+            return random.nextDouble() < failureRate;
+        }
+
+        @Override
+        public String toString() {
+            return TimeUnit.NANOSECONDS.toMicros(meanLatencyNanos) + " us, " + failureRate * 100 + "% failures";
+        }
+    }
+
+    /**
+     * An {@link InMemoryDatabaseService} whose lookups and updates are delayed and fail with an
+     * {@link IllegalStateException}.
+     */
+    static final class Database implements DatabaseService {
+        private final InMemoryDatabaseService delegate = new InMemoryDatabaseService();
+        private final Faults faults;
+
+        Database(Faults faults) {
+            this.faults = faults;
+        }
+
+        private void call() {
+            if (faults.delayAndFail()) {
+                throw new IllegalStateException("Injected database failure.");
+            }
+        }
+
+        // Adds a book or registers a user without any latency or failure, to load the catalog.
+        void load(Book book) {
+            delegate.addBook(book.getISBN(), book);
+        }
+
+        void load(User user) {
+            delegate.registerUser(user.getId(), user);
+        }
+
+        @Override
+        public void addBook(String ISBN, Book book) {
+            call();
+            delegate.addBook(ISBN, book);
+        }
+
+        @Override
+        public void registerUser(String id, User user) {
+            call();
+            delegate.registerUser(id, user);
+        }
+
+        @Override
+        public Book getBookByISBN(String ISBN) {
+            call();
+            return delegate.getBookByISBN(ISBN);
+        }
+
+        @Override
+        public User getUserById(String userId) {
+            call();
+            return delegate.getUserById(userId);
+        }
+
+        @Override
+        public void borrowBook(String ISBN, String userId) {
+            call();
+            delegate.borrowBook(ISBN, userId);
+        }
+
+        @Override
+        public void returnBook(String ISBN) {
+            call();
+            delegate.returnBook(ISBN);
+        }
+
+        @Override
+        public void returnBook(String ISBN, String userId) {
+            call();
+            delegate.returnBook(ISBN, userId);
+        }
+    }
+
+    /**
+     * A review service answering every book with the same reviews, failing with a {@link ReviewException}.
+     */
+    static final class Reviews implements ReviewService {
+        private final List<String> reviews = Arrays.asList("A fine read.", "Could not put it down.", "Too long.");
+        private final Faults faults;
+
+        Reviews(Faults faults) {
+            this.faults = faults;
+        }
+
+        @Override
+        public List<String> getReviewsForBook(String ISBN) {
+            if (faults.delayAndFail()) {
+                throw new ReviewException("Injected review failure.");
+            }
+            return reviews;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * A notification service which drops every message, failing with a {@link NotificationException}.
+     */
+    static final class Notifications implements NotificationService {
+        private final Faults faults;
+
+        Notifications(Faults faults) {
+            this.faults = faults;
+        }
+
+        @Override
+        public void notifyUser(String userId, String message) {
+            if (faults.delayAndFail()) {
+                throw new NotificationException("Injected notification failure.");
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ac.il.bgu.qa.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Draws item indexes whose popularity follows a Zipfian distribution: the k-th most popular of {@code n}
+ * items is drawn with probability proportional to {@code 1 / k^exponent}. Ranks are mapped to indexes by a
+ * fixed random permutation, so popular items are spread over the index range instead of clustering at 0.
+ * Safe for concurrent use.
+ */
+final class ZipfianGenerator {
+
+    // The cumulative probability of the ranks up to each rank.
+    private final double[] cumulative;
+    // The index of the item at each rank.
+    private final int[] itemAtRank;
+
+    ZipfianGenerator(int items, double exponent, long seed) {
+        if (items <= 0 || exponent < 0) {
+            throw new IllegalArgumentException("Invalid Zipfian distribution.");
+        }
+        cumulative = new double[items];
+        double sum = 0;
+        for (int rank = 0; rank < items; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < items; rank++) {
+            cumulative[rank] /= sum;
+        }
+        itemAtRank = new int[items];
+        Random random = new Random(seed);
+        for (int i = 0; i < items; i++) {
+            int j = random.nextInt(i + 1);
+            itemAtRank[i] = itemAtRank[j];
+            itemAtRank[j] = i;
+        }
+    }
+
+    int next() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < u) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return itemAtRank[low];
+    }
+
+    // The probability of drawing the most popular item.
+    double topProbability() {
+        return cumulative[0];
+    }
+}